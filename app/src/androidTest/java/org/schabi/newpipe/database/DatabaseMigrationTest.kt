@@ -10,9 +10,11 @@ import androidx.test.platform.app.InstrumentationRegistry
 import org.junit.Assert.assertEquals
 import org.junit.Assert.assertNotEquals
 import org.junit.Assert.assertNull
+import org.junit.Assert.assertTrue
 import org.junit.Rule
 import org.junit.Test
 import org.junit.runner.RunWith
+import org.schabi.newpipe.database.feed.model.FeedLastUpdatedEntity
 import org.schabi.newpipe.database.playlist.model.PlaylistEntity
 import org.schabi.newpipe.database.playlist.model.PlaylistRemoteEntity
 import org.schabi.newpipe.extractor.ServiceList
@@ -35,6 +37,9 @@ class DatabaseMigrationTest {
 
         private const val DEFAULT_THIRD_SERVICE_ID = 2
         private const val DEFAULT_THIRD_URL = "https://www.youtube.com/watch?v=dQw4w9WgXcQ"
+
+        private const val DEFAULT_LAST_UPDATED = 1700000000000L
+        private const val DEFAULT_FINGERPRINT = "da39a3ee5e6b4b0d3255bfef95601890afd80709"
     }
 
     @get:Rule
@@ -128,6 +133,20 @@ class DatabaseMigrationTest {
             Migrations.MIGRATION_8_9
         )
 
+        testHelper.runMigrationsAndValidate(
+            AppDatabase.DATABASE_NAME,
+            Migrations.DB_VER_10,
+            true,
+            Migrations.MIGRATION_9_10
+        )
+
+        testHelper.runMigrationsAndValidate(
+            AppDatabase.DATABASE_NAME,
+            Migrations.DB_VER_11,
+            true,
+            Migrations.MIGRATION_10_11
+        )
+
         val migratedDatabaseV3 = getMigratedDatabase()
         val listFromDB = migratedDatabaseV3.streamDAO().all.blockingFirst()
 
@@ -216,6 +235,16 @@ class DatabaseMigrationTest {
             true, Migrations.MIGRATION_8_9
         )
 
+        testHelper.runMigrationsAndValidate(
+            AppDatabase.DATABASE_NAME, Migrations.DB_VER_10,
+            true, Migrations.MIGRATION_9_10
+        )
+
+        testHelper.runMigrationsAndValidate(
+            AppDatabase.DATABASE_NAME, Migrations.DB_VER_11,
+            true, Migrations.MIGRATION_10_11
+        )
+
         val migratedDatabaseV8 = getMigratedDatabase()
         val listFromDB = migratedDatabaseV8.searchHistoryDAO().all.blockingFirst()
 
@@ -282,6 +311,20 @@ class DatabaseMigrationTest {
             Migrations.MIGRATION_8_9
         )
 
+        testHelper.runMigrationsAndValidate(
+            AppDatabase.DATABASE_NAME,
+            Migrations.DB_VER_10,
+            true,
+            Migrations.MIGRATION_9_10
+        )
+
+        testHelper.runMigrationsAndValidate(
+            AppDatabase.DATABASE_NAME,
+            Migrations.DB_VER_11,
+            true,
+            Migrations.MIGRATION_10_11
+        )
+
         val migratedDatabaseV9 = getMigratedDatabase()
         var localListFromDB = migratedDatabaseV9.playlistDAO().all.blockingFirst()
         var remoteListFromDB = migratedDatabaseV9.playlistRemoteDAO().all.blockingFirst()
@@ -313,6 +356,125 @@ class DatabaseMigrationTest {
         assertEquals(-1, remoteListFromDB[1].displayIndex)
     }
 
+    @Test
+    fun migrateDatabaseFrom9to10() {
+        val databaseInV9 = testHelper.createDatabase(AppDatabase.DATABASE_NAME, Migrations.DB_VER_9)
+
+        val subscriptionUid: Long
+        databaseInV9.run {
+            subscriptionUid = insert(
+                "subscriptions", SQLiteDatabase.CONFLICT_FAIL,
+                ContentValues().apply {
+                    put("service_id", DEFAULT_SERVICE_ID)
+                    put("url", DEFAULT_URL)
+                    put("name", DEFAULT_NAME)
+                    put("notification_mode", 0)
+                }
+            )
+            insert(
+                "feed_last_updated", SQLiteDatabase.CONFLICT_FAIL,
+                ContentValues().apply {
+                    put("subscription_id", subscriptionUid)
+                    put("last_updated", DEFAULT_LAST_UPDATED)
+                }
+            )
+            close()
+        }
+
+        testHelper.runMigrationsAndValidate(
+            AppDatabase.DATABASE_NAME,
+            Migrations.DB_VER_10,
+            true,
+            Migrations.MIGRATION_9_10
+        )
+
+        testHelper.runMigrationsAndValidate(
+            AppDatabase.DATABASE_NAME,
+            Migrations.DB_VER_11,
+            true,
+            Migrations.MIGRATION_10_11
+        )
+
+        val migratedDatabaseV10 = getMigratedDatabase()
+        val feedDAO = migratedDatabaseV10.feedDAO()
+
+        // the last updated date is kept, the fingerprint is only known after the next update
+        assertEquals(0L, feedDAO.notLoadedCount().blockingFirst())
+        assertNull(feedDAO.getContentFingerprint(subscriptionUid))
+
+        feedDAO.setLastUpdatedForSubscription(
+            FeedLastUpdatedEntity(subscriptionUid, null, DEFAULT_FINGERPRINT)
+        )
+        assertEquals(DEFAULT_FINGERPRINT, feedDAO.getContentFingerprint(subscriptionUid))
+    }
+
+    @Test
+    fun migrateDatabaseFrom10to11() {
+        val databaseInV10 = testHelper.createDatabase(
+            AppDatabase.DATABASE_NAME, Migrations.DB_VER_10
+        )
+
+        val streamUid1: Long
+        val streamUid2: Long
+        val streamUid3: Long
+        databaseInV10.run {
+            val insertStream = { url: String ->
+                insert(
+                    "streams", SQLiteDatabase.CONFLICT_FAIL,
+                    ContentValues().apply {
+                        put("service_id", DEFAULT_SERVICE_ID)
+                        put("url", url)
+                        put("title", DEFAULT_TITLE)
+                        put("stream_type", DEFAULT_TYPE.name)
+                        put("duration", DEFAULT_DURATION)
+                        put("uploader", DEFAULT_UPLOADER_NAME)
+                    }
+                )
+            }
+            val insertHistory = { streamUid: Long, accessDate: Long, repeatCount: Long ->
+                insert(
+                    "stream_history", SQLiteDatabase.CONFLICT_FAIL,
+                    ContentValues().apply {
+                        put("stream_id", streamUid)
+                        put("access_date", accessDate)
+                        put("repeat_count", repeatCount)
+                    }
+                )
+            }
+
+            streamUid1 = insertStream(DEFAULT_URL)
+            streamUid2 = insertStream(DEFAULT_SECOND_URL)
+            // never watched, so it must not get any statistics
+            streamUid3 = insertStream(DEFAULT_THIRD_URL)
+
+            insertHistory(streamUid1, 1000, 2)
+            insertHistory(streamUid1, 3000, 1)
+            insertHistory(streamUid1, 2000, 4)
+            insertHistory(streamUid2, 5000, 1)
+            close()
+        }
+
+        testHelper.runMigrationsAndValidate(
+            AppDatabase.DATABASE_NAME,
+            Migrations.DB_VER_11,
+            true,
+            Migrations.MIGRATION_10_11
+        )
+
+        val migratedDatabaseV11 = getMigratedDatabase()
+        val statistics = migratedDatabaseV11.streamStatisticsDAO().all.blockingFirst()
+            .sortedBy { it.streamUid }
+
+        assertEquals(2, statistics.size)
+        assertEquals(streamUid1, statistics[0].streamUid)
+        assertEquals(7, statistics[0].watchCount)
+        assertEquals(3000, statistics[0].latestAccessDate.toInstant().toEpochMilli())
+        assertEquals(streamUid2, statistics[1].streamUid)
+        assertEquals(1, statistics[1].watchCount)
+        assertEquals(5000, statistics[1].latestAccessDate.toInstant().toEpochMilli())
+        assertTrue(statistics.none { it.streamUid == streamUid3 })
+    }
+
     private fun getMigratedDatabase(): AppDatabase {
         val database: AppDatabase = Room.databaseBuilder(
             ApplicationProvider.getApplicationContext(),
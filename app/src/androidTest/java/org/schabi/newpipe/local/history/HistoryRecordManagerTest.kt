@@ -9,6 +9,12 @@ import org.junit.Rule
 import org.junit.Test
 import org.schabi.newpipe.database.AppDatabase
 import org.schabi.newpipe.database.history.model.SearchHistoryEntry
+import org.schabi.newpipe.database.playlist.model.PlaylistStreamEntity
+import org.schabi.newpipe.database.stream.model.StreamEntity
+import org.schabi.newpipe.database.stream.model.StreamStateEntity
+import org.schabi.newpipe.extractor.stream.StreamInfo
+import org.schabi.newpipe.extractor.stream.StreamInfoItem
+import org.schabi.newpipe.extractor.stream.StreamType
 import org.schabi.newpipe.testUtil.TestDatabase
 import org.schabi.newpipe.testUtil.TrampolineSchedulerRule
 import java.time.LocalDateTime
@@ -97,6 +103,88 @@ class HistoryRecordManagerTest {
         assertThat(database.searchHistoryDAO().all.blockingFirst()).isEmpty()
     }
 
+    @Test
+    fun loadStreamStateBatch() {
+        val streams = (1..3).map {
+            StreamEntity(
+                serviceId = 0, url = "https://example.com/batch/$it", title = "stream $it",
+                streamType = StreamType.VIDEO_STREAM, duration = 1000, uploader = "uploader"
+            )
+        }
+        val streamIds = database.streamDAO().upsertAll(streams)
+        database.streamStateDAO().upsert(StreamStateEntity(streamIds[0], 100_000))
+        database.streamStateDAO().upsert(StreamStateEntity(streamIds[2], 300_000))
+
+        val items = streams.map { StreamInfoItem(it.serviceId, it.url, it.title, it.streamType) } +
+            StreamInfoItem(0, "https://example.com/batch/unknown", "", StreamType.VIDEO_STREAM)
+        val states = manager.loadStreamStateBatch(items).blockingGet()
+        assertThat(states.map { it?.progressMillis })
+            .containsExactly(100_000L, null, 300_000L, null)
+
+        // the states are cached now, so make sure the cache is invalidated when they are deleted
+        assertThat(manager.getCachedStreamState(items[0])?.progressMillis).isEqualTo(100_000L)
+        manager.deleteCompleteStreamStateHistory().test().await().assertValue(2)
+        assertThat(manager.isStreamStateCached(items[0])).isTrue()
+        assertThat(manager.getCachedStreamState(items[0])).isNull()
+        assertThat(manager.loadStreamStateBatch(items).blockingGet()).containsOnlyNulls()
+    }
+
+    @Test
+    fun writtenStreamStatesAreCached() {
+        val info = StreamInfo(
+            0, "https://example.com/saved", "https://example.com/saved",
+            StreamType.VIDEO_STREAM, "saved", "stream", 0
+        )
+        info.duration = 1000
+        val item = StreamInfoItem(info.serviceId, info.url, info.name, info.streamType)
+        manager.loadStreamStateBatch(listOf(item)).blockingGet()
+        assertThat(manager.isStreamStateCached(item)).isTrue()
+        assertThat(manager.getCachedStreamState(item)).isNull()
+
+        // the lists show the new state when the item is bound again, without querying it
+        manager.saveStreamState(info, 100_000).test().await().assertComplete()
+        assertThat(manager.getCachedStreamState(item)?.progressMillis).isEqualTo(100_000L)
+
+        val stream = database.streamDAO().getStream(0, info.url).blockingFirst()[0]
+        manager.deleteStreamHistoryAndState(stream).test().await().assertComplete()
+        assertThat(manager.isStreamStateCached(item)).isTrue()
+        assertThat(manager.getCachedStreamState(item)).isNull()
+    }
+
+    @Test
+    fun invalidateStreamStateCache() {
+        val stream = StreamEntity(
+            serviceId = 0, url = "https://example.com/import", title = "stream",
+            streamType = StreamType.VIDEO_STREAM, duration = 1000, uploader = "uploader"
+        )
+        val streamId = database.streamDAO().upsert(stream)
+        database.streamStateDAO().upsert(StreamStateEntity(streamId, 100_000))
+
+        val item = StreamInfoItem(stream.serviceId, stream.url, stream.title, stream.streamType)
+        manager.loadStreamStateBatch(listOf(item)).blockingGet()
+        assertThat(manager.getCachedStreamState(item)?.progressMillis).isEqualTo(100_000L)
+
+        // e.g. after importing a database, nothing that was cached is valid anymore
+        HistoryRecordManager.invalidateStreamStateCache()
+        assertThat(manager.getCachedStreamState(item)).isNull()
+    }
+
+    @Test
+    fun loadLocalStreamStateBatch() {
+        val streams = (1..3).map {
+            StreamEntity(
+                serviceId = 0, url = "https://example.com/local/$it", title = "stream $it",
+                streamType = StreamType.VIDEO_STREAM, duration = 1000, uploader = "uploader"
+            )
+        }
+        val streamIds = database.streamDAO().upsertAll(streams)
+        database.streamStateDAO().upsert(StreamStateEntity(streamIds[1], 200_000))
+
+        val items = streamIds.mapIndexed { index, id -> PlaylistStreamEntity(1, id, index) }
+        val states = manager.loadLocalStreamStateBatch(items).blockingGet()
+        assertThat(states.map { it?.progressMillis }).containsExactly(null, 200_000L, null)
+    }
+
     private fun insertShuffledRelatedSearches(relatedSearches: Collection<SearchHistoryEntry>) {
 
         // shuffle to make sure the order of items returned by queries depends only on
@@ -64,6 +64,14 @@ public final class DownloaderImpl extends Downloader {
         return instance;
     }
 
+    /**
+     * @return the {@link OkHttpClient} used by this downloader, whose connection pool can be
+     * shared by deriving new clients from it with {@link OkHttpClient#newBuilder()}
+     */
+    public OkHttpClient getClient() {
+        return client;
+    }
+
     public String getCookies(final String url) {
         final String youtubeCookie = url.contains(YOUTUBE_DOMAIN)
                 ? getCookie(YOUTUBE_RESTRICTED_MODE_COOKIE_KEY) : null;
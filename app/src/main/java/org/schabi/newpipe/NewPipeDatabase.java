@@ -9,6 +9,8 @@ import static org.schabi.newpipe.database.Migrations.MIGRATION_5_6;
 import static org.schabi.newpipe.database.Migrations.MIGRATION_6_7;
 import static org.schabi.newpipe.database.Migrations.MIGRATION_7_8;
 import static org.schabi.newpipe.database.Migrations.MIGRATION_8_9;
+import static org.schabi.newpipe.database.Migrations.MIGRATION_9_10;
+import static org.schabi.newpipe.database.Migrations.MIGRATION_10_11;
 
 import android.content.Context;
 import android.database.Cursor;
@@ -29,7 +31,8 @@ public final class NewPipeDatabase {
         return Room
                 .databaseBuilder(context.getApplicationContext(), AppDatabase.class, DATABASE_NAME)
                 .addMigrations(MIGRATION_1_2, MIGRATION_2_3, MIGRATION_3_4, MIGRATION_4_5,
-                        MIGRATION_5_6, MIGRATION_6_7, MIGRATION_7_8, MIGRATION_8_9)
+                        MIGRATION_5_6, MIGRATION_6_7, MIGRATION_7_8, MIGRATION_8_9,
+                        MIGRATION_9_10, MIGRATION_10_11)
                 .build();
     }
 
@@ -1,6 +1,6 @@
 package org.schabi.newpipe.database;
 
-import static org.schabi.newpipe.database.Migrations.DB_VER_9;
+import static org.schabi.newpipe.database.Migrations.DB_VER_11;
 
 import androidx.room.Database;
 import androidx.room.RoomDatabase;
@@ -14,8 +14,10 @@ import org.schabi.newpipe.database.feed.model.FeedGroupSubscriptionEntity;
 import org.schabi.newpipe.database.feed.model.FeedLastUpdatedEntity;
 import org.schabi.newpipe.database.history.dao.SearchHistoryDAO;
 import org.schabi.newpipe.database.history.dao.StreamHistoryDAO;
+import org.schabi.newpipe.database.history.dao.StreamStatisticsDAO;
 import org.schabi.newpipe.database.history.model.SearchHistoryEntry;
 import org.schabi.newpipe.database.history.model.StreamHistoryEntity;
+import org.schabi.newpipe.database.history.model.StreamStatisticsEntity;
 import org.schabi.newpipe.database.playlist.dao.PlaylistDAO;
 import org.schabi.newpipe.database.playlist.dao.PlaylistRemoteDAO;
 import org.schabi.newpipe.database.playlist.dao.PlaylistStreamDAO;
@@ -36,9 +38,9 @@ import org.schabi.newpipe.database.subscription.SubscriptionEntity;
                 StreamEntity.class, StreamHistoryEntity.class, StreamStateEntity.class,
                 PlaylistEntity.class, PlaylistStreamEntity.class, PlaylistRemoteEntity.class,
                 FeedEntity.class, FeedGroupEntity.class, FeedGroupSubscriptionEntity.class,
-                FeedLastUpdatedEntity.class
+                FeedLastUpdatedEntity.class, StreamStatisticsEntity.class
         },
-        version = DB_VER_9
+        version = DB_VER_11
 )
 public abstract class AppDatabase extends RoomDatabase {
     public static final String DATABASE_NAME = "newpipe.db";
@@ -51,6 +53,8 @@ public abstract class AppDatabase extends RoomDatabase {
 
     public abstract StreamStateDAO streamStateDAO();
 
+    public abstract StreamStatisticsDAO streamStatisticsDAO();
+
     public abstract PlaylistDAO playlistDAO();
 
     public abstract PlaylistStreamDAO playlistStreamDAO();
@@ -27,6 +27,8 @@ public final class Migrations {
     public static final int DB_VER_7 = 7;
     public static final int DB_VER_8 = 8;
     public static final int DB_VER_9 = 9;
+    public static final int DB_VER_10 = 10;
+    public static final int DB_VER_11 = 11;
 
     private static final String TAG = Migrations.class.getName();
     public static final boolean DEBUG = MainActivity.DEBUG;
@@ -302,6 +304,43 @@ public final class Migrations {
         }
     };
 
+    public static final Migration MIGRATION_9_10 = new Migration(DB_VER_9, DB_VER_10) {
+        @Override
+        public void migrate(@NonNull final SupportSQLiteDatabase database) {
+            // Existing rows get a null fingerprint, so the next feed update processes every
+            // subscription fully once and stores its fingerprint.
+            database.execSQL("ALTER TABLE `feed_last_updated` "
+                    + "ADD COLUMN `content_fingerprint` TEXT");
+        }
+    };
+
+    public static final Migration MIGRATION_10_11 = new Migration(DB_VER_10, DB_VER_11) {
+        @Override
+        public void migrate(@NonNull final SupportSQLiteDatabase database) {
+            try {
+                database.beginTransaction();
+
+                database.execSQL("CREATE TABLE IF NOT EXISTS `stream_statistics` "
+                        + "(`stream_id` INTEGER NOT NULL, "
+                        + "`latest_access_date` INTEGER NOT NULL, "
+                        + "`watch_count` INTEGER NOT NULL, "
+                        + "PRIMARY KEY(`stream_id`), "
+                        + "FOREIGN KEY(`stream_id`) REFERENCES `streams`(`uid`) "
+                        + "ON UPDATE CASCADE ON DELETE CASCADE)");
+
+                // Aggregate the existing history once, it is kept up to date from now on.
+                database.execSQL("INSERT INTO `stream_statistics` "
+                        + "(`stream_id`, `latest_access_date`, `watch_count`) "
+                        + "SELECT `stream_id`, MAX(`access_date`), SUM(`repeat_count`) "
+                        + "FROM `stream_history` GROUP BY `stream_id`");
+
+                database.setTransactionSuccessful();
+            } finally {
+                database.endTransaction();
+            }
+        }
+    };
+
     private Migrations() {
     }
 }
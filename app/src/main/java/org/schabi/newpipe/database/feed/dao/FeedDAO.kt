@@ -11,6 +11,7 @@ import io.reactivex.rxjava3.core.Maybe
 import org.schabi.newpipe.database.feed.model.FeedEntity
 import org.schabi.newpipe.database.feed.model.FeedGroupEntity
 import org.schabi.newpipe.database.feed.model.FeedLastUpdatedEntity
+import org.schabi.newpipe.database.feed.model.FeedUploadCadenceEntry
 import org.schabi.newpipe.database.stream.StreamWithState
 import org.schabi.newpipe.database.stream.model.StreamStateEntity
 import org.schabi.newpipe.database.subscription.NotificationMode
@@ -160,6 +161,9 @@ abstract class FeedDAO {
         }
     }
 
+    @Query("SELECT content_fingerprint FROM feed_last_updated WHERE subscription_id = :subscriptionId")
+    abstract fun getContentFingerprint(subscriptionId: Long): String?
+
     @Query(
         """
         SELECT MIN(lu.last_updated) FROM feed_last_updated lu
@@ -203,6 +207,34 @@ abstract class FeedDAO {
     )
     abstract fun getAllOutdated(outdatedThreshold: OffsetDateTime): Flowable<List<SubscriptionEntity>>
 
+    /**
+     * Live streams and streams without an upload date are not counted, since they say nothing
+     * about how often the subscription uploads.
+     */
+    @Query(
+        """
+        SELECT s.uid AS subscription_id, lu.last_updated,
+        MIN(st.upload_date) AS oldest_upload_date,
+        MAX(st.upload_date) AS newest_upload_date,
+        COUNT(st.upload_date) AS upload_count
+        FROM subscriptions s
+
+        LEFT JOIN feed_last_updated lu
+        ON s.uid = lu.subscription_id
+
+        LEFT JOIN feed f
+        ON s.uid = f.subscription_id
+
+        LEFT JOIN streams st
+        ON st.uid = f.stream_id
+        AND st.stream_type <> 'LIVE_STREAM'
+        AND st.stream_type <> 'AUDIO_LIVE_STREAM'
+
+        GROUP BY s.uid
+        """
+    )
+    abstract fun getUploadCadences(): List<FeedUploadCadenceEntry>
+
     @Query(
         """
         SELECT s.* FROM subscriptions s
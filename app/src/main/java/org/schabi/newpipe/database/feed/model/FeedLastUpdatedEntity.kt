@@ -26,12 +26,21 @@ data class FeedLastUpdatedEntity(
     var subscriptionId: Long,
 
     @ColumnInfo(name = LAST_UPDATED)
-    var lastUpdated: OffsetDateTime? = null
+    var lastUpdated: OffsetDateTime? = null,
+
+    /**
+     * Fingerprint of the content fetched during the last successful update, used to detect
+     * channels whose feed did not change since then.
+     * See [org.schabi.newpipe.local.feed.service.FeedUpdateInfo.contentFingerprint].
+     */
+    @ColumnInfo(name = CONTENT_FINGERPRINT)
+    var contentFingerprint: String? = null
 ) {
     companion object {
         const val FEED_LAST_UPDATED_TABLE = "feed_last_updated"
 
         const val SUBSCRIPTION_ID = "subscription_id"
         const val LAST_UPDATED = "last_updated"
+        const val CONTENT_FINGERPRINT = "content_fingerprint"
     }
 }
@@ -0,0 +1,54 @@
+package org.schabi.newpipe.database.feed.model
+
+import androidx.room.ColumnInfo
+import java.time.Duration
+import java.time.OffsetDateTime
+
+/**
+ * The upload dates of the streams stored in the feed for a subscription, summarized so that the
+ * usual time between two uploads of that subscription can be estimated.
+ */
+data class FeedUploadCadenceEntry(
+    @ColumnInfo(name = FeedLastUpdatedEntity.SUBSCRIPTION_ID)
+    val subscriptionId: Long,
+
+    @ColumnInfo(name = FeedLastUpdatedEntity.LAST_UPDATED)
+    val lastUpdated: OffsetDateTime?,
+
+    @ColumnInfo(name = OLDEST_UPLOAD_DATE)
+    val oldestUploadDate: OffsetDateTime?,
+
+    @ColumnInfo(name = NEWEST_UPLOAD_DATE)
+    val newestUploadDate: OffsetDateTime?,
+
+    @ColumnInfo(name = UPLOAD_COUNT)
+    val uploadCount: Int
+) {
+    /**
+     * The mean time between the stored uploads, or the time since the newest upload if that is
+     * longer, so that channels which stopped uploading are not considered active anymore.
+     *
+     * @param now the current time
+     * @return the estimated upload interval, or `null` if no upload date is known
+     */
+    fun estimatedUploadInterval(now: OffsetDateTime): Duration? {
+        if (newestUploadDate == null || oldestUploadDate == null) {
+            return null
+        }
+
+        val sinceNewestUpload = Duration.between(newestUploadDate, now)
+        if (uploadCount < 2) {
+            return sinceNewestUpload
+        }
+
+        val meanInterval = Duration.between(oldestUploadDate, newestUploadDate)
+            .dividedBy((uploadCount - 1).toLong())
+        return maxOf(meanInterval, sinceNewestUpload)
+    }
+
+    companion object {
+        const val OLDEST_UPLOAD_DATE = "oldest_upload_date"
+        const val NEWEST_UPLOAD_DATE = "newest_upload_date"
+        const val UPLOAD_COUNT = "upload_count"
+    }
+}
@@ -0,0 +1,90 @@
+package org.schabi.newpipe.database.history.dao;
+
+import static org.schabi.newpipe.database.history.model.StreamStatisticsEntity.JOIN_STREAM_ID;
+import static org.schabi.newpipe.database.history.model.StreamStatisticsEntity.STREAM_LATEST_ACCESS_DATE;
+import static org.schabi.newpipe.database.history.model.StreamStatisticsEntity.STREAM_STATISTICS_TABLE;
+import static org.schabi.newpipe.database.history.model.StreamStatisticsEntity.STREAM_WATCH_COUNT;
+import static org.schabi.newpipe.database.stream.StreamStatisticsEntry.STREAM_LATEST_DATE;
+import static org.schabi.newpipe.database.stream.model.StreamEntity.STREAM_ID;
+import static org.schabi.newpipe.database.stream.model.StreamEntity.STREAM_TABLE;
+import static org.schabi.newpipe.database.stream.model.StreamStateEntity.JOIN_STREAM_ID_ALIAS;
+import static org.schabi.newpipe.database.stream.model.StreamStateEntity.STREAM_PROGRESS_MILLIS;
+import static org.schabi.newpipe.database.stream.model.StreamStateEntity.STREAM_STATE_TABLE;
+
+import androidx.room.Dao;
+import androidx.room.Insert;
+import androidx.room.OnConflictStrategy;
+import androidx.room.Query;
+import androidx.room.RewriteQueriesToDropUnusedColumns;
+import androidx.room.Transaction;
+
+import org.schabi.newpipe.database.BasicDAO;
+import org.schabi.newpipe.database.history.model.StreamStatisticsEntity;
+import org.schabi.newpipe.database.stream.StreamStatisticsEntry;
+
+import java.time.OffsetDateTime;
+import java.util.List;
+
+import io.reactivex.rxjava3.core.Flowable;
+
+@Dao
+public interface StreamStatisticsDAO extends BasicDAO<StreamStatisticsEntity> {
+    @Override
+    @Query("SELECT * FROM " + STREAM_STATISTICS_TABLE)
+    Flowable<List<StreamStatisticsEntity>> getAll();
+
+    @Override
+    @Query("DELETE FROM " + STREAM_STATISTICS_TABLE)
+    int deleteAll();
+
+    @Override
+    default Flowable<List<StreamStatisticsEntity>> listByService(final int serviceId) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Query("DELETE FROM " + STREAM_STATISTICS_TABLE + " WHERE " + JOIN_STREAM_ID + " = :streamId")
+    int deleteStatistics(long streamId);
+
+    @Query("UPDATE " + STREAM_STATISTICS_TABLE
+            + " SET " + STREAM_LATEST_ACCESS_DATE + " = :accessDate, "
+            + STREAM_WATCH_COUNT + " = " + STREAM_WATCH_COUNT + " + :watchCount"
+            + " WHERE " + JOIN_STREAM_ID + " = :streamId")
+    int addViewInternal(long streamId, OffsetDateTime accessDate, long watchCount);
+
+    @Insert(onConflict = OnConflictStrategy.IGNORE)
+    void silentInsertInternal(StreamStatisticsEntity statistics);
+
+    /**
+     * Records a new access to a stream, which must also be recorded in the stream history.
+     *
+     * @param streamId   the id of the accessed stream
+     * @param accessDate the date of the access, which becomes the latest access date
+     * @param watchCount how much to add to the watch count of the stream
+     */
+    @Transaction
+    default void addView(final long streamId,
+                         final OffsetDateTime accessDate,
+                         final long watchCount) {
+        if (addViewInternal(streamId, accessDate, watchCount) == 0) {
+            silentInsertInternal(new StreamStatisticsEntity(streamId, accessDate, watchCount));
+        }
+    }
+
+    @RewriteQueriesToDropUnusedColumns
+    @Query("SELECT * FROM " + STREAM_TABLE
+
+            + " INNER JOIN "
+            + "(SELECT " + JOIN_STREAM_ID + ", "
+            + STREAM_LATEST_ACCESS_DATE + " AS " + STREAM_LATEST_DATE + ", "
+            + STREAM_WATCH_COUNT + " AS " + StreamStatisticsEntry.STREAM_WATCH_COUNT
+            + " FROM " + STREAM_STATISTICS_TABLE + ")"
+
+            + " ON " + STREAM_ID + " = " + JOIN_STREAM_ID
+
+            + " LEFT JOIN "
+            + "(SELECT " + JOIN_STREAM_ID + " AS " + JOIN_STREAM_ID_ALIAS + ", "
+            + STREAM_PROGRESS_MILLIS
+            + " FROM " + STREAM_STATE_TABLE + " )"
+            + " ON " + STREAM_ID + " = " + JOIN_STREAM_ID_ALIAS)
+    Flowable<List<StreamStatisticsEntry>> getStatistics();
+}
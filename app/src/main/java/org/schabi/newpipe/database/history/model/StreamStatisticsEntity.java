@@ -0,0 +1,82 @@
+package org.schabi.newpipe.database.history.model;
+
+import static androidx.room.ForeignKey.CASCADE;
+import static org.schabi.newpipe.database.history.model.StreamStatisticsEntity.JOIN_STREAM_ID;
+import static org.schabi.newpipe.database.history.model.StreamStatisticsEntity.STREAM_STATISTICS_TABLE;
+
+import androidx.annotation.NonNull;
+import androidx.room.ColumnInfo;
+import androidx.room.Entity;
+import androidx.room.ForeignKey;
+
+import org.schabi.newpipe.database.stream.model.StreamEntity;
+
+import java.time.OffsetDateTime;
+
+/**
+ * The watch statistics of a stream, i.e. the aggregate of all its {@link StreamHistoryEntity}
+ * rows. It is kept up to date whenever the stream history changes, so that the statistics do not
+ * have to be computed from the whole history every time they are shown.
+ */
+@Entity(tableName = STREAM_STATISTICS_TABLE,
+        primaryKeys = {JOIN_STREAM_ID},
+        foreignKeys = {
+                @ForeignKey(entity = StreamEntity.class,
+                        parentColumns = StreamEntity.STREAM_ID,
+                        childColumns = JOIN_STREAM_ID,
+                        onDelete = CASCADE, onUpdate = CASCADE)
+        })
+public class StreamStatisticsEntity {
+    public static final String STREAM_STATISTICS_TABLE = "stream_statistics";
+    public static final String JOIN_STREAM_ID = "stream_id";
+    public static final String STREAM_LATEST_ACCESS_DATE = "latest_access_date";
+    public static final String STREAM_WATCH_COUNT = "watch_count";
+
+    @ColumnInfo(name = JOIN_STREAM_ID)
+    private long streamUid;
+
+    @NonNull
+    @ColumnInfo(name = STREAM_LATEST_ACCESS_DATE)
+    private OffsetDateTime latestAccessDate;
+
+    @ColumnInfo(name = STREAM_WATCH_COUNT)
+    private long watchCount;
+
+    /**
+     * @param streamUid        the stream id this statistics entry belongs to
+     * @param latestAccessDate the latest access date of the stream
+     * @param watchCount       the sum of the repeat counts of all the history entries
+     */
+    public StreamStatisticsEntity(final long streamUid,
+                                  @NonNull final OffsetDateTime latestAccessDate,
+                                  final long watchCount) {
+        this.streamUid = streamUid;
+        this.latestAccessDate = latestAccessDate;
+        this.watchCount = watchCount;
+    }
+
+    public long getStreamUid() {
+        return streamUid;
+    }
+
+    public void setStreamUid(final long streamUid) {
+        this.streamUid = streamUid;
+    }
+
+    @NonNull
+    public OffsetDateTime getLatestAccessDate() {
+        return latestAccessDate;
+    }
+
+    public void setLatestAccessDate(@NonNull final OffsetDateTime latestAccessDate) {
+        this.latestAccessDate = latestAccessDate;
+    }
+
+    public long getWatchCount() {
+        return watchCount;
+    }
+
+    public void setWatchCount(final long watchCount) {
+        this.watchCount = watchCount;
+    }
+}
@@ -57,6 +57,16 @@ public interface PlaylistStreamDAO extends BasicDAO<PlaylistStreamEntity> {
             + " WHERE " + JOIN_PLAYLIST_ID + " = :playlistId")
     void deleteBatch(long playlistId);
 
+    @Query("DELETE FROM " + PLAYLIST_STREAM_JOIN_TABLE
+            + " WHERE " + JOIN_PLAYLIST_ID + " = :playlistId"
+            + " AND " + JOIN_INDEX + " IN (:joinIndexes)")
+    void deleteJoinEntities(long playlistId, List<Integer> joinIndexes);
+
+    @Query("SELECT * FROM " + PLAYLIST_STREAM_JOIN_TABLE
+            + " WHERE " + JOIN_PLAYLIST_ID + " = :playlistId"
+            + " ORDER BY " + JOIN_INDEX + " ASC")
+    List<PlaylistStreamEntity> getJoinEntities(long playlistId);
+
     @Query("SELECT COALESCE(MAX(" + JOIN_INDEX + "), -1)"
             + " FROM " + PLAYLIST_STREAM_JOIN_TABLE
             + " WHERE " + JOIN_PLAYLIST_ID + " = :playlistId")
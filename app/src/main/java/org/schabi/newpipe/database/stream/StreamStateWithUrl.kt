@@ -0,0 +1,14 @@
+package org.schabi.newpipe.database.stream
+
+import androidx.room.ColumnInfo
+import androidx.room.Embedded
+import org.schabi.newpipe.database.stream.model.StreamEntity
+import org.schabi.newpipe.database.stream.model.StreamStateEntity
+
+data class StreamStateWithUrl(
+    @ColumnInfo(name = StreamEntity.STREAM_URL)
+    val url: String,
+
+    @Embedded
+    val state: StreamStateEntity
+)
@@ -7,12 +7,17 @@ import androidx.room.Query;
 import androidx.room.Transaction;
 
 import org.schabi.newpipe.database.BasicDAO;
+import org.schabi.newpipe.database.stream.StreamStateWithUrl;
 import org.schabi.newpipe.database.stream.model.StreamStateEntity;
 
 import java.util.List;
 
 import io.reactivex.rxjava3.core.Flowable;
 
+import static org.schabi.newpipe.database.stream.model.StreamEntity.STREAM_ID;
+import static org.schabi.newpipe.database.stream.model.StreamEntity.STREAM_SERVICE_ID;
+import static org.schabi.newpipe.database.stream.model.StreamEntity.STREAM_TABLE;
+import static org.schabi.newpipe.database.stream.model.StreamEntity.STREAM_URL;
 import static org.schabi.newpipe.database.stream.model.StreamStateEntity.JOIN_STREAM_ID;
 import static org.schabi.newpipe.database.stream.model.StreamStateEntity.STREAM_STATE_TABLE;
 
@@ -34,6 +39,16 @@ public interface StreamStateDAO extends BasicDAO<StreamStateEntity> {
     @Query("SELECT * FROM " + STREAM_STATE_TABLE + " WHERE " + JOIN_STREAM_ID + " = :streamId")
     Flowable<List<StreamStateEntity>> getState(long streamId);
 
+    @Query("SELECT * FROM " + STREAM_STATE_TABLE + " WHERE " + JOIN_STREAM_ID + " IN (:streamIds)")
+    List<StreamStateEntity> getStates(List<Long> streamIds);
+
+    @Query("SELECT s." + STREAM_URL + ", sst.* FROM " + STREAM_TABLE + " s"
+            + " INNER JOIN " + STREAM_STATE_TABLE + " sst"
+            + " ON s." + STREAM_ID + " = sst." + JOIN_STREAM_ID
+            + " WHERE s." + STREAM_SERVICE_ID + " = :serviceId"
+            + " AND s." + STREAM_URL + " IN (:urls)")
+    List<StreamStateWithUrl> getStatesByUrl(int serviceId, List<String> urls);
+
     @Query("DELETE FROM " + STREAM_STATE_TABLE + " WHERE " + JOIN_STREAM_ID + " = :streamId")
     int deleteState(long streamId);
 
@@ -0,0 +1,101 @@
+package org.schabi.newpipe.download;
+
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import org.schabi.newpipe.extractor.linkhandler.ListLinkHandler;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.ArrayList;
+
+/**
+ * The progress of a {@link BatchDownloadWorker}, saved after every stream so that the batch
+ * resumes where it stopped when the worker is restarted (e.g. after the app process was killed).
+ */
+final class BatchDownloadState implements Serializable {
+    private static final long serialVersionUID = 1L;
+    private static final String TAG = BatchDownloadState.class.getSimpleName();
+
+    final int serviceId;
+    @NonNull
+    final String url;
+    @NonNull
+    final String name;
+    /**
+     * The channel tab to download, or {@code null} if {@link #url} is a playlist.
+     */
+    @Nullable
+    final ListLinkHandler channelTab;
+    final boolean audioOnly;
+
+    /**
+     * The URLs of the streams of the playlist or channel tab, or {@code null} if they were not
+     * listed yet.
+     */
+    @Nullable
+    ArrayList<String> streamUrls;
+    /**
+     * The index in {@link #streamUrls} of the next stream to download.
+     */
+    int next;
+    /**
+     * How many streams could not be resolved or had no downloadable stream.
+     */
+    int failed;
+
+    BatchDownloadState(final int serviceId,
+                       @NonNull final String url,
+                       @NonNull final String name,
+                       @Nullable final ListLinkHandler channelTab,
+                       final boolean audioOnly) {
+        this.serviceId = serviceId;
+        this.url = url;
+        this.name = name;
+        this.channelTab = channelTab;
+        this.audioOnly = audioOnly;
+    }
+
+    boolean isListed() {
+        return streamUrls != null;
+    }
+
+    boolean isFinished() {
+        return streamUrls != null && next >= streamUrls.size();
+    }
+
+    void writeTo(@NonNull final File file) throws IOException {
+        try (ObjectOutputStream output = new ObjectOutputStream(
+                new BufferedOutputStream(new FileOutputStream(file)))) {
+            output.writeObject(this);
+        }
+    }
+
+    /**
+     * @param file the file a state was written to
+     * @return the state, or {@code null} if the file does not exist or could not be read
+     */
+    @Nullable
+    static BatchDownloadState readFrom(@NonNull final File file) {
+        if (!file.isFile()) {
+            return null;
+        }
+
+        try (ObjectInputStream input = new ObjectInputStream(
+                new BufferedInputStream(new FileInputStream(file)))) {
+            return (BatchDownloadState) input.readObject();
+        } catch (final IOException | ClassNotFoundException | ClassCastException e) {
+            Log.e(TAG, "Could not read the batch download state " + file, e);
+            return null;
+        }
+    }
+}
@@ -0,0 +1,562 @@
+package org.schabi.newpipe.download;
+
+import static org.schabi.newpipe.extractor.stream.DeliveryMethod.PROGRESSIVE_HTTP;
+import static org.schabi.newpipe.util.ListHelper.getStreamsOfSpecifiedDelivery;
+
+import android.app.Notification;
+import android.content.ComponentName;
+import android.content.Context;
+import android.content.Intent;
+import android.content.ServiceConnection;
+import android.content.SharedPreferences;
+import android.os.IBinder;
+import android.util.Log;
+import android.widget.Toast;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.appcompat.app.AlertDialog;
+import androidx.core.app.NotificationCompat;
+import androidx.preference.PreferenceManager;
+import androidx.work.Constraints;
+import androidx.work.Data;
+import androidx.work.ExistingWorkPolicy;
+import androidx.work.ForegroundInfo;
+import androidx.work.NetworkType;
+import androidx.work.OneTimeWorkRequest;
+import androidx.work.WorkManager;
+import androidx.work.Worker;
+import androidx.work.WorkerParameters;
+
+import org.schabi.newpipe.App;
+import org.schabi.newpipe.MainActivity;
+import org.schabi.newpipe.R;
+import org.schabi.newpipe.error.ErrorInfo;
+import org.schabi.newpipe.error.ErrorUtil;
+import org.schabi.newpipe.error.UserAction;
+import org.schabi.newpipe.extractor.InfoItem;
+import org.schabi.newpipe.extractor.ListExtractor.InfoItemsPage;
+import org.schabi.newpipe.extractor.ListInfo;
+import org.schabi.newpipe.extractor.MediaFormat;
+import org.schabi.newpipe.extractor.Page;
+import org.schabi.newpipe.extractor.linkhandler.ListLinkHandler;
+import org.schabi.newpipe.extractor.stream.AudioStream;
+import org.schabi.newpipe.extractor.stream.Stream;
+import org.schabi.newpipe.extractor.stream.StreamInfo;
+import org.schabi.newpipe.extractor.stream.StreamInfoItem;
+import org.schabi.newpipe.extractor.stream.VideoStream;
+import org.schabi.newpipe.ktx.ExceptionUtils;
+import org.schabi.newpipe.settings.NewPipeSettings;
+import org.schabi.newpipe.streams.io.StoredDirectoryHelper;
+import org.schabi.newpipe.streams.io.StoredFileHelper;
+import org.schabi.newpipe.util.ExtractorHelper;
+import org.schabi.newpipe.util.FilenameUtils;
+import org.schabi.newpipe.util.ListHelper;
+import org.schabi.newpipe.util.SecondaryStreamHelper;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import io.reactivex.rxjava3.core.Flowable;
+import io.reactivex.rxjava3.disposables.Disposable;
+import io.reactivex.rxjava3.schedulers.Schedulers;
+import us.shandian.giga.get.MissionRecoveryInfo;
+import us.shandian.giga.postprocessing.Postprocessing;
+import us.shandian.giga.service.DownloadManager;
+import us.shandian.giga.service.DownloadManagerService;
+import us.shandian.giga.service.DownloadManagerService.DownloadManagerBinder;
+import us.shandian.giga.service.MissionState;
+
+/**
+ * Worker which downloads all the streams of a playlist or of a channel tab, without asking the
+ * user to pick a format for each of them.
+ *
+ * <p>
+ * Streams are resolved a few at a time and turned into download missions as a stream: a new
+ * mission is only started when less than {@link #MAX_QUEUED_MISSIONS} are waiting in the
+ * {@link DownloadManager}, so that the URLs of the streams do not expire while they wait. Formats
+ * are chosen like the {@link DownloadDialog} does by default. The progress is saved in a
+ * {@link BatchDownloadState} after every stream, so that the batch resumes where it stopped.
+ * Streams whose file already exists in the download folder are skipped.
+ * </p>
+ */
+public final class BatchDownloadWorker extends Worker {
+    private static final String TAG = BatchDownloadWorker.class.getSimpleName();
+    private static final boolean DEBUG = MainActivity.DEBUG;
+
+    /**
+     * How many streams are resolved at the same time.
+     */
+    private static final int MAX_PARALLEL_RESOLUTIONS = 3;
+    /**
+     * How many missions may be waiting or running in the download manager before the batch
+     * waits.
+     */
+    private static final int MAX_QUEUED_MISSIONS = 4;
+    /**
+     * The maximum amount of streams of a batch, to avoid listing whole channels forever.
+     */
+    private static final int MAX_STREAMS = 1000;
+    private static final long QUEUE_POLL_INTERVAL_MILLIS = 5000;
+    private static final long MISSION_REGISTRATION_POLL_INTERVAL_MILLIS = 100;
+    private static final long MISSION_REGISTRATION_TIMEOUT_SECONDS = 30;
+    private static final long SERVICE_BIND_TIMEOUT_SECONDS = 30;
+    private static final long STALE_STATE_MILLIS = TimeUnit.DAYS.toMillis(7);
+
+    private static final int NOTIFICATION_ID = 4783000;
+    private static final String WORK_NAME_PREFIX = App.PACKAGE_NAME + "_batch_download_";
+    private static final String BATCH_DIRECTORY = "batch_downloads";
+    private static final String KEY_BATCH_ID = "batch_id";
+
+    public BatchDownloadWorker(@NonNull final Context context,
+                               @NonNull final WorkerParameters workerParams) {
+        super(context, workerParams);
+    }
+
+    /**
+     * Asks whether videos or audio files should be downloaded, then downloads all the streams of
+     * a playlist or of a channel tab in the background.
+     *
+     * @param context    the context to show the dialog in
+     * @param serviceId  the service of the playlist or channel
+     * @param url        the URL of the playlist or of the channel tab
+     * @param name       the name of the playlist or channel, shown in the notification
+     * @param channelTab the channel tab to download, or {@code null} for a playlist
+     */
+    public static void showDialog(@NonNull final Context context,
+                                  final int serviceId,
+                                  @NonNull final String url,
+                                  @NonNull final String name,
+                                  @Nullable final ListLinkHandler channelTab) {
+        new AlertDialog.Builder(context)
+                .setTitle(context.getString(R.string.batch_download_dialog_title, name))
+                .setItems(new CharSequence[]{
+                        context.getString(R.string.video),
+                        context.getString(R.string.audio)
+                }, (dialog, which) -> {
+                    enqueue(context, new BatchDownloadState(
+                            serviceId, url, name, channelTab, which == 1));
+                    Toast.makeText(context, R.string.download_has_started, Toast.LENGTH_SHORT)
+                            .show();
+                })
+                .setNegativeButton(R.string.cancel, null)
+                .show();
+    }
+
+    private static void enqueue(@NonNull final Context context,
+                                @NonNull final BatchDownloadState state) {
+        final File directory = getBatchDirectory(context);
+        deleteStaleStates(directory);
+
+        final String batchId = UUID.randomUUID().toString();
+        try {
+            state.writeTo(new File(directory, batchId));
+        } catch (final IOException e) {
+            ErrorUtil.createNotification(context,
+                    new ErrorInfo(e, UserAction.DOWNLOAD_FAILED, "Saving batch download state"));
+            return;
+        }
+
+        final boolean unmeteredOnly = PreferenceManager.getDefaultSharedPreferences(context)
+                .getBoolean(context.getString(R.string.downloads_cross_network), false);
+        final Constraints constraints = new Constraints.Builder()
+                .setRequiredNetworkType(unmeteredOnly
+                        ? NetworkType.UNMETERED : NetworkType.CONNECTED)
+                .build();
+        final OneTimeWorkRequest request = new OneTimeWorkRequest.Builder(BatchDownloadWorker.class)
+                .setConstraints(constraints)
+                .setInputData(new Data.Builder().putString(KEY_BATCH_ID, batchId).build())
+                .build();
+        WorkManager.getInstance(context)
+                .enqueueUniqueWork(WORK_NAME_PREFIX + batchId, ExistingWorkPolicy.KEEP, request);
+    }
+
+    @NonNull
+    @Override
+    public Result doWork() {
+        final Context context = getApplicationContext();
+        final String batchId = getInputData().getString(KEY_BATCH_ID);
+        if (batchId == null) {
+            return Result.failure();
+        }
+        final File stateFile = new File(getBatchDirectory(context), batchId);
+        final BatchDownloadState state = BatchDownloadState.readFrom(stateFile);
+        if (state == null) {
+            return Result.failure();
+        }
+
+        try {
+            // the download service can only be started by a foreground app
+            setForegroundAsync(createForegroundInfo(batchId, state)).get();
+        } catch (final ExecutionException | InterruptedException e) {
+            Log.e(TAG, "Could not run the batch download in the foreground", e);
+            return Result.retry();
+        }
+
+        final Intent intent = new Intent(context, DownloadManagerService.class);
+        context.startService(intent);
+        final DownloadServiceConnection connection = new DownloadServiceConnection();
+        context.bindService(intent, connection, Context.BIND_AUTO_CREATE);
+        try {
+            final DownloadManagerBinder binder = connection.await();
+            if (binder == null) {
+                return Result.retry();
+            }
+
+            if (!state.isListed()) {
+                try {
+                    state.streamUrls = listStreams(state);
+                } catch (final RuntimeException e) {
+                    if (ExceptionUtils.isNetworkRelated(e)
+                            || ExceptionUtils.isInterruptedCaused(e)) {
+                        throw e;
+                    }
+                    // e.g. a private or removed playlist, listing it again would fail the same way
+                    ErrorUtil.createNotification(context, new ErrorInfo(e,
+                            state.channelTab == null
+                                    ? UserAction.REQUESTED_PLAYLIST : UserAction.REQUESTED_CHANNEL,
+                            "Batch download of " + state.url));
+                    //noinspection ResultOfMethodCallIgnored
+                    stateFile.delete();
+                    return Result.failure();
+                }
+                state.writeTo(stateFile);
+            }
+
+            final StoredDirectoryHelper mainStorage = state.audioOnly
+                    ? binder.getMainStorageAudio() : binder.getMainStorageVideo();
+            if (mainStorage == null
+                    || mainStorage.isDirect() == NewPipeSettings.useStorageAccessFramework(context)
+                    || mainStorage.isInvalidSafStorage() || !mainStorage.mkdirs()) {
+                // unlike the download dialog, there is no way to ask for a folder here
+                ErrorUtil.createNotification(context, new ErrorInfo(
+                        new IOException(context.getString(R.string.no_dir_yet)),
+                        UserAction.DOWNLOAD_FAILED, "Batch download of " + state.url));
+                //noinspection ResultOfMethodCallIgnored
+                stateFile.delete();
+                return Result.failure();
+            }
+
+            downloadStreams(batchId, stateFile, state, binder.getDownloadManager(), mainStorage);
+        } catch (final Exception e) {
+            Log.e(TAG, "Batch download of " + state.url + " interrupted", e);
+            return Result.retry();
+        } finally {
+            context.unbindService(connection);
+        }
+
+        if (!state.isFinished()) {
+            return Result.retry(); // stopped, resume later
+        }
+
+        if (DEBUG) {
+            Log.d(TAG, "Batch download of " + state.url + " done, " + state.failed + "/"
+                    + state.streamUrls.size() + " streams could not be downloaded");
+        }
+        //noinspection ResultOfMethodCallIgnored
+        stateFile.delete();
+        return Result.success();
+    }
+
+    /**
+     * Resolves the streams which were not downloaded yet, a few at a time and in order, and
+     * starts a mission for each of them as soon as the download queue has room for it.
+     *
+     * @param batchId         the identifier of the batch, used for its notification
+     * @param stateFile       the file the progress of the batch is saved to
+     * @param state           the progress of the batch, with the streams already listed
+     * @param downloadManager the download manager to queue the missions in
+     * @param mainStorage     the folder to save the files in
+     */
+    private void downloadStreams(@NonNull final String batchId,
+                                 @NonNull final File stateFile,
+                                 @NonNull final BatchDownloadState state,
+                                 @NonNull final DownloadManager downloadManager,
+                                 @NonNull final StoredDirectoryHelper mainStorage)
+            throws IOException, InterruptedException {
+        final List<String> remaining = new ArrayList<>(
+                state.streamUrls.subList(state.next, state.streamUrls.size()));
+        final Iterator<Optional<StreamInfo>> infos = Flowable.fromIterable(remaining)
+                .concatMapEager(url -> ExtractorHelper.getStreamInfo(state.serviceId, url, false)
+                                .subscribeOn(Schedulers.io())
+                                .map(Optional::of)
+                                .onErrorReturn(throwable -> {
+                                    Log.w(TAG, "Could not resolve " + url, throwable);
+                                    return Optional.empty();
+                                })
+                                .toFlowable(),
+                        MAX_PARALLEL_RESOLUTIONS, 1)
+                .blockingIterable(1)
+                .iterator();
+
+        try {
+            while (!isStopped() && infos.hasNext()) {
+                // back-pressure: resolved streams wait here until the queue has room
+                while (!isStopped()
+                        && downloadManager.getQueuedMissionsCount() >= MAX_QUEUED_MISSIONS) {
+                    Thread.sleep(QUEUE_POLL_INTERVAL_MILLIS);
+                }
+                if (isStopped()) {
+                    break;
+                }
+
+                final Optional<StreamInfo> info = infos.next();
+                if (!info.isPresent() || !startDownload(info.get(), state.audioOnly,
+                        downloadManager, mainStorage)) {
+                    state.failed++;
+                }
+                state.next++;
+                state.writeTo(stateFile);
+                setForegroundAsync(createForegroundInfo(batchId, state));
+            }
+        } finally {
+            if (infos instanceof Disposable) {
+                ((Disposable) infos).dispose();
+            }
+        }
+    }
+
+    /**
+     * @param state a batch whose streams were not listed yet
+     * @return the URLs of the streams of the playlist or channel tab of the batch, up to
+     * {@link #MAX_STREAMS}
+     */
+    @NonNull
+    private static ArrayList<String> listStreams(@NonNull final BatchDownloadState state) {
+        final ArrayList<String> urls = new ArrayList<>();
+        final ListInfo<? extends InfoItem> firstPage = state.channelTab == null
+                ? ExtractorHelper.getPlaylistInfo(state.serviceId, state.url, false).blockingGet()
+                : ExtractorHelper.getChannelTab(state.serviceId, state.channelTab, false)
+                        .blockingGet();
+        addStreamUrls(urls, firstPage.getRelatedItems());
+
+        Page nextPage = firstPage.getNextPage();
+        while (Page.isValid(nextPage) && urls.size() < MAX_STREAMS) {
+            final InfoItemsPage<? extends InfoItem> page = state.channelTab == null
+                    ? ExtractorHelper.getMorePlaylistItems(state.serviceId, state.url, nextPage)
+                            .blockingGet()
+                    : ExtractorHelper.getMoreChannelTabItems(state.serviceId, state.channelTab,
+                            nextPage).blockingGet();
+            addStreamUrls(urls, page.getItems());
+            nextPage = page.getNextPage();
+        }
+
+        if (urls.size() > MAX_STREAMS) {
+            return new ArrayList<>(urls.subList(0, MAX_STREAMS));
+        }
+        return urls;
+    }
+
+    private static void addStreamUrls(@NonNull final List<String> urls,
+                                      @NonNull final List<? extends InfoItem> items) {
+        for (final InfoItem item : items) {
+            if (item instanceof StreamInfoItem) {
+                urls.add(item.getUrl());
+            }
+        }
+    }
+
+    /**
+     * Starts the download of a stream in the default format, like the {@link DownloadDialog}
+     * would, unless a file with the same name already exists.
+     *
+     * <p>
+     * The mission is started by the {@link DownloadManagerService} asynchronously, so this waits
+     * until it is registered in the download manager: otherwise the queue would look emptier than
+     * it is and several missions could be started before it catches up.
+     * </p>
+     *
+     * @param info            the stream to download
+     * @param audioOnly       whether to download only the audio of the stream
+     * @param downloadManager the download manager the mission is started in
+     * @param mainStorage     the folder to save the file in
+     * @return {@code false} if the stream has no downloadable format or if its file could not be
+     * created
+     * @throws InterruptedException if interrupted while waiting for the mission to be registered
+     */
+    private boolean startDownload(@NonNull final StreamInfo info,
+                                  final boolean audioOnly,
+                                  @NonNull final DownloadManager downloadManager,
+                                  @NonNull final StoredDirectoryHelper mainStorage)
+            throws InterruptedException {
+        final Context context = getApplicationContext();
+        final List<List<AudioStream>> audioTracks = ListHelper.getGroupedAudioStreams(context,
+                getStreamsOfSpecifiedDelivery(info.getAudioStreams(), PROGRESSIVE_HTTP));
+        final int audioTrack = ListHelper.getDefaultAudioTrackGroup(context, audioTracks);
+        final List<AudioStream> audioStreams = audioTrack < 0
+                ? List.of() : audioTracks.get(audioTrack);
+
+        final Stream selectedStream;
+        Stream secondaryStream = null;
+        final char kind;
+        String psName = null;
+        final String suffix;
+        final String mime;
+
+        if (audioOnly) {
+            final int index = ListHelper.getDefaultAudioFormat(context, audioStreams);
+            if (index < 0) {
+                return false;
+            }
+            kind = 'a';
+            selectedStream = audioStreams.get(index);
+            if (selectedStream.getFormat() == MediaFormat.M4A) {
+                psName = Postprocessing.ALGORITHM_M4A_NO_DASH;
+            } else if (selectedStream.getFormat() == MediaFormat.WEBMA_OPUS) {
+                psName = Postprocessing.ALGORITHM_OGG_FROM_WEBM_DEMUXER;
+            }
+        } else {
+            final List<VideoStream> videoStreams = ListHelper.getSortedStreamVideosList(context,
+                    getStreamsOfSpecifiedDelivery(info.getVideoStreams(), PROGRESSIVE_HTTP),
+                    getStreamsOfSpecifiedDelivery(info.getVideoOnlyStreams(), PROGRESSIVE_HTTP),
+                    false, audioTracks.size() > 1);
+            final int index = ListHelper.getDefaultResolutionIndex(context, videoStreams);
+            if (index < 0) {
+                return false;
+            }
+            kind = 'v';
+            final VideoStream videoStream = videoStreams.get(index);
+            selectedStream = videoStream;
+            if (videoStream.isVideoOnly()) {
+                secondaryStream = SecondaryStreamHelper.getAudioStreamFor(
+                        context, audioStreams, videoStream);
+                if (secondaryStream == null) {
+                    return false;
+                }
+                psName = videoStream.getFormat() == MediaFormat.MPEG_4
+                        ? Postprocessing.ALGORITHM_MP4_FROM_DASH_MUXER
+                        : Postprocessing.ALGORITHM_WEBM_MUXER;
+            }
+        }
+
+        final MediaFormat format = selectedStream.getFormat();
+        if (format == null) {
+            return false;
+        } else if (format == MediaFormat.WEBMA_OPUS) {
+            mime = "audio/ogg";
+            suffix = "opus";
+        } else {
+            mime = format.mimeType;
+            suffix = format.getSuffix();
+        }
+
+        final String filename = FilenameUtils.createFilename(context, info.getName())
+                + "." + suffix;
+        if (mainStorage.findFile(filename) != null) {
+            return true; // already downloaded, or downloading, e.g. before the batch resumed
+        }
+        final StoredFileHelper storage = mainStorage.createFile(filename, mime);
+        if (storage == null || !storage.canWrite()) {
+            return false;
+        }
+
+        final String[] urls;
+        final ArrayList<MissionRecoveryInfo> recoveryInfo = new ArrayList<>();
+        recoveryInfo.add(new MissionRecoveryInfo(selectedStream));
+        if (secondaryStream == null) {
+            urls = new String[]{selectedStream.getContent()};
+        } else {
+            urls = new String[]{selectedStream.getContent(), secondaryStream.getContent()};
+            recoveryInfo.add(new MissionRecoveryInfo(secondaryStream));
+        }
+
+        final SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(context);
+        final int threads = prefs.getInt(context.getString(R.string.default_download_threads), 3);
+        DownloadManagerService.startMission(context, urls, storage, kind, threads, info.getUrl(),
+                psName, null, 0, recoveryInfo);
+
+        final long deadline = System.nanoTime()
+                + TimeUnit.SECONDS.toNanos(MISSION_REGISTRATION_TIMEOUT_SECONDS);
+        while (downloadManager.checkForExistingMission(storage) == MissionState.None) {
+            if (isStopped() || System.nanoTime() - deadline > 0) {
+                Log.w(TAG, "The mission of " + info.getUrl() + " was not registered in time");
+                break;
+            }
+            Thread.sleep(MISSION_REGISTRATION_POLL_INTERVAL_MILLIS);
+        }
+        return true;
+    }
+
+    @NonNull
+    private ForegroundInfo createForegroundInfo(@NonNull final String batchId,
+                                                @NonNull final BatchDownloadState state) {
+        final Context context = getApplicationContext();
+        final int total = state.isListed() ? state.streamUrls.size() : 0;
+        final Notification notification = new NotificationCompat.Builder(context,
+                context.getString(R.string.notification_channel_id))
+                .setOngoing(true)
+                .setSmallIcon(R.drawable.ic_newpipe_triangle_white)
+                .setVisibility(NotificationCompat.VISIBILITY_PUBLIC)
+                .setPriority(NotificationCompat.PRIORITY_LOW)
+                .setContentTitle(context.getString(R.string.batch_download_notification_title,
+                        state.name))
+                .setContentText(total == 0 ? null : context.getString(
+                        R.string.batch_download_notification_progress, state.next, total))
+                .setProgress(total, state.next, total == 0)
+                .addAction(0, context.getString(R.string.cancel),
+                        WorkManager.getInstance(context).createCancelPendingIntent(getId()))
+                .build();
+        return new ForegroundInfo(NOTIFICATION_ID + Math.abs(batchId.hashCode() % 1000),
+                notification);
+    }
+
+    @NonNull
+    private static File getBatchDirectory(@NonNull final Context context) {
+        final File directory = new File(context.getFilesDir(), BATCH_DIRECTORY);
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            Log.e(TAG, "Could not create " + directory);
+        }
+        return directory;
+    }
+
+    /**
+     * Deletes the states of batches which were cancelled long ago.
+     *
+     * @param directory the directory the states of the batches are saved in
+     */
+    private static void deleteStaleStates(@NonNull final File directory) {
+        final File[] states = directory.listFiles();
+        if (states == null) {
+            return;
+        }
+
+        final long now = System.currentTimeMillis();
+        for (final File state : states) {
+            if (now - state.lastModified() > STALE_STATE_MILLIS) {
+                //noinspection ResultOfMethodCallIgnored
+                state.delete();
+            }
+        }
+    }
+
+    private static final class DownloadServiceConnection implements ServiceConnection {
+        private final CountDownLatch connected = new CountDownLatch(1);
+        @Nullable
+        private volatile DownloadManagerBinder binder;
+
+        @Override
+        public void onServiceConnected(final ComponentName name, final IBinder service) {
+            binder = (DownloadManagerBinder) service;
+            connected.countDown();
+        }
+
+        @Override
+        public void onServiceDisconnected(final ComponentName name) {
+            binder = null;
+        }
+
+        @Nullable
+        DownloadManagerBinder await() throws InterruptedException {
+            connected.await(SERVICE_BIND_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            return binder;
+        }
+    }
+}
@@ -33,6 +33,7 @@ import org.schabi.newpipe.R;
 import org.schabi.newpipe.database.subscription.NotificationMode;
 import org.schabi.newpipe.database.subscription.SubscriptionEntity;
 import org.schabi.newpipe.databinding.FragmentChannelBinding;
+import org.schabi.newpipe.download.BatchDownloadWorker;
 import org.schabi.newpipe.error.ErrorInfo;
 import org.schabi.newpipe.error.ErrorUtil;
 import org.schabi.newpipe.error.UserAction;
@@ -99,6 +100,7 @@ public class ChannelFragment extends BaseStateFragment<ChannelInfo>
 
     private MenuItem menuRssButton;
     private MenuItem menuNotifyButton;
+    private MenuItem menuDownloadAllButton;
     private SubscriptionEntity channelSubscription;
     private MenuProvider menuProvider;
 
@@ -140,7 +142,9 @@ public class ChannelFragment extends BaseStateFragment<ChannelInfo>
             public void onPrepareMenu(@NonNull final Menu menu) {
                 menuRssButton = menu.findItem(R.id.menu_item_rss);
                 menuNotifyButton = menu.findItem(R.id.menu_item_notify);
+                menuDownloadAllButton = menu.findItem(R.id.menu_item_download_all);
                 updateRssButton();
+                updateDownloadAllButton();
                 updateNotifyButton(channelSubscription);
             }
 
@@ -172,6 +176,13 @@ public class ChannelFragment extends BaseStateFragment<ChannelInfo>
                                     currentInfo.getOriginalUrl(), currentInfo.getAvatars());
                         }
                         break;
+                    case R.id.menu_item_download_all:
+                        final ListLinkHandler streamsTab = getStreamsTab();
+                        if (streamsTab != null) {
+                            BatchDownloadWorker.showDialog(requireContext(), serviceId,
+                                    streamsTab.getUrl(), name, streamsTab);
+                        }
+                        break;
                     default:
                         return false;
                 }
@@ -415,6 +426,30 @@ public class ChannelFragment extends BaseStateFragment<ChannelInfo>
         menuRssButton.setVisible(!TextUtils.isEmpty(currentInfo.getFeedUrl()));
     }
 
+    private void updateDownloadAllButton() {
+        if (menuDownloadAllButton == null) {
+            return;
+        }
+        menuDownloadAllButton.setVisible(getStreamsTab() != null);
+    }
+
+    /**
+     * @return the first tab of the channel which contains streams, e.g. its videos, or
+     * {@code null} if the channel is not loaded or has no such tab
+     */
+    @Nullable
+    private ListLinkHandler getStreamsTab() {
+        if (currentInfo == null || channelContentNotSupported) {
+            return null;
+        }
+        for (final ListLinkHandler tab : currentInfo.getTabs()) {
+            if (ChannelTabHelper.isStreamsTab(tab)) {
+                return tab;
+            }
+        }
+        return null;
+    }
+
     private void updateNotifyButton(@Nullable final SubscriptionEntity subscription) {
         if (menuNotifyButton == null) {
             return;
@@ -627,6 +662,7 @@ public class ChannelFragment extends BaseStateFragment<ChannelInfo>
                 break;
             }
         }
+        updateDownloadAllButton();
 
         disposables.clear();
         if (subscribeButtonMonitor != null) {
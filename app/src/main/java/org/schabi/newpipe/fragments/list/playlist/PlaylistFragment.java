@@ -31,6 +31,7 @@ import org.schabi.newpipe.database.playlist.model.PlaylistRemoteEntity;
 import org.schabi.newpipe.database.stream.model.StreamEntity;
 import org.schabi.newpipe.databinding.PlaylistControlBinding;
 import org.schabi.newpipe.databinding.PlaylistHeaderBinding;
+import org.schabi.newpipe.download.BatchDownloadWorker;
 import org.schabi.newpipe.error.ErrorInfo;
 import org.schabi.newpipe.error.ErrorUtil;
 import org.schabi.newpipe.error.UserAction;
@@ -259,6 +260,9 @@ public class PlaylistFragment extends BaseListInfoFragment<StreamInfoItem, Playl
                     ));
                 }
                 break;
+            case R.id.menu_item_download_all:
+                BatchDownloadWorker.showDialog(requireContext(), serviceId, url, name, null);
+                break;
             default:
                 return super.onOptionsItemSelected(item);
         }
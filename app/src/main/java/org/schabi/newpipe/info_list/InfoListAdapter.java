@@ -32,13 +32,20 @@ import org.schabi.newpipe.info_list.holder.StreamGridInfoItemHolder;
 import org.schabi.newpipe.info_list.holder.StreamInfoItemHolder;
 import org.schabi.newpipe.info_list.holder.StreamMiniInfoItemHolder;
 import org.schabi.newpipe.local.history.HistoryRecordManager;
+import org.schabi.newpipe.util.DependentPreferenceHelper;
 import org.schabi.newpipe.util.FallbackViewHolder;
 import org.schabi.newpipe.util.OnClickGesture;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Set;
 import java.util.function.Supplier;
 
+import io.reactivex.rxjava3.android.schedulers.AndroidSchedulers;
+import io.reactivex.rxjava3.disposables.CompositeDisposable;
+
 /*
  * Created by Christian Schabesberger on 01.08.16.
  *
@@ -84,6 +91,12 @@ public class InfoListAdapter extends RecyclerView.Adapter<RecyclerView.ViewHolde
     private final InfoItemBuilder infoItemBuilder;
     private final List<InfoItem> infoItemList;
     private final HistoryRecordManager recordManager;
+    private final CompositeDisposable streamStateDisposables = new CompositeDisposable();
+    /**
+     * The streams whose state is being loaded, so that binding them does not load it again.
+     */
+    private final Set<InfoItem> loadingStreamStates =
+            Collections.newSetFromMap(new IdentityHashMap<>());
 
     private boolean useMiniVariant = false;
     private boolean showFooter = false;
@@ -134,6 +147,7 @@ public class InfoListAdapter extends RecyclerView.Adapter<RecyclerView.ViewHolde
 
         final int offsetStart = sizeConsideringHeaderOffset();
         infoItemList.addAll(data);
+        loadStreamStates(data, infoItemList.size() - data.size());
 
         if (DEBUG) {
             Log.d(TAG, "addInfoItemList() after > offsetStart = " + offsetStart + ", "
@@ -154,10 +168,95 @@ public class InfoListAdapter extends RecyclerView.Adapter<RecyclerView.ViewHolde
         }
     }
 
+    /**
+     * Loads the states of all the streams in a page at once in the background, so that binding
+     * each of the items only reads the stream state cache instead of querying the database. The
+     * items with a state are rebound once it is loaded.
+     *
+     * @param data  the items which were just added at the end of the list
+     * @param start the index of the first of the items in {@link #infoItemList}
+     */
+    private void loadStreamStates(@NonNull final List<? extends InfoItem> data,
+                                  final int start) {
+        if (!DependentPreferenceHelper.getPositionsInListsEnabled(layoutInflater.getContext())) {
+            return;
+        }
+
+        final List<StreamInfoItem> streams = new ArrayList<>();
+        final List<Integer> indexes = new ArrayList<>();
+        for (int i = 0; i < data.size(); i++) {
+            if (data.get(i) instanceof StreamInfoItem) {
+                streams.add((StreamInfoItem) data.get(i));
+                indexes.add(start + i);
+            }
+        }
+        if (streams.isEmpty()) {
+            return;
+        }
+
+        loadingStreamStates.addAll(streams);
+        streamStateDisposables.add(recordManager.loadStreamStateBatch(streams)
+                .observeOn(AndroidSchedulers.mainThread())
+                .doFinally(() -> loadingStreamStates.removeAll(streams))
+                .subscribe(states -> {
+                    // only the rows between the first and the last stream with a state changed
+                    int first = -1;
+                    int last = -1;
+                    for (int i = 0; i < states.size(); i++) {
+                        if (states.get(i) != null) {
+                            first = first < 0 ? i : first;
+                            last = i;
+                        }
+                    }
+                    if (first < 0) {
+                        return;
+                    }
+
+                    final int from = indexes.get(first);
+                    final int to = indexes.get(last);
+                    if (to < infoItemList.size() && infoItemList.get(from) == streams.get(first)) {
+                        notifyItemRangeChanged(hasHeader() ? from + 1 : from, to - from + 1);
+                    }
+                }, throwable -> Log.e(TAG, "Could not load stream states", throwable)));
+    }
+
+    /**
+     * Loads the state of a stream being bound in the background if it is not cached, e.g.
+     * because it was evicted from the cache, and rebinds the stream once it is loaded.
+     *
+     * @param item the stream being bound
+     */
+    private void loadStreamStateIfNotCached(@NonNull final StreamInfoItem item) {
+        if (loadingStreamStates.contains(item) || recordManager.isStreamStateCached(item)
+                || !DependentPreferenceHelper.getPositionsInListsEnabled(
+                        layoutInflater.getContext())) {
+            return;
+        }
+
+        loadingStreamStates.add(item);
+        streamStateDisposables.add(recordManager.loadStreamStateBatch(
+                        Collections.singletonList(item))
+                .observeOn(AndroidSchedulers.mainThread())
+                .doFinally(() -> loadingStreamStates.remove(item))
+                .subscribe(states -> {
+                    if (states.get(0) == null) {
+                        return;
+                    }
+                    for (int i = 0; i < infoItemList.size(); i++) {
+                        if (infoItemList.get(i) == item) {
+                            notifyItemChanged(hasHeader() ? i + 1 : i);
+                            return;
+                        }
+                    }
+                }, throwable -> Log.e(TAG, "Could not load stream state", throwable)));
+    }
+
     public void clearStreamItemList() {
         if (infoItemList.isEmpty()) {
             return;
         }
+        streamStateDisposables.clear();
+        loadingStreamStates.clear();
         infoItemList.clear();
         notifyDataSetChanged();
     }
@@ -334,12 +433,22 @@ public class InfoListAdapter extends RecyclerView.Adapter<RecyclerView.ViewHolde
                     + "position = [" + position + "]");
         }
         if (holder instanceof InfoItemHolder) {
-            ((InfoItemHolder) holder).updateFromItem(
-                    // If header is present, offset the items by -1
-                    infoItemList.get(hasHeader() ? position - 1 : position), recordManager);
+            // If header is present, offset the items by -1
+            final InfoItem item = infoItemList.get(hasHeader() ? position - 1 : position);
+            ((InfoItemHolder) holder).updateFromItem(item, recordManager);
+            if (item instanceof StreamInfoItem) {
+                loadStreamStateIfNotCached((StreamInfoItem) item);
+            }
         }
     }
 
+    @Override
+    public void onDetachedFromRecyclerView(@NonNull final RecyclerView recyclerView) {
+        super.onDetachedFromRecyclerView(recyclerView);
+        streamStateDisposables.clear();
+        loadingStreamStates.clear();
+    }
+
     public GridLayoutManager.SpanSizeLookup getSpanSizeLookup(final int spanCount) {
         return new GridLayoutManager.SpanSizeLookup() {
             @Override
@@ -64,8 +64,9 @@ public class StreamMiniInfoItemHolder extends InfoItemHolder {
             StreamStateEntity state2 = null;
             if (DependentPreferenceHelper
                     .getPositionsInListsEnabled(itemProgressView.getContext())) {
-                state2 = historyRecordManager.loadStreamState(infoItem)
-                        .blockingGet()[0];
+                // the states are loaded in the background by the adapter, which rebinds the
+                // items once they are cached
+                state2 = historyRecordManager.getCachedStreamState(infoItem);
             }
             if (state2 != null) {
                 itemProgressView.setVisibility(View.VISIBLE);
@@ -17,6 +17,7 @@ import org.schabi.newpipe.database.stream.model.StreamEntity
 import org.schabi.newpipe.database.subscription.NotificationMode
 import org.schabi.newpipe.extractor.stream.StreamInfoItem
 import org.schabi.newpipe.extractor.stream.StreamType
+import org.schabi.newpipe.local.feed.service.FeedUpdateInfo
 import org.schabi.newpipe.local.subscription.FeedGroupIcon
 import java.time.LocalDate
 import java.time.OffsetDateTime
@@ -73,9 +74,25 @@ class FeedDatabaseManager(context: Context) {
         outdatedThreshold: OffsetDateTime
     ) = feedTable.getAllOutdatedForGroup(groupId, outdatedThreshold)
 
+    fun uploadCadences() = feedTable.getUploadCadences()
+
     fun markAsOutdated(subscriptionId: Long) = feedTable
         .setLastUpdatedForSubscription(FeedLastUpdatedEntity(subscriptionId, null))
 
+    /**
+     * Only bumps the last updated date of a subscription whose content did not change since the
+     * last update, without touching its streams.
+     * @see FeedUpdateInfo.contentFingerprint
+     */
+    fun markAsUpToDate(subscriptionId: Long, contentFingerprint: String) = feedTable
+        .setLastUpdatedForSubscription(
+            FeedLastUpdatedEntity(
+                subscriptionId, OffsetDateTime.now(ZoneOffset.UTC), contentFingerprint
+            )
+        )
+
+    fun getContentFingerprint(subscriptionId: Long) = feedTable.getContentFingerprint(subscriptionId)
+
     fun doesStreamExist(stream: StreamInfoItem): Boolean {
         return streamTable.exists(stream.serviceId, stream.url)
     }
@@ -83,7 +100,8 @@ class FeedDatabaseManager(context: Context) {
     fun upsertAll(
         subscriptionId: Long,
         items: List<StreamInfoItem>,
-        oldestAllowedDate: OffsetDateTime = FEED_OLDEST_ALLOWED_DATE
+        oldestAllowedDate: OffsetDateTime = FEED_OLDEST_ALLOWED_DATE,
+        contentFingerprint: String? = null
     ) {
         val itemsToInsert = ArrayList<StreamInfoItem>()
         loop@ for (streamItem in items) {
@@ -107,7 +125,9 @@ class FeedDatabaseManager(context: Context) {
         }
 
         feedTable.setLastUpdatedForSubscription(
-            FeedLastUpdatedEntity(subscriptionId, OffsetDateTime.now(ZoneOffset.UTC))
+            FeedLastUpdatedEntity(
+                subscriptionId, OffsetDateTime.now(ZoneOffset.UTC), contentFingerprint
+            )
         )
     }
 
@@ -21,6 +21,7 @@ import org.schabi.newpipe.extractor.feed.FeedInfo
 import org.schabi.newpipe.extractor.stream.StreamInfoItem
 import org.schabi.newpipe.local.feed.FeedDatabaseManager
 import org.schabi.newpipe.local.subscription.SubscriptionManager
+import org.schabi.newpipe.player.helper.PreCacheWorker
 import org.schabi.newpipe.util.ChannelTabHelper
 import org.schabi.newpipe.util.ExtractorHelper.getChannelInfo
 import org.schabi.newpipe.util.ExtractorHelper.getChannelTab
@@ -55,6 +56,8 @@ class FeedLoadManager(private val context: Context) {
      * @param ignoreOutdatedThreshold When `false`, only subscriptions which have not been updated
      * within the `feed_update_threshold` are checked for updates. This threshold can be set by
      * the user in the app settings. When `true`, all subscriptions are checked for new streams.
+     * When `false`, subscriptions which rarely upload may additionally be skipped, see
+     * [FeedUpdateScheduler].
      */
     fun startLoading(
         groupId: Long = FeedGroupEntity.GROUP_ALL_ID,
@@ -65,6 +68,11 @@ class FeedLoadManager(private val context: Context) {
             context.getString(R.string.feed_use_dedicated_fetch_method_key),
             false
         )
+        // when the threshold is ignored, every subscription is checked and only reordered
+        val skipUnlikelyUpdates = !ignoreOutdatedThreshold && defaultSharedPreferences.getBoolean(
+            context.getString(R.string.feed_update_by_upload_cadence_key),
+            true
+        )
 
         val outdatedThreshold = if (ignoreOutdatedThreshold) {
             OffsetDateTime.now(ZoneOffset.UTC)
@@ -93,6 +101,16 @@ class FeedLoadManager(private val context: Context) {
 
         return outdatedSubscriptions
             .take(1)
+            .map {
+                // check the channels most likely to have new streams first, and skip the ones
+                // which rarely upload if they were checked recently
+                FeedUpdateScheduler.schedule(
+                    it,
+                    feedDatabaseManager.uploadCadences(),
+                    skipUnlikelyUpdates,
+                    OffsetDateTime.now(ZoneOffset.UTC)
+                )
+            }
             .doOnNext {
                 currentProgress.set(0)
                 maxProgress.set(it.size)
@@ -121,6 +139,18 @@ class FeedLoadManager(private val context: Context) {
             .subscribeOn(Schedulers.io())
             .toList()
             .flatMap { x -> postProcessFeed().toSingleDefault(x.flatten()) }
+            .doOnSuccess { preCacheNewStreams(it) }
+    }
+
+    /**
+     * Pre-caches the newest of the streams found while loading the feed, if enabled in the
+     * settings, see [PreCacheWorker].
+     */
+    private fun preCacheNewStreams(feed: List<Notification<FeedUpdateInfo>>) {
+        val newStreams = feed.mapNotNull { it.value?.newStreams }
+            .flatten()
+            .sortedByDescending { it.uploadDate?.offsetDateTime() }
+        PreCacheWorker.enqueueFeedItems(context, newStreams)
     }
 
     fun cancel() {
@@ -274,9 +304,26 @@ class FeedLoadManager(private val context: Context) {
                         notification.isOnNext -> {
                             val info = notification.value!!
 
+                            if (info.errors.isEmpty() && info.contentFingerprint ==
+                                feedDatabaseManager.getContentFingerprint(info.uid)
+                            ) {
+                                // no stream changed since the last update, so there is nothing
+                                // new to notify about and no need to write the streams again,
+                                // but the subscriber count might have changed
+                                info.newStreams = emptyList()
+                                feedDatabaseManager.markAsUpToDate(
+                                    info.uid, info.contentFingerprint
+                                )
+                                subscriptionManager.updateFromInfo(info)
+                                continue
+                            }
+
                             notification.value!!.newStreams = filterNewStreams(info.streams)
 
-                            feedDatabaseManager.upsertAll(info.uid, info.streams)
+                            feedDatabaseManager.upsertAll(
+                                info.uid, info.streams,
+                                contentFingerprint = info.contentFingerprint
+                            )
                             subscriptionManager.updateFromInfo(info)
 
                             if (info.errors.isNotEmpty()) {
@@ -6,6 +6,7 @@ import org.schabi.newpipe.extractor.Info
 import org.schabi.newpipe.extractor.channel.ChannelInfo
 import org.schabi.newpipe.extractor.stream.StreamInfoItem
 import org.schabi.newpipe.util.image.ImageStrategy
+import java.security.MessageDigest
 
 /**
  * Instances of this class might stay around in memory for some time while fetching the feed,
@@ -56,4 +57,31 @@ data class FeedUpdateInfo(
         get() = url.hashCode()
 
     lateinit var newStreams: List<StreamInfoItem>
+
+    /**
+     * A hash of everything that is written to the database for this subscription, except for
+     * values that change all the time without the feed really changing (view counts, subscriber
+     * count, approximate upload dates). If it equals the one stored during the last update, the
+     * streams do not need to be written again.
+     */
+    val contentFingerprint: String by lazy {
+        val digest = MessageDigest.getInstance("SHA-1")
+        val update = { value: Any? ->
+            digest.update(value.toString().toByteArray())
+            digest.update(0.toByte())
+        }
+
+        update(name)
+        update(avatarUrl)
+        update(description)
+        for (stream in streams) {
+            update(stream.url)
+            update(stream.name)
+            update(stream.streamType)
+            update(stream.duration)
+            update(stream.uploadDate?.takeUnless { it.isApproximation }?.offsetDateTime())
+        }
+
+        digest.digest().joinToString("") { "%02x".format(it) }
+    }
 }
@@ -0,0 +1,77 @@
+package org.schabi.newpipe.local.feed.service
+
+import org.schabi.newpipe.database.feed.model.FeedUploadCadenceEntry
+import org.schabi.newpipe.database.subscription.SubscriptionEntity
+import java.time.Duration
+import java.time.OffsetDateTime
+
+/**
+ * Decides which of the outdated subscriptions should be checked for new streams, and in which
+ * order, based on how often each of them uploads.
+ *
+ * For every subscription the number of uploads expected since its last update is estimated from
+ * the upload dates stored in the feed. Subscriptions are checked in decreasing order of expected
+ * uploads, so that active channels are checked first. Subscriptions for which a new upload is
+ * still very unlikely are skipped, but never for longer than [MAX_SKIP_DURATION].
+ */
+object FeedUpdateScheduler {
+
+    /**
+     * Subscriptions which are expected to have uploaded less than this amount of streams since
+     * their last update are skipped. E.g. a channel uploading once a day is checked at most every
+     * 72 minutes, while one uploading once a week is checked about every 8 hours.
+     */
+    private const val MIN_EXPECTED_UPLOADS = 0.05
+
+    /**
+     * Subscriptions are always checked if they have not been updated for this long, regardless
+     * of how rarely they upload.
+     */
+    private val MAX_SKIP_DURATION: Duration = Duration.ofDays(1)
+
+    /**
+     * @param subscriptions the subscriptions to choose from, usually the outdated ones
+     * @param cadences the upload cadences of (at least) the given subscriptions
+     * @param skipUnlikelyUpdates whether to drop subscriptions which are not expected to have
+     * uploaded anything new; if `false`, the subscriptions are only sorted
+     * @param now the current time
+     * @return the subscriptions to check for new streams, most likely to have new streams first
+     */
+    fun schedule(
+        subscriptions: List<SubscriptionEntity>,
+        cadences: List<FeedUploadCadenceEntry>,
+        skipUnlikelyUpdates: Boolean,
+        now: OffsetDateTime,
+    ): List<SubscriptionEntity> {
+        val cadenceById = cadences.associateBy { it.subscriptionId }
+
+        return subscriptions
+            .map { Pair(it, expectedUploads(cadenceById[it.uid], now)) }
+            .filter { (_, expectedUploads) ->
+                !skipUnlikelyUpdates || expectedUploads >= MIN_EXPECTED_UPLOADS
+            }
+            .sortedByDescending { (_, expectedUploads) -> expectedUploads }
+            .map { (subscription, _) -> subscription }
+    }
+
+    /**
+     * @return the number of uploads expected since the last update of the subscription; this
+     * is [Double.POSITIVE_INFINITY] for subscriptions that were never loaded and at least
+     * [MIN_EXPECTED_UPLOADS] for subscriptions not updated within [MAX_SKIP_DURATION]
+     */
+    internal fun expectedUploads(cadence: FeedUploadCadenceEntry?, now: OffsetDateTime): Double {
+        val lastUpdated = cadence?.lastUpdated ?: return Double.POSITIVE_INFINITY
+        val sinceLastUpdate = Duration.between(lastUpdated, now)
+        val uploadInterval = cadence.estimatedUploadInterval(now)
+            ?.takeIf { !it.isNegative && !it.isZero }
+            // nothing is known about this subscription, check it as rarely as allowed
+            ?: MAX_SKIP_DURATION
+
+        val expectedUploads = sinceLastUpdate.toMillis().toDouble() / uploadInterval.toMillis()
+        return if (sinceLastUpdate >= MAX_SKIP_DURATION) {
+            maxOf(expectedUploads, MIN_EXPECTED_UPLOADS)
+        } else {
+            expectedUploads
+        }
+    }
+}
@@ -22,6 +22,8 @@ import android.content.Context;
 import android.content.SharedPreferences;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.collection.LruCache;
 import androidx.preference.PreferenceManager;
 
 import org.schabi.newpipe.NewPipeDatabase;
@@ -30,11 +32,13 @@ import org.schabi.newpipe.database.AppDatabase;
 import org.schabi.newpipe.database.LocalItem;
 import org.schabi.newpipe.database.history.dao.SearchHistoryDAO;
 import org.schabi.newpipe.database.history.dao.StreamHistoryDAO;
+import org.schabi.newpipe.database.history.dao.StreamStatisticsDAO;
 import org.schabi.newpipe.database.history.model.SearchHistoryEntry;
 import org.schabi.newpipe.database.history.model.StreamHistoryEntity;
 import org.schabi.newpipe.database.history.model.StreamHistoryEntry;
 import org.schabi.newpipe.database.playlist.PlaylistStreamEntry;
 import org.schabi.newpipe.database.playlist.model.PlaylistStreamEntity;
+import org.schabi.newpipe.database.stream.StreamStateWithUrl;
 import org.schabi.newpipe.database.stream.StreamStatisticsEntry;
 import org.schabi.newpipe.database.stream.dao.StreamDAO;
 import org.schabi.newpipe.database.stream.dao.StreamStateDAO;
@@ -50,7 +54,14 @@ import org.schabi.newpipe.util.ExtractorHelper;
 import java.time.OffsetDateTime;
 import java.time.ZoneOffset;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
 
 import io.reactivex.rxjava3.core.Completable;
 import io.reactivex.rxjava3.core.Flowable;
@@ -59,9 +70,29 @@ import io.reactivex.rxjava3.core.Single;
 import io.reactivex.rxjava3.schedulers.Schedulers;
 
 public class HistoryRecordManager {
+    private static final int STREAM_STATE_CACHE_SIZE = 500;
+    /**
+     * SQLite limits the number of variables in a query to 999.
+     */
+    private static final int MAX_QUERY_VARIABLES = 900;
+
+    /**
+     * Stream states of remote items shown in lists, keyed by {@link #stateCacheKeyOf(int, String)}.
+     * An empty optional means that the stream has no state. It is shared between all instances,
+     * since states are saved by the player but shown by the lists.
+     */
+    private static final LruCache<String, Optional<StreamStateEntity>> STREAM_STATE_CACHE =
+            new LruCache<>(STREAM_STATE_CACHE_SIZE);
+    /**
+     * Incremented whenever {@link #STREAM_STATE_CACHE} is invalidated, so that states which were
+     * being loaded in the meantime are not put into the cache.
+     */
+    private static final AtomicLong STREAM_STATE_CACHE_GENERATION = new AtomicLong();
+
     private final AppDatabase database;
     private final StreamDAO streamTable;
     private final StreamHistoryDAO streamHistoryTable;
+    private final StreamStatisticsDAO streamStatisticsTable;
     private final SearchHistoryDAO searchHistoryTable;
     private final StreamStateDAO streamStateTable;
     private final SharedPreferences sharedPreferences;
@@ -72,6 +103,7 @@ public class HistoryRecordManager {
         database = NewPipeDatabase.getInstance(context);
         streamTable = database.streamDAO();
         streamHistoryTable = database.streamHistoryDAO();
+        streamStatisticsTable = database.streamStatisticsDAO();
         searchHistoryTable = database.searchHistoryDAO();
         streamStateTable = database.streamStateDAO();
         sharedPreferences = PreferenceManager.getDefaultSharedPreferences(context);
@@ -122,16 +154,19 @@ public class HistoryRecordManager {
                     duration * 1000
             );
             streamStateTable.upsert(entity);
+            cacheStreamState(info.getServiceId(), info.getUrl(), entity);
 
             // Add a history entry
             final StreamHistoryEntity latestEntry = streamHistoryTable.getLatestEntry(streamId);
             if (latestEntry == null) {
                 // never actually viewed: add history entry but with 0 views
+                streamStatisticsTable.addView(streamId, currentTime, 0);
                 return streamHistoryTable.insert(new StreamHistoryEntity(streamId, currentTime, 0));
             } else {
                 return 0L;
             }
-        })).subscribeOn(Schedulers.io());
+        })).doOnError(e -> invalidateStreamStateCache(info.getServiceId(), info.getUrl()))
+                .subscribeOn(Schedulers.io());
     }
 
     public Maybe<Long> onViewed(final StreamInfo info) {
@@ -143,6 +178,7 @@ public class HistoryRecordManager {
         return Maybe.fromCallable(() -> database.runInTransaction(() -> {
             final long streamId = streamTable.upsert(new StreamEntity(info));
             final StreamHistoryEntity latestEntry = streamHistoryTable.getLatestEntry(streamId);
+            streamStatisticsTable.addView(streamId, currentTime, 1);
 
             if (latestEntry != null) {
                 streamHistoryTable.delete(latestEntry);
@@ -156,20 +192,27 @@ public class HistoryRecordManager {
         })).subscribeOn(Schedulers.io());
     }
 
-    public Completable deleteStreamHistoryAndState(final long streamId) {
+    public Completable deleteStreamHistoryAndState(@NonNull final StreamEntity stream) {
         return Completable.fromAction(() -> {
-            streamStateTable.deleteState(streamId);
-            streamHistoryTable.deleteStreamHistory(streamId);
+            database.runInTransaction(() -> {
+                streamStateTable.deleteState(stream.getUid());
+                streamHistoryTable.deleteStreamHistory(stream.getUid());
+                streamStatisticsTable.deleteStatistics(stream.getUid());
+            });
+            cacheStreamState(stream.getServiceId(), stream.getUrl(), null);
         }).subscribeOn(Schedulers.io());
     }
 
     public Single<Integer> deleteWholeStreamHistory() {
-        return Single.fromCallable(streamHistoryTable::deleteAll)
-                .subscribeOn(Schedulers.io());
+        return Single.fromCallable(() -> database.runInTransaction(() -> {
+            streamStatisticsTable.deleteAll();
+            return streamHistoryTable.deleteAll();
+        })).subscribeOn(Schedulers.io());
     }
 
     public Single<Integer> deleteCompleteStreamStateHistory() {
         return Single.fromCallable(streamStateTable::deleteAll)
+                .doOnSuccess(deleted -> clearCachedStreamStates())
                 .subscribeOn(Schedulers.io());
     }
 
@@ -178,7 +221,7 @@ public class HistoryRecordManager {
     }
 
     public Flowable<List<StreamStatisticsEntry>> getStreamStatistics() {
-        return streamHistoryTable.getStatistics().subscribeOn(Schedulers.io());
+        return streamStatisticsTable.getStatistics().subscribeOn(Schedulers.io());
     }
 
     private boolean isStreamHistoryEnabled() {
@@ -259,54 +302,178 @@ public class HistoryRecordManager {
             final StreamStateEntity state = new StreamStateEntity(streamId, progressMillis);
             if (state.isValid(info.getDuration())) {
                 streamStateTable.upsert(state);
+                cacheStreamState(info.getServiceId(), info.getUrl(), state);
             }
-        })).subscribeOn(Schedulers.io());
+        })).doOnError(e -> invalidateStreamStateCache(info.getServiceId(), info.getUrl()))
+                .subscribeOn(Schedulers.io());
     }
 
     public Single<StreamStateEntity[]> loadStreamState(final InfoItem info) {
+        return loadStreamStateBatch(Collections.singletonList(info))
+                .map(states -> new StreamStateEntity[]{states.get(0)});
+    }
+
+    /**
+     * Loads the states of the given remote items, e.g. the items of a search or channel page.
+     * States are cached, so that items shown again (e.g. when scrolling back up) do not have to be
+     * queried again, and the states which are not cached are loaded with one query per service.
+     *
+     * @param items the items to load the states of
+     * @return a list containing the state of each item, in the same order as the items, or
+     * {@code null} if an item has no state
+     */
+    public Single<List<StreamStateEntity>> loadStreamStateBatch(
+            final List<? extends InfoItem> items) {
         return Single.fromCallable(() -> {
-            final List<StreamEntity> entities = streamTable
-                    .getStream(info.getServiceId(), info.getUrl()).blockingFirst();
-            if (entities.isEmpty()) {
-                return new StreamStateEntity[]{null};
+            final Map<String, Optional<StreamStateEntity>> states = new HashMap<>();
+            final Map<Integer, Set<String>> missingUrls = new HashMap<>();
+            for (final InfoItem item : items) {
+                final String key = stateCacheKeyOf(item.getServiceId(), item.getUrl());
+                final Optional<StreamStateEntity> cached = STREAM_STATE_CACHE.get(key);
+                if (cached != null) {
+                    states.put(key, cached);
+                } else if (!states.containsKey(key)) {
+                    missingUrls.computeIfAbsent(item.getServiceId(), id -> new HashSet<>())
+                            .add(item.getUrl());
+                }
             }
-            final List<StreamStateEntity> states = streamStateTable
-                    .getState(entities.get(0).getUid()).blockingFirst();
-            if (states.isEmpty()) {
-                return new StreamStateEntity[]{null};
+
+            final long generation = STREAM_STATE_CACHE_GENERATION.get();
+            for (final Map.Entry<Integer, Set<String>> entry : missingUrls.entrySet()) {
+                final int serviceId = entry.getKey();
+                final List<String> urls = new ArrayList<>(entry.getValue());
+                for (int i = 0; i < urls.size(); i += MAX_QUERY_VARIABLES) {
+                    final List<String> chunk =
+                            urls.subList(i, Math.min(i + MAX_QUERY_VARIABLES, urls.size()));
+                    for (final String url : chunk) {
+                        states.put(stateCacheKeyOf(serviceId, url), Optional.empty());
+                    }
+                    for (final StreamStateWithUrl state
+                            : streamStateTable.getStatesByUrl(serviceId, chunk)) {
+                        states.put(stateCacheKeyOf(serviceId, state.getUrl()),
+                                Optional.of(state.getState()));
+                    }
+                }
+
+                if (generation == STREAM_STATE_CACHE_GENERATION.get()) {
+                    for (final String url : urls) {
+                        final String key = stateCacheKeyOf(serviceId, url);
+                        STREAM_STATE_CACHE.put(key, states.get(key));
+                    }
+                }
             }
-            return new StreamStateEntity[]{states.get(0)};
+
+            final List<StreamStateEntity> result = new ArrayList<>(items.size());
+            for (final InfoItem item : items) {
+                result.add(states.get(stateCacheKeyOf(item.getServiceId(), item.getUrl()))
+                        .orElse(null));
+            }
+            return result;
         }).subscribeOn(Schedulers.io());
     }
 
+    /**
+     * Returns the state of a remote item only if it is cached, without querying the database.
+     * This is meant for binding list items on the main thread, while their states are being
+     * loaded with {@link #loadStreamStateBatch(List)}.
+     *
+     * @param info the item to get the state of
+     * @return the cached state of the item, or {@code null} if it has no state or if its state is
+     * not cached
+     */
+    @Nullable
+    public StreamStateEntity getCachedStreamState(@NonNull final InfoItem info) {
+        final Optional<StreamStateEntity> cached =
+                STREAM_STATE_CACHE.get(stateCacheKeyOf(info.getServiceId(), info.getUrl()));
+        return cached == null ? null : cached.orElse(null);
+    }
+
+    /**
+     * @param info the item to check
+     * @return whether the state of the item is cached, including the fact that it has no state
+     */
+    public boolean isStreamStateCached(@NonNull final InfoItem info) {
+        return STREAM_STATE_CACHE.get(stateCacheKeyOf(info.getServiceId(), info.getUrl())) != null;
+    }
+
     public Single<List<StreamStateEntity>> loadLocalStreamStateBatch(
             final List<? extends LocalItem> items) {
         return Single.fromCallable(() -> {
-            final List<StreamStateEntity> result = new ArrayList<>(items.size());
+            final List<Long> streamIds = new ArrayList<>(items.size());
             for (final LocalItem item : items) {
-                final long streamId;
                 if (item instanceof StreamStatisticsEntry) {
-                    streamId = ((StreamStatisticsEntry) item).getStreamId();
+                    streamIds.add(((StreamStatisticsEntry) item).getStreamId());
                 } else if (item instanceof PlaylistStreamEntity) {
-                    streamId = ((PlaylistStreamEntity) item).getStreamUid();
+                    streamIds.add(((PlaylistStreamEntity) item).getStreamUid());
                 } else if (item instanceof PlaylistStreamEntry) {
-                    streamId = ((PlaylistStreamEntry) item).getStreamId();
+                    streamIds.add(((PlaylistStreamEntry) item).getStreamId());
                 } else {
-                    result.add(null);
-                    continue;
+                    streamIds.add(null);
                 }
-                final List<StreamStateEntity> states = streamStateTable.getState(streamId)
-                        .blockingFirst();
-                if (states.isEmpty()) {
-                    result.add(null);
-                } else {
-                    result.add(states.get(0));
+            }
+
+            final List<Long> idsToQuery = new ArrayList<>(new HashSet<>(streamIds));
+            idsToQuery.remove(null);
+            final Map<Long, StreamStateEntity> states = new HashMap<>();
+            for (int i = 0; i < idsToQuery.size(); i += MAX_QUERY_VARIABLES) {
+                for (final StreamStateEntity state : streamStateTable.getStates(idsToQuery
+                        .subList(i, Math.min(i + MAX_QUERY_VARIABLES, idsToQuery.size())))) {
+                    states.put(state.getStreamUid(), state);
                 }
             }
+
+            final List<StreamStateEntity> result = new ArrayList<>(items.size());
+            for (final Long streamId : streamIds) {
+                result.add(streamId == null ? null : states.get(streamId));
+            }
             return result;
         }).subscribeOn(Schedulers.io());
     }
 
+    @NonNull
+    private static String stateCacheKeyOf(final int serviceId, @NonNull final String url) {
+        return serviceId + ":" + url;
+    }
+
+    /**
+     * Puts a state which was just written to the database into the cache, so that the lists show
+     * it right away. States being loaded in the meantime are older, so they are not cached.
+     *
+     * @param serviceId the service of the stream
+     * @param url       the url of the stream
+     * @param state     the new state of the stream, or {@code null} if it has none anymore
+     */
+    private static void cacheStreamState(final int serviceId,
+                                         @NonNull final String url,
+                                         @Nullable final StreamStateEntity state) {
+        STREAM_STATE_CACHE_GENERATION.incrementAndGet();
+        STREAM_STATE_CACHE.put(stateCacheKeyOf(serviceId, url), Optional.ofNullable(state));
+    }
+
+    /**
+     * Marks all the cached streams as having no state, after all the states were deleted.
+     */
+    private static void clearCachedStreamStates() {
+        STREAM_STATE_CACHE_GENERATION.incrementAndGet();
+        for (final String key : STREAM_STATE_CACHE.snapshot().keySet()) {
+            STREAM_STATE_CACHE.put(key, Optional.empty());
+        }
+    }
+
+    private static void invalidateStreamStateCache(final int serviceId,
+                                                   @NonNull final String url) {
+        STREAM_STATE_CACHE_GENERATION.incrementAndGet();
+        STREAM_STATE_CACHE.remove(stateCacheKeyOf(serviceId, url));
+    }
+
+    /**
+     * Forgets all the cached stream states, e.g. because the whole database was replaced.
+     */
+    public static void invalidateStreamStateCache() {
+        STREAM_STATE_CACHE_GENERATION.incrementAndGet();
+        STREAM_STATE_CACHE.evictAll();
+    }
+
     ///////////////////////////////////////////////////////
     // Utility
     ///////////////////////////////////////////////////////
@@ -348,7 +348,7 @@ public class StatisticsPlaylistFragment
         if (infoItem instanceof StreamStatisticsEntry) {
             final StreamStatisticsEntry entry = (StreamStatisticsEntry) infoItem;
             final Disposable onDelete = recordManager
-                    .deleteStreamHistoryAndState(entry.getStreamId())
+                    .deleteStreamHistoryAndState(entry.getStreamEntity())
                     .observeOn(AndroidSchedulers.mainThread())
                     .subscribe(
                             () -> {
@@ -23,6 +23,10 @@ import io.reactivex.rxjava3.schedulers.Schedulers;
 
 public class LocalPlaylistManager {
     private static final long THUMBNAIL_ID_LEAVE_UNCHANGED = -2;
+    /**
+     * SQLite limits the number of variables in a query to 999.
+     */
+    private static final int MAX_QUERY_VARIABLES = 900;
 
     private final AppDatabase database;
     private final StreamDAO streamTable;
@@ -62,7 +66,22 @@ public class LocalPlaylistManager {
                 .firstElement()
                 .map(maxJoinIndex -> database.runInTransaction(() -> {
                             final List<Long> streamIds = streamTable.upsertAll(streams);
-                            return insertJoinEntities(playlistId, streamIds, maxJoinIndex + 1);
+                            final long lastJoinIndex = maxJoinIndex
+                                    + (long) streamIds.size() * PlaylistJoinDelta.JOIN_INDEX_GAP;
+                            if (lastJoinIndex > Integer.MAX_VALUE) {
+                                // no room left at the end, append to a renumbered playlist
+                                final List<Long> allStreamIds = new ArrayList<>();
+                                for (final PlaylistStreamEntity entity
+                                        : playlistStreamTable.getJoinEntities(playlistId)) {
+                                    allStreamIds.add(entity.getStreamUid());
+                                }
+                                allStreamIds.addAll(streamIds);
+                                applyDelta(playlistId,
+                                        PlaylistJoinDelta.renumbered(playlistId, allStreamIds));
+                                return streamIds;
+                            }
+                            return insertJoinEntities(playlistId, streamIds,
+                                    maxJoinIndex + PlaylistJoinDelta.JOIN_INDEX_GAP);
                         }
                 )).subscribeOn(Schedulers.io());
     }
@@ -74,21 +93,41 @@ public class LocalPlaylistManager {
 
         for (int index = 0; index < streamIds.size(); index++) {
             joinEntities.add(new PlaylistStreamEntity(playlistId, streamIds.get(index),
-                    index + indexOffset));
+                    index * PlaylistJoinDelta.JOIN_INDEX_GAP + indexOffset));
         }
         return playlistStreamTable.insertAll(joinEntities);
     }
 
+    /**
+     * Saves the new order of the streams of a playlist, only writing the rows that changed.
+     * E.g. moving a single item only rewrites the row of that item.
+     *
+     * @param playlistId the id of the playlist
+     * @param streamIds  the ids of all the streams of the playlist, in their new order
+     * @return a {@link Completable} completing once the playlist is saved
+     * @see PlaylistJoinDelta
+     */
     public Completable updateJoin(final long playlistId, final List<Long> streamIds) {
-        final List<PlaylistStreamEntity> joinEntities = new ArrayList<>(streamIds.size());
-        for (int i = 0; i < streamIds.size(); i++) {
-            joinEntities.add(new PlaylistStreamEntity(playlistId, streamIds.get(i), i));
-        }
+        return Completable.fromRunnable(() -> database.runInTransaction(() -> applyDelta(
+                playlistId, PlaylistJoinDelta.compute(playlistId,
+                        playlistStreamTable.getJoinEntities(playlistId), streamIds))
+        )).subscribeOn(Schedulers.io());
+    }
 
-        return Completable.fromRunnable(() -> database.runInTransaction(() -> {
+    private void applyDelta(final long playlistId, final PlaylistJoinDelta delta) {
+        if (delta.isFullRewrite()) {
             playlistStreamTable.deleteBatch(playlistId);
-            playlistStreamTable.insertAll(joinEntities);
-        })).subscribeOn(Schedulers.io());
+        } else {
+            final List<Integer> deletedIndexes = delta.getDeletedIndexes();
+            for (int i = 0; i < deletedIndexes.size(); i += MAX_QUERY_VARIABLES) {
+                playlistStreamTable.deleteJoinEntities(playlistId, deletedIndexes.subList(
+                        i, Math.min(i + MAX_QUERY_VARIABLES, deletedIndexes.size())));
+            }
+        }
+
+        if (!delta.getInsertedEntities().isEmpty()) {
+            playlistStreamTable.insertAll(delta.getInsertedEntities());
+        }
     }
 
     public Completable updatePlaylists(final List<PlaylistMetadataEntry> updateItems,
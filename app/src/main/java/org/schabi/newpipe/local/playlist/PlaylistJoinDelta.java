@@ -0,0 +1,218 @@
+package org.schabi.newpipe.local.playlist;
+
+import androidx.annotation.NonNull;
+
+import org.schabi.newpipe.database.playlist.model.PlaylistStreamEntity;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The changes needed to turn the stored streams of a local playlist into a new list of streams,
+ * e.g. after the user moved or removed some items.
+ *
+ * <p>Rows in {@code playlist_stream_join} are only ordered by their join index, which does not
+ * need to be contiguous. Join indexes are therefore spaced {@link #JOIN_INDEX_GAP} apart, so
+ * that an item can be moved or inserted by only writing its own row, with an index in between
+ * the ones of its new neighbours. Only when there is no room left between two neighbours, the
+ * whole playlist is renumbered.</p>
+ */
+final class PlaylistJoinDelta {
+    /**
+     * The difference between the join indexes of two consecutive streams, when they are assigned
+     * without constraints (i.e. when creating, appending to or renumbering a playlist).
+     */
+    static final int JOIN_INDEX_GAP = 1024;
+
+    private final boolean fullRewrite;
+    @NonNull
+    private final List<Integer> deletedIndexes;
+    @NonNull
+    private final List<PlaylistStreamEntity> insertedEntities;
+
+    private PlaylistJoinDelta(final boolean fullRewrite,
+                              @NonNull final List<Integer> deletedIndexes,
+                              @NonNull final List<PlaylistStreamEntity> insertedEntities) {
+        this.fullRewrite = fullRewrite;
+        this.deletedIndexes = deletedIndexes;
+        this.insertedEntities = insertedEntities;
+    }
+
+    /**
+     * @return whether all the rows of the playlist have to be deleted before inserting
+     * {@link #getInsertedEntities()}, instead of only the ones in {@link #getDeletedIndexes()}
+     */
+    boolean isFullRewrite() {
+        return fullRewrite;
+    }
+
+    /**
+     * @return the join indexes of the rows to delete, if this is not a full rewrite
+     */
+    @NonNull
+    List<Integer> getDeletedIndexes() {
+        return deletedIndexes;
+    }
+
+    /**
+     * @return the rows to insert, after the deletion
+     */
+    @NonNull
+    List<PlaylistStreamEntity> getInsertedEntities() {
+        return insertedEntities;
+    }
+
+    /**
+     * @return whether the stored playlist already matches the new list of streams
+     */
+    boolean isEmpty() {
+        return !fullRewrite && deletedIndexes.isEmpty() && insertedEntities.isEmpty();
+    }
+
+    /**
+     * Computes the smallest set of rows to delete and to insert, keeping the longest possible
+     * sequence of stored rows whose order is unchanged.
+     *
+     * @param playlistId the id of the playlist
+     * @param current    the stored rows of the playlist, sorted by join index
+     * @param streamIds  the ids of the streams the playlist should contain, in order
+     * @return the changes to apply
+     */
+    @NonNull
+    static PlaylistJoinDelta compute(final long playlistId,
+                                     @NonNull final List<PlaylistStreamEntity> current,
+                                     @NonNull final List<Long> streamIds) {
+        final int size = streamIds.size();
+
+        // Match the n-th occurrence of a stream in the new list with its n-th stored occurrence.
+        final Map<Long, ArrayDeque<PlaylistStreamEntity>> storedByStream = new HashMap<>();
+        for (final PlaylistStreamEntity entity : current) {
+            storedByStream.computeIfAbsent(entity.getStreamUid(), id -> new ArrayDeque<>())
+                    .add(entity);
+        }
+        final int[] storedIndexes = new int[size];
+        final boolean[] isStored = new boolean[size];
+        for (int i = 0; i < size; i++) {
+            final ArrayDeque<PlaylistStreamEntity> stored = storedByStream.get(streamIds.get(i));
+            if (stored != null && !stored.isEmpty()) {
+                storedIndexes[i] = stored.poll().getIndex();
+                isStored[i] = true;
+            }
+        }
+
+        final List<Integer> deletedIndexes = new ArrayList<>();
+        for (final ArrayDeque<PlaylistStreamEntity> removed : storedByStream.values()) {
+            for (final PlaylistStreamEntity entity : removed) {
+                deletedIndexes.add(entity.getIndex());
+            }
+        }
+
+        final boolean[] isKept = longestIncreasingSubsequence(storedIndexes, isStored);
+        final int[] newIndexes = new int[size];
+        long previousIndex = -1;
+        int i = 0;
+        while (i < size) {
+            if (isKept[i]) {
+                newIndexes[i] = storedIndexes[i];
+                previousIndex = storedIndexes[i];
+                i++;
+                continue;
+            }
+
+            // place the run of items up to the next kept one in between the kept neighbours
+            int runEnd = i;
+            while (runEnd < size && !isKept[runEnd]) {
+                runEnd++;
+            }
+            final int runLength = runEnd - i;
+            final long nextIndex = runEnd < size
+                    ? storedIndexes[runEnd]
+                    : Math.min(previousIndex + (runLength + 1L) * JOIN_INDEX_GAP,
+                            Integer.MAX_VALUE + 1L);
+            final long step = Math.min(JOIN_INDEX_GAP,
+                    (nextIndex - previousIndex) / (runLength + 1));
+            if (step < 1) {
+                return renumbered(playlistId, streamIds);
+            }
+
+            for (; i < runEnd; i++) {
+                previousIndex += step;
+                newIndexes[i] = (int) previousIndex;
+                if (isStored[i]) {
+                    deletedIndexes.add(storedIndexes[i]);
+                }
+            }
+        }
+
+        final List<PlaylistStreamEntity> insertedEntities = new ArrayList<>();
+        for (i = 0; i < size; i++) {
+            if (!isKept[i]) {
+                insertedEntities.add(
+                        new PlaylistStreamEntity(playlistId, streamIds.get(i), newIndexes[i]));
+            }
+        }
+        return new PlaylistJoinDelta(false, deletedIndexes, insertedEntities);
+    }
+
+    /**
+     * @param playlistId the id of the playlist
+     * @param streamIds  the ids of the streams the playlist should contain, in order
+     * @return a full rewrite of the playlist, with join indexes spaced as much as possible
+     */
+    @NonNull
+    static PlaylistJoinDelta renumbered(final long playlistId,
+                                        @NonNull final List<Long> streamIds) {
+        final int step = Math.max(1,
+                Math.min(JOIN_INDEX_GAP, Integer.MAX_VALUE / Math.max(1, streamIds.size())));
+        final List<PlaylistStreamEntity> entities = new ArrayList<>(streamIds.size());
+        for (int i = 0; i < streamIds.size(); i++) {
+            entities.add(new PlaylistStreamEntity(playlistId, streamIds.get(i), i * step));
+        }
+        return new PlaylistJoinDelta(true, new ArrayList<>(), entities);
+    }
+
+    /**
+     * @param values   the values to pick from
+     * @param included which values may be part of the subsequence
+     * @return which values are part of a longest strictly increasing subsequence
+     */
+    @NonNull
+    private static boolean[] longestIncreasingSubsequence(@NonNull final int[] values,
+                                                          @NonNull final boolean[] included) {
+        // tails[k] is the position of the smallest value ending an increasing subsequence of
+        // length k + 1, and previous[i] is the position before i in the subsequence ending at i
+        final int[] tails = new int[values.length];
+        final int[] previous = new int[values.length];
+        int length = 0;
+        for (int i = 0; i < values.length; i++) {
+            if (!included[i]) {
+                continue;
+            }
+
+            int low = 0;
+            int high = length;
+            while (low < high) {
+                final int middle = (low + high) >>> 1;
+                if (values[tails[middle]] < values[i]) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+            previous[i] = low > 0 ? tails[low - 1] : -1;
+            tails[low] = i;
+            if (low == length) {
+                length++;
+            }
+        }
+
+        final boolean[] result = new boolean[values.length];
+        for (int i = length > 0 ? tails[length - 1] : -1; i >= 0; i = previous[i]) {
+            result[i] = true;
+        }
+        return result;
+    }
+}
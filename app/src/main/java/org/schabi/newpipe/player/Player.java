@@ -30,6 +30,7 @@ import static com.google.android.exoplayer2.Player.RepeatMode;
 import static org.schabi.newpipe.extractor.ServiceList.YouTube;
 import static org.schabi.newpipe.extractor.utils.Utils.isNullOrEmpty;
 import static org.schabi.newpipe.player.helper.PlayerHelper.nextRepeatMode;
+import static org.schabi.newpipe.player.helper.PlayerHelper.retrieveLookAheadSizeFromPreferences;
 import static org.schabi.newpipe.player.helper.PlayerHelper.retrievePlaybackParametersFromPrefs;
 import static org.schabi.newpipe.player.helper.PlayerHelper.retrieveSeekDurationFromPreferences;
 import static org.schabi.newpipe.player.helper.PlayerHelper.savePlaybackParametersToPrefs;
@@ -100,6 +101,7 @@ import org.schabi.newpipe.player.helper.CustomRenderersFactory;
 import org.schabi.newpipe.player.helper.LoadController;
 import org.schabi.newpipe.player.helper.PlayerDataSource;
 import org.schabi.newpipe.player.helper.PlayerHelper;
+import org.schabi.newpipe.player.helper.PreCacheWorker;
 import org.schabi.newpipe.player.mediaitem.MediaItemTag;
 import org.schabi.newpipe.player.mediasession.MediaSessionPlayerUi;
 import org.schabi.newpipe.player.notification.NotificationPlayerUi;
@@ -131,6 +133,7 @@ import io.reactivex.rxjava3.core.Observable;
 import io.reactivex.rxjava3.disposables.CompositeDisposable;
 import io.reactivex.rxjava3.disposables.Disposable;
 import io.reactivex.rxjava3.disposables.SerialDisposable;
+import us.shandian.giga.service.PostprocessingQueue;
 
 public final class Player implements PlaybackListener, Listener {
     public static final boolean DEBUG = MainActivity.DEBUG;
@@ -278,9 +281,11 @@ public final class Player implements PlaybackListener, Listener {
         setupBroadcastReceiver();
 
         trackSelector = new DefaultTrackSelector(context, PlayerHelper.getQualitySelector());
-        final PlayerDataSource dataSource = new PlayerDataSource(context,
-                new DefaultBandwidthMeter.Builder(context).build());
-        loadController = new LoadController();
+        final DefaultBandwidthMeter bandwidthMeter = new DefaultBandwidthMeter.Builder(context)
+                .build();
+        final PlayerDataSource dataSource = new PlayerDataSource(context, bandwidthMeter);
+        loadController = new LoadController(context, bandwidthMeter,
+                PlayerHelper.getLoadControlProfile(context));
 
         renderFactory = prefs.getBoolean(
                 context.getString(
@@ -599,6 +604,7 @@ public final class Player implements PlaybackListener, Listener {
 
         destroyPlayer();
         unregisterBroadcastReceiver();
+        PostprocessingQueue.setPlaybackBuffering(false);
 
         databaseUpdateDisposable.clear();
         progressUpdateDisposable.set(null);
@@ -637,7 +643,8 @@ public final class Player implements PlaybackListener, Listener {
         }
 
         if (playQueue != null) {
-            playQueueManager = new MediaSourceManager(this, playQueue);
+            playQueueManager = new MediaSourceManager(this, playQueue,
+                    retrieveLookAheadSizeFromPreferences(this));
         }
     }
 
@@ -1053,6 +1060,9 @@ public final class Player implements PlaybackListener, Listener {
             Log.d(TAG, "changeState() called with: state = [" + state + "]");
         }
         currentState = state;
+        // the downloads post-processing waits while the playback waits for data
+        PostprocessingQueue.setPlaybackBuffering(
+                state == STATE_BLOCKED || state == STATE_BUFFERING);
         switch (state) {
             case STATE_BLOCKED:
                 onBlocked();
@@ -1550,6 +1560,7 @@ public final class Player implements PlaybackListener, Listener {
                 || !currentItem.getUrl().equals(item.getUrl());
 
         currentItem = item;
+        preCacheItemsAfter(playQueueIndex);
 
         if (playQueueIndex != playQueue.getIndex()) {
             // wrong window (this should be impossible, as this method is called with
@@ -1586,6 +1597,20 @@ public final class Player implements PlaybackListener, Listener {
         }
     }
 
+    /**
+     * Pre-caches the items following the provided index of the play queue, if enabled in the
+     * settings, see {@link PreCacheWorker}.
+     *
+     * @param playQueueIndex the index of the item being played
+     */
+    private void preCacheItemsAfter(final int playQueueIndex) {
+        final List<PlayQueueItem> streams = playQueue.getStreams();
+        if (playQueueIndex >= 0 && playQueueIndex < streams.size()) {
+            PreCacheWorker.enqueueQueueItems(context,
+                    streams.subList(playQueueIndex + 1, streams.size()));
+        }
+    }
+
     public void seekTo(final long positionMillis) {
         if (DEBUG) {
             Log.d(TAG, "seekBy() called with: position = [" + positionMillis + "]");
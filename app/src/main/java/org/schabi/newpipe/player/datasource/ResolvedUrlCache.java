@@ -0,0 +1,171 @@
+package org.schabi.newpipe.player.datasource;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.VisibleForTesting;
+import androidx.collection.LruCache;
+
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * A bounded cache of the servers to which stream URLs have been redirected, shared by the data
+ * sources of a player session.
+ *
+ * <p>
+ * {@code googlevideo.com} servers often redirect requests to another server of their content
+ * delivery network. Without this cache, every request to the same stream (i.e. every segment,
+ * range or seek) would first go to the original server and follow the redirect again. A cached
+ * resolution only replaces the host of the original URL, so the request number and range
+ * parameters can still be appended. It expires with the stream URL itself (its {@code expire}
+ * parameter), or after {@link #DEFAULT_TTL_MILLIS} if the URL has no such parameter.
+ * </p>
+ */
+public final class ResolvedUrlCache {
+    @VisibleForTesting
+    static final int MAX_ENTRIES = 64;
+    @VisibleForTesting
+    static final long DEFAULT_TTL_MILLIS = TimeUnit.MINUTES.toMillis(30);
+
+    private static final Pattern EXPIRE_PARAMETER = Pattern.compile("[?&/]expire[=/](\\d+)");
+
+    private final LruCache<String, ResolvedUrl> resolvedUrls = new LruCache<>(MAX_ENTRIES);
+    private final LongSupplier clock;
+    private final AtomicLong redirectsAvoided = new AtomicLong();
+    private final AtomicLong redirectsFollowed = new AtomicLong();
+
+    public ResolvedUrlCache() {
+        this(System::currentTimeMillis);
+    }
+
+    @VisibleForTesting
+    ResolvedUrlCache(@NonNull final LongSupplier clock) {
+        this.clock = clock;
+    }
+
+    /**
+     * @param url the URL of a request, before the request number and range parameters are
+     *            appended
+     * @return the same URL with the host it was last redirected to, or {@code null} if it was
+     * not redirected or if the resolution expired
+     */
+    @Nullable
+    public String get(@NonNull final String url) {
+        synchronized (resolvedUrls) {
+            final ResolvedUrl resolvedUrl = resolvedUrls.get(url);
+            if (resolvedUrl == null) {
+                return null;
+            }
+            if (clock.getAsLong() >= resolvedUrl.expirationMillis) {
+                resolvedUrls.remove(url);
+                return null;
+            }
+            return resolvedUrl.url;
+        }
+    }
+
+    /**
+     * Stores where a request was redirected to. Nothing is stored if there was no redirect.
+     *
+     * @param url      the URL of the request, before the request number and range parameters
+     *                 are appended
+     * @param finalUrl the URL the request was eventually served from
+     */
+    public void put(@NonNull final String url, @NonNull final String finalUrl) {
+        final String resolvedUrl = withServerOf(url, finalUrl);
+        if (resolvedUrl == null || resolvedUrl.equals(url)) {
+            return;
+        }
+
+        redirectsFollowed.incrementAndGet();
+        synchronized (resolvedUrls) {
+            resolvedUrls.put(url, new ResolvedUrl(resolvedUrl,
+                    expirationMillisOf(url, clock.getAsLong())));
+        }
+    }
+
+    /**
+     * Forgets the resolution of a URL, e.g. because the server it was redirected to failed.
+     *
+     * @param url the URL of a request
+     */
+    public void remove(@NonNull final String url) {
+        synchronized (resolvedUrls) {
+            resolvedUrls.remove(url);
+        }
+    }
+
+    /**
+     * To be called when a request was successfully made with a resolution of this cache.
+     */
+    public void onRedirectAvoided() {
+        redirectsAvoided.incrementAndGet();
+    }
+
+    /**
+     * @return how many requests went directly to the server they would have been redirected to
+     */
+    public long getRedirectsAvoided() {
+        return redirectsAvoided.get();
+    }
+
+    /**
+     * @return how many redirects were followed and stored in this cache
+     */
+    public long getRedirectsFollowed() {
+        return redirectsFollowed.get();
+    }
+
+    /**
+     * @param url a stream URL
+     * @param now the current time, in milliseconds
+     * @return when the URL expires, in milliseconds, according to its {@code expire} parameter,
+     * or in {@link #DEFAULT_TTL_MILLIS} from now if it has none
+     */
+    @VisibleForTesting
+    static long expirationMillisOf(@NonNull final String url, final long now) {
+        final Matcher matcher = EXPIRE_PARAMETER.matcher(url);
+        if (matcher.find()) {
+            try {
+                return TimeUnit.SECONDS.toMillis(Long.parseLong(matcher.group(1)));
+            } catch (final NumberFormatException ignored) {
+                // fall back to the default expiration
+            }
+        }
+        return now + DEFAULT_TTL_MILLIS;
+    }
+
+    /**
+     * @param url      a URL
+     * @param finalUrl the URL it was redirected to
+     * @return {@code url} with the protocol, host and port of {@code finalUrl}, or {@code null}
+     * if one of the URLs is malformed
+     */
+    @Nullable
+    @VisibleForTesting
+    static String withServerOf(@NonNull final String url, @NonNull final String finalUrl) {
+        try {
+            final URL original = new URL(url);
+            final URL server = new URL(finalUrl);
+            return new URL(server.getProtocol(), server.getHost(), server.getPort(),
+                    original.getFile()).toString();
+        } catch (final MalformedURLException e) {
+            return null;
+        }
+    }
+
+    private static final class ResolvedUrl {
+        private final String url;
+        private final long expirationMillis;
+
+        ResolvedUrl(@NonNull final String url, final long expirationMillis) {
+            this.url = url;
+            this.expirationMillis = expirationMillis;
+        }
+    }
+}
@@ -85,6 +85,7 @@ public final class YoutubeHttpDataSource extends BaseDataSource implements HttpD
     public static final class Factory implements HttpDataSource.Factory {
 
         private final RequestProperties defaultRequestProperties;
+        private final ResolvedUrlCache resolvedUrlCache;
 
         @Nullable
         private TransferListener transferListener;
@@ -103,6 +104,7 @@ public final class YoutubeHttpDataSource extends BaseDataSource implements HttpD
          */
         public Factory() {
             defaultRequestProperties = new RequestProperties();
+            resolvedUrlCache = new ResolvedUrlCache();
             connectTimeoutMs = DEFAULT_CONNECT_TIMEOUT_MILLIS;
             readTimeoutMs = DEFAULT_READ_TIMEOUT_MILLIS;
         }
@@ -254,7 +256,8 @@ public final class YoutubeHttpDataSource extends BaseDataSource implements HttpD
                     rnParameterEnabled,
                     defaultRequestProperties,
                     contentTypePredicate,
-                    keepPostFor302Redirects);
+                    keepPostFor302Redirects,
+                    resolvedUrlCache);
             if (transferListener != null) {
                 dataSource.addTransferListener(transferListener);
             }
@@ -268,7 +271,7 @@ public final class YoutubeHttpDataSource extends BaseDataSource implements HttpD
     private static final int HTTP_STATUS_PERMANENT_REDIRECT = 308;
     private static final long MAX_BYTES_TO_DRAIN = 2048;
 
-    private static final String RN_PARAMETER = "&rn=";
+    static final String RN_PARAMETER = "&rn=";
     private static final String YOUTUBE_BASE_URL = "https://www.youtube.com";
 
     private final boolean allowCrossProtocolRedirects;
@@ -281,6 +284,7 @@ public final class YoutubeHttpDataSource extends BaseDataSource implements HttpD
     private final RequestProperties defaultRequestProperties;
     private final RequestProperties requestProperties;
     private final boolean keepPostFor302Redirects;
+    private final ResolvedUrlCache resolvedUrlCache;
 
     @Nullable
     private final Predicate<String> contentTypePredicate;
@@ -305,7 +309,8 @@ public final class YoutubeHttpDataSource extends BaseDataSource implements HttpD
                                   final boolean rnParameterEnabled,
                                   @Nullable final RequestProperties defaultRequestProperties,
                                   @Nullable final Predicate<String> contentTypePredicate,
-                                  final boolean keepPostFor302Redirects) {
+                                  final boolean keepPostFor302Redirects,
+                                  @NonNull final ResolvedUrlCache resolvedUrlCache) {
         super(true);
         this.connectTimeoutMillis = connectTimeoutMillis;
         this.readTimeoutMillis = readTimeoutMillis;
@@ -316,6 +321,7 @@ public final class YoutubeHttpDataSource extends BaseDataSource implements HttpD
         this.contentTypePredicate = contentTypePredicate;
         this.requestProperties = new RequestProperties();
         this.keepPostFor302Redirects = keepPostFor302Redirects;
+        this.resolvedUrlCache = resolvedUrlCache;
         this.requestNumber = 0;
     }
 
@@ -532,10 +538,52 @@ public final class YoutubeHttpDataSource extends BaseDataSource implements HttpD
         }
     }
 
+    /**
+     * Opens a connection for the given {@link DataSpec}, going directly to the server its URL
+     * was redirected to by a previous request, if it is in the {@link ResolvedUrlCache}.
+     *
+     * @param dataSpecToUse the {@link DataSpec} to open
+     * @return the connection opened, whose response code has been received
+     */
     @NonNull
     private HttpURLConnection makeConnection(@NonNull final DataSpec dataSpecToUse)
             throws IOException {
-        URL url = new URL(dataSpecToUse.uri.toString());
+        final String originalUrl = dataSpecToUse.uri.toString();
+        final String resolvedUrl = resolvedUrlCache.get(originalUrl);
+        if (resolvedUrl != null) {
+            try {
+                final HttpURLConnection httpURLConnection =
+                        makeConnection(dataSpecToUse, new URL(resolvedUrl));
+                if (isSuccessfulOrRangeNotSatisfiable(httpURLConnection.getResponseCode())) {
+                    resolvedUrlCache.onRedirectAvoided();
+                    return httpURLConnection;
+                }
+                httpURLConnection.disconnect();
+            } catch (final IOException e) {
+                // the server may not be able to serve this URL anymore, use the original one
+            }
+            resolvedUrlCache.remove(originalUrl);
+        }
+
+        final HttpURLConnection httpURLConnection =
+                makeConnection(dataSpecToUse, new URL(originalUrl));
+        // the URL of the connection is the one of the last redirect, once the response code has
+        // been received
+        if (isSuccessfulOrRangeNotSatisfiable(httpURLConnection.getResponseCode())) {
+            resolvedUrlCache.put(originalUrl, httpURLConnection.getURL().toString());
+        }
+        return httpURLConnection;
+    }
+
+    private static boolean isSuccessfulOrRangeNotSatisfiable(final int code) {
+        return (code >= 200 && code <= 299) || code == 416;
+    }
+
+    @NonNull
+    private HttpURLConnection makeConnection(@NonNull final DataSpec dataSpecToUse,
+                                             @NonNull final URL initialUrl)
+            throws IOException {
+        URL url = initialUrl;
         @HttpMethod int httpMethod = dataSpecToUse.httpMethod;
         @Nullable byte[] httpBody = dataSpecToUse.httpBody;
         final long position = dataSpecToUse.position;
@@ -933,7 +981,7 @@ public final class YoutubeHttpDataSource extends BaseDataSource implements HttpD
      * unnecessary because the whole resource is being requested.
      */
     @Nullable
-    private static String buildRangeParameter(final long position, final long length) {
+    static String buildRangeParameter(final long position, final long length) {
         if (position == 0 && length == C.LENGTH_UNSET) {
             return null;
         }
@@ -0,0 +1,555 @@
+/*
+ * Based on ExoPlayer's OkHttpDataSource, version 2.18.1.
+ *
+ * Original source code copyright (C) 2016 The Android Open Source Project, licensed under the
+ * Apache License, Version 2.0.
+ */
+
+package org.schabi.newpipe.player.datasource;
+
+import static com.google.android.exoplayer2.upstream.HttpUtil.buildRangeRequestHeader;
+import static com.google.android.exoplayer2.util.Assertions.checkNotNull;
+import static com.google.android.exoplayer2.util.Util.castNonNull;
+import static org.schabi.newpipe.extractor.services.youtube.YoutubeParsingHelper.getAndroidUserAgent;
+import static org.schabi.newpipe.extractor.services.youtube.YoutubeParsingHelper.getIosUserAgent;
+import static org.schabi.newpipe.extractor.services.youtube.YoutubeParsingHelper.isAndroidStreamingUrl;
+import static org.schabi.newpipe.extractor.services.youtube.YoutubeParsingHelper.isIosStreamingUrl;
+import static org.schabi.newpipe.extractor.services.youtube.YoutubeParsingHelper.isTvHtml5SimplyEmbeddedPlayerStreamingUrl;
+import static org.schabi.newpipe.extractor.services.youtube.YoutubeParsingHelper.isWebStreamingUrl;
+import static java.lang.Math.min;
+
+import android.net.Uri;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.PlaybackException;
+import com.google.android.exoplayer2.upstream.BaseDataSource;
+import com.google.android.exoplayer2.upstream.DataSource;
+import com.google.android.exoplayer2.upstream.DataSourceException;
+import com.google.android.exoplayer2.upstream.DataSpec;
+import com.google.android.exoplayer2.upstream.HttpDataSource;
+import com.google.android.exoplayer2.upstream.HttpUtil;
+import com.google.android.exoplayer2.upstream.TransferListener;
+import com.google.android.exoplayer2.util.Util;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.net.HttpHeaders;
+
+import org.schabi.newpipe.DownloaderImpl;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import okhttp3.Call;
+import okhttp3.HttpUrl;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+
+/**
+ * An {@link HttpDataSource} for YouTube streams which uses an OkHttp {@link Call.Factory},
+ * based on ExoPlayer's {@code OkHttpDataSource}.
+ *
+ * <p>
+ * It behaves like {@link YoutubeHttpDataSource} (same headers, same {@code rn} and {@code range}
+ * parameters), but its requests go through the connection pool of the provided client, which is
+ * usually derived from the one of {@link DownloaderImpl}. Consecutive segment and range requests
+ * to the same host therefore reuse an already established connection (multiplexed over HTTP/2
+ * when the server supports it) instead of paying a new TCP and TLS handshake each time. Redirects
+ * are followed by OkHttp.
+ * </p>
+ */
+public final class YoutubeOkHttpDataSource extends BaseDataSource implements HttpDataSource {
+
+    /**
+     * {@link DataSource.Factory} for {@link YoutubeOkHttpDataSource} instances.
+     */
+    public static final class Factory implements HttpDataSource.Factory {
+
+        private final Call.Factory callFactory;
+        private final RequestProperties defaultRequestProperties;
+        private final ResolvedUrlCache resolvedUrlCache;
+
+        @Nullable
+        private TransferListener transferListener;
+        private boolean rangeParameterEnabled;
+        private boolean rnParameterEnabled;
+
+        /**
+         * Creates an instance.
+         *
+         * @param callFactory the factory of the calls made by the data sources, usually an
+         *                    {@link okhttp3.OkHttpClient OkHttpClient} sharing its connection
+         *                    pool with the other clients of the app
+         */
+        public Factory(@NonNull final Call.Factory callFactory) {
+            this.callFactory = callFactory;
+            defaultRequestProperties = new RequestProperties();
+            resolvedUrlCache = new ResolvedUrlCache();
+        }
+
+        @NonNull
+        @Override
+        public Factory setDefaultRequestProperties(
+                @NonNull final Map<String, String> defaultRequestPropertiesMap) {
+            defaultRequestProperties.clearAndSet(defaultRequestPropertiesMap);
+            return this;
+        }
+
+        /**
+         * Sets whether the use of the {@code range} parameter instead of the {@code Range} header
+         * to request ranges of streams is enabled.
+         *
+         * @param rangeParameterEnabledValue whether the use of the {@code range} parameter is
+         *                                   enabled, see
+         *                                   {@link YoutubeHttpDataSource.Factory
+         *                                   #setRangeParameterEnabled(boolean)}
+         * @return This factory.
+         */
+        public Factory setRangeParameterEnabled(final boolean rangeParameterEnabledValue) {
+            rangeParameterEnabled = rangeParameterEnabledValue;
+            return this;
+        }
+
+        /**
+         * Sets whether the use of the {@code rn}, which stands for request number, parameter is
+         * enabled.
+         *
+         * @param rnParameterEnabledValue whether the {@code rn} parameter is appended to
+         *                                {@code videoplayback} URLs, see
+         *                                {@link YoutubeHttpDataSource.Factory
+         *                                #setRnParameterEnabled(boolean)}
+         * @return This factory.
+         */
+        public Factory setRnParameterEnabled(final boolean rnParameterEnabledValue) {
+            rnParameterEnabled = rnParameterEnabledValue;
+            return this;
+        }
+
+        /**
+         * Sets the {@link TransferListener} that will be used.
+         *
+         * @param transferListenerToUse The listener that will be used.
+         * @return This factory.
+         */
+        public Factory setTransferListener(
+                @Nullable final TransferListener transferListenerToUse) {
+            this.transferListener = transferListenerToUse;
+            return this;
+        }
+
+        @NonNull
+        @Override
+        public YoutubeOkHttpDataSource createDataSource() {
+            final YoutubeOkHttpDataSource dataSource = new YoutubeOkHttpDataSource(callFactory,
+                    rangeParameterEnabled, rnParameterEnabled, defaultRequestProperties,
+                    resolvedUrlCache);
+            if (transferListener != null) {
+                dataSource.addTransferListener(transferListener);
+            }
+            return dataSource;
+        }
+    }
+
+    private static final String YOUTUBE_BASE_URL = "https://www.youtube.com";
+
+    private final Call.Factory callFactory;
+    private final boolean rangeParameterEnabled;
+    private final boolean rnParameterEnabled;
+    private final RequestProperties defaultRequestProperties;
+    private final RequestProperties requestProperties;
+    private final ResolvedUrlCache resolvedUrlCache;
+
+    @Nullable
+    private DataSpec dataSpec;
+    @Nullable
+    private Response response;
+    @Nullable
+    private InputStream responseByteStream;
+    private boolean opened;
+    private long bytesToRead;
+    private long bytesRead;
+
+    private long requestNumber;
+
+    private YoutubeOkHttpDataSource(@NonNull final Call.Factory callFactory,
+                                    final boolean rangeParameterEnabled,
+                                    final boolean rnParameterEnabled,
+                                    @NonNull final RequestProperties defaultRequestProperties,
+                                    @NonNull final ResolvedUrlCache resolvedUrlCache) {
+        super(true);
+        this.callFactory = callFactory;
+        this.rangeParameterEnabled = rangeParameterEnabled;
+        this.rnParameterEnabled = rnParameterEnabled;
+        this.defaultRequestProperties = defaultRequestProperties;
+        this.requestProperties = new RequestProperties();
+        this.resolvedUrlCache = resolvedUrlCache;
+        this.requestNumber = 0;
+    }
+
+    @Override
+    @Nullable
+    public Uri getUri() {
+        return response == null ? null : Uri.parse(response.request().url().toString());
+    }
+
+    @Override
+    public int getResponseCode() {
+        return response == null ? -1 : response.code();
+    }
+
+    @NonNull
+    @Override
+    public Map<String, List<String>> getResponseHeaders() {
+        return response == null ? ImmutableMap.of() : response.headers().toMultimap();
+    }
+
+    @Override
+    public void setRequestProperty(@NonNull final String name, @NonNull final String value) {
+        checkNotNull(name);
+        checkNotNull(value);
+        requestProperties.set(name, value);
+    }
+
+    @Override
+    public void clearRequestProperty(@NonNull final String name) {
+        checkNotNull(name);
+        requestProperties.remove(name);
+    }
+
+    @Override
+    public void clearAllRequestProperties() {
+        requestProperties.clear();
+    }
+
+    /**
+     * Opens the source to read the specified data.
+     */
+    @Override
+    public long open(@NonNull final DataSpec dataSpecParameter) throws HttpDataSourceException {
+        this.dataSpec = dataSpecParameter;
+        bytesRead = 0;
+        bytesToRead = 0;
+        transferInitializing(dataSpecParameter);
+
+        final Response currentResponse;
+        final ResponseBody responseBody;
+        try {
+            currentResponse = execute(dataSpecParameter);
+            this.response = currentResponse;
+            responseBody = checkNotNull(currentResponse.body());
+            responseByteStream = responseBody.byteStream();
+        } catch (final IOException e) {
+            closeConnectionQuietly();
+            throw HttpDataSourceException.createForIOException(e, dataSpecParameter,
+                    HttpDataSourceException.TYPE_OPEN);
+        }
+
+        final int responseCode = currentResponse.code();
+
+        // Check for a valid response code.
+        if (!currentResponse.isSuccessful()) {
+            if (responseCode == 416) {
+                final long documentSize = HttpUtil.getDocumentSize(
+                        currentResponse.header(HttpHeaders.CONTENT_RANGE));
+                if (dataSpecParameter.position == documentSize) {
+                    opened = true;
+                    transferStarted(dataSpecParameter);
+                    return dataSpecParameter.length != C.LENGTH_UNSET
+                            ? dataSpecParameter.length
+                            : 0;
+                }
+            }
+
+            byte[] errorResponseBody;
+            try {
+                errorResponseBody = Util.toByteArray(castNonNull(responseByteStream));
+            } catch (final IOException e) {
+                errorResponseBody = Util.EMPTY_BYTE_ARRAY;
+            }
+
+            final Map<String, List<String>> headers = currentResponse.headers().toMultimap();
+            closeConnectionQuietly();
+            final IOException cause = responseCode == 416 ? new DataSourceException(
+                    PlaybackException.ERROR_CODE_IO_READ_POSITION_OUT_OF_RANGE)
+                    : null;
+            throw new InvalidResponseCodeException(responseCode, currentResponse.message(),
+                    cause, headers, dataSpecParameter, errorResponseBody);
+        }
+
+        // If we requested a range starting from a non-zero position and received a 200 rather
+        // than a 206, then the server does not support partial requests. We'll need to manually
+        // skip to the requested position.
+        final long bytesToSkip = !rangeParameterEnabled && responseCode == 200
+                && dataSpecParameter.position != 0
+                ? dataSpecParameter.position
+                : 0;
+
+        // Determine the length of the data to be read, after skipping. If OkHttp decompressed a
+        // gzipped body, its content length is unknown.
+        if (dataSpecParameter.length != C.LENGTH_UNSET) {
+            bytesToRead = dataSpecParameter.length;
+        } else {
+            final long contentLength = responseBody.contentLength();
+            bytesToRead = contentLength != -1 ? (contentLength - bytesToSkip) : C.LENGTH_UNSET;
+        }
+
+        opened = true;
+        transferStarted(dataSpecParameter);
+
+        try {
+            skipFully(bytesToSkip, dataSpecParameter);
+        } catch (final HttpDataSourceException e) {
+            closeConnectionQuietly();
+            throw e;
+        }
+
+        return bytesToRead;
+    }
+
+    @Override
+    public int read(@NonNull final byte[] buffer, final int offset, final int length)
+            throws HttpDataSourceException {
+        try {
+            return readInternal(buffer, offset, length);
+        } catch (final IOException e) {
+            throw HttpDataSourceException.createForIOException(e, castNonNull(dataSpec),
+                    HttpDataSourceException.TYPE_READ);
+        }
+    }
+
+    @Override
+    public void close() {
+        if (opened) {
+            opened = false;
+            transferEnded();
+        }
+        closeConnectionQuietly();
+    }
+
+    /**
+     * Makes the request of the given {@link DataSpec}, going directly to the server its URL was
+     * redirected to by a previous request, if it is in the {@link ResolvedUrlCache}.
+     *
+     * @param dataSpecToUse the {@link DataSpec} to open
+     * @return the response of the request
+     */
+    @NonNull
+    private Response execute(@NonNull final DataSpec dataSpecToUse) throws IOException {
+        final String originalUrl = dataSpecToUse.uri.toString();
+        final String resolvedUrl = resolvedUrlCache.get(originalUrl);
+        if (resolvedUrl != null) {
+            try {
+                final Response resolvedResponse = callFactory
+                        .newCall(makeRequest(dataSpecToUse, resolvedUrl))
+                        .execute();
+                if (isSuccessfulOrRangeNotSatisfiable(resolvedResponse)) {
+                    resolvedUrlCache.onRedirectAvoided();
+                    return resolvedResponse;
+                }
+                resolvedResponse.close();
+            } catch (final IOException e) {
+                // the server may not be able to serve this URL anymore, use the original one
+            }
+            resolvedUrlCache.remove(originalUrl);
+        }
+
+        final Response originalResponse = callFactory
+                .newCall(makeRequest(dataSpecToUse, originalUrl))
+                .execute();
+        if (isSuccessfulOrRangeNotSatisfiable(originalResponse)) {
+            resolvedUrlCache.put(originalUrl, originalResponse.request().url().toString());
+        }
+        return originalResponse;
+    }
+
+    private static boolean isSuccessfulOrRangeNotSatisfiable(@NonNull final Response response) {
+        return response.isSuccessful() || response.code() == 416;
+    }
+
+    @NonNull
+    private Request makeRequest(@NonNull final DataSpec dataSpecToUse,
+                                @NonNull final String baseUrl)
+            throws HttpDataSourceException {
+        final HttpUrl url = HttpUrl.parse(baseUrl);
+        if (url == null) {
+            throw new HttpDataSourceException("Malformed URL", dataSpecToUse,
+                    PlaybackException.ERROR_CODE_FAILED_RUNTIME_CHECK,
+                    HttpDataSourceException.TYPE_OPEN);
+        }
+
+        String requestUrl = url.toString();
+
+        // Don't add the request number parameter if it has been already added (for instance in
+        // DASH manifests) or if that's not a videoplayback URL
+        final boolean isVideoPlaybackUrl = url.encodedPath().startsWith("/videoplayback");
+        if (isVideoPlaybackUrl && rnParameterEnabled
+                && !requestUrl.contains(YoutubeHttpDataSource.RN_PARAMETER)) {
+            requestUrl += YoutubeHttpDataSource.RN_PARAMETER + requestNumber;
+            ++requestNumber;
+        }
+
+        if (rangeParameterEnabled && isVideoPlaybackUrl) {
+            final String rangeParameterBuilt = YoutubeHttpDataSource.buildRangeParameter(
+                    dataSpecToUse.position, dataSpecToUse.length);
+            if (rangeParameterBuilt != null) {
+                requestUrl += rangeParameterBuilt;
+            }
+        }
+
+        final Map<String, String> requestHeaders = new HashMap<>();
+        requestHeaders.putAll(defaultRequestProperties.getSnapshot());
+        requestHeaders.putAll(requestProperties.getSnapshot());
+        requestHeaders.putAll(dataSpecToUse.httpRequestHeaders);
+
+        final Request.Builder builder = new Request.Builder().url(requestUrl);
+        for (final Map.Entry<String, String> header : requestHeaders.entrySet()) {
+            builder.header(header.getKey(), header.getValue());
+        }
+
+        if (!rangeParameterEnabled) {
+            final String rangeHeader = buildRangeRequestHeader(
+                    dataSpecToUse.position, dataSpecToUse.length);
+            if (rangeHeader != null) {
+                builder.header(HttpHeaders.RANGE, rangeHeader);
+            }
+        }
+
+        if (isWebStreamingUrl(requestUrl)
+                || isTvHtml5SimplyEmbeddedPlayerStreamingUrl(requestUrl)) {
+            builder.header(HttpHeaders.ORIGIN, YOUTUBE_BASE_URL);
+            builder.header(HttpHeaders.REFERER, YOUTUBE_BASE_URL);
+            builder.header(HttpHeaders.SEC_FETCH_DEST, "empty");
+            builder.header(HttpHeaders.SEC_FETCH_MODE, "cors");
+            builder.header(HttpHeaders.SEC_FETCH_SITE, "cross-site");
+        }
+
+        final boolean isAndroidStreamingUrl = isAndroidStreamingUrl(requestUrl);
+        final boolean isIosStreamingUrl = isIosStreamingUrl(requestUrl);
+        if (isAndroidStreamingUrl) {
+            builder.header(HttpHeaders.USER_AGENT, getAndroidUserAgent(null));
+        } else if (isIosStreamingUrl) {
+            builder.header(HttpHeaders.USER_AGENT, getIosUserAgent(null));
+        } else {
+            // non-mobile user agent
+            builder.header(HttpHeaders.USER_AGENT, DownloaderImpl.USER_AGENT);
+        }
+
+        // When gzip is allowed, let OkHttp request it and decompress the body transparently
+        if (!dataSpecToUse.isFlagSet(DataSpec.FLAG_ALLOW_GZIP)) {
+            builder.header(HttpHeaders.ACCEPT_ENCODING, "identity");
+        }
+
+        // Mobile clients uses POST requests to fetch contents
+        final String method = isAndroidStreamingUrl || isIosStreamingUrl
+                ? "POST"
+                : DataSpec.getStringForHttpMethod(dataSpecToUse.httpMethod);
+        @Nullable RequestBody requestBody = null;
+        if (dataSpecToUse.httpBody != null) {
+            requestBody = RequestBody.create(dataSpecToUse.httpBody, null);
+        } else if ("POST".equals(method)) {
+            // OkHttp requires a body for POST requests
+            requestBody = RequestBody.create(Util.EMPTY_BYTE_ARRAY, null);
+        }
+        builder.method(method, requestBody);
+        return builder.build();
+    }
+
+    /**
+     * Attempts to skip the specified number of bytes in full.
+     *
+     * @param bytesToSkip   The number of bytes to skip.
+     * @param dataSpecToUse The {@link DataSpec}.
+     * @throws HttpDataSourceException If the thread is interrupted during the operation, or an
+     * error occurs while reading from the source, or if the data ended before skipping the
+     * specified number of bytes.
+     */
+    @SuppressWarnings("checkstyle:FinalParameters")
+    private void skipFully(long bytesToSkip, final DataSpec dataSpecToUse)
+            throws HttpDataSourceException {
+        if (bytesToSkip == 0) {
+            return;
+        }
+
+        final byte[] skipBuffer = new byte[4096];
+        try {
+            while (bytesToSkip > 0) {
+                final int readLength = (int) min(bytesToSkip, skipBuffer.length);
+                final int read = castNonNull(responseByteStream).read(skipBuffer, 0, readLength);
+                if (Thread.currentThread().isInterrupted()) {
+                    throw new InterruptedIOException();
+                }
+
+                if (read == -1) {
+                    throw new HttpDataSourceException(
+                            dataSpecToUse,
+                            PlaybackException.ERROR_CODE_IO_READ_POSITION_OUT_OF_RANGE,
+                            HttpDataSourceException.TYPE_OPEN);
+                }
+
+                bytesToSkip -= read;
+                bytesTransferred(read);
+            }
+        } catch (final IOException e) {
+            if (e instanceof HttpDataSourceException) {
+                throw (HttpDataSourceException) e;
+            }
+            throw new HttpDataSourceException(e, dataSpecToUse,
+                    PlaybackException.ERROR_CODE_IO_UNSPECIFIED,
+                    HttpDataSourceException.TYPE_OPEN);
+        }
+    }
+
+    /**
+     * Reads up to {@code length} bytes of data and stores them into {@code buffer}, starting at
+     * index {@code offset}.
+     *
+     * @param buffer     The buffer into which the read data should be stored.
+     * @param offset     The start offset into {@code buffer} at which data should be written.
+     * @param readLength The maximum number of bytes to read.
+     * @return The number of bytes read, or {@link C#RESULT_END_OF_INPUT} if the end of the opened
+     * range is reached.
+     * @throws IOException If an error occurs reading from the source.
+     */
+    @SuppressWarnings("checkstyle:FinalParameters")
+    private int readInternal(final byte[] buffer, final int offset, int readLength)
+            throws IOException {
+        if (readLength == 0) {
+            return 0;
+        }
+        if (bytesToRead != C.LENGTH_UNSET) {
+            final long bytesRemaining = bytesToRead - bytesRead;
+            if (bytesRemaining == 0) {
+                return C.RESULT_END_OF_INPUT;
+            }
+            readLength = (int) min(readLength, bytesRemaining);
+        }
+
+        final int read = castNonNull(responseByteStream).read(buffer, offset, readLength);
+        if (read == -1) {
+            return C.RESULT_END_OF_INPUT;
+        }
+
+        bytesRead += read;
+        bytesTransferred(read);
+        return read;
+    }
+
+    /**
+     * Closes the current response quietly, if there is one. The connection goes back to the
+     * pool of the client if it can be reused.
+     */
+    private void closeConnectionQuietly() {
+        if (response != null) {
+            checkNotNull(response.body()).close();
+            response = null;
+        }
+        responseByteStream = null;
+    }
+}
@@ -0,0 +1,80 @@
+package org.schabi.newpipe.player.helper;
+
+import android.net.Uri;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.google.android.exoplayer2.upstream.DataSpec;
+import com.google.android.exoplayer2.upstream.cache.CacheKeyFactory;
+
+/**
+ * A {@link CacheKeyFactory} which keys the media of YouTube's {@code googlevideo.com} servers by
+ * their content instead of by their url.
+ *
+ * <p>
+ * Media urls of YouTube expire after some hours and contain session-specific parameters, so the
+ * same stream (or DASH segment) gets a different url each time its video is opened again. Keying
+ * the cache by url would therefore make all the cached data useless as soon as the url changes.
+ * Instead, the key is built from the video id, the itag, the audio track tags, the last
+ * modification time and, for segmented streams, the segment number, which identify the bytes
+ * that are served. Byte ranges are handled by the cache itself, using the positions of the
+ * {@link DataSpec}s.
+ * </p>
+ *
+ * <p>
+ * Keys which are not urls of {@code googlevideo.com} servers (e.g. the ones generated by
+ * {@link org.schabi.newpipe.player.resolver.PlaybackResolver PlaybackResolver} for progressive
+ * streams) are used as is.
+ * </p>
+ */
+final class ContentCacheKeyFactory implements CacheKeyFactory {
+    static final ContentCacheKeyFactory INSTANCE = new ContentCacheKeyFactory();
+
+    private static final String GOOGLEVIDEO_HOST = ".googlevideo.com";
+    private static final String YOUTUBE_KEY_PREFIX = "youtube";
+    private static final String[] CONTENT_PARAMETERS = {"id", "itag", "xtags", "lmt", "sq"};
+
+    private ContentCacheKeyFactory() {
+    }
+
+    @NonNull
+    @Override
+    public String buildCacheKey(@NonNull final DataSpec dataSpec) {
+        final String key = dataSpec.key != null ? dataSpec.key : dataSpec.uri.toString();
+        final String contentKey = contentKeyOf(key);
+        return contentKey != null ? contentKey : key;
+    }
+
+    /**
+     * @param url a url, or any other string
+     * @return the content key of the url if it points to a {@code googlevideo.com} server and
+     * contains the id and the itag of the stream, {@code null} otherwise
+     */
+    @Nullable
+    static String contentKeyOf(@NonNull final String url) {
+        if (!url.startsWith("https://") && !url.startsWith("http://")) {
+            return null;
+        }
+
+        final Uri uri = Uri.parse(url);
+        final String host = uri.getHost();
+        if (host == null || !host.endsWith(GOOGLEVIDEO_HOST)) {
+            return null;
+        }
+
+        final StringBuilder contentKey = new StringBuilder(YOUTUBE_KEY_PREFIX);
+        for (final String parameter : CONTENT_PARAMETERS) {
+            final String value = uri.getQueryParameter(parameter);
+            if (value == null) {
+                if (parameter.equals("id") || parameter.equals("itag")) {
+                    // not enough information to identify the content
+                    return null;
+                }
+                continue;
+            }
+            contentKey.append(' ').append(parameter).append('=').append(value);
+        }
+        return contentKey.toString();
+    }
+}
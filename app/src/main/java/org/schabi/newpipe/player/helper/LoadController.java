@@ -1,27 +1,169 @@
 package org.schabi.newpipe.player.helper;
 
+import android.content.Context;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.VisibleForTesting;
+
+import com.google.android.exoplayer2.C;
 import com.google.android.exoplayer2.DefaultLoadControl;
+import com.google.android.exoplayer2.Format;
+import com.google.android.exoplayer2.Renderer;
+import com.google.android.exoplayer2.source.TrackGroupArray;
+import com.google.android.exoplayer2.trackselection.ExoTrackSelection;
+import com.google.android.exoplayer2.upstream.BandwidthMeter;
+import com.google.android.exoplayer2.upstream.DefaultAllocator;
+import com.google.android.exoplayer2.util.Util;
+
+import org.schabi.newpipe.MainActivity;
+import org.schabi.newpipe.util.ListHelper;
 
+/**
+ * A {@link DefaultLoadControl} whose buffer targets depend on a {@link Profile}, on whether the
+ * network is metered, on how the measured bandwidth compares to the bitrate of the selected
+ * tracks, on the playback speed and on previous rebufferings.
+ */
 public class LoadController extends DefaultLoadControl {
 
     public static final String TAG = "LoadController";
+    private static final boolean DEBUG = MainActivity.DEBUG;
+
+    /**
+     * If the estimated bandwidth is less than this many times the bitrate of the selected tracks,
+     * the network is barely fast enough and the buffer is kept full instead of being allowed to
+     * drain down to the minimum buffer duration.
+     */
+    @VisibleForTesting
+    static final float LOW_BANDWIDTH_HEADROOM = 1.5f;
+    /**
+     * The fraction of the gap between the minimum and maximum buffer durations by which the
+     * minimum buffer duration is raised after each rebuffering.
+     */
+    @VisibleForTesting
+    static final double REBUFFERING_MIN_BUFFER_STEP = 0.25;
+
+    /**
+     * How much media is buffered ahead of the playback position.
+     */
+    public enum Profile {
+        /**
+         * Keeps a short buffer, so that little data is wasted when playback is stopped early.
+         */
+        DATA_SAVER(10_000, 20_000, 15_000, 2_500, 5_000, false),
+        /**
+         * Fills the buffer up to ExoPlayer's default maximum buffer duration, but only starts
+         * loading again once half of it was played, so that the network can stay idle in
+         * between. The buffer is smaller on metered networks.
+         */
+        BALANCED(25_000, DEFAULT_MAX_BUFFER_MS, 30_000,
+                DEFAULT_BUFFER_FOR_PLAYBACK_MS, DEFAULT_BUFFER_FOR_PLAYBACK_AFTER_REBUFFER_MS,
+                false),
+        /**
+         * Buffers far ahead, to survive long network outages. The buffer durations take
+         * precedence over the default buffer size in bytes, which would otherwise stop loading
+         * long before two minutes of high bitrate media are buffered.
+         */
+        AGGRESSIVE(60_000, 120_000, 60_000, 1_500, 5_000, true);
+
+        final int minBufferMs;
+        final int maxBufferMs;
+        final int meteredMaxBufferMs;
+        final int bufferForPlaybackMs;
+        final int bufferForPlaybackAfterRebufferMs;
+        final boolean prioritizeTimeOverSizeThresholds;
+
+        Profile(final int minBufferMs,
+                final int maxBufferMs,
+                final int meteredMaxBufferMs,
+                final int bufferForPlaybackMs,
+                final int bufferForPlaybackAfterRebufferMs,
+                final boolean prioritizeTimeOverSizeThresholds) {
+            this.minBufferMs = minBufferMs;
+            this.maxBufferMs = maxBufferMs;
+            this.meteredMaxBufferMs = meteredMaxBufferMs;
+            this.bufferForPlaybackMs = bufferForPlaybackMs;
+            this.bufferForPlaybackAfterRebufferMs = bufferForPlaybackAfterRebufferMs;
+            this.prioritizeTimeOverSizeThresholds = prioritizeTimeOverSizeThresholds;
+        }
+    }
+
+    private final Context context;
+    private final BandwidthMeter bandwidthMeter;
+    private final Profile profile;
+
     private boolean preloadingEnabled = true;
+    private boolean metered;
+    private int selectedBitrate = Format.NO_VALUE;
+    private boolean loading;
+    private long minBufferUs;
+    private long maxBufferUs;
+    private boolean rebuffering;
+    private int rebufferingCount;
+    private long rebufferingStartMs;
+
+    /**
+     * @param context        the context used to check whether the network is metered
+     * @param bandwidthMeter the bandwidth meter the data sources of the player report to
+     * @param profile        the buffer targets to use
+     */
+    public LoadController(@NonNull final Context context,
+                          @NonNull final BandwidthMeter bandwidthMeter,
+                          @NonNull final Profile profile) {
+        // The buffer targets of the parent class are the largest ones the profile can reach, at
+        // the highest playback speed: it still takes care of the memory limit, while this class
+        // decides when to stop loading.
+        super(new DefaultAllocator(true, C.DEFAULT_BUFFER_SEGMENT_SIZE),
+                getLargestBufferMs(profile),
+                getLargestBufferMs(profile),
+                profile.bufferForPlaybackMs,
+                profile.bufferForPlaybackAfterRebufferMs,
+                DEFAULT_TARGET_BUFFER_BYTES,
+                profile.prioritizeTimeOverSizeThresholds,
+                DEFAULT_BACK_BUFFER_DURATION_MS,
+                DEFAULT_RETAIN_BACK_BUFFER_FROM_KEYFRAME);
+        this.context = context.getApplicationContext();
+        this.bandwidthMeter = bandwidthMeter;
+        this.profile = profile;
+    }
 
     @Override
     public void onPrepared() {
         preloadingEnabled = true;
+        loading = false;
+        metered = ListHelper.isMeteredNetwork(context);
         super.onPrepared();
     }
 
+    @Override
+    public void onTracksSelected(final Renderer[] renderers,
+                                 final TrackGroupArray trackGroups,
+                                 final ExoTrackSelection[] trackSelections) {
+        super.onTracksSelected(renderers, trackGroups, trackSelections);
+
+        int bitrate = 0;
+        for (final ExoTrackSelection trackSelection : trackSelections) {
+            if (trackSelection != null
+                    && trackSelection.getSelectedFormat().bitrate != Format.NO_VALUE) {
+                bitrate += trackSelection.getSelectedFormat().bitrate;
+            }
+        }
+        selectedBitrate = bitrate > 0 ? bitrate : Format.NO_VALUE;
+    }
+
     @Override
     public void onStopped() {
         preloadingEnabled = true;
+        loading = false;
+        rebuffering = false;
         super.onStopped();
     }
 
     @Override
     public void onReleased() {
         preloadingEnabled = true;
+        loading = false;
+        rebuffering = false;
         super.onReleased();
     }
 
@@ -32,11 +174,96 @@ public class LoadController extends DefaultLoadControl {
         if (!preloadingEnabled) {
             return false;
         }
-        return super.shouldContinueLoading(
+
+        final long[] bufferTargetsUs = getBufferTargetsUs(profile, metered,
+                bandwidthMeter.getBitrateEstimate(), selectedBitrate, rebufferingCount,
+                playbackSpeed);
+        minBufferUs = bufferTargetsUs[0];
+        maxBufferUs = bufferTargetsUs[1];
+
+        if (bufferedDurationUs >= maxBufferUs) {
+            loading = false;
+        } else if (bufferedDurationUs < minBufferUs) {
+            loading = true;
+        }
+        return loading && super.shouldContinueLoading(
                 playbackPositionUs, bufferedDurationUs, playbackSpeed);
     }
 
+    @Override
+    public boolean shouldStartPlayback(final long bufferedDurationUs,
+                                       final float playbackSpeed,
+                                       final boolean isRebuffering,
+                                       final long targetLiveOffsetUs) {
+        if (isRebuffering && !rebuffering) {
+            rebuffering = true;
+            rebufferingCount++;
+            rebufferingStartMs = System.currentTimeMillis();
+            if (DEBUG) {
+                Log.d(TAG, "Rebuffering #" + rebufferingCount + ": profile = [" + profile
+                        + "], metered = [" + metered + "], bandwidth estimate = ["
+                        + bandwidthMeter.getBitrateEstimate() + " bps], selected bitrate = ["
+                        + selectedBitrate + " bps], buffer targets = ["
+                        + Util.usToMs(minBufferUs) + " ms, " + Util.usToMs(maxBufferUs)
+                        + " ms], playback speed = [" + playbackSpeed + "]");
+            }
+        }
+
+        final boolean shouldStartPlayback = super.shouldStartPlayback(
+                bufferedDurationUs, playbackSpeed, isRebuffering, targetLiveOffsetUs);
+        if (shouldStartPlayback && rebuffering) {
+            rebuffering = false;
+            if (DEBUG) {
+                Log.d(TAG, "Rebuffering #" + rebufferingCount + " lasted "
+                        + (System.currentTimeMillis() - rebufferingStartMs) + " ms");
+            }
+        }
+        return shouldStartPlayback;
+    }
+
+    private static int getLargestBufferMs(@NonNull final Profile profile) {
+        return (int) (profile.maxBufferMs * PlaybackParameterDialog.MAX_PITCH_OR_SPEED);
+    }
+
     public void disablePreloadingOfCurrentTrack() {
         preloadingEnabled = false;
     }
+
+    /**
+     * @param profile       the buffer targets to start from
+     * @param metered       whether the network is metered
+     * @param bandwidth     the estimated bandwidth, in bits per second
+     * @param bitrate       the bitrate of the selected tracks, in bits per second, or
+     *                      {@link Format#NO_VALUE} if unknown
+     * @param rebufferings  how many times playback had to wait for data in this session
+     * @param playbackSpeed the playback speed
+     * @return the minimum and maximum buffer durations, in microseconds of media
+     */
+    @VisibleForTesting
+    static long[] getBufferTargetsUs(@NonNull final Profile profile,
+                                     final boolean metered,
+                                     final long bandwidth,
+                                     final int bitrate,
+                                     final int rebufferings,
+                                     final float playbackSpeed) {
+        final long maxBufferMs = metered ? profile.meteredMaxBufferMs : profile.maxBufferMs;
+        long minBufferMs = Math.min(profile.minBufferMs, maxBufferMs);
+
+        // load earlier after each rebuffering, at most as early as the maximum buffer allows
+        minBufferMs = maxBufferMs - (long) ((maxBufferMs - minBufferMs)
+                * Math.pow(1 - REBUFFERING_MIN_BUFFER_STEP, rebufferings));
+
+        if (bitrate != Format.NO_VALUE && bandwidth > 0
+                && bandwidth < bitrate * LOW_BANDWIDTH_HEADROOM) {
+            minBufferMs = maxBufferMs;
+        }
+
+        // buffered durations are in media time: scale the targets, so that they still last
+        // as long when playing faster or slower
+        final double speed = playbackSpeed > 0
+                ? Math.min(playbackSpeed, PlaybackParameterDialog.MAX_PITCH_OR_SPEED) : 1;
+        return new long[]{
+                Util.msToUs((long) (minBufferMs * speed)),
+                Util.msToUs((long) (maxBufferMs * speed))};
+    }
 }
@@ -0,0 +1,115 @@
+package org.schabi.newpipe.player.helper;
+
+import androidx.annotation.NonNull;
+
+import com.google.android.exoplayer2.upstream.DataSource;
+import com.google.android.exoplayer2.upstream.DataSpec;
+import com.google.android.exoplayer2.upstream.TransferListener;
+import com.google.android.exoplayer2.upstream.cache.CacheDataSource;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counts, since the app was started, how many bytes the player read from its media cache and
+ * how many it had to download, so that the cache hit rate can be shown in the debug settings.
+ */
+public final class PlayerCacheStatistics {
+    private static final AtomicLong CACHED_BYTES = new AtomicLong();
+    private static final AtomicLong NETWORK_BYTES = new AtomicLong();
+    private static final AtomicLong CACHE_BYPASSES = new AtomicLong();
+
+    /**
+     * Counts the bytes read from the cache and the requests which could not use the cache.
+     */
+    static final CacheDataSource.EventListener CACHE_LISTENER =
+            new CacheDataSource.EventListener() {
+                @Override
+                public void onCachedBytesRead(final long cacheSizeBytes,
+                                              final long cachedBytesRead) {
+                    CACHED_BYTES.addAndGet(cachedBytesRead);
+                }
+
+                @Override
+                public void onCacheIgnored(final int reason) {
+                    CACHE_BYPASSES.incrementAndGet();
+                }
+            };
+
+    /**
+     * Counts the bytes downloaded by the upstream data sources of the cache.
+     */
+    static final TransferListener NETWORK_LISTENER = new TransferListener() {
+        @Override
+        public void onTransferInitializing(@NonNull final DataSource source,
+                                           @NonNull final DataSpec dataSpec,
+                                           final boolean isNetwork) {
+            // only transferred bytes are counted
+        }
+
+        @Override
+        public void onTransferStart(@NonNull final DataSource source,
+                                    @NonNull final DataSpec dataSpec,
+                                    final boolean isNetwork) {
+            // only transferred bytes are counted
+        }
+
+        @Override
+        public void onBytesTransferred(@NonNull final DataSource source,
+                                       @NonNull final DataSpec dataSpec,
+                                       final boolean isNetwork,
+                                       final int bytesTransferred) {
+            if (isNetwork) {
+                NETWORK_BYTES.addAndGet(bytesTransferred);
+            }
+        }
+
+        @Override
+        public void onTransferEnd(@NonNull final DataSource source,
+                                  @NonNull final DataSpec dataSpec,
+                                  final boolean isNetwork) {
+            // only transferred bytes are counted
+        }
+    };
+
+    private PlayerCacheStatistics() {
+    }
+
+    /**
+     * @return the number of media bytes read from the cache
+     */
+    public static long getCachedBytes() {
+        return CACHED_BYTES.get();
+    }
+
+    /**
+     * @return the number of media bytes downloaded because they were not in the cache
+     */
+    public static long getNetworkBytes() {
+        return NETWORK_BYTES.get();
+    }
+
+    /**
+     * @return the number of requests for which the cache was not used, e.g. because of an error
+     * or of an unset length
+     */
+    public static long getCacheBypasses() {
+        return CACHE_BYPASSES.get();
+    }
+
+    /**
+     * @return the percentage of the media bytes which were read from the cache
+     */
+    public static int getHitRatePercentage() {
+        final long cached = CACHED_BYTES.get();
+        final long total = cached + NETWORK_BYTES.get();
+        return total == 0 ? 0 : (int) (cached * 100 / total);
+    }
+
+    /**
+     * @return the number of bytes currently stored in the player cache, or 0 if it has not been
+     * created yet
+     */
+    public static long getCacheSize() {
+        return PlayerDataSource.getCacheSpace();
+    }
+}
@@ -1,5 +1,7 @@
 package org.schabi.newpipe.player.helper;
 
+import static com.google.android.exoplayer2.upstream.DefaultHttpDataSource.DEFAULT_CONNECT_TIMEOUT_MILLIS;
+import static com.google.android.exoplayer2.upstream.DefaultHttpDataSource.DEFAULT_READ_TIMEOUT_MILLIS;
 import static org.schabi.newpipe.MainActivity.DEBUG;
 
 import android.content.Context;
@@ -19,8 +21,8 @@ import com.google.android.exoplayer2.source.smoothstreaming.SsMediaSource;
 import com.google.android.exoplayer2.upstream.DataSource;
 import com.google.android.exoplayer2.upstream.DefaultDataSource;
 import com.google.android.exoplayer2.upstream.DefaultHttpDataSource;
+import com.google.android.exoplayer2.upstream.HttpDataSource;
 import com.google.android.exoplayer2.upstream.TransferListener;
-import com.google.android.exoplayer2.upstream.cache.LeastRecentlyUsedCacheEvictor;
 import com.google.android.exoplayer2.upstream.cache.SimpleCache;
 
 import org.schabi.newpipe.DownloaderImpl;
@@ -29,8 +31,12 @@ import org.schabi.newpipe.extractor.services.youtube.dashmanifestcreators.Youtub
 import org.schabi.newpipe.extractor.services.youtube.dashmanifestcreators.YoutubeProgressiveDashManifestCreator;
 import org.schabi.newpipe.player.datasource.NonUriHlsDataSourceFactory;
 import org.schabi.newpipe.player.datasource.YoutubeHttpDataSource;
+import org.schabi.newpipe.player.datasource.YoutubeOkHttpDataSource;
 
 import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.OkHttpClient;
 
 public class PlayerDataSource {
     public static final String TAG = PlayerDataSource.class.getSimpleName();
@@ -64,6 +70,13 @@ public class PlayerDataSource {
      */
     private static SimpleCache cache;
 
+    /**
+     * The client used by {@link YoutubeOkHttpDataSource}s, derived from the one of
+     * {@link DownloaderImpl} to share its connection pool, but with the default timeouts of
+     * ExoPlayer.
+     */
+    private static OkHttpClient pooledClient;
+
 
     private final int progressiveLoadIntervalBytes;
 
@@ -95,11 +108,11 @@ public class PlayerDataSource {
 
         // YouTube-specific data source factories use getYoutubeHttpDataSourceFactory()
         ytHlsCacheDataSourceFactory = new CacheFactory(context, transferListener, cache,
-                getYoutubeHttpDataSourceFactory(false, false));
+                getYoutubeHttpDataSourceFactory(context, false, false));
         ytDashCacheDataSourceFactory = new CacheFactory(context, transferListener, cache,
-                getYoutubeHttpDataSourceFactory(true, true));
+                getYoutubeHttpDataSourceFactory(context, true, true));
         ytProgressiveDashCacheDataSourceFactory = new CacheFactory(context, transferListener, cache,
-                getYoutubeHttpDataSourceFactory(false, true));
+                getYoutubeHttpDataSourceFactory(context, false, true));
 
         // set the maximum size to manifest creators
         YoutubeProgressiveDashManifestCreator.getCache().setMaximumSize(MAX_MANIFEST_CACHE_SIZE);
@@ -190,15 +203,47 @@ public class PlayerDataSource {
         return new DefaultDashChunkSource.Factory(dataSourceFactory);
     }
 
-    private static YoutubeHttpDataSource.Factory getYoutubeHttpDataSourceFactory(
+    static HttpDataSource.Factory getYoutubeHttpDataSourceFactory(
+            final Context context,
             final boolean rangeParameterEnabled,
             final boolean rnParameterEnabled) {
+        if (PlayerHelper.isUsingPooledConnections(context)) {
+            return new YoutubeOkHttpDataSource.Factory(getPooledClient())
+                    .setRangeParameterEnabled(rangeParameterEnabled)
+                    .setRnParameterEnabled(rnParameterEnabled);
+        }
         return new YoutubeHttpDataSource.Factory()
                 .setRangeParameterEnabled(rangeParameterEnabled)
                 .setRnParameterEnabled(rnParameterEnabled);
     }
 
-    private static void instantiateCacheIfNeeded(final Context context) {
+    private static synchronized OkHttpClient getPooledClient() {
+        if (pooledClient == null) {
+            pooledClient = DownloaderImpl.getInstance().getClient().newBuilder()
+                    .connectTimeout(DEFAULT_CONNECT_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)
+                    .readTimeout(DEFAULT_READ_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)
+                    .build();
+        }
+        return pooledClient;
+    }
+
+    /**
+     * @return the number of bytes stored in the player cache, or 0 if it has not been created
+     */
+    static long getCacheSpace() {
+        return cache == null ? 0 : cache.getCacheSpace();
+    }
+
+    /**
+     * @param context the context used to create the cache, if it does not exist yet
+     * @return the {@link SimpleCache} shared by all the players
+     */
+    static SimpleCache getCache(final Context context) {
+        instantiateCacheIfNeeded(context);
+        return cache;
+    }
+
+    private static synchronized void instantiateCacheIfNeeded(final Context context) {
         if (cache == null) {
             final File cacheDir = new File(context.getExternalCacheDir(), CACHE_FOLDER_NAME);
             if (DEBUG) {
@@ -208,8 +253,8 @@ public class PlayerDataSource {
                 Log.w(TAG, "instantiateCacheIfNeeded: could not create cache dir");
             }
 
-            final LeastRecentlyUsedCacheEvictor evictor =
-                    new LeastRecentlyUsedCacheEvictor(PlayerHelper.getPreferredCacheSize());
+            final ReplayAwareCacheEvictor evictor =
+                    new ReplayAwareCacheEvictor(PlayerHelper.getPreferredCacheSize());
             cache = new SimpleCache(cacheDir, evictor, new StandaloneDatabaseProvider(context));
         }
     }
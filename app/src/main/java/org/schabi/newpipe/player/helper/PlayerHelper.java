@@ -405,6 +405,46 @@ public final class PlayerHelper {
         return Integer.parseInt(preferredIntervalBytes) * 1024;
     }
 
+    /**
+     * @param context the context to read the preferences with
+     * @return how many seconds of the upcoming streams should be pre-cached,
+     * {@link PreCacheWorker#WHOLE_FILE} to pre-cache the whole files, or 0 if pre-caching is
+     * disabled
+     */
+    public static int getPreCacheSeconds(@NonNull final Context context) {
+        return Integer.parseInt(getPreferences(context).getString(
+                context.getString(R.string.pre_cache_amount_key),
+                context.getString(R.string.pre_cache_amount_disabled_value)));
+    }
+
+    /**
+     * @param context the context to read the preferences with
+     * @return whether YouTube streams should be fetched through the shared, pooled OkHttp client
+     * of {@link org.schabi.newpipe.DownloaderImpl DownloaderImpl}
+     */
+    public static boolean isUsingPooledConnections(@NonNull final Context context) {
+        return getPreferences(context)
+                .getBoolean(context.getString(R.string.use_pooled_connections_key), false);
+    }
+
+    /**
+     * @param context the context to read the preferences with
+     * @return the buffer targets the player should use
+     */
+    @NonNull
+    public static LoadController.Profile getLoadControlProfile(@NonNull final Context context) {
+        final String profile = getPreferences(context).getString(
+                context.getString(R.string.load_control_profile_key), "");
+        if (profile.equals(context.getString(R.string.load_control_profile_data_saver_key))) {
+            return LoadController.Profile.DATA_SAVER;
+        } else if (profile.equals(
+                context.getString(R.string.load_control_profile_aggressive_key))) {
+            return LoadController.Profile.AGGRESSIVE;
+        } else {
+            return LoadController.Profile.BALANCED; // default
+        }
+    }
+
     ////////////////////////////////////////////////////////////////////////////
     // Private helpers
     ////////////////////////////////////////////////////////////////////////////
@@ -503,4 +543,10 @@ public final class PlayerHelper {
                 player.getContext().getString(R.string.seek_duration_key),
                 player.getContext().getString(R.string.seek_duration_default_value))));
     }
+
+    public static int retrieveLookAheadSizeFromPreferences(final Player player) {
+        return Integer.parseInt(Objects.requireNonNull(player.getPrefs().getString(
+                player.getContext().getString(R.string.preload_queue_items_key),
+                player.getContext().getString(R.string.preload_queue_items_default_value))));
+    }
 }
@@ -0,0 +1,310 @@
+package org.schabi.newpipe.player.helper;
+
+import static org.schabi.newpipe.MainActivity.DEBUG;
+import static org.schabi.newpipe.util.ListHelper.getFilteredAudioStreams;
+import static org.schabi.newpipe.util.ListHelper.getPlayableStreams;
+
+import android.content.Context;
+import android.net.Uri;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.work.Constraints;
+import androidx.work.Data;
+import androidx.work.ExistingWorkPolicy;
+import androidx.work.NetworkType;
+import androidx.work.OneTimeWorkRequest;
+import androidx.work.WorkManager;
+import androidx.work.Worker;
+import androidx.work.WorkerParameters;
+
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.upstream.DataSource;
+import com.google.android.exoplayer2.upstream.DataSpec;
+import com.google.android.exoplayer2.upstream.DefaultHttpDataSource;
+import com.google.android.exoplayer2.upstream.cache.CacheWriter;
+
+import org.schabi.newpipe.App;
+import org.schabi.newpipe.DownloaderImpl;
+import org.schabi.newpipe.extractor.ServiceList;
+import org.schabi.newpipe.extractor.services.youtube.ItagItem;
+import org.schabi.newpipe.extractor.stream.AudioStream;
+import org.schabi.newpipe.extractor.stream.DeliveryMethod;
+import org.schabi.newpipe.extractor.stream.Stream;
+import org.schabi.newpipe.extractor.stream.StreamInfo;
+import org.schabi.newpipe.extractor.stream.StreamInfoItem;
+import org.schabi.newpipe.extractor.stream.StreamType;
+import org.schabi.newpipe.extractor.stream.VideoStream;
+import org.schabi.newpipe.player.playqueue.PlayQueueItem;
+import org.schabi.newpipe.player.resolver.PlaybackResolver;
+import org.schabi.newpipe.util.ExtractorHelper;
+import org.schabi.newpipe.util.ListHelper;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Worker which stores the beginning (or the whole file, see {@link #WHOLE_FILE}) of the streams
+ * the user is likely to play soon in the player cache, so that their playback starts instantly
+ * and survives short offline periods. It only runs on unmetered networks while the device is
+ * charging, and is used for the next items of the play queue and for the newest streams of the
+ * feed.
+ *
+ * <p>
+ * The streams are chosen like the player does by default, and are written with the same cache
+ * keys and data sources as the ones of {@link PlayerDataSource}, so that the player finds them.
+ * Only progressive streams are supported: livestreams and streams which need a manifest are
+ * skipped.
+ * </p>
+ */
+public final class PreCacheWorker extends Worker {
+    private static final String TAG = PreCacheWorker.class.getSimpleName();
+
+    /**
+     * Value of {@link PlayerHelper#getPreCacheSeconds(Context)} meaning that whole files have to
+     * be pre-cached.
+     */
+    public static final int WHOLE_FILE = -1;
+
+    /**
+     * How many streams of the play queue or of the feed are pre-cached at most.
+     */
+    static final int MAX_ITEMS = 5;
+
+    /**
+     * The maximum amount of bytes pre-cached for one stream, so that pre-caching never evicts
+     * most of the cache by itself. Whole files which are bigger are only pre-cached up to this
+     * size.
+     */
+    static final long MAX_BYTES_PER_STREAM = PlayerHelper.getPreferredCacheSize() / 4;
+
+    /**
+     * The bitrate assumed for streams whose bitrate is unknown.
+     */
+    private static final long DEFAULT_BITS_PER_SECOND = 2_500_000;
+
+    /**
+     * Bytes added to the estimated size of the first seconds of a stream, for its header and
+     * its index.
+     */
+    private static final long HEADER_BYTES = 64 * 1024;
+
+    private static final String QUEUE_WORK_NAME = App.PACKAGE_NAME + "_pre_cache_queue";
+    private static final String FEED_WORK_NAME = App.PACKAGE_NAME + "_pre_cache_feed";
+    private static final String KEY_SERVICE_IDS = "service_ids";
+    private static final String KEY_URLS = "urls";
+
+    @Nullable
+    private volatile CacheWriter currentWriter;
+
+    public PreCacheWorker(@NonNull final Context context,
+                          @NonNull final WorkerParameters workerParams) {
+        super(context, workerParams);
+    }
+
+    /**
+     * Pre-caches the items following the current one in the play queue, replacing any pending
+     * pre-caching of a previous queue position. Does nothing if pre-caching is disabled.
+     *
+     * @param context   the context to use
+     * @param nextItems the items following the current one, in playing order
+     */
+    public static void enqueueQueueItems(@NonNull final Context context,
+                                         @NonNull final List<PlayQueueItem> nextItems) {
+        final int count = Math.min(nextItems.size(), MAX_ITEMS);
+        final int[] serviceIds = new int[count];
+        final String[] urls = new String[count];
+        for (int i = 0; i < count; i++) {
+            serviceIds[i] = nextItems.get(i).getServiceId();
+            urls[i] = nextItems.get(i).getUrl();
+        }
+        enqueue(context, QUEUE_WORK_NAME, serviceIds, urls);
+    }
+
+    /**
+     * Pre-caches the first new streams of the feed, replacing any pending pre-caching of
+     * previous feed streams. Does nothing if pre-caching is disabled.
+     *
+     * @param context    the context to use
+     * @param newStreams the new streams of the feed, the most interesting ones first
+     */
+    public static void enqueueFeedItems(@NonNull final Context context,
+                                        @NonNull final List<StreamInfoItem> newStreams) {
+        final int count = Math.min(newStreams.size(), MAX_ITEMS);
+        final int[] serviceIds = new int[count];
+        final String[] urls = new String[count];
+        for (int i = 0; i < count; i++) {
+            serviceIds[i] = newStreams.get(i).getServiceId();
+            urls[i] = newStreams.get(i).getUrl();
+        }
+        enqueue(context, FEED_WORK_NAME, serviceIds, urls);
+    }
+
+    private static void enqueue(@NonNull final Context context,
+                                @NonNull final String workName,
+                                @NonNull final int[] serviceIds,
+                                @NonNull final String[] urls) {
+        if (urls.length == 0 || PlayerHelper.getPreCacheSeconds(context) == 0) {
+            return;
+        }
+
+        final Constraints constraints = new Constraints.Builder()
+                .setRequiredNetworkType(NetworkType.UNMETERED)
+                .setRequiresCharging(true)
+                .build();
+        final OneTimeWorkRequest request = new OneTimeWorkRequest.Builder(PreCacheWorker.class)
+                .setConstraints(constraints)
+                .setInputData(new Data.Builder()
+                        .putIntArray(KEY_SERVICE_IDS, serviceIds)
+                        .putStringArray(KEY_URLS, urls)
+                        .build())
+                .build();
+        WorkManager.getInstance(context)
+                .enqueueUniqueWork(workName, ExistingWorkPolicy.REPLACE, request);
+    }
+
+    @NonNull
+    @Override
+    public Result doWork() {
+        final int seconds = PlayerHelper.getPreCacheSeconds(getApplicationContext());
+        final int[] serviceIds = getInputData().getIntArray(KEY_SERVICE_IDS);
+        final String[] urls = getInputData().getStringArray(KEY_URLS);
+        if (seconds == 0 || serviceIds == null || urls == null) {
+            return Result.success();
+        }
+
+        for (int i = 0; i < urls.length && !isStopped(); i++) {
+            try {
+                final StreamInfo info = ExtractorHelper
+                        .getStreamInfo(serviceIds[i], urls[i], false)
+                        .blockingGet();
+                for (final Stream stream : selectStreams(info)) {
+                    if (isStopped()) {
+                        break;
+                    }
+                    preCache(info, stream, seconds);
+                }
+            } catch (final Exception e) {
+                // pre-caching is only an optimization, move on to the next stream
+                Log.w(TAG, "Could not pre-cache " + urls[i], e);
+            }
+        }
+        return Result.success();
+    }
+
+    @Override
+    public void onStopped() {
+        final CacheWriter writer = currentWriter;
+        if (writer != null) {
+            writer.cancel();
+        }
+    }
+
+    /**
+     * @param info the info of a stream
+     * @return the progressive streams the player would choose by default: the video stream of
+     * the default resolution and, if it has no audio, the default audio stream
+     */
+    @NonNull
+    private List<Stream> selectStreams(@NonNull final StreamInfo info) {
+        final List<Stream> streams = new ArrayList<>();
+        if (info.getStreamType() != StreamType.VIDEO_STREAM
+                && info.getStreamType() != StreamType.AUDIO_STREAM) {
+            return streams; // livestreams can't be cached in advance
+        }
+
+        final Context context = getApplicationContext();
+        final List<VideoStream> videoStreams = ListHelper.getSortedStreamVideosList(context,
+                getPlayableStreams(info.getVideoStreams(), info.getServiceId()),
+                getPlayableStreams(info.getVideoOnlyStreams(), info.getServiceId()), false, true);
+        final List<AudioStream> audioStreams =
+                getFilteredAudioStreams(context, info.getAudioStreams());
+
+        final int videoIndex = ListHelper.getDefaultResolutionIndex(context, videoStreams);
+        final VideoStream video = videoIndex >= 0 && videoIndex < videoStreams.size()
+                ? videoStreams.get(videoIndex) : null;
+        if (video != null) {
+            streams.add(video);
+        }
+        if (video == null || video.isVideoOnly()) {
+            final int audioIndex = ListHelper.getAudioFormatIndex(context, audioStreams, null);
+            if (audioIndex >= 0 && audioIndex < audioStreams.size()) {
+                streams.add(audioStreams.get(audioIndex));
+            }
+        }
+
+        streams.removeIf(stream -> !stream.isUrl()
+                || stream.getDeliveryMethod() != DeliveryMethod.PROGRESSIVE_HTTP);
+        return streams;
+    }
+
+    private void preCache(@NonNull final StreamInfo info,
+                          @NonNull final Stream stream,
+                          final int seconds) throws IOException {
+        final DataSource.Factory upstreamFactory;
+        @Nullable final String cacheKey;
+        if (info.getService() == ServiceList.YouTube) {
+            final boolean playedAsDash = stream instanceof AudioStream
+                    || (stream instanceof VideoStream && ((VideoStream) stream).isVideoOnly());
+            // same YoutubeHttpDataSource parameters as the ones of PlayerDataSource; streams
+            // played through a generated DASH manifest are keyed by their content url
+            upstreamFactory = PlayerDataSource.getYoutubeHttpDataSourceFactory(
+                    getApplicationContext(), playedAsDash, true);
+            cacheKey = playedAsDash ? null : PlaybackResolver.cacheKeyOf(info, stream);
+        } else {
+            upstreamFactory =
+                    new DefaultHttpDataSource.Factory().setUserAgent(DownloaderImpl.USER_AGENT);
+            cacheKey = PlaybackResolver.cacheKeyOf(info, stream);
+        }
+
+        final long length;
+        if (seconds == WHOLE_FILE) {
+            length = estimateLength(stream, info.getDuration()) <= MAX_BYTES_PER_STREAM
+                    ? C.LENGTH_UNSET : MAX_BYTES_PER_STREAM;
+        } else {
+            length = Math.min(estimateLength(stream, seconds), MAX_BYTES_PER_STREAM);
+        }
+        final DataSpec dataSpec = new DataSpec.Builder()
+                .setUri(Uri.parse(stream.getContent()))
+                .setKey(cacheKey)
+                .setLength(length)
+                .build();
+
+        final Context context = getApplicationContext();
+        final CacheWriter writer = new CacheWriter(
+                new CacheFactory(context, null, PlayerDataSource.getCache(context),
+                        upstreamFactory).createDataSource(),
+                dataSpec, null, null);
+        currentWriter = writer;
+        try {
+            writer.cache();
+            if (DEBUG) {
+                Log.d(TAG, "Pre-cached " + (length == C.LENGTH_UNSET ? "all" : length)
+                        + " bytes of " + info.getUrl()
+                        + " (" + stream.getFormat() + ")");
+            }
+        } finally {
+            currentWriter = null;
+        }
+    }
+
+    /**
+     * @param stream  a stream
+     * @param seconds a duration
+     * @return an estimation of the number of bytes needed to play the first {@code seconds} of
+     * the stream
+     */
+    static long estimateLength(@NonNull final Stream stream, final long seconds) {
+        long bitsPerSecond = DEFAULT_BITS_PER_SECOND;
+        final ItagItem itagItem = stream.getItagItem();
+        if (itagItem != null && itagItem.getBitrate() > 0) {
+            bitsPerSecond = itagItem.getBitrate();
+        } else if (stream instanceof AudioStream
+                && ((AudioStream) stream).getAverageBitrate() > 0) {
+            bitsPerSecond = ((AudioStream) stream).getAverageBitrate() * 1000L;
+        }
+        return HEADER_BYTES + bitsPerSecond / 8 * seconds;
+    }
+}
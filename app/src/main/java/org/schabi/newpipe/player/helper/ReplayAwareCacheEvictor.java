@@ -0,0 +1,127 @@
+package org.schabi.newpipe.player.helper;
+
+import androidx.annotation.NonNull;
+
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.upstream.cache.Cache;
+import com.google.android.exoplayer2.upstream.cache.CacheEvictor;
+import com.google.android.exoplayer2.upstream.cache.CacheSpan;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A {@link CacheEvictor} which, like
+ * {@link com.google.android.exoplayer2.upstream.cache.LeastRecentlyUsedCacheEvictor
+ * LeastRecentlyUsedCacheEvictor}, evicts the least recently used spans first, but which keeps
+ * the content which has already been read back from the cache (i.e. replayed or sought back to)
+ * for longer than the content which has only been written once.
+ *
+ * <p>
+ * Each time a span of a key is read from the cache, the retention of all the spans of that key
+ * is extended by {@link #REPLAY_BONUS_MILLIS}, up to {@link #MAX_REPLAY_BONUSES} times.
+ * </p>
+ */
+final class ReplayAwareCacheEvictor implements CacheEvictor {
+    static final long REPLAY_BONUS_MILLIS = TimeUnit.HOURS.toMillis(6);
+    static final int MAX_REPLAY_BONUSES = 4;
+
+    /**
+     * When an eviction is needed, this fraction of the maximum cache size is freed in addition
+     * to what is required, so that the spans don't have to be sorted for every new span.
+     */
+    private static final int EVICTION_HEADROOM_DIVISOR = 32;
+
+    private final long maxBytes;
+    private final Set<CacheSpan> spans = new HashSet<>();
+    private final Map<String, Integer> spanCounts = new HashMap<>();
+    private final Map<String, Integer> replayCounts = new HashMap<>();
+    private final Comparator<CacheSpan> evictionOrder =
+            Comparator.comparingLong(this::getRetentionTimestamp);
+
+    private long currentSize;
+
+    ReplayAwareCacheEvictor(final long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    @Override
+    public boolean requiresCacheSpanTouches() {
+        return true;
+    }
+
+    @Override
+    public void onCacheInitialized() {
+        // nothing to do
+    }
+
+    @Override
+    public void onStartFile(@NonNull final Cache cache,
+                            @NonNull final String key,
+                            final long position,
+                            final long length) {
+        if (length != C.LENGTH_UNSET) {
+            evictCache(cache, length);
+        }
+    }
+
+    @Override
+    public void onSpanAdded(@NonNull final Cache cache, @NonNull final CacheSpan span) {
+        spans.add(span);
+        spanCounts.merge(span.key, 1, Integer::sum);
+        currentSize += span.length;
+        evictCache(cache, 0);
+    }
+
+    @Override
+    public void onSpanRemoved(@NonNull final Cache cache, @NonNull final CacheSpan span) {
+        spans.remove(span);
+        currentSize -= span.length;
+        if (spanCounts.merge(span.key, -1, Integer::sum) <= 0) {
+            spanCounts.remove(span.key);
+            replayCounts.remove(span.key);
+        }
+    }
+
+    @Override
+    public void onSpanTouched(@NonNull final Cache cache,
+                              @NonNull final CacheSpan oldSpan,
+                              @NonNull final CacheSpan newSpan) {
+        onSpanRemoved(cache, oldSpan);
+        replayCounts.merge(newSpan.key, 1, Integer::sum);
+        onSpanAdded(cache, newSpan);
+    }
+
+    /**
+     * @param span a span of the cache
+     * @return the last time the span was used, moved forward by the bonus of its replays; spans
+     * with the lowest value are evicted first
+     */
+    long getRetentionTimestamp(@NonNull final CacheSpan span) {
+        final int replays = replayCounts.getOrDefault(span.key, 0);
+        return span.lastTouchTimestamp
+                + Math.min(replays, MAX_REPLAY_BONUSES) * REPLAY_BONUS_MILLIS;
+    }
+
+    private void evictCache(@NonNull final Cache cache, final long requiredSpace) {
+        if (currentSize + requiredSpace <= maxBytes) {
+            return;
+        }
+
+        final long targetSize = maxBytes - maxBytes / EVICTION_HEADROOM_DIVISOR - requiredSpace;
+        final List<CacheSpan> candidates = new ArrayList<>(spans);
+        candidates.sort(evictionOrder);
+        for (final CacheSpan span : candidates) {
+            if (currentSize <= targetSize) {
+                break;
+            }
+            cache.removeSpan(span); // calls onSpanRemoved
+        }
+    }
+}
@@ -22,8 +22,11 @@ import org.schabi.newpipe.player.playqueue.events.PlayQueueEvent;
 import org.schabi.newpipe.player.playqueue.events.RemoveEvent;
 import org.schabi.newpipe.player.playqueue.events.ReorderEvent;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Optional;
 import java.util.Set;
 import java.util.concurrent.TimeUnit;
@@ -59,6 +62,17 @@ public class MediaSourceManager {
      */
     private static final int WINDOW_SIZE = 1;
 
+    /**
+     * Determines how many streams after the current stream should be prepared ahead, including
+     * the ones in {@link #WINDOW_SIZE}. The streams beyond the window only have their
+     * {@link org.schabi.newpipe.extractor.stream.StreamInfo} extracted into the
+     * {@link org.schabi.newpipe.util.InfoCache}, without building a media source, so that they
+     * resolve quickly once they enter the window.
+     *
+     * @see #maybePrefetchItem(PlayQueueItem)
+     */
+    private final int lookAheadSize;
+
     /**
      * Determines the maximum number of disposables allowed in the {@link #loaderReactor}.
      * Once exceeded, new calls to {@link #loadImmediate()} will evict all disposables in the
@@ -117,23 +131,41 @@ public class MediaSourceManager {
     @NonNull
     private final Set<PlayQueueItem> loadingItems;
 
+    @NonNull
+    private final CompositeDisposable prefetchReactor;
+    @NonNull
+    private final Set<PlayQueueItem> prefetchingItems;
+
     @NonNull
     private final AtomicBoolean isBlocked;
 
+    /**
+     * The item which was selected but not yet synchronized with the player, and the time it
+     * was selected at, used to measure the gaps between streams.
+     */
+    @Nullable
+    private PlayQueueItem transitionItem;
+    private long transitionStartMillis;
+    private int transitionCount;
+    private long totalTransitionGapMillis;
+    private long maxTransitionGapMillis;
+
     @NonNull
     private ManagedMediaSourcePlaylist playlist;
 
     private final Handler removeMediaSourceHandler = new Handler();
 
     public MediaSourceManager(@NonNull final PlaybackListener listener,
-                              @NonNull final PlayQueue playQueue) {
-        this(listener, playQueue, 400L,
+                              @NonNull final PlayQueue playQueue,
+                              final int lookAheadSize) {
+        this(listener, playQueue, lookAheadSize, 400L,
                 /*playbackNearEndGapMillis=*/TimeUnit.MILLISECONDS.convert(30, TimeUnit.SECONDS),
                 /*progressUpdateIntervalMillis*/TimeUnit.MILLISECONDS.convert(2, TimeUnit.SECONDS));
     }
 
     private MediaSourceManager(@NonNull final PlaybackListener listener,
                                @NonNull final PlayQueue playQueue,
+                               final int lookAheadSize,
                                final long loadDebounceMillis,
                                final long playbackNearEndGapMillis,
                                final long progressUpdateIntervalMillis) {
@@ -148,6 +180,7 @@ public class MediaSourceManager {
 
         this.playbackListener = listener;
         this.playQueue = playQueue;
+        this.lookAheadSize = Math.max(WINDOW_SIZE, lookAheadSize);
 
         this.playbackNearEndGapMillis = playbackNearEndGapMillis;
         this.progressUpdateIntervalMillis = progressUpdateIntervalMillis;
@@ -159,12 +192,14 @@ public class MediaSourceManager {
 
         this.playQueueReactor = EmptySubscription.INSTANCE;
         this.loaderReactor = new CompositeDisposable();
+        this.prefetchReactor = new CompositeDisposable();
 
         this.isBlocked = new AtomicBoolean(false);
 
         this.playlist = new ManagedMediaSourcePlaylist();
 
         this.loadingItems = Collections.synchronizedSet(new ArraySet<>());
+        this.prefetchingItems = Collections.synchronizedSet(new ArraySet<>());
 
         playQueue.getBroadcastReceiver()
                 .observeOn(AndroidSchedulers.mainThread())
@@ -188,6 +223,13 @@ public class MediaSourceManager {
 
         playQueueReactor.cancel();
         loaderReactor.dispose();
+        prefetchReactor.dispose();
+
+        if (DEBUG && transitionCount > 0) {
+            Log.d(TAG, "Transition gaps: count=[" + transitionCount + "], "
+                    + "average=[" + totalTransitionGapMillis / transitionCount + " ms], "
+                    + "max=[" + maxTransitionGapMillis + " ms]");
+        }
     }
 
     /*//////////////////////////////////////////////////////////////////////////
@@ -225,6 +267,13 @@ public class MediaSourceManager {
         }
 
         // Event specific action
+        switch (event.type()) {
+            case INIT: case SELECT:
+                markTransitionStart();
+                break;
+            default:
+                break;
+        }
         switch (event.type()) {
             case INIT:
             case ERROR:
@@ -345,9 +394,44 @@ public class MediaSourceManager {
             return;
         }
 
+        maybeMarkTransitionEnd(currentItem);
         playbackListener.onPlaybackSynchronize(currentItem, wasBlocked);
     }
 
+    /*//////////////////////////////////////////////////////////////////////////
+    // Transition Metrics
+    //////////////////////////////////////////////////////////////////////////*/
+
+    private void markTransitionStart() {
+        final PlayQueueItem currentItem = playQueue.getItem();
+        if (currentItem != null && currentItem != transitionItem) {
+            transitionItem = currentItem;
+            transitionStartMillis = System.currentTimeMillis();
+        }
+    }
+
+    /**
+     * Records the time between the selection of an item and the moment it is synchronized with
+     * the player, i.e. the time the user waits for a stream to be resolved when the queue
+     * advances.
+     *
+     * @param currentItem the item being synchronized
+     */
+    private void maybeMarkTransitionEnd(@NonNull final PlayQueueItem currentItem) {
+        if (currentItem != transitionItem) {
+            return;
+        }
+
+        final long gapMillis = System.currentTimeMillis() - transitionStartMillis;
+        transitionItem = null;
+        transitionCount++;
+        totalTransitionGapMillis += gapMillis;
+        maxTransitionGapMillis = Math.max(maxTransitionGapMillis, gapMillis);
+        if (DEBUG) {
+            Log.d(TAG, "Transition to [" + currentItem.getTitle() + "] took " + gapMillis + " ms");
+        }
+    }
+
     private synchronized void maybeSynchronizePlayer() {
         if (isPlayQueueReady() && isPlaybackReady()) {
             final boolean isBlockReleased = maybeUnblock();
@@ -382,7 +466,7 @@ public class MediaSourceManager {
         if (DEBUG) {
             Log.d(TAG, "MediaSource - loadImmediate() called");
         }
-        final ItemsToLoad itemsToLoad = getItemsToLoad(playQueue);
+        final ItemsToLoad itemsToLoad = getItemsToLoad(playQueue, lookAheadSize);
         if (itemsToLoad == null) {
             return;
         }
@@ -394,6 +478,9 @@ public class MediaSourceManager {
         for (final PlayQueueItem item : itemsToLoad.neighbors) {
             maybeLoadItem(item);
         }
+        for (final PlayQueueItem item : itemsToLoad.prefetched) {
+            maybePrefetchItem(item);
+        }
     }
 
     private void maybeLoadItem(@NonNull final PlayQueueItem item) {
@@ -419,6 +506,30 @@ public class MediaSourceManager {
         }
     }
 
+    /**
+     * Extracts the {@link org.schabi.newpipe.extractor.stream.StreamInfo} of an item outside
+     * the loading window, which puts it into the {@link org.schabi.newpipe.util.InfoCache}.
+     * The media source itself is only built once the item enters the window.
+     *
+     * @param item the item to prefetch
+     */
+    private void maybePrefetchItem(@NonNull final PlayQueueItem item) {
+        if (!prefetchingItems.add(item)) {
+            return;
+        }
+        if (DEBUG) {
+            Log.d(TAG, "MediaSource - Prefetching=[" + item.getTitle() + "] "
+                    + "with url=[" + item.getUrl() + "]");
+        }
+
+        prefetchReactor.add(item.getStream()
+                .observeOn(AndroidSchedulers.mainThread())
+                .subscribe(
+                        streamInfo -> prefetchingItems.remove(item),
+                        // the error is kept by the item and shown once it is loaded for playback
+                        throwable -> prefetchingItems.remove(item)));
+    }
+
     private Single<ManagedMediaSource> getLoadedMediaSource(@NonNull final PlayQueueItem stream) {
         return stream.getStream()
                 .map(streamInfo -> Optional
@@ -538,6 +649,10 @@ public class MediaSourceManager {
             loaderReactor.clear();
             loadingItems.clear();
         }
+        // Prefetched infos are cached anyway, so there is no need to keep finished prefetches
+        if (prefetchingItems.isEmpty()) {
+            prefetchReactor.clear();
+        }
     }
 
     /*//////////////////////////////////////////////////////////////////////////
@@ -565,7 +680,8 @@ public class MediaSourceManager {
     //////////////////////////////////////////////////////////////////////////*/
 
     @Nullable
-    private static ItemsToLoad getItemsToLoad(@NonNull final PlayQueue playQueue) {
+    private static ItemsToLoad getItemsToLoad(@NonNull final PlayQueue playQueue,
+                                              final int lookAheadSize) {
         // The current item has higher priority
         final int currentIndex = playQueue.getIndex();
         final PlayQueueItem currentItem = playQueue.getItem(currentIndex);
@@ -573,24 +689,39 @@ public class MediaSourceManager {
             return null;
         }
 
-        // The rest are just for seamless playback
-        // Although timeline is not updated prior to the current index, these sources are still
-        // loaded into the cache for faster retrieval at a potentially later time.
-        final int leftBound = Math.max(0, currentIndex - MediaSourceManager.WINDOW_SIZE);
-        final int rightLimit = currentIndex + MediaSourceManager.WINDOW_SIZE + 1;
-        final int rightBound = Math.min(playQueue.size(), rightLimit);
-        final Set<PlayQueueItem> neighbors = new ArraySet<>(
-                playQueue.getStreams().subList(leftBound, rightBound));
-
-        // Do a round robin
-        final int excess = rightLimit - playQueue.size();
-        if (excess >= 0) {
-            neighbors.addAll(playQueue.getStreams()
-                    .subList(0, Math.min(playQueue.size(), excess)));
+        // The rest are just for seamless playback, in order of priority: the next items, then the
+        // previous ones. Although timeline is not updated prior to the current index, these
+        // sources are still loaded into the cache for faster retrieval at a potentially later
+        // time. When the window goes past the end of the queue, it continues from its start.
+        final Set<PlayQueueItem> neighbors = new LinkedHashSet<>();
+        for (int offset = 1; offset <= WINDOW_SIZE; offset++) {
+            addRoundRobin(playQueue, currentIndex + offset, neighbors);
+        }
+        for (int offset = 1; offset <= WINDOW_SIZE && currentIndex - offset >= 0; offset++) {
+            neighbors.add(playQueue.getItem(currentIndex - offset));
         }
         neighbors.remove(currentItem);
 
-        return new ItemsToLoad(currentItem, neighbors);
+        // Further items are only prefetched, closest first
+        final Set<PlayQueueItem> prefetched = new LinkedHashSet<>();
+        for (int offset = WINDOW_SIZE + 1; offset <= lookAheadSize; offset++) {
+            addRoundRobin(playQueue, currentIndex + offset, prefetched);
+        }
+        prefetched.remove(currentItem);
+        prefetched.removeAll(neighbors);
+
+        return new ItemsToLoad(currentItem, new ArrayList<>(neighbors),
+                new ArrayList<>(prefetched));
+    }
+
+    private static void addRoundRobin(@NonNull final PlayQueue playQueue,
+                                      final int index,
+                                      @NonNull final Set<PlayQueueItem> items) {
+        final int size = playQueue.size();
+        final PlayQueueItem item = index < size * 2 ? playQueue.getItem(index % size) : null;
+        if (item != null) {
+            items.add(item);
+        }
     }
 
     private static class ItemsToLoad {
@@ -598,11 +729,15 @@ public class MediaSourceManager {
         private final PlayQueueItem center;
         @NonNull
         private final Collection<PlayQueueItem> neighbors;
+        @NonNull
+        private final List<PlayQueueItem> prefetched;
 
         ItemsToLoad(@NonNull final PlayQueueItem center,
-                    @NonNull final Collection<PlayQueueItem> neighbors) {
+                    @NonNull final Collection<PlayQueueItem> neighbors,
+                    @NonNull final List<PlayQueueItem> prefetched) {
             this.center = center;
             this.neighbors = neighbors;
+            this.prefetched = prefetched;
         }
     }
 }
@@ -17,7 +17,9 @@ import org.schabi.newpipe.player.playqueue.events.SelectEvent;
 import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import io.reactivex.rxjava3.android.schedulers.AndroidSchedulers;
@@ -39,6 +41,14 @@ import io.reactivex.rxjava3.subjects.BehaviorSubject;
  */
 public abstract class PlayQueue implements Serializable {
     public static final boolean DEBUG = MainActivity.DEBUG;
+    /**
+     * Items further away from the current index than this have their details packed, so that
+     * huge queues only keep lightweight items in memory. Items are materialized again when they
+     * are shown or played.
+     *
+     * @see PlayQueueItem#packDetails()
+     */
+    static final int MATERIALIZED_WINDOW = 128;
     @NonNull
     private final AtomicInteger queueIndex;
     private final List<PlayQueueItem> history = new ArrayList<>();
@@ -46,6 +56,23 @@ public abstract class PlayQueue implements Serializable {
     private List<PlayQueueItem> backup;
     private List<PlayQueueItem> streams;
 
+    /**
+     * The index of the first occurrence of each item, compared by reference. Only the entries
+     * of the first {@link #indexedSize} items of {@link #streams} are known to be up to date,
+     * the rest is indexed lazily when needed, so that edits only invalidate the indexes of the
+     * items after the edited position.
+     *
+     * @see #indexOf(PlayQueueItem)
+     */
+    private transient Map<PlayQueueItem, Integer> itemIndexes;
+    private transient int indexedSize;
+
+    /**
+     * The index around which items were last packed, so that the whole queue is only packed
+     * again once the current index moved by a whole window.
+     */
+    private transient int packedAroundIndex = -1;
+
     private transient BehaviorSubject<PlayQueueEvent> eventBroadcast;
     private transient Flowable<PlayQueueEvent> broadcastReceiver;
     private transient boolean disposed = false;
@@ -58,6 +85,7 @@ public abstract class PlayQueue implements Serializable {
         }
 
         queueIndex = new AtomicInteger(index);
+        packItemsOutsideWindow(0, streams.size());
     }
 
     /*//////////////////////////////////////////////////////////////////////////
@@ -156,6 +184,9 @@ public abstract class PlayQueue implements Serializable {
         if (oldIndex != newIndex) {
             history.add(streams.get(newIndex));
         }
+        if (Math.abs(newIndex - packedAroundIndex) > MATERIALIZED_WINDOW / 2) {
+            packItemsOutsideWindow(0, streams.size());
+        }
 
         /*
         TODO: Documentation states that a SelectEvent will only be emitted if the new index is...
@@ -192,8 +223,62 @@ public abstract class PlayQueue implements Serializable {
      * @param item the item to find the index of
      * @return the index of the given item
      */
-    public int indexOf(@NonNull final PlayQueueItem item) {
-        return streams.indexOf(item);
+    public synchronized int indexOf(@NonNull final PlayQueueItem item) {
+        if (itemIndexes == null) {
+            itemIndexes = new IdentityHashMap<>();
+            indexedSize = 0;
+        }
+
+        final Integer index = itemIndexes.get(item);
+        if (index != null && index < indexedSize && streams.get(index) == item) {
+            return index;
+        }
+        if (indexedSize >= streams.size()) {
+            return -1; // all items are indexed, so the item is not in the queue
+        }
+
+        // Index the remaining items, keeping entries which still point to an earlier occurrence
+        for (int i = indexedSize; i < streams.size(); i++) {
+            final PlayQueueItem stream = streams.get(i);
+            final Integer existing = itemIndexes.get(stream);
+            if (existing == null || existing >= i || streams.get(existing) != stream) {
+                itemIndexes.put(stream, i);
+            }
+        }
+        indexedSize = streams.size();
+
+        final Integer newIndex = itemIndexes.get(item);
+        return newIndex != null && newIndex < streams.size() && streams.get(newIndex) == item
+                ? newIndex : -1;
+    }
+
+    /**
+     * Packs the details of the items in the given range which are outside the
+     * {@link #MATERIALIZED_WINDOW} around the current index. Items inside it are left as they
+     * are; they get materialized as soon as they are accessed.
+     *
+     * @param from the first position to check
+     * @param to   the position after the last one to check
+     */
+    private void packItemsOutsideWindow(final int from, final int to) {
+        final int currentIndex = getIndex();
+        if (from == 0) {
+            packedAroundIndex = currentIndex;
+        }
+        for (int i = from; i < to; i++) {
+            if (Math.abs(i - currentIndex) > MATERIALIZED_WINDOW) {
+                streams.get(i).packDetails();
+            }
+        }
+    }
+
+    /**
+     * Marks the indexes of the items starting from the given position as outdated.
+     *
+     * @param position the first position whose item changed
+     */
+    private void invalidateIndexesFrom(final int position) {
+        indexedSize = Math.max(0, Math.min(indexedSize, position));
     }
 
     /**
@@ -285,8 +370,11 @@ public abstract class PlayQueue implements Serializable {
         if (!streams.isEmpty() && streams.get(streams.size() - 1).isAutoQueued()
                 && !itemList.get(0).isAutoQueued()) {
             streams.remove(streams.size() - 1);
+            invalidateIndexesFrom(streams.size());
         }
+        final int oldSize = streams.size();
         streams.addAll(itemList);
+        packItemsOutsideWindow(oldSize, streams.size());
 
         broadcast(new AppendEvent(itemList.size()));
     }
@@ -346,6 +434,7 @@ public abstract class PlayQueue implements Serializable {
         }
 
         history.remove(streams.remove(removeIndex));
+        invalidateIndexesFrom(removeIndex);
         if (streams.size() > queueIndex.get()) {
             history.add(streams.get(queueIndex.get()));
         }
@@ -384,6 +473,7 @@ public abstract class PlayQueue implements Serializable {
         final PlayQueueItem playQueueItem = streams.remove(source);
         playQueueItem.setAutoQueued(false);
         streams.add(target, playQueueItem);
+        invalidateIndexesFrom(Math.min(source, target));
         broadcast(new MoveEvent(source, target));
     }
 
@@ -446,12 +536,16 @@ public abstract class PlayQueue implements Serializable {
         final int originalIndex = getIndex();
         final PlayQueueItem currentItem = getItem();
 
-        Collections.shuffle(streams);
-
-        // Move currentItem to the head of the queue
-        streams.remove(currentItem);
-        streams.add(0, currentItem);
+        if (currentItem == null) {
+            Collections.shuffle(streams);
+        } else {
+            // Move currentItem to the head of the queue and shuffle the rest
+            Collections.swap(streams, originalIndex, 0);
+            Collections.shuffle(streams.subList(1, streams.size()));
+        }
+        invalidateIndexesFrom(0);
         queueIndex.set(0);
+        packItemsOutsideWindow(0, streams.size());
 
         history.add(currentItem);
 
@@ -477,8 +571,9 @@ public abstract class PlayQueue implements Serializable {
 
         streams = backup;
         backup = null;
+        invalidateIndexesFrom(0);
 
-        final int newIndex = streams.indexOf(current);
+        final int newIndex = current == null ? -1 : indexOf(current);
         if (newIndex != -1) {
             queueIndex.set(newIndex);
         } else {
@@ -487,6 +582,7 @@ public abstract class PlayQueue implements Serializable {
         if (streams.size() > queueIndex.get()) {
             history.add(streams.get(queueIndex.get()));
         }
+        packItemsOutsideWindow(0, streams.size());
 
         broadcast(new ReorderEvent(originIndex, queueIndex.get()));
     }
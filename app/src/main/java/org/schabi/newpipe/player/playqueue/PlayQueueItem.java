@@ -9,7 +9,16 @@ import org.schabi.newpipe.extractor.stream.StreamInfoItem;
 import org.schabi.newpipe.extractor.stream.StreamType;
 import org.schabi.newpipe.util.ExtractorHelper;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
 import java.io.Serializable;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 import io.reactivex.rxjava3.core.Single;
@@ -19,20 +28,29 @@ public class PlayQueueItem implements Serializable {
     public static final long RECOVERY_UNSET = Long.MIN_VALUE;
     private static final String EMPTY_STRING = "";
 
-    @NonNull
-    private final String title;
     @NonNull
     private final String url;
     private final int serviceId;
     private final long duration;
     @NonNull
-    private final List<Image> thumbnails;
-    @NonNull
-    private final String uploader;
-    private final String uploaderUrl;
-    @NonNull
     private final StreamType streamType;
 
+    /**
+     * The details only needed to show the item, or null while they are only kept in
+     * {@link #packedDetails}. Items far away from the current one in huge queues are packed, so
+     * that only their identifying fields stay in memory as objects.
+     *
+     * @see #packDetails()
+     */
+    @Nullable
+    private transient Details details;
+    /**
+     * The compact binary form of {@link #details}, created when the item is packed or
+     * serialized. As the details never change, it stays valid once created.
+     */
+    @Nullable
+    private byte[] packedDetails;
+
     private boolean isAutoQueued;
 
     private long recoveryPosition;
@@ -59,21 +77,20 @@ public class PlayQueueItem implements Serializable {
                           final int serviceId, final long duration,
                           final List<Image> thumbnails, @Nullable final String uploader,
                           final String uploaderUrl, @NonNull final StreamType streamType) {
-        this.title = name != null ? name : EMPTY_STRING;
         this.url = url != null ? url : EMPTY_STRING;
         this.serviceId = serviceId;
         this.duration = duration;
-        this.thumbnails = thumbnails;
-        this.uploader = uploader != null ? uploader : EMPTY_STRING;
-        this.uploaderUrl = uploaderUrl;
         this.streamType = streamType;
+        this.details = new Details(name != null ? name : EMPTY_STRING,
+                thumbnails != null ? thumbnails : Collections.emptyList(),
+                uploader != null ? uploader : EMPTY_STRING, uploaderUrl);
 
         this.recoveryPosition = RECOVERY_UNSET;
     }
 
     @NonNull
     public String getTitle() {
-        return title;
+        return getDetails().title;
     }
 
     @NonNull
@@ -91,16 +108,16 @@ public class PlayQueueItem implements Serializable {
 
     @NonNull
     public List<Image> getThumbnails() {
-        return thumbnails;
+        return getDetails().thumbnails;
     }
 
     @NonNull
     public String getUploader() {
-        return uploader;
+        return getDetails().uploader;
     }
 
     public String getUploaderUrl() {
-        return uploaderUrl;
+        return getDetails().uploaderUrl;
     }
 
     @NonNull
@@ -139,4 +156,116 @@ public class PlayQueueItem implements Serializable {
     public void setAutoQueued(final boolean autoQueued) {
         isAutoQueued = autoQueued;
     }
+
+    ////////////////////////////////////////////////////////////////////////////
+    // Packed details
+    ////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * Releases the details of this item, keeping only their compact binary form. They are
+     * materialized again the next time they are accessed.
+     */
+    /*package-private*/ synchronized void packDetails() {
+        if (details != null) {
+            ensurePackedDetails();
+            details = null;
+        }
+    }
+
+    /*package-private*/ synchronized boolean isPacked() {
+        return details == null;
+    }
+
+    @NonNull
+    private synchronized Details getDetails() {
+        if (details == null) {
+            details = unpack(packedDetails);
+        }
+        return details;
+    }
+
+    private synchronized void ensurePackedDetails() {
+        if (packedDetails == null) {
+            packedDetails = pack(getDetails());
+        }
+    }
+
+    private void writeObject(@NonNull final ObjectOutputStream out) throws IOException {
+        // the details are only serialized in their packed form
+        ensurePackedDetails();
+        out.defaultWriteObject();
+    }
+
+    @NonNull
+    private static byte[] pack(@NonNull final Details details) {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeUTF(details.title);
+            out.writeUTF(details.uploader);
+            writeNullableUTF(out, details.uploaderUrl);
+            out.writeInt(details.thumbnails.size());
+            for (final Image image : details.thumbnails) {
+                out.writeUTF(image.getUrl());
+                out.writeInt(image.getHeight());
+                out.writeInt(image.getWidth());
+                out.writeUTF(image.getEstimatedResolutionLevel().name());
+            }
+        } catch (final IOException e) {
+            // writing to a byte array does not fail
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    @NonNull
+    private static Details unpack(@NonNull final byte[] packed) {
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(packed))) {
+            final String title = in.readUTF();
+            final String uploader = in.readUTF();
+            final String uploaderUrl = readNullableUTF(in);
+            final int thumbnailCount = in.readInt();
+            final List<Image> thumbnails = new ArrayList<>(thumbnailCount);
+            for (int i = 0; i < thumbnailCount; i++) {
+                thumbnails.add(new Image(in.readUTF(), in.readInt(), in.readInt(),
+                        Image.ResolutionLevel.valueOf(in.readUTF())));
+            }
+            return new Details(title, Collections.unmodifiableList(thumbnails), uploader,
+                    uploaderUrl);
+        } catch (final IOException e) {
+            // the bytes were written by pack(), so they are always complete
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static void writeNullableUTF(@NonNull final DataOutputStream out,
+                                         @Nullable final String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeUTF(value);
+        }
+    }
+
+    @Nullable
+    private static String readNullableUTF(@NonNull final DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+
+    private static final class Details {
+        @NonNull
+        private final String title;
+        @NonNull
+        private final List<Image> thumbnails;
+        @NonNull
+        private final String uploader;
+        @Nullable
+        private final String uploaderUrl;
+
+        Details(@NonNull final String title, @NonNull final List<Image> thumbnails,
+                @NonNull final String uploader, @Nullable final String uploaderUrl) {
+            this.title = title;
+            this.thumbnails = thumbnails;
+            this.uploader = uploader;
+            this.uploaderUrl = uploaderUrl;
+        }
+    }
 }
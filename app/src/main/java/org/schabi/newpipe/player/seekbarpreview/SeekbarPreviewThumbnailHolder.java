@@ -9,6 +9,8 @@ import android.util.Log;
 
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
+import androidx.annotation.VisibleForTesting;
+import androidx.collection.LruCache;
 import androidx.collection.SparseArrayCompat;
 
 import com.google.common.base.Stopwatch;
@@ -16,6 +18,8 @@ import com.google.common.base.Stopwatch;
 import org.schabi.newpipe.extractor.stream.Frameset;
 import org.schabi.newpipe.util.image.PicassoHelper;
 
+import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.Comparator;
 import java.util.List;
 import java.util.Optional;
@@ -31,62 +35,120 @@ public class SeekbarPreviewThumbnailHolder {
     // https://stackoverflow.com/a/54744028
     public static final String TAG = "SeekbarPrevThumbHolder";
 
+    // Enough for a few dozen high quality frames, or for all frames of a low quality storyboard
+    private static final int FRAME_CACHE_SIZE_BYTES = 4 * 1024 * 1024;
+
+    // How many storyboard sheets are downloaded at the same time
+    private static final int MAX_PARALLEL_DOWNLOADS = 3;
+
     // Key = Position of the picture in milliseconds
     // Supplier = Supplies the bitmap for that position
     private final SparseArrayCompat<Supplier<Bitmap>> seekbarPreviewData =
             new SparseArrayCompat<>();
 
+    // Sheets of the preferred frameset which are already in "seekbarPreviewData", so that frames
+    // of the fallback frameset do not replace them; guarded by "seekbarPreviewData"
+    private final BitSet loadedPreferredSheets = new BitSet();
+    private int preferredSheetDurationMs = Integer.MAX_VALUE;
+
+    // Frames already cut out of their storyboard, keyed by the supplier that created them, so
+    // that dragging the seekbar over the same frames does not allocate a new bitmap every time
+    private final LruCache<Supplier<Bitmap>, Bitmap> frameCache =
+            new LruCache<>(FRAME_CACHE_SIZE_BYTES) {
+                @Override
+                protected int sizeOf(@NonNull final Supplier<Bitmap> key,
+                                     @NonNull final Bitmap value) {
+                    return value.getByteCount();
+                }
+            };
+
+    // The sheets closest to this position are downloaded first; it is the playback position, or
+    // the position the seekbar is being dragged to
+    private volatile int focusPositionMs = 0;
+
     // This ensures that if the reset is still undergoing
     // and another reset starts, only the last reset is processed
-    private UUID currentUpdateRequestIdentifier = UUID.randomUUID();
+    private volatile UUID currentUpdateRequestIdentifier = UUID.randomUUID();
 
     public void resetFrom(@NonNull final Context context, final List<Frameset> framesets) {
         final int seekbarPreviewType = getSeekbarPreviewThumbnailType(context);
 
         final UUID updateRequestIdentifier = UUID.randomUUID();
         this.currentUpdateRequestIdentifier = updateRequestIdentifier;
+        this.focusPositionMs = 0;
 
-        final ExecutorService executorService = Executors.newSingleThreadExecutor();
-        executorService.submit(() -> {
-            try {
-                resetFromAsync(seekbarPreviewType, framesets, updateRequestIdentifier);
-            } catch (final Exception ex) {
-                Log.e(TAG, "Failed to execute async", ex);
-            }
-        });
+        final List<StoryboardSheet> pendingSheets = resetAndGetSheets(seekbarPreviewType,
+                framesets == null ? List.of() : framesets);
+        if (pendingSheets.isEmpty()) {
+            return;
+        }
+
+        Log.d(TAG, "Starting download of " + pendingSheets.size() + " storyboard sheets");
+        final int parallelDownloads = Math.min(MAX_PARALLEL_DOWNLOADS, pendingSheets.size());
+        final ExecutorService executorService = Executors.newFixedThreadPool(parallelDownloads);
+        for (int i = 0; i < parallelDownloads; i++) {
+            executorService.submit(() -> {
+                try {
+                    downloadSheets(pendingSheets, updateRequestIdentifier);
+                } catch (final Exception ex) {
+                    Log.e(TAG, "Failed to execute async", ex);
+                }
+            });
+        }
         // ensure that the executorService stops/destroys it's threads
-        // after the task is finished
+        // after the tasks are finished
         executorService.shutdown();
     }
 
-    private void resetFromAsync(final int seekbarPreviewType, final List<Frameset> framesets,
-                                final UUID updateRequestIdentifier) {
+    /**
+     * Sets the position whose storyboard sheet should be downloaded next, e.g. the current
+     * playback position.
+     *
+     * @param positionInMs the position in milliseconds
+     */
+    public void setFocusPosition(final int positionInMs) {
+        this.focusPositionMs = positionInMs;
+    }
+
+    private List<StoryboardSheet> resetAndGetSheets(final int seekbarPreviewType,
+                                                    final List<Frameset> framesets) {
         Log.d(TAG, "Clearing seekbarPreviewData");
         synchronized (seekbarPreviewData) {
             seekbarPreviewData.clear();
+            loadedPreferredSheets.clear();
+            preferredSheetDurationMs = Integer.MAX_VALUE;
         }
+        frameCache.evictAll();
 
+        final List<StoryboardSheet> sheets = new ArrayList<>();
         if (seekbarPreviewType == SeekbarPreviewThumbnailType.NONE) {
             Log.d(TAG, "Not processing seekbarPreviewData due to settings");
-            return;
+            return sheets;
         }
 
         final Frameset frameset = getFrameSetForType(framesets, seekbarPreviewType);
         if (frameset == null) {
             Log.d(TAG, "No frameset was found to fill seekbarPreviewData");
-            return;
+            return sheets;
         }
 
         Log.d(TAG, "Frameset quality info: "
                 + "[width=" + frameset.getFrameWidth()
                 + ", heigh=" + frameset.getFrameHeight() + "]");
-
-        // Abort method execution if we are not the latest request
-        if (!isRequestIdentifierCurrent(updateRequestIdentifier)) {
-            return;
+        addSheetsOf(frameset, true, sheets);
+        synchronized (seekbarPreviewData) {
+            preferredSheetDurationMs = Math.max(1, getFramesPerSheet(frameset))
+                    * Math.max(1, frameset.getDurationPerFrame());
         }
 
-        generateDataFrom(frameset, updateRequestIdentifier);
+        // Show the low quality frames, which are downloaded much faster, until the high quality
+        // ones are available
+        final Frameset fallbackFrameset =
+                getFrameSetForType(framesets, SeekbarPreviewThumbnailType.LOW_QUALITY);
+        if (fallbackFrameset != null && fallbackFrameset != frameset) {
+            addSheetsOf(fallbackFrameset, false, sheets);
+        }
+        return sheets;
     }
 
     private Frameset getFrameSetForType(final List<Frameset> framesets,
@@ -104,64 +166,128 @@ public class SeekbarPreviewThumbnailHolder {
         }
     }
 
-    private void generateDataFrom(final Frameset frameset, final UUID updateRequestIdentifier) {
-        Log.d(TAG, "Starting generation of seekbarPreviewData");
-        final Stopwatch sw = Log.isLoggable(TAG, Log.DEBUG) ? Stopwatch.createStarted() : null;
+    private static int getFramesPerSheet(final Frameset frameset) {
+        return frameset.getFramesPerPageX() * frameset.getFramesPerPageY();
+    }
+
+    private static void addSheetsOf(final Frameset frameset,
+                                    final boolean preferred,
+                                    final List<StoryboardSheet> sheets) {
+        final int framesPerSheet = getFramesPerSheet(frameset);
+        if (framesPerSheet <= 0) {
+            return;
+        }
 
-        int currentPosMs = 0;
-        int pos = 1;
+        final List<String> urls = frameset.getUrls();
+        for (int index = 0; index < urls.size(); index++) {
+            final int firstFrame = index * framesPerSheet;
+            // Frames outside the video length are skipped
+            final int frameCount = Math.min(framesPerSheet, frameset.getTotalCount() - firstFrame);
+            if (frameCount <= 0) {
+                break;
+            }
+            sheets.add(new StoryboardSheet(frameset, urls.get(index), index, firstFrame,
+                    frameCount, preferred));
+        }
+    }
 
-        final int urlFrameCount = frameset.getFramesPerPageX() * frameset.getFramesPerPageY();
+    /**
+     * Downloads the pending sheets one after another, always picking the one closest to
+     * {@link #focusPositionMs}. Several of these run in parallel for the same list of sheets.
+     *
+     * @param pendingSheets           the sheets which have not been downloaded yet
+     * @param updateRequestIdentifier the request the sheets belong to
+     */
+    private void downloadSheets(final List<StoryboardSheet> pendingSheets,
+                                final UUID updateRequestIdentifier) {
+        StoryboardSheet sheet;
+        while ((sheet = pollNextSheet(pendingSheets)) != null) {
+            // Abort method execution if we are not the latest request
+            if (!isRequestIdentifierCurrent(updateRequestIdentifier)) {
+                Log.d(TAG, "Aborted of generation of seekbarPreviewData");
+                return;
+            }
 
-        // Process each url in the frameset
-        for (final String url : frameset.getUrls()) {
-            // get the bitmap
-            final Bitmap srcBitMap = getBitMapFrom(url);
+            final Bitmap srcBitMap = getBitMapFrom(sheet.url);
+            if (srcBitMap == null) {
+                // keep showing the fallback frames or the closest other frames
+                continue;
+            }
 
             // The data is not added directly to "seekbarPreviewData" due to
             // concurrency and checks for "updateRequestIdentifier"
-            final var generatedDataForUrl = new SparseArrayCompat<Supplier<Bitmap>>(urlFrameCount);
-
-            // The bitmap consists of several images, which we process here
-            // foreach frame in the returned bitmap
-            for (int i = 0; i < urlFrameCount; i++) {
-                // Frames outside the video length are skipped
-                if (pos > frameset.getTotalCount()) {
-                    break;
-                }
-
-                // Get the bounds where the frame is found
-                final int[] bounds = frameset.getFrameBoundsAt(currentPosMs);
-                generatedDataForUrl.put(currentPosMs, () -> {
-                    // It can happen, that the original bitmap could not be downloaded
-                    // In such a case - we don't want a NullPointer - simply return null
-                    if (srcBitMap == null) {
-                        return null;
-                    }
+            final SparseArrayCompat<Supplier<Bitmap>> generatedDataForUrl =
+                    generateDataFrom(sheet, srcBitMap);
 
-                    // Cut out the corresponding bitmap form the "srcBitMap"
-                    return Bitmap.createBitmap(srcBitMap, bounds[1], bounds[2],
-                            frameset.getFrameWidth(), frameset.getFrameHeight());
-                });
-
-                currentPosMs += frameset.getDurationPerFrame();
-                pos++;
+            synchronized (seekbarPreviewData) {
+                if (!isRequestIdentifierCurrent(updateRequestIdentifier)) {
+                    Log.d(TAG, "Aborted of generation of seekbarPreviewData");
+                    return;
+                }
+                addData(sheet, generatedDataForUrl);
             }
+        }
+    }
 
-            // Check if we are still the latest request
-            // If not abort method execution
-            if (isRequestIdentifierCurrent(updateRequestIdentifier)) {
-                synchronized (seekbarPreviewData) {
-                    seekbarPreviewData.putAll(generatedDataForUrl);
+    @Nullable
+    private StoryboardSheet pollNextSheet(final List<StoryboardSheet> pendingSheets) {
+        final int focus = focusPositionMs;
+        synchronized (pendingSheets) {
+            int next = -1;
+            for (int i = 0; i < pendingSheets.size(); i++) {
+                if (next < 0 || pendingSheets.get(i).isBefore(pendingSheets.get(next), focus)) {
+                    next = i;
                 }
-            } else {
-                Log.d(TAG, "Aborted of generation of seekbarPreviewData");
-                break;
             }
+            return next < 0 ? null : pendingSheets.remove(next);
+        }
+    }
+
+    private SparseArrayCompat<Supplier<Bitmap>> generateDataFrom(final StoryboardSheet sheet,
+                                                                 final Bitmap srcBitMap) {
+        final Frameset frameset = sheet.frameset;
+        final var generatedData = new SparseArrayCompat<Supplier<Bitmap>>(sheet.frameCount);
+
+        // The bitmap consists of several images, which we process here
+        // foreach frame in the returned bitmap
+        for (int i = 0; i < sheet.frameCount; i++) {
+            final int currentPosMs = (sheet.firstFrame + i) * frameset.getDurationPerFrame();
+
+            // Get the bounds where the frame is found
+            final int[] bounds = frameset.getFrameBoundsAt(currentPosMs);
+            generatedData.put(currentPosMs, () ->
+                    // Cut out the corresponding bitmap form the "srcBitMap"
+                    Bitmap.createBitmap(srcBitMap, bounds[1], bounds[2],
+                            frameset.getFrameWidth(), frameset.getFrameHeight()));
         }
+        return generatedData;
+    }
 
-        if (sw != null) {
-            Log.d(TAG, "Generation of seekbarPreviewData took " + sw.stop());
+    /**
+     * Adds the frames of a downloaded sheet. Frames of the preferred frameset replace the
+     * fallback frames in the time range of their sheet, while fallback frames are only added
+     * where no preferred sheet has been loaded yet. Must be called while holding the lock on
+     * {@link #seekbarPreviewData}.
+     *
+     * @param sheet  the downloaded sheet
+     * @param frames the frames of the sheet
+     */
+    private void addData(final StoryboardSheet sheet,
+                         final SparseArrayCompat<Supplier<Bitmap>> frames) {
+        if (sheet.preferred) {
+            final int from = indexOfFirstKeyNotBelow(seekbarPreviewData, sheet.getStartMs());
+            final int to = indexOfFirstKeyNotBelow(seekbarPreviewData, sheet.getEndMs());
+            seekbarPreviewData.removeAtRange(from, to - from);
+            seekbarPreviewData.putAll(frames);
+            loadedPreferredSheets.set(sheet.index);
+            return;
+        }
+
+        for (int i = 0; i < frames.size(); i++) {
+            final int positionInMs = frames.keyAt(i);
+            if (!loadedPreferredSheets.get(positionInMs / preferredSheetDurationMs)) {
+                seekbarPreviewData.put(positionInMs, frames.valueAt(i));
+            }
         }
     }
 
@@ -198,19 +324,122 @@ public class SeekbarPreviewThumbnailHolder {
     }
 
     public Optional<Bitmap> getBitmapAt(final int positionInMs) {
+        // The user is looking at this position, so download its sheet next
+        this.focusPositionMs = positionInMs;
+
         // Get the frame supplier closest to the requested position
-        Supplier<Bitmap> closestFrame = () -> null;
+        final Supplier<Bitmap> closestFrame;
         synchronized (seekbarPreviewData) {
-            int min = Integer.MAX_VALUE;
-            for (int i = 0; i < seekbarPreviewData.size(); i++) {
-                final int pos = Math.abs(seekbarPreviewData.keyAt(i) - positionInMs);
-                if (pos < min) {
-                    closestFrame = seekbarPreviewData.valueAt(i);
-                    min = pos;
-                }
+            final int index = indexOfClosestKey(seekbarPreviewData, positionInMs);
+            if (index < 0) {
+                return Optional.empty();
+            }
+            closestFrame = seekbarPreviewData.valueAt(index);
+        }
+
+        Bitmap frame = frameCache.get(closestFrame);
+        if (frame == null) {
+            frame = closestFrame.get();
+            if (frame != null) {
+                frameCache.put(closestFrame, frame);
             }
         }
+        return Optional.ofNullable(frame);
+    }
+
+    /**
+     * Binary search for the key closest to the given one, relying on the keys of a
+     * {@link SparseArrayCompat} always being sorted in ascending order.
+     *
+     * @param array the array to search in
+     * @param key   the key to search for
+     * @return the index of the closest key (the lower one if two are equally close), or -1 if the
+     * array is empty
+     */
+    @VisibleForTesting
+    static int indexOfClosestKey(@NonNull final SparseArrayCompat<?> array, final int key) {
+        final int index = indexOfFirstKeyNotBelow(array, key);
+        if (index == array.size()) {
+            return index - 1;
+        } else if (index > 0
+                && (long) key - array.keyAt(index - 1) <= (long) array.keyAt(index) - key) {
+            return index - 1;
+        }
+        return index;
+    }
+
+    /**
+     * @param array the array to search in
+     * @param key   the key to search for
+     * @return the index of the first key which is not smaller than the given one, or the size
+     * of the array if there is none
+     */
+    private static int indexOfFirstKeyNotBelow(@NonNull final SparseArrayCompat<?> array,
+                                               final int key) {
+        int low = 0;
+        int high = array.size();
+        while (low < high) {
+            final int middle = (low + high) >>> 1;
+            if (array.keyAt(middle) < key) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * One image of a {@link Frameset}, containing several consecutive frames.
+     */
+    private static final class StoryboardSheet {
+        final Frameset frameset;
+        final String url;
+        final int index;
+        final int firstFrame;
+        final int frameCount;
+        final boolean preferred;
+
+        StoryboardSheet(final Frameset frameset, final String url, final int index,
+                        final int firstFrame, final int frameCount, final boolean preferred) {
+            this.frameset = frameset;
+            this.url = url;
+            this.index = index;
+            this.firstFrame = firstFrame;
+            this.frameCount = frameCount;
+            this.preferred = preferred;
+        }
+
+        int getStartMs() {
+            return firstFrame * frameset.getDurationPerFrame();
+        }
+
+        int getEndMs() {
+            return (firstFrame + frameCount) * frameset.getDurationPerFrame();
+        }
 
-        return Optional.ofNullable(closestFrame.get());
+        long distanceTo(final int positionInMs) {
+            if (positionInMs < getStartMs()) {
+                return (long) getStartMs() - positionInMs;
+            } else if (positionInMs >= getEndMs()) {
+                return (long) positionInMs - getEndMs() + 1;
+            }
+            return 0;
+        }
+
+        /**
+         * Fallback sheets come first, since they are small and cover the whole video quickly;
+         * then sheets closer to the focused position come first.
+         *
+         * @param other        the sheet to compare to
+         * @param positionInMs the focused position
+         * @return whether this sheet should be downloaded before the other one
+         */
+        boolean isBefore(final StoryboardSheet other, final int positionInMs) {
+            if (preferred != other.preferred) {
+                return !preferred;
+            }
+            return distanceTo(positionInMs) < other.distanceTo(positionInMs);
+        }
     }
 }
@@ -523,6 +523,10 @@ public abstract class VideoPlayerUi extends PlayerUi implements SeekBar.OnSeekBa
         if (player.getCurrentState() != STATE_PAUSED) {
             updatePlayBackElementsCurrentDuration(currentProgress);
         }
+        if (player.getCurrentState() != STATE_PAUSED_SEEK) {
+            // while seeking, the preview of the dragged position is loaded first instead
+            seekbarPreviewThumbnailHolder.setFocusPosition(currentProgress);
+        }
         if (player.isLoading() || bufferPercent > 90) {
             binding.playbackSeekBar.setSecondaryProgress(
                     (int) (binding.playbackSeekBar.getMax() * ((float) bufferPercent / 100)));
@@ -28,6 +28,7 @@ import org.schabi.newpipe.R;
 import org.schabi.newpipe.error.ErrorInfo;
 import org.schabi.newpipe.error.ErrorUtil;
 import org.schabi.newpipe.error.UserAction;
+import org.schabi.newpipe.local.history.HistoryRecordManager;
 import org.schabi.newpipe.settings.export.BackupFileLocator;
 import org.schabi.newpipe.settings.export.ImportExportManager;
 import org.schabi.newpipe.streams.io.NoFileManagerSafeGuard;
@@ -193,6 +194,8 @@ public class BackupRestoreSettingsFragment extends BasePreferenceFragment {
                                 Toast.LENGTH_LONG)
                         .show();
             }
+            // the cached stream states belong to the replaced database
+            HistoryRecordManager.invalidateStreamStateCache();
 
             // if settings file exist, ask if it should be imported.
             final boolean hasJsonPrefs = manager.exportHasJsonPrefs(file);
@@ -2,6 +2,7 @@ package org.schabi.newpipe.settings;
 
 import android.content.Intent;
 import android.os.Bundle;
+import android.text.format.Formatter;
 
 import androidx.preference.Preference;
 
@@ -10,6 +11,7 @@ import org.schabi.newpipe.error.ErrorInfo;
 import org.schabi.newpipe.error.ErrorUtil;
 import org.schabi.newpipe.error.UserAction;
 import org.schabi.newpipe.local.feed.notifications.NotificationWorker;
+import org.schabi.newpipe.player.helper.PlayerCacheStatistics;
 import org.schabi.newpipe.util.image.PicassoHelper;
 
 import java.util.Optional;
@@ -35,6 +37,8 @@ public class DebugSettingsFragment extends BasePreferenceFragment {
                 findPreference(getString(R.string.show_error_snackbar_key));
         final Preference createErrorNotificationPreference =
                 findPreference(getString(R.string.create_error_notification_key));
+        final Preference playerCacheStatisticsPreference =
+                findPreference(getString(R.string.player_cache_statistics_key));
 
         assert allowHeapDumpingPreference != null;
         assert showMemoryLeaksPreference != null;
@@ -43,6 +47,7 @@ public class DebugSettingsFragment extends BasePreferenceFragment {
         assert crashTheAppPreference != null;
         assert showErrorSnackbarPreference != null;
         assert createErrorNotificationPreference != null;
+        assert playerCacheStatisticsPreference != null;
 
         final Optional<DebugSettingsBVDLeakCanaryAPI> optBVLeakCanary = getBVDLeakCanary();
 
@@ -86,6 +91,24 @@ public class DebugSettingsFragment extends BasePreferenceFragment {
                     new ErrorInfo(new RuntimeException(DUMMY), UserAction.UI_ERROR, DUMMY));
             return true;
         });
+
+        updatePlayerCacheStatistics(playerCacheStatisticsPreference);
+        playerCacheStatisticsPreference.setOnPreferenceClickListener(preference -> {
+            updatePlayerCacheStatistics(preference);
+            return true;
+        });
+    }
+
+    private void updatePlayerCacheStatistics(final Preference preference) {
+        preference.setSummary(getString(R.string.player_cache_statistics_summary,
+                PlayerCacheStatistics.getHitRatePercentage(),
+                Formatter.formatShortFileSize(requireContext(),
+                        PlayerCacheStatistics.getCachedBytes()),
+                Formatter.formatShortFileSize(requireContext(),
+                        PlayerCacheStatistics.getNetworkBytes()),
+                PlayerCacheStatistics.getCacheBypasses(),
+                Formatter.formatShortFileSize(requireContext(),
+                        PlayerCacheStatistics.getCacheSize())));
     }
 
     /**
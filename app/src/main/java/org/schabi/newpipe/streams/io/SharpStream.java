@@ -46,6 +46,10 @@ public abstract class SharpStream implements Closeable, Flushable {
         return false;
     }
 
+    public boolean canPreallocate() {
+        return false;
+    }
+
     public abstract void write(byte value) throws IOException;
 
     public abstract void write(byte[] buffer) throws IOException;
@@ -60,6 +64,18 @@ public abstract class SharpStream implements Closeable, Flushable {
         throw new IOException("Not implemented");
     }
 
+    /**
+     * Reserves the storage space needed for the stream to be at least {@code length} bytes long,
+     * so that the data written later does not have to grow the file. The data already written is
+     * kept. If the storage does not support it, the stream is only extended.
+     *
+     * @param length the length to reserve, in bytes
+     * @throws IOException if the space cannot be reserved, for instance if the storage is full
+     */
+    public void preallocate(final long length) throws IOException {
+        throw new IOException("Not implemented");
+    }
+
     public void seek(final long offset) throws IOException {
         throw new IOException("Not implemented");
     }
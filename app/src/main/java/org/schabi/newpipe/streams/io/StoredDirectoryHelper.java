@@ -278,6 +278,46 @@ public class StoredDirectoryHelper {
         return res == null ? null : res.getUri();
     }
 
+    /**
+     * Lists the names of the files in this directory.
+     *
+     * @return the names of the files, empty if the directory cannot be read
+     */
+    @NonNull
+    public List<String> listFileNames() {
+        final List<String> names = new ArrayList<>();
+
+        if (docTree == null) {
+            try (Stream<Path> stream = Files.list(ioTree)) {
+                names.addAll(stream.map(path -> path.getFileName().toString())
+                        .collect(Collectors.toList()));
+            } catch (final IOException e) {
+                Log.e(TAG, "Exception while listing " + ioTree, e);
+            }
+            return names;
+        }
+
+        // warning: SAF file listing is very slow
+        final Uri docTreeChildren = DocumentsContract.buildChildDocumentsUriUsingTree(
+                docTree.getUri(), DocumentsContract.getDocumentId(docTree.getUri()));
+        final String[] projection = new String[]{COLUMN_DISPLAY_NAME};
+
+        try (Cursor cursor = context.getContentResolver()
+                .query(docTreeChildren, projection, null, null, null)) {
+            if (cursor != null) {
+                while (cursor.moveToNext()) {
+                    if (!isNullOrEmpty(cursor.getString(0))) {
+                        names.add(cursor.getString(0));
+                    }
+                }
+            }
+        } catch (final Exception e) {
+            Log.e(TAG, "Exception while listing " + docTree.getUri(), e);
+        }
+
+        return names;
+    }
+
     public boolean canWrite() {
         return docTree == null ? Files.isWritable(ioTree) : docTree.canWrite();
     }
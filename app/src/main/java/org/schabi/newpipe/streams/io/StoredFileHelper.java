@@ -216,6 +216,52 @@ public class StoredFileHelper implements Serializable {
         return sourceTree == null ? null : Uri.parse(sourceTree);
     }
 
+    /**
+     * Gets a file in the same directory as this file.
+     *
+     * @param filename the name of the file
+     * @param create   whether to create the file if it does not exist
+     * @return the file, or {@code null} if it does not exist and was not created, or if the
+     * directory of this file is unknown
+     * @throws IOException if the file cannot be created
+     */
+    @Nullable
+    public StoredFileHelper getSibling(@NonNull final String filename, final boolean create)
+            throws IOException {
+        assertValid();
+
+        if (docFile == null) {
+            final Path path = ioPath.resolveSibling(filename);
+            if (!Files.exists(path)) {
+                if (!create) {
+                    return null;
+                }
+                Files.createFile(path);
+            }
+
+            return new StoredFileHelper(context, getParentUri(), Uri.fromFile(path.toFile()), tag);
+        }
+
+        if (docTree == null) {
+            return null;
+        }
+
+        DocumentFile file = docTree.findFile(filename);
+        if (file == null) {
+            if (!create) {
+                return null;
+            }
+
+            // the generic type prevents the provider from appending an extension
+            file = docTree.createFile(DEFAULT_MIME, filename);
+            if (file == null) {
+                throw new IOException("Cannot create the file " + filename);
+            }
+        }
+
+        return new StoredFileHelper(context, docTree.getUri(), file.getUri(), tag);
+    }
+
     public void truncate() throws IOException {
         assertValid();
 
@@ -1,5 +1,7 @@
 package us.shandian.giga.get;
 
+import android.system.ErrnoException;
+import android.system.OsConstants;
 import android.text.TextUtils;
 import android.util.Log;
 
@@ -148,7 +150,13 @@ public class DownloadInitializer extends Thread {
                 }
 
                 try (SharpStream fs = mMission.storage.getStream()) {
-                    fs.setLength(mMission.offsets[mMission.current] + mMission.length);
+                    long length = mMission.offsets[mMission.current] + mMission.length;
+
+                    // allocate the whole file now: it is written in place by the download threads
+                    // instead of growing in fragments, and a lack of space is reported right now
+                    if (fs.canPreallocate()) fs.preallocate(length);
+
+                    fs.setLength(length);
                     fs.seek(mMission.offsets[mMission.current]);
                 }
 
@@ -187,6 +195,12 @@ public class DownloadInitializer extends Thread {
                     return;
                 }
 
+                if (e.getCause() instanceof ErrnoException && ((ErrnoException) e.getCause()).errno == OsConstants.ENOSPC) {
+                    // the file could not be allocated, retrying is useless
+                    mMission.notifyError(DownloadMission.ERROR_INSUFFICIENT_STORAGE, null);
+                    return;
+                }
+
                 if (retryCount++ > mMission.maxRetry) {
                     Log.e(TAG, "initializer failed", e);
                     mMission.notifyError(e);
@@ -21,13 +21,20 @@ import java.net.SocketTimeoutException;
 import java.net.URL;
 import java.net.UnknownHostException;
 import java.nio.channels.ClosedByInterruptException;
+import java.util.Arrays;
 import java.util.Objects;
+import java.util.zip.CRC32;
 
 import javax.net.ssl.SSLException;
 
+import org.schabi.newpipe.streams.io.SharpStream;
 import org.schabi.newpipe.streams.io.StoredFileHelper;
 import us.shandian.giga.postprocessing.Postprocessing;
 import us.shandian.giga.service.DownloadManagerService;
+import us.shandian.giga.service.DownloadProgressBus;
+import us.shandian.giga.service.DownloadScheduler;
+import us.shandian.giga.service.PostprocessingQueue;
+import us.shandian.giga.util.TokenBucket;
 import us.shandian.giga.util.Utility;
 
 import static org.schabi.newpipe.BuildConfig.DEBUG;
@@ -119,6 +126,12 @@ public class DownloadMission extends Mission {
      */
     int[] blocks;
 
+    /**
+     * The CRC32 of each downloaded block of {@link #blocks}, or
+     * {@link ResumeSidecar#UNKNOWN_CHECKSUM}, written to the resume file, see {@link ResumeSidecar}
+     */
+    long[] checksums;
+
     /**
      * Download/File resume offset in fallback mode (if applicable) {@link DownloadRunnableFallback}
      */
@@ -134,19 +147,71 @@ public class DownloadMission extends Mission {
      */
     public MissionRecoveryInfo[] recoveryInfo;
 
+    /**
+     * Missions with a higher priority are started first when the amount of running missions is
+     * limited
+     */
+    public int priority;
+
     private transient int finishCount;
     public transient volatile boolean running;
     public boolean enqueued;
 
+    /**
+     * Connections and bandwidth shared with the other missions
+     */
+    public transient DownloadScheduler scheduler;
+
+    /**
+     * Delivers the progress of this mission to the UI
+     */
+    public transient DownloadProgressBus progressBus;
+
+    /**
+     * Post-processing shared with the other missions, see {@link #doPostprocessing()}
+     */
+    public transient PostprocessingQueue psQueue;
+    private transient TokenBucket bandwidth;
+
     public int errCode = ERROR_NOTHING;
     public Exception errObject = null;
 
+    /**
+     * How this mission is being downloaded, see {@link #getMetrics()}
+     */
+    private MissionMetrics metrics;
+
     public transient Handler mHandler;
     private transient boolean[] blockAcquired;
 
+    /**
+     * The mirrors of the current resource, see {@link #getSources()}
+     */
+    private transient DownloadSources sources;
+
+    /**
+     * The resume file of the downloaded file and when it was written, see {@link #encodeResumeFile(boolean)}
+     */
+    private transient StoredFileHelper resumeFile;
+    private transient long resumeFileWritten;
+
+    /**
+     * The resume file is written without holding {@link #LOCK}, the versions keep an older state
+     * from replacing a newer one, or a deleted file from being written again
+     */
+    private transient Object resumeFileLock;
+    private transient long resumeFileVersion;
+    private transient long resumeFileWrittenVersion;
+
     private transient long writingToFileNext;
     private transient volatile boolean writingToFile;
 
+    /**
+     * Indicates if this mission was created from a summary, without the state only needed to
+     * download it, see {@link #load()}
+     */
+    transient boolean partial;
+
     final Object LOCK = new Lock();
 
     @NonNull
@@ -169,6 +234,96 @@ public class DownloadMission extends Mission {
         }
     }
 
+    /**
+     * Creates a summary of a mission, see {@link #summarize()}
+     */
+    private DownloadMission(DownloadMission mission) {
+        this.source = mission.source;
+        this.length = mission.length;
+        this.timestamp = mission.timestamp;
+        this.kind = mission.kind;
+        this.storage = mission.storage;
+        this.urls = new String[mission.urls.length];
+        this.done = mission.done;
+        this.unknownLength = mission.unknownLength;
+        this.offsets = mission.offsets;
+        this.psState = mission.psState;
+        this.psAlgorithm = mission.psAlgorithm;
+        this.current = mission.current;
+        this.nearLength = mission.nearLength;
+        this.blocks = mission.blocks == null ? null : new int[0];// keep isInitialized()
+        this.threadCount = mission.threadCount;
+        this.priority = mission.priority;
+        this.enqueued = mission.enqueued;
+        this.errCode = mission.errCode;
+    }
+
+    /**
+     * Creates a copy of this mission without the urls, the blocks, the recovery information and
+     * the error. The copy is enough to list and queue the mission but not to download it
+     *
+     * @return the summary of this mission
+     */
+    public DownloadMission summarize() {
+        return new DownloadMission(this);
+    }
+
+    /**
+     * Reads the state left out of the summary this mission was created from, if any, from the
+     * meta file
+     *
+     * @return {@code true} if the whole state of this mission is available, otherwise,
+     * {@code false} if the meta file could not be read
+     */
+    public boolean load() {
+        synchronized (LOCK) {
+            if (!partial) return true;
+            if (metadata == null) return false;
+
+            DownloadMission mission = Utility.readFromFile(metadata);
+            if (mission == null || mission.urls.length != urls.length) return false;
+
+            urls = mission.urls;
+            blocks = mission.blocks;
+            checksums = mission.checksums;
+            fallbackResumeOffset = mission.fallbackResumeOffset;
+            recoveryInfo = mission.recoveryInfo;
+            if (mission.metrics != null) metrics = mission.metrics;
+            if (errObject == null && errCode == mission.errCode) errObject = mission.errObject;
+
+            partial = false;
+            return true;
+        }
+    }
+
+    /**
+     * Gets the measures of this mission, they are not part of the summary, see {@link #load()}
+     *
+     * @return the metrics of this mission
+     */
+    @NonNull
+    public MissionMetrics getMetrics() {
+        MissionMetrics metrics = metrics();
+        metrics.name = storage == null ? null : storage.getName();
+        metrics.kind = kind;
+        metrics.length = getLength();
+        return metrics;
+    }
+
+    synchronized MissionMetrics metrics() {
+        if (metrics == null) metrics = new MissionMetrics();
+        return metrics;
+    }
+
+    /**
+     * Indicates if the whole state of this mission is available, see {@link #load()}
+     *
+     * @return {@code true} if this mission was not created from a summary or was already loaded
+     */
+    public boolean isLoaded() {
+        return !partial;
+    }
+
     /**
      * Acquire a block
      *
@@ -182,6 +337,7 @@ public class DownloadMission extends Mission {
                     Block block = new Block();
                     block.position = i;
                     block.done = blocks[i];
+                    block.hashed = block.done == 0;
 
                     blockAcquired[i] = true;
                     return block;
@@ -197,11 +353,19 @@ public class DownloadMission extends Mission {
      *
      * @param position the index of the block
      * @param done     amount of bytes downloaded
+     * @param checksum the CRC32 of the block if it was completed, otherwise,
+     *                 {@link ResumeSidecar#UNKNOWN_CHECKSUM}
      */
-    void releaseBlock(int position, int done) {
+    void releaseBlock(int position, int done, long checksum) {
         synchronized (LOCK) {
             blockAcquired[position] = false;
             blocks[position] = done;
+
+            if (checksums == null || checksums.length != blocks.length) {
+                checksums = new long[blocks.length];
+                Arrays.fill(checksums, ResumeSidecar.UNKNOWN_CHECKSUM);
+            }
+            checksums[position] = checksum;
         }
     }
 
@@ -218,6 +382,24 @@ public class DownloadMission extends Mission {
         return openConnection(urls[current], headRequest, rangeStart, rangeEnd);
     }
 
+    /**
+     * Gets the sources of the current resource, they are listed again after the resource changes
+     * or its URL is recovered
+     *
+     * @return the sources of {@code urls[current]}, or {@code null} if all the resources were
+     * downloaded
+     */
+    @Nullable
+    public synchronized DownloadSources getSources() {
+        if (current >= urls.length || urls[current] == null) return null;
+
+        String url = urls[current];
+        if (sources == null || !sources.getSources().get(0).url.equals(url))
+            sources = new DownloadSources(url);
+
+        return sources;
+    }
+
     HttpURLConnection openConnection(String url, boolean headRequest, long rangeStart, long rangeEnd) throws IOException {
         HttpURLConnection conn = (HttpURLConnection) new URL(url).openConnection();
         conn.setInstanceFollowRedirects(true);
@@ -273,6 +455,56 @@ public class DownloadMission extends Mission {
     }
 
 
+    /**
+     * Waits until the global cap of connections allows this mission to open a new one
+     *
+     * @return {@code true} if a connection can be opened, it must be released with
+     * {@link #releaseConnection()}, otherwise, {@code false} if the mission was paused
+     * @throws InterruptedIOException if the thread was interrupted while waiting
+     */
+    boolean acquireConnection() throws InterruptedIOException {
+        if (scheduler == null) return true;
+
+        while (running) {
+            if (scheduler.acquireConnection(1000)) return true;
+        }
+
+        return false;
+    }
+
+    void releaseConnection() {
+        if (scheduler != null) scheduler.releaseConnection();
+    }
+
+    /**
+     * Accounts bytes just written, waiting if the global or the per-mission bandwidth limit
+     * is exceeded
+     *
+     * @param bytes amount of bytes downloaded
+     * @throws InterruptedIOException if the thread was interrupted while waiting
+     */
+    void throttle(int bytes) throws InterruptedIOException {
+        if (scheduler == null) return;
+
+        scheduler.onTransferred(bytes);
+
+        TokenBucket bucket = bandwidth;
+        if (bucket != null) {
+            bucket.setRate(scheduler.getMissionBandwidthLimit());
+            bucket.consume(bytes);
+        }
+    }
+
+    /**
+     * Changes the priority of this mission, used to pick the next missions to run
+     *
+     * @param priority the new priority
+     */
+    public void setPriority(int priority) {
+        this.priority = priority;
+        writeThisToFileAsync();
+    }
+
     private void notify(int what) {
         mHandler.obtainMessage(what, this).sendToTarget();
     }
@@ -283,6 +515,8 @@ public class DownloadMission extends Mission {
         }
 
         done += deltaLen;
+        metrics().onProgress(done);
+        if (progressBus != null) progressBus.publish(this);
 
         if (metadata == null) return;
 
@@ -341,6 +575,7 @@ public class DownloadMission extends Mission {
 
         errCode = code;
         errObject = err;
+        metrics().onError(code);
 
         switch (code) {
             case ERROR_SSL_EXCEPTION:
@@ -369,6 +604,7 @@ public class DownloadMission extends Mission {
             }
 
             current++;
+            checksums = null;
             if (current < urls.length) {
                 // prepare next sub-mission
                 offsets[current] = offsets[current - 1] + length;
@@ -390,8 +626,10 @@ public class DownloadMission extends Mission {
         unknownLength = false;
         enqueued = false;
         running = false;
+        metrics().onFinished(done);
 
         deleteThisFromFile();
+        deleteResumeFile();
         notify(DownloadManagerService.MESSAGE_FINISHED);
     }
 
@@ -409,6 +647,7 @@ public class DownloadMission extends Mission {
         }
 
         Log.d(TAG, action + " postprocessing on " + storage.getName());
+        if (progressBus != null) progressBus.publish(this);
 
         if (state == 2) {
             psState = state;
@@ -432,8 +671,14 @@ public class DownloadMission extends Mission {
         // ensure that the previous state is completely paused.
         joinForThreads(10000);
 
+        if (!load()) {
+            notifyError(ERROR_PROGRESS_LOST, null);
+            return;
+        }
+
         running = true;
         errCode = ERROR_NOTHING;
+        bandwidth = new TokenBucket();
 
         if (hasInvalidStorage()) {
             notifyError(ERROR_FILE_CREATION, null);
@@ -529,6 +774,7 @@ public class DownloadMission extends Mission {
         notify(DownloadManagerService.MESSAGE_DELETED);
 
         boolean res = deleteThisFromFile();
+        deleteResumeFile();
 
         if (!super.delete()) return false;
         return res;
@@ -549,9 +795,13 @@ public class DownloadMission extends Mission {
         threads = new Thread[0];
         fallbackResumeOffset = 0;
         blocks = null;
+        checksums = null;
         blockAcquired = null;
 
-        if (rollback) current = 0;
+        if (rollback) {
+            current = 0;
+            deleteResumeFile();
+        }
         if (persistChanges) writeThisToFile();
     }
 
@@ -568,10 +818,112 @@ public class DownloadMission extends Mission {
      * if no thread is already running.
      */
     void writeThisToFile() {
+        byte[] resumeFileContent;
+        long resumeFileVersion;
+
         synchronized (LOCK) {
             if (metadata == null) return;
+            if (!load()) return;// do not replace the whole state by a summary
             Utility.writeToFile(metadata, this);
             writingToFile = false;
+
+            resumeFileContent = encodeResumeFile(!running);
+            resumeFileVersion = this.resumeFileVersion;
+        }
+
+        // writing to the storage can be slow, do not block the download threads meanwhile
+        if (resumeFileContent != null) writeResumeFile(resumeFileContent, resumeFileVersion);
+    }
+
+    /**
+     * Encodes the resume file, which is written next to the downloaded file, so the download can
+     * be resumed even if the meta file is lost. Must be called while holding the lock
+     *
+     * @param force {@code true} to write it now, otherwise, it is written at most once per
+     *              {@link ResumeSidecar#WRITE_INTERVAL}
+     * @return the content of the resume file, or {@code null} if it must not be written now
+     */
+    @Nullable
+    private byte[] encodeResumeFile(boolean force) {
+        // only the current resource of a download with known length can be resumed
+        if (blocks == null || blocks.length < 1 || unknownLength || psState != 0 || current >= urls.length)
+            return null;
+        if (storage == null || storage.isInvalid()) return null;
+
+        long now = System.currentTimeMillis();
+        if (!force && now - resumeFileWritten < ResumeSidecar.WRITE_INTERVAL) return null;
+        resumeFileWritten = now;
+
+        try {
+            byte[] content = ResumeSidecar.encode(this);
+            resumeFileVersion++;
+            return content;
+        } catch (Exception e) {
+            Log.w(TAG, "cannot encode the resume file of " + storage.getName(), e);
+            return null;
+        }
+    }
+
+    /**
+     * Writes the resume file, must be called without holding the lock
+     *
+     * @param content the content returned by {@link #encodeResumeFile(boolean)}
+     * @param version the version of the resume file when the content was encoded
+     */
+    private void writeResumeFile(@NonNull byte[] content, long version) {
+        synchronized (getResumeFileLock()) {
+            // a newer state was written, or the file was deleted, meanwhile
+            if (version <= resumeFileWrittenVersion) return;
+            resumeFileWrittenVersion = version;
+
+            try {
+                if (resumeFile == null) {
+                    resumeFile = storage.getSibling(ResumeSidecar.getName(storage.getName()), true);
+                    if (resumeFile == null) return;
+                }
+
+                resumeFile.truncate();
+                try (SharpStream stream = resumeFile.getStream()) {
+                    stream.write(content);
+                    stream.flush();
+                }
+            } catch (Exception e) {
+                Log.w(TAG, "cannot write the resume file of " + storage.getName(), e);
+            }
+        }
+    }
+
+    /**
+     * Removes the resume file, once the downloaded file no longer needs it
+     */
+    private void deleteResumeFile() {
+        long version;
+        synchronized (LOCK) {
+            if (storage == null || storage.isInvalid()) return;
+            version = ++resumeFileVersion;
+        }
+
+        synchronized (getResumeFileLock()) {
+            // the writes of the previous versions, if pending, are dropped
+            resumeFileWrittenVersion = version;
+
+            try {
+                StoredFileHelper file = resumeFile;
+                if (file == null) file = storage.getSibling(ResumeSidecar.getName(storage.getName()), false);
+                if (file != null) file.delete();
+            } catch (Exception e) {
+                Log.w(TAG, "cannot delete the resume file of " + storage.getName(), e);
+            }
+
+            resumeFile = null;
+        }
+    }
+
+    @NonNull
+    private Object getResumeFileLock() {
+        synchronized (LOCK) {
+            if (resumeFileLock == null) resumeFileLock = new Object();
+            return resumeFileLock;
         }
     }
 
@@ -608,6 +960,15 @@ public class DownloadMission extends Mission {
         return psAlgorithm != null && (psState == 1 || psState == 3);
     }
 
+    /**
+     * Indicates if the mission waits for other missions to be post-processed first
+     *
+     * @return true, otherwise, false
+     */
+    public boolean isPsQueued() {
+        return psQueue != null && psQueue.isQueued(this);
+    }
+
     /**
      * Indicated if the mission is ready
      *
@@ -684,10 +1045,26 @@ public class DownloadMission extends Mission {
     }
 
     private void doPostprocessing() {
+        if (psQueue != null) {
+            if (progressBus != null) progressBus.publish(this);
+
+            try {
+                psQueue.acquire(this);
+                PostprocessingQueue.awaitPlayback();
+            } catch (InterruptedException e) {
+                // paused while waiting, the post-processing starts again when resumed
+                psQueue.release(this);
+                return;
+            }
+        }
+
         errCode = ERROR_NOTHING;
         errObject = null;
         Thread thread = Thread.currentThread();
 
+        // the post-processing changes the downloaded file, the resume file would not match it
+        deleteResumeFile();
+
         notifyPostProcessing(1);
 
         if (DEBUG) {
@@ -695,6 +1072,7 @@ public class DownloadMission extends Mission {
         }
 
         Exception exception = null;
+        long start = System.currentTimeMillis();
 
         try {
             psAlgorithm.run(this);
@@ -710,7 +1088,9 @@ public class DownloadMission extends Mission {
 
             exception = err;
         } finally {
+            metrics().onPostprocessed(psAlgorithm.getName(), System.currentTimeMillis() - start);
             notifyPostProcessing(errCode == ERROR_NOTHING ? 2 : 0);
+            if (psQueue != null) psQueue.release(this);
         }
 
         if (errCode != ERROR_NOTHING) {
@@ -741,6 +1121,9 @@ public class DownloadMission extends Mission {
         threads = new Thread[]{
                 runAsync(DownloadMissionRecover.mID, new DownloadMissionRecover(this, errorCode))
         };
+
+        // show the recovery, no progress is made meanwhile
+        if (progressBus != null) progressBus.publish(this);
     }
 
     private boolean deleteThisFromFile() {
@@ -845,6 +1228,12 @@ public class DownloadMission extends Mission {
     public static class Block {
         public int position;
         public int done;
+
+        /**
+         * The CRC32 of the data written, only valid if the block was {@link #hashed} from the start
+         */
+        final CRC32 checksum = new CRC32();
+        boolean hashed;
     }
 
     private static class Lock implements Serializable {
@@ -12,6 +12,9 @@ import java.util.Objects;
 
 import us.shandian.giga.get.DownloadMission.Block;
 import us.shandian.giga.get.DownloadMission.HttpError;
+import us.shandian.giga.get.DownloadSources.Source;
+import us.shandian.giga.io.AlignedWriter;
+import us.shandian.giga.util.Utility;
 
 import static org.schabi.newpipe.BuildConfig.DEBUG;
 import static us.shandian.giga.get.DownloadMission.ERROR_HTTP_FORBIDDEN;
@@ -34,15 +37,66 @@ public class DownloadRunnable extends Thread {
         mId = id;
     }
 
-    private void releaseBlock(Block block, long remain) {
+    private void releaseBlock(Block block, long remain, long acquired, SharpStream f) {
+        if (remain >= 0) {
+            mMission.releaseBlock(block.position, block.done, ResumeSidecar.UNKNOWN_CHECKSUM);
+            return;
+        }
+
+        long start = (long) block.position * DownloadMission.BLOCK_SIZE;
+        int size = (int) Math.min(DownloadMission.BLOCK_SIZE, mMission.length - start);
+        mMission.metrics().onBlockFinished(size, System.nanoTime() - acquired);
+
+        long checksum = ResumeSidecar.UNKNOWN_CHECKSUM;
+        if (block.hashed) {
+            checksum = block.checksum.getValue();
+        } else {
+            // part of the block was written before, read it back
+            try {
+                checksum = ResumeSidecar.checksum(f, mMission.offsets[mMission.current] + start, size, new byte[DownloadMission.BUFFER_SIZE]);
+            } catch (IOException e) {
+                if (DEBUG) Log.w(TAG, mId + ":cannot read back the block " + block.position, e);
+            }
+        }
+
         // set the block offset to -1 if it is completed
-        mMission.releaseBlock(block.position, remain < 0 ? -1 : block.done);
+        mMission.releaseBlock(block.position, -1, checksum);
+    }
+
+    private int onWritten(Block block, int count) {
+        // only written data counts, the block is resumed from there
+        if (count > 0) {
+            block.done += count;
+            mMission.notifyProgress(count);
+        }
+        return count;
+    }
+
+    /**
+     * Avoids the source of a failed connection if the block can be retried right away on another one
+     *
+     * @return {@code true} if the block should be retried on another source
+     */
+    private boolean failOver(DownloadSources sources, Source source, Exception e) {
+        if (e instanceof HttpError) {
+            // expired urls are recovered, the mirrors would be expired too
+            if (source.primary && ((HttpError) e).statusCode == ERROR_HTTP_FORBIDDEN) return false;
+
+            // the mirror does not have the resource, never use it again
+            if (!source.primary) return sources.disable(source);
+        }
+
+        return sources.fail(source);
     }
 
     @Override
     public void run() {
         boolean retry = false;
+        boolean connected = false;
         Block block = null;
+        long blockAcquired = 0;
+        DownloadSources sources = null;
+        Source source = null;
         int retryCount = 0;
         SharpStream f;
 
@@ -53,9 +107,12 @@ public class DownloadRunnable extends Thread {
             return;
         }
 
+        AlignedWriter writer = new AlignedWriter(f, DownloadMission.BUFFER_SIZE);
+
         while (mMission.running && mMission.errCode == DownloadMission.ERROR_NOTHING) {
             if (!retry) {
                 block = mMission.acquireBlock();
+                blockAcquired = System.nanoTime();
             }
 
             if (block == null) {
@@ -65,11 +122,13 @@ public class DownloadRunnable extends Thread {
 
             if (DEBUG) {
                 if (retry)
-                    Log.d(TAG, mId + ":retry block at position=" + block.position + " from the start");
+                    Log.d(TAG, mId + ":retry block at position=" + block.position + " done=" + block.done);
                 else
                     Log.d(TAG, mId + ":acquired block at position=" + block.position + " done=" + block.done);
             }
 
+            source = null;
+
             long start = (long)block.position * DownloadMission.BLOCK_SIZE;
             long end = start + DownloadMission.BLOCK_SIZE - 1;
 
@@ -80,8 +139,20 @@ public class DownloadRunnable extends Thread {
             }
 
             try {
-                mConn = mMission.openConnection(false, start, end);
+                if (!connected) {
+                    connected = mMission.acquireConnection();
+                    if (!connected) break;
+                }
+
+                sources = mMission.getSources();
+                source = sources.pick();
+
+                if (DEBUG) Log.d(TAG, mId + ":using " + source.getHost());
+
+                long requested = System.nanoTime();
+                mConn = mMission.openConnection(source.url, false, start, end);
                 mMission.establishConnection(mId, mConn);
+                mMission.metrics().onConnected(System.nanoTime() - requested);
 
                 // check if the download can be resumed
                 if (mConn.getResponseCode() == 416) {
@@ -89,6 +160,8 @@ public class DownloadRunnable extends Thread {
                         // try again from the start (of the block)
                         mMission.notifyProgress(-block.done);
                         block.done = 0;
+                        block.checksum.reset();
+                        block.hashed = true;
                         retry = true;
                         mConn.disconnect();
                         continue;
@@ -97,6 +170,16 @@ public class DownloadRunnable extends Thread {
                     throw new DownloadMission.HttpError(416);
                 }
 
+                if (!source.primary && Utility.getTotalContentLength(mConn) != mMission.length) {
+                    // the mirror is serving another resource, use the other sources
+                    if (DEBUG) Log.w(TAG, mId + ":mirror " + source.getHost() + " length mismatch");
+
+                    sources.disable(source);
+                    retry = true;
+                    mConn.disconnect();
+                    continue;
+                }
+
                 retry = false;
 
                 // The server may be ignoring the range request
@@ -108,20 +191,48 @@ public class DownloadRunnable extends Thread {
                     break;
                 }
 
-                f.seek(mMission.offsets[mMission.current] + start);
+                writer.seek(mMission.offsets[mMission.current] + start);
+
+                boolean slow = false;
 
                 try (InputStream is = mConn.getInputStream()) {
-                    byte[] buf = new byte[DownloadMission.BUFFER_SIZE];
-                    int len;
+                    long connBytes = 0;
+                    long connNanos = 0;
 
                     // use always start <= end
                     // fixes a deadlock because in some videos, youtube is sending one byte alone
-                    while (start <= end && mMission.running && (len = is.read(buf, 0, buf.length)) != -1) {
-                        f.write(buf, 0, len);
-                        start += len;
-                        block.done += len;
-                        mMission.notifyProgress(len);
+                    while (start + writer.getBuffered() <= end && mMission.running) {
+                        long readStart = System.nanoTime();
+                        int len = writer.read(is);
+                        if (len == -1) break;
+
+                        long readNanos = System.nanoTime() - readStart;
+                        source.onTransferred(len, readNanos);
+                        connBytes += len;
+                        connNanos += readNanos;
+
+                        mMission.throttle(len);
+                        if (!writer.isFull()) continue;
+
+                        start += onWritten(block, writer.flush(block.checksum));
+
+                        if (sources.isSlow(source, connBytes, connNanos)) {
+                            slow = true;
+                            break;
+                        }
                     }
+
+                    // also keep the data received before the mission was paused
+                    start += onWritten(block, writer.flush(block.checksum));
+                }
+
+                if (slow && start <= end) {
+                    // resume the block from a faster source
+                    if (DEBUG) Log.d(TAG, mId + ":" + source.getHost() + " is slow, switching");
+
+                    retry = true;
+                    mConn.disconnect();
+                    continue;
                 }
 
                 if (DEBUG && mMission.running) {
@@ -130,10 +241,23 @@ public class DownloadRunnable extends Thread {
             } catch (Exception e) {
                 if (!mMission.running || e instanceof ClosedByInterruptException) break;
 
+                if (source != null && failOver(sources, source, e)) {
+                    if (DEBUG) Log.w(TAG, mId + ":" + source.getHost() + " failed, switching", e);
+
+                    mMission.metrics().onRetry();
+                    retry = true;
+                    continue;
+                }
+
                 if (e instanceof HttpError && ((HttpError) e).statusCode == ERROR_HTTP_FORBIDDEN) {
                     // for youtube streams. The url has expired, recover
                     f.close();
 
+                    if (connected) {
+                        mMission.releaseConnection();
+                        connected = false;
+                    }
+
                     if (mId == 1) {
                         // only the first thread will execute the recovery procedure
                         mMission.doRecover(ERROR_HTTP_FORBIDDEN);
@@ -146,12 +270,22 @@ public class DownloadRunnable extends Thread {
                     break;
                 }
 
+                mMission.metrics().onRetry();
                 retry = true;
             } finally {
-                if (!retry) releaseBlock(block, end - start);
+                if (!retry) {
+                    releaseBlock(block, end - start, blockAcquired, f);
+
+                    if (connected) {
+                        mMission.releaseConnection();
+                        connected = false;
+                    }
+                }
             }
         }
 
+        if (connected) mMission.releaseConnection();
+
         f.close();
 
         if (DEBUG) {
@@ -29,6 +29,7 @@ public class DownloadRunnableFallback extends Thread {
     private InputStream mIs;
     private SharpStream mF;
     private HttpURLConnection mConn;
+    private boolean mConnected = false;
 
     DownloadRunnableFallback(@NonNull DownloadMission mission) {
         mMission = mission;
@@ -39,12 +40,17 @@ public class DownloadRunnableFallback extends Thread {
             try {
                 if (mIs != null) mIs.close();
             } finally {
-                mConn.disconnect();
+                if (mConn != null) mConn.disconnect();
             }
         } catch (IOException e) {
             // nothing to do
         }
 
+        if (mConnected) {
+            mMission.releaseConnection();
+            mConnected = false;
+        }
+
         if (mF != null) mF.close();
     }
 
@@ -61,6 +67,13 @@ public class DownloadRunnableFallback extends Thread {
             long rangeStart = (mMission.unknownLength || start < 1) ? -1 : start;
 
             int mId = 1;
+            mConnected = mMission.acquireConnection();
+            if (!mConnected) {
+                mMission.fallbackResumeOffset = start;
+                return;
+            }
+
+            long requested = System.nanoTime();
             mConn = mMission.openConnection(false, rangeStart, -1);
 
             if (mRetryCount == 0 && rangeStart == -1) {
@@ -69,6 +82,7 @@ public class DownloadRunnableFallback extends Thread {
             }
 
             mMission.establishConnection(mId, mConn);
+            mMission.metrics().onConnected(System.nanoTime() - requested);
 
             // check if the download can be resumed
             if (mConn.getResponseCode() == 416 && start > 0) {
@@ -99,8 +113,12 @@ public class DownloadRunnableFallback extends Thread {
                 mF.write(buf, 0, len);
                 start += len;
                 mMission.notifyProgress(len);
+                mMission.throttle(len);
             }
 
+            // the stream may buffer the writes, the download is done once they reached the file
+            mF.flush();
+
             dispose();
 
             // if thread goes interrupted check if the last part is written. This avoid re-download the whole file
@@ -124,6 +142,8 @@ public class DownloadRunnableFallback extends Thread {
                 return;
             }
 
+            mMission.metrics().onRetry();
+
             if (DEBUG) {
                 Log.e(TAG, "got exception, retrying...", e);
             }
@@ -0,0 +1,276 @@
+package us.shandian.giga.get;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.io.UnsupportedEncodingException;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.net.URLDecoder;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * The equivalent URLs the current resource of a mission can be downloaded from, with the
+ * throughput and the failures of each one.
+ * <p>
+ * Besides the URL of the resource, googlevideo URLs list the other servers (mirrors) which hold the
+ * same file in their {@code mn} parameter. Blocks are downloaded from the fastest source, a failed
+ * block is retried right away on another source, and a block downloaded much slower than from
+ * another source is resumed on that source.
+ * <p>
+ * A mirror is only used if it serves a resource of the same length, see
+ * {@link #disable(Source)}.
+ */
+public class DownloadSources {
+    /**
+     * How long a connection must have been read before its throughput is compared
+     */
+    static final long MIN_SAMPLE_NANOS = TimeUnit.SECONDS.toNanos(2);
+
+    /**
+     * A connection slower than this fraction of the throughput of another source is resumed on
+     * that source
+     */
+    static final float SLOW_SOURCE_RATIO = 0.25f;
+
+    /**
+     * How long a source is not used after a failure
+     */
+    static final long FAILURE_BACKOFF_MILLIS = 30000;
+
+    private static final Pattern GOOGLEVIDEO_HOST =
+            Pattern.compile("^(r+\\d+---)(sn-[a-z0-9-]+)(\\.googlevideo\\.com)$");
+    private static final Pattern MIRROR_NAME = Pattern.compile("^sn-[a-z0-9-]+$");
+
+    private final List<Source> sources = new ArrayList<>();
+
+    /**
+     * @param url the URL of the resource
+     */
+    DownloadSources(@NonNull String url) {
+        sources.add(new Source(url, true));
+        for (String mirror : getMirrors(url)) sources.add(new Source(mirror, false));
+    }
+
+    /**
+     * @return the sources, the first one is the URL of the resource
+     */
+    public List<Source> getSources() {
+        return Collections.unmodifiableList(sources);
+    }
+
+    /**
+     * Picks the source to download the next block from: a source never tried before, otherwise,
+     * the fastest source which did not fail recently
+     *
+     * @return the source to use
+     */
+    @NonNull
+    synchronized Source pick() {
+        long now = System.currentTimeMillis();
+        Source best = null;
+
+        for (Source source : sources) {
+            if (!source.isUsable(now)) continue;
+
+            if (source.attempts == 0) {
+                best = source;
+                break;
+            }
+
+            if (best == null || source.getThroughput() > best.getThroughput()) best = source;
+        }
+
+        if (best == null) {
+            // every source failed recently, the mission will give up soon
+            best = sources.get(0);
+            for (Source source : sources) {
+                if (!source.disabled) {
+                    best = source;
+                    break;
+                }
+            }
+        }
+
+        best.attempts++;
+        return best;
+    }
+
+    /**
+     * Avoids a source for a while after it failed
+     *
+     * @param source the source which failed
+     * @return {@code true} if another source can be used right now, otherwise, {@code false}
+     */
+    synchronized boolean fail(@NonNull Source source) {
+        source.failures++;
+        source.failedUntil = System.currentTimeMillis() + FAILURE_BACKOFF_MILLIS;
+        return hasAlternative(source);
+    }
+
+    /**
+     * Stops using a source, because it rejected the request or does not serve the same resource
+     *
+     * @param source the source to stop using
+     * @return {@code true} if another source can be used right now, otherwise, {@code false}
+     */
+    synchronized boolean disable(@NonNull Source source) {
+        source.failures++;
+        source.disabled = true;
+        return hasAlternative(source);
+    }
+
+    /**
+     * Indicates if a connection is much slower than another source
+     *
+     * @param source the source of the connection
+     * @param bytes  the amount of bytes read from the connection
+     * @param nanos  for how long the connection was read
+     * @return {@code true} if the block should be resumed on another source
+     */
+    synchronized boolean isSlow(@NonNull Source source, long bytes, long nanos) {
+        if (nanos < MIN_SAMPLE_NANOS) return false;
+
+        long throughput = bytes * TimeUnit.SECONDS.toNanos(1) / nanos;
+        long now = System.currentTimeMillis();
+
+        for (Source other : sources) {
+            if (other == source || !other.isUsable(now) || other.nanos < MIN_SAMPLE_NANOS) continue;
+            if (other.getThroughput() * SLOW_SOURCE_RATIO > throughput) return true;
+        }
+
+        return false;
+    }
+
+    private boolean hasAlternative(Source source) {
+        long now = System.currentTimeMillis();
+        for (Source other : sources) {
+            if (other != source && other.isUsable(now)) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Lists the mirrors of a googlevideo URL
+     *
+     * @param url the URL of a resource
+     * @return the same URL on each of the other servers listed in its {@code mn} parameter
+     */
+    @NonNull
+    static List<String> getMirrors(@NonNull String url) {
+        List<String> mirrors = new ArrayList<>();
+
+        URL parsed;
+        try {
+            parsed = new URL(url);
+        } catch (MalformedURLException e) {
+            return mirrors;
+        }
+
+        String host = parsed.getHost();
+        Matcher matcher = GOOGLEVIDEO_HOST.matcher(host);
+        if (!matcher.matches()) return mirrors;
+
+        String names = getQueryParameter(parsed.getQuery(), "mn");
+        if (names == null) return mirrors;
+
+        int hostStart = url.indexOf(host);
+        for (String name : names.split(",")) {
+            if (name.equals(matcher.group(2)) || !MIRROR_NAME.matcher(name).matches()) continue;
+
+            String mirrorHost = matcher.group(1) + name + matcher.group(3);
+            mirrors.add(url.substring(0, hostStart) + mirrorHost + url.substring(hostStart + host.length()));
+        }
+
+        return mirrors;
+    }
+
+    @Nullable
+    private static String getQueryParameter(@Nullable String query, @NonNull String name) {
+        if (query == null) return null;
+
+        for (String parameter : query.split("&")) {
+            int equals = parameter.indexOf('=');
+            if (equals < 0 || !parameter.substring(0, equals).equals(name)) continue;
+
+            try {
+                return URLDecoder.decode(parameter.substring(equals + 1), "UTF-8");
+            } catch (UnsupportedEncodingException | IllegalArgumentException e) {
+                return null;
+            }
+        }
+
+        return null;
+    }
+
+    public static class Source {
+        public final String url;
+        public final boolean primary;
+
+        private long bytes;
+        private long nanos;
+        private int attempts;
+        private int failures;
+        private long failedUntil;
+        private boolean disabled;
+
+        Source(@NonNull String url, boolean primary) {
+            this.url = url;
+            this.primary = primary;
+        }
+
+        /**
+         * Accounts data read from this source
+         *
+         * @param bytes amount of bytes read
+         * @param nanos time spent reading them
+         */
+        synchronized void onTransferred(int bytes, long nanos) {
+            this.bytes += bytes;
+            this.nanos += nanos;
+        }
+
+        /**
+         * @return the host name of this source
+         */
+        public String getHost() {
+            try {
+                return new URL(url).getHost();
+            } catch (MalformedURLException e) {
+                return url;
+            }
+        }
+
+        /**
+         * @return the amount of bytes downloaded from this source
+         */
+        public synchronized long getBytes() {
+            return bytes;
+        }
+
+        /**
+         * @return the average throughput of this source, in bytes per second
+         */
+        public synchronized long getThroughput() {
+            if (nanos < 1) return 0;
+            return bytes * TimeUnit.SECONDS.toNanos(1) / nanos;
+        }
+
+        public synchronized int getFailures() {
+            return failures;
+        }
+
+        public synchronized boolean isDisabled() {
+            return disabled;
+        }
+
+        private boolean isUsable(long now) {
+            return !disabled && failedUntil <= now;
+        }
+    }
+}
@@ -0,0 +1,237 @@
+package us.shandian.giga.get;
+
+import androidx.annotation.NonNull;
+
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures how a mission was downloaded: the downloaded bytes over time, how long the server takes
+ * to answer, how long each block takes, the retries, the errors and the post-processing. Stored
+ * with the mission so the measures of a download survive restarts of the app.
+ */
+public class MissionMetrics implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Maximum amount of progress samples, the samples are thinned out when reached
+     */
+    static final int MAX_SAMPLES = 720;
+
+    /**
+     * Maximum amount of errors kept
+     */
+    static final int MAX_ERRORS = 50;
+
+    /**
+     * Upper bound of the first bucket of the block throughput histogram, the bound of every next
+     * bucket is the double of the previous one and the last bucket has no bound
+     */
+    public static final long HISTOGRAM_FIRST_BOUND = 64 * 1024;
+    public static final int HISTOGRAM_BUCKETS = 10;
+
+    private static final long INITIAL_SAMPLE_INTERVAL = 1000;
+
+    public String name;
+    public char kind;
+    public long length;
+    public boolean finished;
+
+    private long started = -1;
+    private long ended = -1;
+
+    private long sampleInterval = INITIAL_SAMPLE_INTERVAL;
+    private long lastSampleTime = -1;
+    private final ArrayList<long[]> samples = new ArrayList<>();
+
+    private int connections;
+    private long firstByteNanosTotal;
+    private long firstByteNanosMax;
+
+    private int blocks;
+    private long blockNanosTotal;
+    private long blockNanosMax;
+    private final int[] histogram = new int[HISTOGRAM_BUCKETS];
+
+    private int retries;
+    private final ArrayList<long[]> errors = new ArrayList<>();
+
+    private String postprocessing;
+    private long postprocessingMillis = -1;
+
+    /**
+     * Accounts the progress of the mission, sampled at most once per sample interval
+     *
+     * @param done amount of bytes downloaded
+     */
+    synchronized void onProgress(long done) {
+        long now = System.currentTimeMillis();
+        if (started < 0) started = now;
+        if (lastSampleTime >= 0 && now - lastSampleTime < sampleInterval) return;
+
+        lastSampleTime = now;
+        samples.add(new long[]{now, done});
+
+        if (samples.size() >= MAX_SAMPLES) {
+            // keep every other sample, the series still covers the whole download
+            for (int i = samples.size() - 1; i > 0; i -= 2) samples.remove(i - 1);
+            sampleInterval *= 2;
+        }
+    }
+
+    /**
+     * Accounts a connection whose response arrived
+     *
+     * @param nanos time elapsed since the request was sent
+     */
+    synchronized void onConnected(long nanos) {
+        connections++;
+        firstByteNanosTotal += nanos;
+        firstByteNanosMax = Math.max(firstByteNanosMax, nanos);
+    }
+
+    /**
+     * Accounts a downloaded block
+     *
+     * @param bytes size of the block
+     * @param nanos time elapsed since the block was acquired, including the retries
+     */
+    synchronized void onBlockFinished(long bytes, long nanos) {
+        blocks++;
+        blockNanosTotal += nanos;
+        blockNanosMax = Math.max(blockNanosMax, nanos);
+
+        long throughput = nanos < 1 ? Long.MAX_VALUE : bytes * TimeUnit.SECONDS.toNanos(1) / nanos;
+        int bucket = 0;
+        for (long bound = HISTOGRAM_FIRST_BOUND; bucket < HISTOGRAM_BUCKETS - 1 && throughput >= bound; bound *= 2)
+            bucket++;
+
+        histogram[bucket]++;
+    }
+
+    synchronized void onRetry() {
+        retries++;
+    }
+
+    synchronized void onError(int errCode) {
+        if (errors.size() >= MAX_ERRORS) errors.remove(0);
+        errors.add(new long[]{System.currentTimeMillis(), errCode});
+    }
+
+    synchronized void onPostprocessed(String algorithm, long millis) {
+        postprocessing = algorithm;
+        postprocessingMillis = millis;
+    }
+
+    synchronized void onFinished(long done) {
+        lastSampleTime = -1;
+        onProgress(done);
+        ended = System.currentTimeMillis();
+        finished = true;
+    }
+
+    private synchronized void writeObject(ObjectOutputStream out) throws IOException {
+        // the download threads may be measuring while the mission is written to its meta file
+        out.defaultWriteObject();
+    }
+
+    /**
+     * @return when the first byte was downloaded, or {@code -1} if nothing was downloaded yet
+     */
+    public synchronized long getStarted() {
+        return started;
+    }
+
+    /**
+     * @return when the download was finished, or {@code -1} if it was not
+     */
+    public synchronized long getEnded() {
+        return ended;
+    }
+
+    /**
+     * @return the amount of bytes downloaded over time, as pairs of a timestamp and an amount
+     */
+    @NonNull
+    public synchronized List<long[]> getSamples() {
+        return new ArrayList<>(samples);
+    }
+
+    /**
+     * @return the average throughput from the first to the last sample, in bytes per second
+     */
+    public synchronized long getAverageThroughput() {
+        if (samples.size() < 2) return 0;
+
+        long[] first = samples.get(0);
+        long[] last = samples.get(samples.size() - 1);
+        if (last[0] <= first[0]) return 0;
+
+        return (last[1] - first[1]) * 1000 / (last[0] - first[0]);
+    }
+
+    public synchronized int getConnections() {
+        return connections;
+    }
+
+    /**
+     * @return the average time to first byte of the connections, in milliseconds
+     */
+    public synchronized long getAverageFirstByteMillis() {
+        return connections < 1 ? 0 : TimeUnit.NANOSECONDS.toMillis(firstByteNanosTotal / connections);
+    }
+
+    public synchronized long getMaxFirstByteMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(firstByteNanosMax);
+    }
+
+    public synchronized int getBlocks() {
+        return blocks;
+    }
+
+    public synchronized long getAverageBlockMillis() {
+        return blocks < 1 ? 0 : TimeUnit.NANOSECONDS.toMillis(blockNanosTotal / blocks);
+    }
+
+    public synchronized long getMaxBlockMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(blockNanosMax);
+    }
+
+    /**
+     * @return the amount of blocks in each throughput bucket, see {@link #HISTOGRAM_FIRST_BOUND}
+     */
+    @NonNull
+    public synchronized int[] getHistogram() {
+        return histogram.clone();
+    }
+
+    public synchronized int getRetries() {
+        return retries;
+    }
+
+    /**
+     * @return the last errors, as pairs of a timestamp and an error code
+     */
+    @NonNull
+    public synchronized List<long[]> getErrors() {
+        return new ArrayList<>(errors);
+    }
+
+    /**
+     * @return the name of the post-processing algorithm, or {@code null} if none was run
+     */
+    public synchronized String getPostprocessing() {
+        return postprocessing;
+    }
+
+    /**
+     * @return how long the post-processing took, or {@code -1} if it was not run
+     */
+    public synchronized long getPostprocessingMillis() {
+        return postprocessingMillis;
+    }
+}
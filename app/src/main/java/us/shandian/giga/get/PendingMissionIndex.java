@@ -0,0 +1,126 @@
+package us.shandian.giga.get;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.io.File;
+import java.io.Serializable;
+import java.util.HashMap;
+import java.util.List;
+
+import us.shandian.giga.util.Utility;
+
+/**
+ * Summaries of the pending missions, stored in a single file next to their meta files.
+ * <p>
+ * Reading the meta file of every pending mission at startup is slow when there are many of them,
+ * because each one holds the whole state of the mission (blocks, recovery information, errors).
+ * This index holds a {@link DownloadMission#summarize() summary} of each mission instead, which is
+ * enough to list and queue them; the rest of the state is read from the meta file when the mission
+ * is started, see {@link DownloadMission#load()}.
+ * <p>
+ * A summary is only used if the meta file was not modified since the index was saved, otherwise,
+ * the meta file is read as usual.
+ */
+public class PendingMissionIndex {
+    private static final String FILENAME = ".index";
+
+    private final File file;
+    private final HashMap<String, Entry> entries;
+
+    private PendingMissionIndex(File file, HashMap<String, Entry> entries) {
+        this.file = file;
+        this.entries = entries;
+    }
+
+    /**
+     * Reads the index of a directory of meta files
+     *
+     * @param directory the directory where the meta files of the pending missions are stored
+     * @return the index, empty if it does not exist or cannot be read
+     */
+    @NonNull
+    @SuppressWarnings("unchecked")
+    public static PendingMissionIndex read(@NonNull File directory) {
+        File file = new File(directory, FILENAME);
+        HashMap<String, Entry> entries = new HashMap<>();
+
+        if (file.isFile()) {
+            Object index = Utility.readFromFile(file);
+            if (index instanceof HashMap) entries = (HashMap<String, Entry>) index;
+        }
+
+        return new PendingMissionIndex(file, entries);
+    }
+
+    /**
+     * Gets the summary of a mission, only if the meta file did not change since it was indexed
+     *
+     * @param metadata the meta file of the mission
+     * @return a mission created from its summary, which must be {@link DownloadMission#load()
+     * loaded} before being downloaded, or {@code null} if not indexed or outdated
+     */
+    @Nullable
+    public synchronized DownloadMission get(@NonNull File metadata) {
+        Entry entry = entries.get(metadata.getName());
+        if (entry == null) return null;
+        if (entry.lastModified != metadata.lastModified() || entry.length != metadata.length())
+            return null;
+
+        entry.mission.partial = true;
+        return entry.mission;
+    }
+
+    /**
+     * Indexes the given missions, replacing the previous index. Missions without meta file are
+     * ignored
+     *
+     * @param missions the pending missions
+     */
+    public synchronized void save(@NonNull List<DownloadMission> missions) {
+        HashMap<String, Entry> saved = new HashMap<>(missions.size());
+
+        for (DownloadMission mission : missions) {
+            File metadata = mission.metadata;
+            if (metadata == null || mission.urls.length < 1) continue;
+
+            Entry entry = new Entry();
+            entry.lastModified = metadata.lastModified();
+            entry.length = metadata.length();
+            entry.mission = mission.summarize();
+
+            saved.put(metadata.getName(), entry);
+        }
+
+        // write a copy first, an incomplete index is worse than an outdated one
+        File tmp = new File(file.getParentFile(), FILENAME + ".tmp");
+        Utility.writeToFile(tmp, saved);
+
+        if (tmp.renameTo(file)) {
+            entries.clear();
+            entries.putAll(saved);
+        } else {
+            //noinspection ResultOfMethodCallIgnored
+            tmp.delete();
+        }
+    }
+
+    /**
+     * Indicates if a file in the directory of meta files belongs to the index rather than to a
+     * mission
+     *
+     * @param file a file in the directory of meta files
+     * @return {@code true} if it is the index or a temporary file
+     */
+    public static boolean isIndexFile(@NonNull File file) {
+        return file.getName().startsWith(".");
+    }
+
+    private static class Entry implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        long lastModified;
+        long length;
+        DownloadMission mission;
+    }
+}
@@ -0,0 +1,423 @@
+package us.shandian.giga.get;
+
+import android.content.Context;
+import android.net.Uri;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.grack.nanojson.JsonAppendableWriter;
+import com.grack.nanojson.JsonArray;
+import com.grack.nanojson.JsonObject;
+import com.grack.nanojson.JsonParser;
+import com.grack.nanojson.JsonParserException;
+import com.grack.nanojson.JsonWriter;
+
+import org.schabi.newpipe.extractor.MediaFormat;
+import org.schabi.newpipe.streams.io.SharpInputStream;
+import org.schabi.newpipe.streams.io.SharpStream;
+import org.schabi.newpipe.streams.io.StoredDirectoryHelper;
+import org.schabi.newpipe.streams.io.StoredFileHelper;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+
+import us.shandian.giga.postprocessing.Postprocessing;
+
+/**
+ * A resume file stored next to a partial download, so the download can be resumed even if the
+ * pending downloads were lost, for instance when the app data is cleared or the app reinstalled.
+ * <p>
+ * The file is JSON and describes itself: the resources of the mission, where they are written,
+ * the post-processing, the information needed to recover expired urls, and a bitmap of the
+ * downloaded blocks of the current resource with the CRC32 of each one. The blocks are verified
+ * in parallel before resuming, the blocks which do not match are downloaded again.
+ */
+public class ResumeSidecar {
+    private static final String TAG = "ResumeSidecar";
+
+    static final String FORMAT = "newpipe-resume";
+    static final int VERSION = 1;
+
+    private static final String PREFIX = ".";
+    private static final String SUFFIX = ".resume";
+
+    /**
+     * Minimum time between two writes of the resume file of a running mission
+     */
+    static final long WRITE_INTERVAL = 10000;
+
+    /**
+     * Checksum value of the blocks downloaded without computing it
+     */
+    static final long UNKNOWN_CHECKSUM = -1;
+
+    /**
+     * @param outputName the name of the downloaded file
+     * @return the name of the resume file of the downloaded file
+     */
+    @NonNull
+    public static String getName(@NonNull String outputName) {
+        return PREFIX + outputName + SUFFIX;
+    }
+
+    public static boolean isResumeFile(@NonNull String name) {
+        return name.length() > PREFIX.length() + SUFFIX.length() && name.startsWith(PREFIX) && name.endsWith(SUFFIX);
+    }
+
+    /**
+     * @param name the name of a resume file
+     * @return the name of the downloaded file
+     */
+    @NonNull
+    public static String getOutputName(@NonNull String name) {
+        return name.substring(PREFIX.length(), name.length() - SUFFIX.length());
+    }
+
+    /**
+     * Describes the state of a mission, must be called while holding the mission lock
+     *
+     * @param mission the mission, with its blocks initialized
+     * @return the content of the resume file
+     */
+    @NonNull
+    static byte[] encode(@NonNull DownloadMission mission) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        JsonAppendableWriter writer = JsonWriter.on(out).object()
+                .value("format", FORMAT)
+                .value("version", VERSION)
+                .value("source", mission.source)
+                .value("kind", String.valueOf(mission.kind))
+                .value("thread_count", mission.threadCount)
+                .value("near_length", mission.nearLength)
+                .value("current", mission.current)
+                .value("length", mission.length)
+                .value("block_size", DownloadMission.BLOCK_SIZE)
+                .value("checksum", "crc32");
+
+        writer.array("urls");
+        for (String url : mission.urls) writer.value(url);
+        writer.end();
+
+        writer.array("offsets");
+        for (long offset : mission.offsets) writer.value(offset);
+        writer.end();
+
+        if (mission.psAlgorithm != null) {
+            writer.object("postprocessing").value("name", mission.psAlgorithm.getName());
+            writer.array("args");
+            String[] args = mission.psAlgorithm.getArgs();
+            if (args != null) for (String arg : args) writer.value(arg);
+            writer.end().end();
+        }
+
+        if (mission.recoveryInfo != null) {
+            writer.array("recovery");
+            for (MissionRecoveryInfo info : mission.recoveryInfo) {
+                writer.object()
+                        .value("format", info.getFormat() == null ? -1 : info.getFormat().id)
+                        .value("desired", info.getDesired())
+                        .value("desired2", info.isDesired2())
+                        .value("bitrate", info.getDesiredBitrate())
+                        .value("kind", String.valueOf(info.getKind()))
+                        .value("validate", info.getValidateCondition())
+                        .end();
+            }
+            writer.end();
+        }
+
+        // only the blocks with a known checksum can be verified, the others are downloaded again
+        int[] blocks = mission.blocks;
+        long[] checksums = mission.checksums;
+        byte[] bitmap = new byte[(blocks.length + 7) / 8];
+
+        writer.array("checksums");
+        for (int i = 0; i < blocks.length; i++) {
+            if (blocks[i] >= 0 || checksums == null || checksums[i] == UNKNOWN_CHECKSUM) continue;
+
+            bitmap[i / 8] |= 1 << (i % 8);
+            writer.value(checksums[i]);
+        }
+        writer.end();
+
+        writer.value("blocks", blocks.length)
+                .value("completed", toHex(bitmap))
+                .end()
+                .done();
+
+        return out.toByteArray();
+    }
+
+    /**
+     * Creates a mission from a resume file, its blocks are not verified yet, see
+     * {@link #verify(Callable, long, long, int[], long[], int)}
+     *
+     * @param in      the content of the resume file
+     * @param storage the downloaded file
+     * @return the mission, not running and not enqueued
+     * @throws IOException if the resume file is not valid
+     */
+    @NonNull
+    static DownloadMission decode(@NonNull InputStream in, StoredFileHelper storage) throws IOException {
+        try {
+            JsonObject json = JsonParser.object().from(in);
+
+            if (!FORMAT.equals(json.getString("format")) || json.getInt("version") > VERSION)
+                throw new IOException("unsupported resume file");
+            if (json.getInt("block_size") != DownloadMission.BLOCK_SIZE)
+                throw new IOException("unsupported block size");
+
+            JsonArray jsonUrls = json.getArray("urls");
+            JsonArray jsonOffsets = json.getArray("offsets");
+            if (jsonUrls.isEmpty() || jsonUrls.size() != jsonOffsets.size())
+                throw new IOException("invalid resources");
+
+            String[] urls = new String[jsonUrls.size()];
+            long[] offsets = new long[urls.length];
+            for (int i = 0; i < urls.length; i++) {
+                urls[i] = jsonUrls.getString(i);
+                offsets[i] = jsonOffsets.getNumber(i).longValue();
+            }
+
+            Postprocessing ps = null;
+            JsonObject jsonPs = json.getObject("postprocessing", null);
+            if (jsonPs != null) {
+                JsonArray jsonArgs = jsonPs.getArray("args");
+                String[] args = new String[jsonArgs.size()];
+                for (int i = 0; i < args.length; i++) args[i] = jsonArgs.getString(i);
+
+                ps = Postprocessing.getAlgorithm(jsonPs.getString("name"), args);
+            }
+
+            DownloadMission mission = new DownloadMission(urls, storage, json.getString("kind").charAt(0), ps);
+            mission.offsets = offsets;
+            mission.source = json.getString("source");
+            mission.threadCount = json.getInt("thread_count", mission.threadCount);
+            mission.nearLength = json.getLong("near_length");
+            mission.current = json.getInt("current");
+            mission.length = json.getLong("length");
+            mission.enqueued = false;
+
+            if (mission.current < 0 || mission.current >= urls.length || mission.length < 1)
+                throw new IOException("invalid current resource");
+
+            JsonArray jsonRecovery = json.getArray("recovery", null);
+            if (jsonRecovery != null) {
+                mission.recoveryInfo = new MissionRecoveryInfo[jsonRecovery.size()];
+                for (int i = 0; i < jsonRecovery.size(); i++) {
+                    JsonObject info = jsonRecovery.getObject(i);
+                    String kind = info.getString("kind");
+
+                    mission.recoveryInfo[i] = new MissionRecoveryInfo(
+                            MediaFormat.getFormatById(info.getInt("format")),
+                            info.getString("desired"),
+                            info.getBoolean("desired2"),
+                            info.getInt("bitrate"),
+                            kind == null || kind.isEmpty() ? Character.MIN_VALUE : kind.charAt(0),
+                            info.getString("validate")
+                    );
+                }
+            }
+
+            int count = json.getInt("blocks");
+            if (count != (int) ((mission.length + DownloadMission.BLOCK_SIZE - 1) / DownloadMission.BLOCK_SIZE))
+                throw new IOException("invalid amount of blocks");
+
+            byte[] bitmap = fromHex(json.getString("completed"));
+            JsonArray jsonChecksums = json.getArray("checksums");
+
+            mission.blocks = new int[count];
+            mission.checksums = new long[count];
+            Arrays.fill(mission.checksums, UNKNOWN_CHECKSUM);
+
+            for (int i = 0, j = 0; i < count; i++) {
+                if (i / 8 >= bitmap.length || (bitmap[i / 8] & (1 << (i % 8))) == 0) continue;
+                if (j >= jsonChecksums.size()) throw new IOException("missing checksums");
+
+                mission.blocks[i] = -1;
+                mission.checksums[i] = jsonChecksums.getNumber(j++).longValue();
+            }
+
+            return mission;
+        } catch (JsonParserException | RuntimeException e) {
+            throw new IOException("invalid resume file", e);
+        }
+    }
+
+    /**
+     * Checks the downloaded blocks of the current resource against their checksum, in parallel.
+     * The blocks which do not match are marked as not downloaded
+     *
+     * @param opener    opens a new stream of the downloaded file, one is used by each thread
+     * @param offset    where the current resource starts in the file
+     * @param length    the length of the current resource
+     * @param blocks    the blocks of the current resource, {@code -1} for downloaded ones
+     * @param checksums the checksum of each downloaded block
+     * @param threads   the amount of threads to use
+     * @return the amount of blocks which did not match
+     * @throws IOException if the file cannot be read
+     */
+    static int verify(@NonNull Callable<SharpStream> opener, long offset, long length,
+                      @NonNull int[] blocks, @NonNull long[] checksums, int threads) throws IOException {
+        List<Integer> pending = new ArrayList<>();
+        for (int i = 0; i < blocks.length; i++) if (blocks[i] < 0) pending.add(i);
+        if (pending.isEmpty()) return 0;
+
+        threads = Math.max(1, Math.min(threads, pending.size()));
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        List<Future<Integer>> results = new ArrayList<>(threads);
+
+        // contiguous ranges, every thread reads its part of the file sequentially
+        int chunk = (pending.size() + threads - 1) / threads;
+        for (int i = 0; i < pending.size(); i += chunk) {
+            List<Integer> range = pending.subList(i, Math.min(i + chunk, pending.size()));
+            results.add(executor.submit(() -> verifyRange(opener, offset, length, blocks, checksums, range)));
+        }
+
+        int invalid = 0;
+        try {
+            for (Future<Integer> result : results) invalid += result.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("verification interrupted", e);
+        } catch (ExecutionException e) {
+            throw new IOException("verification failed", e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+
+        return invalid;
+    }
+
+    private static int verifyRange(Callable<SharpStream> opener, long offset, long length, int[] blocks,
+                                   long[] checksums, List<Integer> range) throws Exception {
+        byte[] buffer = new byte[DownloadMission.BUFFER_SIZE];
+        int invalid = 0;
+
+        try (SharpStream stream = opener.call()) {
+            for (int block : range) {
+                long start = (long) block * DownloadMission.BLOCK_SIZE;
+                int size = (int) Math.min(DownloadMission.BLOCK_SIZE, length - start);
+
+                long checksum;
+                try {
+                    checksum = checksum(stream, offset + start, size, buffer);
+                } catch (IOException e) {
+                    // the file is shorter
+                    checksum = UNKNOWN_CHECKSUM;
+                }
+
+                if (checksum != checksums[block]) {
+                    blocks[block] = 0;
+                    checksums[block] = UNKNOWN_CHECKSUM;
+                    invalid++;
+                }
+            }
+        }
+
+        return invalid;
+    }
+
+    /**
+     * Computes the checksum of a block already written
+     *
+     * @param stream the downloaded file
+     * @param offset where the block starts
+     * @param length the length of the block
+     * @param buffer a buffer to read the block
+     * @return the CRC32 of the block
+     * @throws IOException if the block cannot be read completely
+     */
+    static long checksum(@NonNull SharpStream stream, long offset, int length, @NonNull byte[] buffer) throws IOException {
+        CRC32 crc = new CRC32();
+        stream.seek(offset);
+
+        while (length > 0) {
+            int read = stream.read(buffer, 0, Math.min(length, buffer.length));
+            if (read < 1) throw new IOException("unexpected end of file");
+
+            crc.update(buffer, 0, read);
+            length -= read;
+        }
+
+        return crc.getValue();
+    }
+
+    /**
+     * Rebuilds a mission from a resume file found in a download directory and verifies its blocks
+     *
+     * @param context the context
+     * @param dir     the directory where the resume file was found
+     * @param name    the name of the resume file
+     * @return the mission, or {@code null} if the downloaded file is missing or the resume file
+     * cannot be used
+     */
+    @Nullable
+    public static DownloadMission restore(@NonNull Context context, @NonNull StoredDirectoryHelper dir, @NonNull String name) {
+        Uri outputUri = dir.findFile(getOutputName(name));
+        Uri resumeUri = dir.findFile(name);
+        if (outputUri == null || resumeUri == null) return null;
+
+        try {
+            StoredFileHelper storage = new StoredFileHelper(context, dir.getUri(), outputUri, dir.getTag());
+            StoredFileHelper resume = new StoredFileHelper(context, dir.getUri(), resumeUri, dir.getTag());
+
+            DownloadMission mission;
+            try (InputStream in = new SharpInputStream(resume.getStream())) {
+                mission = decode(in, storage);
+            }
+
+            long start = System.currentTimeMillis();
+            int threads = Math.min(Runtime.getRuntime().availableProcessors(), 4);
+            int invalid = verify(storage::getStream, mission.offsets[mission.current], mission.length,
+                    mission.blocks, mission.checksums, threads);
+
+            mission.done = mission.offsets[mission.current] - mission.offsets[0];
+            for (int i = 0; i < mission.blocks.length; i++) {
+                if (mission.blocks[i] < 0)
+                    mission.done += Math.min(DownloadMission.BLOCK_SIZE, mission.length - (long) i * DownloadMission.BLOCK_SIZE);
+            }
+
+            Log.i(TAG, "restored " + storage.getName() + ", " + invalid + " blocks did not match, verified in "
+                    + (System.currentTimeMillis() - start) + "ms");
+
+            return mission;
+        } catch (Exception e) {
+            Log.w(TAG, "cannot restore the download of " + name, e);
+            return null;
+        }
+    }
+
+    private static String toHex(byte[] bytes) {
+        StringBuilder str = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            str.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return str.toString();
+    }
+
+    private static byte[] fromHex(String hex) throws IOException {
+        if (hex.length() % 2 != 0) throw new IOException("invalid bitmap");
+
+        byte[] bytes = new byte[hex.length() / 2];
+        for (int i = 0; i < bytes.length; i++) {
+            int high = Character.digit(hex.charAt(i * 2), 16);
+            int low = Character.digit(hex.charAt(i * 2 + 1), 16);
+            if (high < 0 || low < 0) throw new IOException("invalid bitmap");
+
+            bytes[i] = (byte) ((high << 4) | low);
+        }
+        return bytes;
+    }
+}
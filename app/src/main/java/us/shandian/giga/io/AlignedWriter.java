@@ -0,0 +1,121 @@
+package us.shandian.giga.io;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import org.schabi.newpipe.streams.io.SharpStream;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.Checksum;
+
+/**
+ * Buffers the data received from the network before writing it to a {@link SharpStream}, so
+ * that it is written with a few large writes ending at multiples of {@link #ALIGNMENT} in the
+ * file, instead of one small and unaligned write for every read. Flash storage handles aligned
+ * writes of whole pages better, and the file is less fragmented.
+ */
+public class AlignedWriter {
+    /**
+     * The page size of most file systems and flash storage
+     */
+    public static final int ALIGNMENT = 4096;
+
+    private final SharpStream target;
+    private final byte[] buffer;
+
+    private long position;
+    private int buffered;
+    private int limit;
+
+    /**
+     * @param target     the stream to write to, must be seekable
+     * @param bufferSize the size of the buffer, a multiple of {@link #ALIGNMENT}
+     */
+    public AlignedWriter(@NonNull SharpStream target, int bufferSize) {
+        if (bufferSize < ALIGNMENT || bufferSize % ALIGNMENT != 0)
+            throw new IllegalArgumentException("the buffer size must be a multiple of " + ALIGNMENT);
+
+        this.target = target;
+        this.buffer = new byte[bufferSize];
+        this.limit = bufferSize;
+    }
+
+    /**
+     * Discards the buffered data and moves to another position of the stream
+     *
+     * @param offset the position in the stream where the next data will be written
+     * @throws IOException if the stream cannot seek
+     */
+    public void seek(long offset) throws IOException {
+        target.seek(offset);
+        position = offset;
+        buffered = 0;
+        limit = nextLimit();
+    }
+
+    /**
+     * Reads data into the buffer, never past the next aligned position of the stream
+     *
+     * @param source the stream to read from
+     * @return the amount of bytes read, or {@code -1} if the end of the source was reached
+     * @throws IOException if an I/O error occurs while reading
+     */
+    public int read(@NonNull InputStream source) throws IOException {
+        int len = source.read(buffer, buffered, limit - buffered);
+        if (len > 0) buffered += len;
+        return len;
+    }
+
+    /**
+     * @return the amount of bytes read but not written yet
+     */
+    public int getBuffered() {
+        return buffered;
+    }
+
+    /**
+     * Indicates if the buffer reached the next aligned position and should be written
+     *
+     * @return {@code true} if {@link #flush()} should be called before reading again
+     */
+    public boolean isFull() {
+        return buffered >= limit;
+    }
+
+    /**
+     * Writes the buffered data to the stream, and flushes it
+     *
+     * @return the amount of bytes written
+     * @throws IOException if an I/O error occurs while writing
+     */
+    public int flush() throws IOException {
+        return flush(null);
+    }
+
+    /**
+     * Writes the buffered data to the stream, and flushes it
+     *
+     * @param checksum the checksum to update with the written data, if any
+     * @return the amount of bytes written
+     * @throws IOException if an I/O error occurs while writing
+     */
+    public int flush(@Nullable Checksum checksum) throws IOException {
+        int count = buffered;
+        if (count < 1) return 0;
+
+        // write through any buffer of the stream, the data is counted as written once returned
+        target.write(buffer, 0, count);
+        target.flush();
+        if (checksum != null) checksum.update(buffer, 0, count);
+        position += count;
+        buffered = 0;
+        limit = nextLimit();
+
+        return count;
+    }
+
+    private int nextLimit() {
+        return buffer.length - (int) (position % ALIGNMENT);
+    }
+}
@@ -147,6 +147,9 @@ public class CircularFileWriter extends SharpStream {
             out.target.setLength(length);
         }
 
+        // the stream may buffer the writes, report the errors before closing it
+        out.target.flush();
+
         close();
 
         return length;
@@ -9,6 +9,8 @@ import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.RandomAccessFile;
 
+import us.shandian.giga.util.Utility;
+
 /**
  * @author kapodamy
  */
@@ -99,6 +101,11 @@ public class FileStream extends SharpStream {
         return true;
     }
 
+    @Override
+    public boolean canPreallocate() {
+        return true;
+    }
+
     @Override
     public void write(byte value) throws IOException {
         source.write(value);
@@ -119,6 +126,12 @@ public class FileStream extends SharpStream {
         source.setLength(length);
     }
 
+    @Override
+    public void preallocate(long length) throws IOException {
+        if (!Utility.preallocate(source.getFD(), length) && source.length() < length)
+            source.setLength(length);// sparse file, the space is not reserved
+    }
+
     @Override
     public void seek(long offset) throws IOException {
         source.seek(offset);
@@ -6,21 +6,49 @@ import android.os.ParcelFileDescriptor;
 import android.util.Log;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 
 import org.schabi.newpipe.streams.io.SharpStream;
 
+import java.io.FileDescriptor;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
 
+import us.shandian.giga.util.Utility;
+
+/**
+ * Reads and writes a file of the Storage Access Framework. The small writes are gathered in a
+ * direct buffer and written to the file together, so the many small writes of the muxers become a
+ * few large ones. The position is tracked here, seeking to the current position does not flush the
+ * buffer nor reach the file. The buffered data is only known to be in the file after
+ * {@link #flush()}, which reports the write errors.
+ */
 public class FileStreamSAF extends SharpStream {
+    private static final String TAG = "FileStreamSAF";
+
+    /**
+     * Size of the write buffer, writes of this size or larger go directly to the file
+     */
+    static final int BUFFER_SIZE = 64 * 1024;
 
     private final FileInputStream in;
     private final FileOutputStream out;
     private final FileChannel channel;
+    private final FileDescriptor fd;
+    @Nullable
     private final ParcelFileDescriptor file;
 
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+    private final ByteBuffer[] gather = new ByteBuffer[2];
+
+    /**
+     * Position of the next read or write, the buffered data is written just before it
+     */
+    private long position;
+
     private boolean disposed;
 
     public FileStreamSAF(@NonNull ContentResolver contentResolver, Uri fileUri) throws IOException {
@@ -28,41 +56,87 @@ public class FileStreamSAF extends SharpStream {
         // the file must exists first
         // ¡read-write mode must allow seek!
         // It is not guaranteed to work with files in the cloud (virtual files), tested in local storage devices
+        this(open(contentResolver, fileUri));
+    }
+
+    private FileStreamSAF(@NonNull ParcelFileDescriptor file) throws IOException {
+        this(file, file.getFileDescriptor());
+    }
+
+    /**
+     * @param fd a file descriptor opened for reading and writing, it is not closed by this stream
+     */
+    FileStreamSAF(@NonNull FileDescriptor fd) throws IOException {
+        this(null, fd);
+    }
 
-        file = contentResolver.openFileDescriptor(fileUri, "rw");
+    private FileStreamSAF(@Nullable ParcelFileDescriptor file, @NonNull FileDescriptor fd) throws IOException {
+        this.file = file;
+        this.fd = fd;
+
+        in = new FileInputStream(fd);
+        out = new FileOutputStream(fd);
+        channel = out.getChannel();// or use in.getChannel()
+        position = channel.position();
+    }
+
+    private static ParcelFileDescriptor open(ContentResolver contentResolver, Uri fileUri) throws IOException {
+        ParcelFileDescriptor file = contentResolver.openFileDescriptor(fileUri, "rw");
 
         if (file == null) {
             throw new IOException("Cannot get the ParcelFileDescriptor for " + fileUri.toString());
         }
 
-        in = new FileInputStream(file.getFileDescriptor());
-        out = new FileOutputStream(file.getFileDescriptor());
-        channel = out.getChannel();// or use in.getChannel()
+        return file;
+    }
+
+    /**
+     * Writes the buffered data, the file position is {@link #position} afterwards
+     */
+    private void drain() throws IOException {
+        if (buffer.position() < 1) return;
+
+        buffer.flip();
+        while (buffer.hasRemaining()) channel.write(buffer);
+        buffer.clear();
     }
 
     @Override
     public int read() throws IOException {
-        return in.read();
+        drain();
+
+        int value = in.read();
+        if (value != -1) position++;
+        return value;
     }
 
     @Override
     public int read(byte[] buffer) throws IOException {
-        return in.read(buffer);
+        return read(buffer, 0, buffer.length);
     }
 
     @Override
     public int read(byte[] buffer, int offset, int count) throws IOException {
-        return in.read(buffer, offset, count);
+        drain();
+
+        int read = in.read(buffer, offset, count);
+        if (read > 0) position += read;
+        return read;
     }
 
     @Override
     public long skip(long amount) throws IOException {
-        return in.skip(amount);// ¿or use channel.position(channel.position() + amount)?
+        drain();
+
+        long skipped = in.skip(amount);// ¿or use channel.position(channel.position() + amount)?
+        position += skipped;
+        return skipped;
     }
 
     @Override
     public long available() {
         try {
+            drain();
             return in.available();
         } catch (IOException e) {
             return 0;// ¡but not -1!
@@ -76,15 +150,25 @@ public class FileStreamSAF extends SharpStream {
 
     @Override
     public void close() {
+        if (disposed) return;
+
+        // the buffered data is lost if it cannot be written, the writers must call flush() first
+        // to get the error
+        try {
+            drain();
+        } catch (IOException e) {
+            Log.e(TAG, "close() cannot write the buffered data", e);
+        }
+
         try {
             disposed = true;
 
-            file.close();
+            if (file != null) file.close();
             in.close();
             out.close();
             channel.close();
         } catch (IOException e) {
-            Log.e("FileStreamSAF", "close() error", e);
+            Log.e(TAG, "close() error", e);
         }
     }
 
@@ -118,33 +202,83 @@ public class FileStreamSAF extends SharpStream {
         return true;
     }
 
+    @Override
+    public boolean canPreallocate() {
+        return true;
+    }
+
     @Override
     public void write(byte value) throws IOException {
-        out.write(value);
+        if (!buffer.hasRemaining()) drain();
+
+        buffer.put(value);
+        position++;
     }
 
     @Override
     public void write(byte[] buffer) throws IOException {
-        out.write(buffer);
+        write(buffer, 0, buffer.length);
     }
 
     @Override
     public void write(byte[] buffer, int offset, int count) throws IOException {
-        out.write(buffer, offset, count);
+        if (count < BUFFER_SIZE && count <= this.buffer.remaining()) {
+            this.buffer.put(buffer, offset, count);
+            position += count;
+            return;
+        }
+
+        // write the buffered data and the new data with a single call
+        this.buffer.flip();
+        gather[0] = this.buffer;
+        gather[1] = ByteBuffer.wrap(buffer, offset, count);
+        try {
+            while (gather[1].hasRemaining()) channel.write(gather);
+        } finally {
+            gather[1] = null;
+            this.buffer.clear();
+        }
+
+        position += count;
+    }
+
+    @Override
+    public void flush() throws IOException {
+        drain();
     }
 
     @Override
     public void setLength(long length) throws IOException {
+        drain();
         channel.truncate(length);
+
+        // the file position is moved back if it was past the new length
+        position = Math.min(position, length);
+    }
+
+    @Override
+    public void preallocate(long length) throws IOException {
+        drain();
+
+        if (Utility.preallocate(fd, length) || channel.size() >= length)
+            return;
+
+        // truncate() cannot grow the file, write its last byte instead (sparse file)
+        channel.write(ByteBuffer.wrap(new byte[1]), length - 1);
     }
 
     @Override
     public void seek(long offset) throws IOException {
+        if (offset == position) return;
+
+        drain();
         channel.position(offset);
+        position = offset;
     }
 
     @Override
     public long length() throws IOException {
+        drain();
         return channel.size();
     }
 }
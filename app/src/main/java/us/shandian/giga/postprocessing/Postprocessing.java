@@ -15,6 +15,7 @@ import us.shandian.giga.io.ChunkFileInputStream;
 import us.shandian.giga.io.CircularFileWriter;
 import us.shandian.giga.io.CircularFileWriter.OffsetChecker;
 import us.shandian.giga.io.ProgressReport;
+import us.shandian.giga.service.PostprocessingQueue;
 
 import static us.shandian.giga.get.DownloadMission.ERROR_NOTHING;
 import static us.shandian.giga.get.DownloadMission.ERROR_POSTPROCESSING;
@@ -88,6 +89,14 @@ public abstract class Postprocessing implements Serializable {
         this.name = algorithmName;// for debugging only
     }
 
+    public String getName() {
+        return name;
+    }
+
+    public String[] getArgs() {
+        return args;
+    }
+
     public void setTemporalDir(@NonNull File directory) {
         long rnd = (int) (Math.random() * 100000.0f);
         tempFile = new File(directory, rnd + "_" + System.nanoTime() + ".tmp");
@@ -119,6 +128,14 @@ public abstract class Postprocessing implements Serializable {
         final ProgressReport readProgress = (long position) -> {
             position -= mission.offsets[0];
             if (position > mission.done) mission.done = position;
+            if (mission.progressBus != null) mission.progressBus.publish(mission);
+
+            try {
+                // let the player read from the storage first
+                PostprocessingQueue.awaitPlayback();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
         };
 
         if (worksOnSameFile) {
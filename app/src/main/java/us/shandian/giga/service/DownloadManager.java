@@ -14,10 +14,14 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.List;
+import java.util.Objects;
 
 import us.shandian.giga.get.DownloadMission;
 import us.shandian.giga.get.FinishedMission;
 import us.shandian.giga.get.Mission;
+import us.shandian.giga.get.MissionMetrics;
+import us.shandian.giga.get.PendingMissionIndex;
+import us.shandian.giga.get.ResumeSidecar;
 import us.shandian.giga.get.sqlite.FinishedMissionStore;
 import org.schabi.newpipe.streams.io.StoredDirectoryHelper;
 import org.schabi.newpipe.streams.io.StoredFileHelper;
@@ -37,6 +41,7 @@ public class DownloadManager {
     public static final String TAG_AUDIO = "audio";
     public static final String TAG_VIDEO = "video";
     private static final String DOWNLOADS_METADATA_FOLDER = "pending_downloads";
+    private static final String DOWNLOADS_METRICS_FILE = "download_metrics";
 
     private final FinishedMissionStore mFinishedMissionStore;
 
@@ -45,12 +50,18 @@ public class DownloadManager {
 
     private final Handler mHandler;
     private final File mPendingMissionsDir;
+    private final PendingMissionIndex mPendingMissionsIndex;
+    private final DownloadScheduler mScheduler = new DownloadScheduler();
+    private final DownloadProgressBus mProgressBus = new DownloadProgressBus();
+    private final PostprocessingQueue mPostprocessingQueue = new PostprocessingQueue();
+    private final DownloadMetrics mMetrics;
 
     private NetworkState mLastNetworkStatus = NetworkState.Unavailable;
 
     int mPrefMaxRetry;
     boolean mPrefMeteredDownloads;
     boolean mPrefQueueLimit;
+    int mPrefConcurrentMissions = 1;
     private boolean mSelfMissionsControl;
 
     StoredDirectoryHelper mMainStorageAudio;
@@ -73,8 +84,13 @@ public class DownloadManager {
         mMainStorageVideo = storageVideo;
         mMissionsFinished = loadFinishedMissions();
         mPendingMissionsDir = getPendingDir(context);
+        mPendingMissionsIndex = PendingMissionIndex.read(mPendingMissionsDir);
+        mMetrics = new DownloadMetrics(new File(context.getFilesDir(), DOWNLOADS_METRICS_FILE));
 
         loadPendingMissions(context);
+
+        // listing the download directories can be slow
+        new Thread(() -> restorePartialMissions(context)).start();
     }
 
     private static File getPendingDir(@NonNull Context context) {
@@ -144,11 +160,20 @@ public class DownloadManager {
         File tempDir = pickAvailableTemporalDir(ctx);
         Log.i(TAG, "using '" + tempDir + "' as temporal directory");
 
+        long startTime = System.currentTimeMillis();
+        int indexed = 0;
+
         for (File sub : subs) {
             if (!sub.isFile()) continue;
-            if (sub.getName().equals(".tmp")) continue;
+            if (PendingMissionIndex.isIndexFile(sub)) continue;
+
+            // prefer the summary, the whole state is only read when the mission is started
+            DownloadMission mis = mPendingMissionsIndex.get(sub);
+            if (mis != null)
+                indexed++;
+            else
+                mis = Utility.readFromFile(sub);
 
-            DownloadMission mis = Utility.readFromFile(sub);
             if (mis == null || mis.isFinished() || mis.hasInvalidStorage()) {
                 //noinspection ResultOfMethodCallIgnored
                 sub.delete();
@@ -167,6 +192,21 @@ public class DownloadManager {
                 exists = false;
             }
 
+            if (!mis.isLoaded() && (mis.isPsRunning() || !exists)) {
+                // the summary is not enough to repair the mission
+                DownloadMission full = Utility.readFromFile(sub);
+                if (full == null) {
+                    //noinspection ResultOfMethodCallIgnored
+                    sub.delete();
+                    continue;
+                }
+
+                full.threads = new Thread[0];
+                full.storage = mis.storage;
+                mis = full;
+                indexed--;
+            }
+
             if (mis.isPsRunning()) {
                 if (mis.psAlgorithm.worksOnSameFile) {
                     // Incomplete post-processing results in a corrupted download file
@@ -195,12 +235,37 @@ public class DownloadManager {
             mis.metadata = sub;
             mis.maxRetry = mPrefMaxRetry;
             mis.mHandler = mHandler;
+            mis.scheduler = mScheduler;
+            mis.progressBus = mProgressBus;
+            mis.psQueue = mPostprocessingQueue;
 
             mMissionsPending.add(mis);
         }
 
         if (mMissionsPending.size() > 1)
             Collections.sort(mMissionsPending, Comparator.comparingLong(Mission::getTimestamp));
+
+        Log.i(TAG, "loaded " + mMissionsPending.size() + " pending downloads (" + indexed
+                + " from the index) in " + (System.currentTimeMillis() - startTime) + "ms");
+
+        if (indexed < mMissionsPending.size()) {
+            // summarize now, the missions are not running yet
+            List<DownloadMission> missions = new ArrayList<>(mMissionsPending);
+            new Thread(() -> mPendingMissionsIndex.save(missions)).start();
+        }
+    }
+
+    /**
+     * Saves a summary of every pending mission, used to list them faster the next time the
+     * manager is created
+     */
+    void savePendingMissionsIndex() {
+        List<DownloadMission> missions;
+        synchronized (this) {
+            missions = new ArrayList<>(mMissionsPending);
+        }
+
+        mPendingMissionsIndex.save(missions);
     }
 
     /**
@@ -213,21 +278,11 @@ public class DownloadManager {
             mission.timestamp = System.currentTimeMillis();
             mission.mHandler = mHandler;
             mission.maxRetry = mPrefMaxRetry;
+            mission.scheduler = mScheduler;
+            mission.progressBus = mProgressBus;
+            mission.psQueue = mPostprocessingQueue;
 
-            // create metadata file
-            while (true) {
-                mission.metadata = new File(mPendingMissionsDir, String.valueOf(mission.timestamp));
-                if (!mission.metadata.isFile() && !mission.metadata.exists()) {
-                    try {
-                        if (!mission.metadata.createNewFile())
-                            throw new RuntimeException("Cant create download metadata file");
-                    } catch (IOException e) {
-                        throw new RuntimeException(e);
-                    }
-                    break;
-                }
-                mission.timestamp = System.currentTimeMillis();
-            }
+            createMetadataFile(mission);
 
             mSelfMissionsControl = true;
             mMissionsPending.add(mission);
@@ -243,7 +298,7 @@ public class DownloadManager {
                 return;
             }
 
-            boolean start = !mPrefQueueLimit || getRunningMissionsCount() < 1;
+            boolean start = getAvailableMissionSlots() > 0;
 
             if (canDownloadInCurrentNetwork() && start) {
                 mission.start();
@@ -252,12 +307,119 @@ public class DownloadManager {
     }
 
 
+    private void createMetadataFile(DownloadMission mission) {
+        while (true) {
+            mission.metadata = new File(mPendingMissionsDir, String.valueOf(mission.timestamp));
+            if (!mission.metadata.isFile() && !mission.metadata.exists()) {
+                try {
+                    if (!mission.metadata.createNewFile())
+                        throw new RuntimeException("Cant create download metadata file");
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+                break;
+            }
+            mission.timestamp = System.currentTimeMillis();
+        }
+    }
+
+    /**
+     * Looks for resume files left in the main download directories by downloads which are not
+     * pending anymore, for instance if the app data was cleared or the app reinstalled, and adds
+     * those downloads again, paused. See {@link ResumeSidecar}
+     *
+     * @param ctx the context
+     */
+    private void restorePartialMissions(Context ctx) {
+        List<StoredDirectoryHelper> directories = new ArrayList<>(2);
+        if (mMainStorageVideo != null) directories.add(mMainStorageVideo);
+        if (mMainStorageAudio != null && (mMainStorageVideo == null || !mMainStorageAudio.getUri().equals(mMainStorageVideo.getUri())))
+            directories.add(mMainStorageAudio);
+
+        File tempDir = null;
+
+        for (StoredDirectoryHelper directory : directories) {
+            for (String name : directory.listFileNames()) {
+                if (!ResumeSidecar.isResumeFile(name)) continue;
+                if (isPending(directory.getTag(), ResumeSidecar.getOutputName(name))) continue;
+
+                DownloadMission mission = ResumeSidecar.restore(ctx, directory, name);
+                if (mission == null) continue;
+
+                if (mission.psAlgorithm != null) {
+                    if (tempDir == null) tempDir = pickAvailableTemporalDir(ctx);
+                    mission.psAlgorithm.setTemporalDir(tempDir);
+                }
+
+                mHandler.post(() -> addRestoredMission(mission));
+            }
+        }
+    }
+
+    private void addRestoredMission(DownloadMission mission) {
+        synchronized (this) {
+            if (isPending(mission.storage.getTag(), mission.storage.getName())) return;
+
+            mission.timestamp = System.currentTimeMillis();
+            mission.mHandler = mHandler;
+            mission.maxRetry = mPrefMaxRetry;
+            mission.scheduler = mScheduler;
+            mission.progressBus = mProgressBus;
+            mission.psQueue = mPostprocessingQueue;
+
+            createMetadataFile(mission);
+            mMissionsPending.add(mission);
+            Utility.writeToFile(mission.metadata, mission);
+        }
+
+        Log.i(TAG, "restored the pending download of " + mission.storage.getName());
+        mHandler.obtainMessage(DownloadManagerService.MESSAGE_RESTORED, mission).sendToTarget();
+    }
+
+    /**
+     * @param tag  the tag of the directory of the file
+     * @param name the name of the file
+     * @return {@code true} if a pending mission downloads to the file
+     */
+    private boolean isPending(String tag, @NonNull String name) {
+        synchronized (this) {
+            for (DownloadMission mission : mMissionsPending) {
+                if (mission.storage == null || mission.storage.isInvalid()) continue;
+                if (name.equals(mission.storage.getName()) && Objects.equals(tag, mission.storage.getTag()))
+                    return true;
+            }
+        }
+
+        return false;
+    }
+
     public void resumeMission(DownloadMission mission) {
         if (!mission.running) {
             mission.start();
         }
     }
 
+    /**
+     * Moves a mission ahead of all the others in the queue, and starts it if the limit of
+     * running missions allows it
+     *
+     * @param mission the mission to download first
+     */
+    public void prioritizeMission(DownloadMission mission) {
+        synchronized (this) {
+            int priority = mission.priority;
+            for (DownloadMission pending : mMissionsPending) {
+                if (pending != mission) priority = Math.max(priority, pending.priority + 1);
+            }
+
+            mission.enqueued = true;
+            mission.setPriority(priority);
+            mSelfMissionsControl = true;
+
+            runMissions();
+        }
+    }
+
     public void pauseMission(DownloadMission mission) {
         if (mission.running) {
             mission.setEnqueued(false);
@@ -374,6 +536,56 @@ public class DownloadManager {
         return null;
     }
 
+    /**
+     * @return how many more missions can run at the same time, according to the queue limit
+     */
+    private int getAvailableMissionSlots() {
+        if (!mPrefQueueLimit) return Integer.MAX_VALUE;
+        return mPrefConcurrentMissions - getRunningMissionsCount();
+    }
+
+    /**
+     * @return the missions waiting to be started, in the order they should be started
+     */
+    private List<DownloadMission> getEnqueuedMissions() {
+        List<DownloadMission> enqueued = new ArrayList<>();
+        for (DownloadMission mission : mMissionsPending) {
+            if (mission.running || !mission.enqueued || mission.isFinished() || mission.isCorrupt())
+                continue;
+            enqueued.add(mission);
+        }
+
+        Collections.sort(enqueued, DownloadScheduler.PRIORITY_ORDER);
+        return enqueued;
+    }
+
+    public DownloadScheduler getScheduler() {
+        return mScheduler;
+    }
+
+    public DownloadProgressBus getProgressBus() {
+        return mProgressBus;
+    }
+
+    public PostprocessingQueue getPostprocessingQueue() {
+        return mPostprocessingQueue;
+    }
+
+    /**
+     * @return how many missions are running or waiting to be started
+     */
+    public int getQueuedMissionsCount() {
+        int count = 0;
+        synchronized (this) {
+            for (DownloadMission mission : mMissionsPending) {
+                if ((mission.running || mission.enqueued) && !mission.isFinished() && !mission.isCorrupt())
+                    count++;
+            }
+        }
+
+        return count;
+    }
+
     int getRunningMissionsCount() {
         int count = 0;
         synchronized (this) {
@@ -423,10 +635,35 @@ public class DownloadManager {
             mMissionsFinished.add(0, new FinishedMission(mission));
             mFinishedMissionStore.addFinishedMission(mission);
         }
+
+        mMetrics.add(mission.getMetrics());
+    }
+
+    /**
+     * Gathers the metrics of the last finished missions and of the pending missions. The pending
+     * missions are loaded, so this should not be called on the main thread
+     *
+     * @return the metrics of the missions, the finished ones first
+     */
+    public List<MissionMetrics> collectMetrics() {
+        List<MissionMetrics> metrics = mMetrics.getHistory();
+
+        List<DownloadMission> pending;
+        synchronized (this) {
+            pending = new ArrayList<>(mMissionsPending);
+        }
+
+        for (DownloadMission mission : pending) {
+            mission.load();
+            metrics.add(mission.getMetrics());
+        }
+
+        return metrics;
     }
 
     /**
-     * runs one or multiple missions in from queue if possible
+     * runs one or multiple missions in from queue if possible, by priority, until the limit of
+     * running missions is reached
      *
      * @return true if one or multiple missions are running, otherwise, false
      */
@@ -435,24 +672,18 @@ public class DownloadManager {
             if (mMissionsPending.size() < 1) return false;
             if (!canDownloadInCurrentNetwork()) return false;
 
-            if (mPrefQueueLimit) {
-                for (DownloadMission mission : mMissionsPending)
-                    if (!mission.isFinished() && mission.running) return true;
-            }
+            int slots = getAvailableMissionSlots();
 
-            boolean flag = false;
-            for (DownloadMission mission : mMissionsPending) {
-                if (mission.running || !mission.enqueued || mission.isFinished())
-                    continue;
+            for (DownloadMission mission : getEnqueuedMissions()) {
+                if (slots < 1) break;
 
                 resumeMission(mission);
                 if (mission.errCode != DownloadMission.ERROR_NOTHING) continue;
 
-                if (mPrefQueueLimit) return true;
-                flag = true;
+                slots--;
             }
 
-            return flag;
+            return getRunningMissionsCount() > 0;
         }
     }
 
@@ -491,19 +722,34 @@ public class DownloadManager {
         boolean isMetered = mPrefMeteredDownloads && mLastNetworkStatus == NetworkState.MeteredOperating;
 
         synchronized (this) {
+            if (!isMetered) {
+                runMissions();
+                return;
+            }
+
             for (DownloadMission mission : mMissionsPending) {
                 if (mission.isCorrupt() || mission.isPsRunning()) continue;
-
-                if (mission.running && isMetered) {
-                    mission.pause();
-                } else if (!mission.running && !isMetered && mission.enqueued) {
-                    mission.start();
-                    if (mPrefQueueLimit) break;
-                }
+                if (mission.running) mission.pause();
             }
         }
     }
 
+    /**
+     * Changes the limit of running missions, starting enqueued missions if it was raised
+     *
+     * @param limit maximum amount of missions running at the same time
+     * @return true if missions were started, otherwise, false
+     */
+    boolean updateConcurrentMissions(int limit) {
+        synchronized (this) {
+            boolean raised = limit > mPrefConcurrentMissions;
+            mPrefConcurrentMissions = limit;
+
+            // don't touch anything without the user interaction
+            return raised && mSelfMissionsControl && runMissions();
+        }
+    }
+
     void updateMaximumAttempts() {
         synchronized (this) {
             for (DownloadMission mission : mMissionsPending) mission.maxRetry = mPrefMaxRetry;
@@ -65,6 +65,7 @@ public class DownloadManagerService extends Service {
     public static final int MESSAGE_FINISHED = 2;
     public static final int MESSAGE_ERROR = 3;
     public static final int MESSAGE_DELETED = 4;
+    public static final int MESSAGE_RESTORED = 5;
 
     private static final int FOREGROUND_NOTIFICATION_ID = 1000;
     private static final int DOWNLOADS_NOTIFICATION_ID = 1001;
@@ -183,6 +184,11 @@ public class DownloadManagerService extends Service {
         handlePreferenceChange(mPrefs, getString(R.string.downloads_cross_network));
         handlePreferenceChange(mPrefs, getString(R.string.downloads_maximum_retry));
         handlePreferenceChange(mPrefs, getString(R.string.downloads_queue_limit));
+        handlePreferenceChange(mPrefs, getString(R.string.downloads_concurrent_missions));
+        handlePreferenceChange(mPrefs, getString(R.string.downloads_max_connections));
+        handlePreferenceChange(mPrefs, getString(R.string.downloads_bandwidth_limit));
+        handlePreferenceChange(mPrefs, getString(R.string.downloads_mission_bandwidth_limit));
+        handlePreferenceChange(mPrefs, getString(R.string.downloads_postprocessing_parallelism));
 
         mLock = new LockManager(this);
     }
@@ -245,6 +251,7 @@ public class DownloadManagerService extends Service {
 
         mHandler = null;
         mManager.pauseAllMissions(true);
+        mManager.savePendingMissionsIndex();
     }
 
     @Override
@@ -323,6 +330,22 @@ public class DownloadManagerService extends Service {
             mManager.mPrefMeteredDownloads = prefs.getBoolean(key, false);
         } else if (getString(R.string.downloads_queue_limit).equals(key)) {
             mManager.mPrefQueueLimit = prefs.getBoolean(key, true);
+        } else if (getString(R.string.downloads_concurrent_missions).equals(key)) {
+            int limit = Math.max(1, getIntPreference(prefs, key,
+                    R.string.downloads_concurrent_missions_default));
+            if (mManager.updateConcurrentMissions(limit)) updateForegroundState(true);
+        } else if (getString(R.string.downloads_max_connections).equals(key)) {
+            mManager.getScheduler().setMaxConnections(getIntPreference(prefs, key,
+                    R.string.downloads_max_connections_default));
+        } else if (getString(R.string.downloads_bandwidth_limit).equals(key)) {
+            mManager.getScheduler().setBandwidthLimit(1024L * getIntPreference(prefs, key,
+                    R.string.downloads_bandwidth_limit_default));
+        } else if (getString(R.string.downloads_mission_bandwidth_limit).equals(key)) {
+            mManager.getScheduler().setMissionBandwidthLimit(1024L * getIntPreference(prefs, key,
+                    R.string.downloads_bandwidth_limit_default));
+        } else if (getString(R.string.downloads_postprocessing_parallelism).equals(key)) {
+            mManager.getPostprocessingQueue().setParallelism(getIntPreference(prefs, key,
+                    R.string.downloads_postprocessing_parallelism_default));
         } else if (getString(R.string.download_path_video_key).equals(key)) {
             mManager.mMainStorageVideo = loadMainVideoStorage();
         } else if (getString(R.string.download_path_audio_key).equals(key)) {
@@ -330,6 +353,18 @@ public class DownloadManagerService extends Service {
         }
     }
 
+    private int getIntPreference(SharedPreferences prefs, @NonNull String key, @StringRes int defaultValue) {
+        String value = prefs.getString(key, null);
+        if (value != null) {
+            try {
+                return Integer.parseInt(value);
+            } catch (NumberFormatException e) {
+                Log.w(TAG, "invalid value of the preference " + key + ": " + value);
+            }
+        }
+        return Integer.parseInt(getString(defaultValue));
+    }
+
     public void updateForegroundState(boolean state) {
         if (state == mForeground) return;
 
@@ -0,0 +1,247 @@
+package us.shandian.giga.service;
+
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+
+import com.grack.nanojson.JsonAppendableWriter;
+import com.grack.nanojson.JsonWriter;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeMap;
+
+import us.shandian.giga.get.MissionMetrics;
+import us.shandian.giga.util.Utility;
+
+/**
+ * Keeps the metrics of the last finished missions and exports them, together with the metrics of
+ * the pending missions, as CSV or JSON
+ */
+public class DownloadMetrics {
+    private static final String TAG = "DownloadMetrics";
+
+    /**
+     * Maximum amount of finished missions kept
+     */
+    static final int MAX_HISTORY = 200;
+
+    /**
+     * Length of the intervals of the aggregate throughput series
+     */
+    static final long AGGREGATE_INTERVAL = 60000;
+
+    public static final String MIME_CSV = "text/csv";
+    public static final String MIME_JSON = "application/json";
+
+    private final File mFile;
+    private final ArrayList<MissionMetrics> mHistory;
+
+    DownloadMetrics(@NonNull File file) {
+        mFile = file;
+
+        ArrayList<MissionMetrics> history = null;
+        if (file.exists()) {
+            history = Utility.readFromFile(file);
+            if (history == null) Log.w(TAG, "cannot read the metrics of the finished missions");
+        }
+
+        mHistory = history == null ? new ArrayList<>() : history;
+    }
+
+    /**
+     * Keeps the metrics of a finished mission, the oldest ones are forgotten
+     *
+     * @param metrics the metrics of the mission
+     */
+    void add(@NonNull MissionMetrics metrics) {
+        ArrayList<MissionMetrics> history;
+        synchronized (this) {
+            mHistory.add(metrics);
+            while (mHistory.size() > MAX_HISTORY) mHistory.remove(0);
+            history = new ArrayList<>(mHistory);
+        }
+
+        new Thread(() -> {
+            synchronized (mFile) {
+                Utility.writeToFile(mFile, history);
+            }
+        }).start();
+    }
+
+    /**
+     * @return the metrics of the last finished missions, the oldest first
+     */
+    @NonNull
+    synchronized List<MissionMetrics> getHistory() {
+        return new ArrayList<>(mHistory);
+    }
+
+    /**
+     * Writes one row per mission
+     *
+     * @param missions the metrics of the missions
+     * @param out      the stream to write to
+     * @throws IOException if an I/O error occurs while writing
+     */
+    public static void writeCsv(@NonNull List<MissionMetrics> missions, @NonNull OutputStream out) throws IOException {
+        Writer writer = new OutputStreamWriter(out, StandardCharsets.UTF_8);
+
+        writer.write("name,kind,length,finished,started,ended,average_throughput,connections,"
+                + "ttfb_average_ms,ttfb_max_ms,blocks,block_average_ms,block_max_ms,retries,errors,"
+                + "last_error,postprocessing,postprocessing_ms");
+        for (int i = 0; i < MissionMetrics.HISTOGRAM_BUCKETS; i++) {
+            writer.write(",blocks_" + getBucketName(i));
+        }
+        writer.write('\n');
+
+        for (MissionMetrics metrics : missions) {
+            List<long[]> errors = metrics.getErrors();
+
+            writer.write(escapeCsv(metrics.name));
+            writer.write(',');
+            writer.write(metrics.kind);
+            write(writer, metrics.length);
+            writer.write(',');
+            writer.write(String.valueOf(metrics.finished));
+            write(writer, metrics.getStarted());
+            write(writer, metrics.getEnded());
+            write(writer, metrics.getAverageThroughput());
+            write(writer, metrics.getConnections());
+            write(writer, metrics.getAverageFirstByteMillis());
+            write(writer, metrics.getMaxFirstByteMillis());
+            write(writer, metrics.getBlocks());
+            write(writer, metrics.getAverageBlockMillis());
+            write(writer, metrics.getMaxBlockMillis());
+            write(writer, metrics.getRetries());
+            write(writer, errors.size());
+            writer.write(',');
+            if (!errors.isEmpty()) writer.write(String.valueOf(errors.get(errors.size() - 1)[1]));
+            writer.write(',');
+            writer.write(escapeCsv(metrics.getPostprocessing()));
+            write(writer, metrics.getPostprocessingMillis());
+            for (int count : metrics.getHistogram()) write(writer, count);
+            writer.write('\n');
+        }
+
+        writer.flush();
+    }
+
+    /**
+     * Writes every metric of each mission, including the progress samples and the errors, and
+     * the aggregate throughput of all missions
+     *
+     * @param missions the metrics of the missions
+     * @param out      the stream to write to
+     */
+    public static void writeJson(@NonNull List<MissionMetrics> missions, @NonNull OutputStream out) {
+        JsonAppendableWriter writer = JsonWriter.on(out).object();
+
+        writer.array("aggregate_throughput");
+        for (long[] interval : getAggregateThroughput(missions)) {
+            writer.array().value(interval[0]).value(interval[1]).end();
+        }
+        writer.end();
+
+        writer.array("missions");
+        for (MissionMetrics metrics : missions) {
+            writer.object()
+                    .value("name", metrics.name)
+                    .value("kind", String.valueOf(metrics.kind))
+                    .value("length", metrics.length)
+                    .value("finished", metrics.finished)
+                    .value("started", metrics.getStarted())
+                    .value("ended", metrics.getEnded())
+                    .value("average_throughput", metrics.getAverageThroughput())
+                    .value("connections", metrics.getConnections())
+                    .value("ttfb_average_ms", metrics.getAverageFirstByteMillis())
+                    .value("ttfb_max_ms", metrics.getMaxFirstByteMillis())
+                    .value("blocks", metrics.getBlocks())
+                    .value("block_average_ms", metrics.getAverageBlockMillis())
+                    .value("block_max_ms", metrics.getMaxBlockMillis())
+                    .value("retries", metrics.getRetries())
+                    .value("postprocessing", metrics.getPostprocessing())
+                    .value("postprocessing_ms", metrics.getPostprocessingMillis());
+
+            writer.object("block_throughput_histogram");
+            int[] histogram = metrics.getHistogram();
+            for (int i = 0; i < histogram.length; i++) writer.value(getBucketName(i), histogram[i]);
+            writer.end();
+
+            writer.array("errors");
+            for (long[] error : metrics.getErrors()) {
+                writer.array().value(error[0]).value(error[1]).end();
+            }
+            writer.end();
+
+            writer.array("samples");
+            for (long[] sample : metrics.getSamples()) {
+                writer.array().value(sample[0]).value(sample[1]).end();
+            }
+            writer.end();
+
+            writer.end();
+        }
+        writer.end();
+
+        writer.end().done();
+    }
+
+    /**
+     * Sums the throughput of every mission over intervals of {@link #AGGREGATE_INTERVAL}
+     *
+     * @param missions the metrics of the missions
+     * @return the start of each interval with its throughput in bytes per second
+     */
+    @NonNull
+    static List<long[]> getAggregateThroughput(@NonNull List<MissionMetrics> missions) {
+        TreeMap<Long, Long> intervals = new TreeMap<>();
+
+        for (MissionMetrics metrics : missions) {
+            List<long[]> samples = metrics.getSamples();
+            for (int i = 1; i < samples.size(); i++) {
+                long bytes = samples.get(i)[1] - samples.get(i - 1)[1];
+                if (bytes <= 0) continue;
+
+                // the bytes are accounted at the end of the sample
+                long interval = samples.get(i)[0] / AGGREGATE_INTERVAL * AGGREGATE_INTERVAL;
+                Long total = intervals.get(interval);
+                intervals.put(interval, total == null ? bytes : total + bytes);
+            }
+        }
+
+        List<long[]> result = new ArrayList<>(intervals.size());
+        for (Long interval : intervals.keySet()) {
+            result.add(new long[]{interval, intervals.get(interval) * 1000 / AGGREGATE_INTERVAL});
+        }
+
+        return result;
+    }
+
+    private static String getBucketName(int bucket) {
+        long bound = MissionMetrics.HISTOGRAM_FIRST_BOUND << bucket;
+        if (bucket == MissionMetrics.HISTOGRAM_BUCKETS - 1)
+            return "over_" + (bound / 2 / 1024) + "k";
+
+        return "under_" + (bound / 1024) + "k";
+    }
+
+    private static void write(Writer writer, long value) throws IOException {
+        writer.write(',');
+        writer.write(String.valueOf(value));
+    }
+
+    private static String escapeCsv(String value) {
+        if (value == null) return "";
+        if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0)
+            return value;
+
+        return '"' + value.replace("\"", "\"\"") + '"';
+    }
+}
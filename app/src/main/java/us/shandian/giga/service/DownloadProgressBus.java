@@ -0,0 +1,94 @@
+package us.shandian.giga.service;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+
+import androidx.annotation.MainThread;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.Collection;
+import java.util.LinkedHashSet;
+
+import us.shandian.giga.get.DownloadMission;
+
+/**
+ * Delivers the progress of the missions to the UI. The download threads publish each write, the
+ * missions which made progress are gathered and delivered together on the main thread, at most
+ * once per {@link #DISPATCH_INTERVAL}. Nothing is delivered while no mission makes progress or
+ * nobody listens.
+ */
+public class DownloadProgressBus {
+    /**
+     * Minimum time between two deliveries, in milliseconds
+     */
+    static final long DISPATCH_INTERVAL = 250;
+
+    public interface Listener {
+        /**
+         * Called on the main thread with the missions which made progress since the last call
+         *
+         * @param missions the missions, never empty
+         */
+        void onProgress(@NonNull Collection<DownloadMission> missions);
+    }
+
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+    private final Runnable mDispatcher = this::dispatch;
+
+    private LinkedHashSet<DownloadMission> mPending = new LinkedHashSet<>();
+    private boolean mScheduled = false;
+    private long mLastDispatch = 0;
+    private volatile Listener mListener = null;
+
+    /**
+     * Accounts progress of a mission, can be called from any thread
+     *
+     * @param mission the mission which made progress
+     */
+    public void publish(@NonNull DownloadMission mission) {
+        if (mListener == null) return;
+
+        long delay;
+        synchronized (this) {
+            mPending.add(mission);
+            if (mScheduled) return;
+
+            mScheduled = true;
+            delay = Math.max(0, mLastDispatch + DISPATCH_INTERVAL - SystemClock.uptimeMillis());
+        }
+
+        mHandler.postDelayed(mDispatcher, delay);
+    }
+
+    /**
+     * @param listener the listener to deliver the progress to, or {@code null} to stop the
+     *                 deliveries
+     */
+    @MainThread
+    public void setListener(@Nullable Listener listener) {
+        mListener = listener;
+
+        if (listener == null) {
+            mHandler.removeCallbacks(mDispatcher);
+            synchronized (this) {
+                mPending.clear();
+                mScheduled = false;
+            }
+        }
+    }
+
+    private void dispatch() {
+        Collection<DownloadMission> missions;
+        synchronized (this) {
+            missions = mPending;
+            mPending = new LinkedHashSet<>();
+            mScheduled = false;
+            mLastDispatch = SystemClock.uptimeMillis();
+        }
+
+        Listener listener = mListener;
+        if (listener != null && !missions.isEmpty()) listener.onProgress(missions);
+    }
+}
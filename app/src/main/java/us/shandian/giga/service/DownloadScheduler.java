@@ -0,0 +1,115 @@
+package us.shandian.giga.service;
+
+import java.io.InterruptedIOException;
+import java.util.Comparator;
+import java.util.concurrent.atomic.AtomicLong;
+
+import us.shandian.giga.get.DownloadMission;
+import us.shandian.giga.get.Mission;
+import us.shandian.giga.util.ConnectionLimiter;
+import us.shandian.giga.util.TokenBucket;
+
+/**
+ * Resources shared by all the running missions: the connections, the bandwidth and the
+ * aggregate throughput. The missions to run are picked by the {@link DownloadManager} in
+ * {@link #PRIORITY_ORDER}.
+ */
+public class DownloadScheduler {
+    /**
+     * Missions with a higher priority first, then the oldest ones
+     */
+    static final Comparator<DownloadMission> PRIORITY_ORDER =
+            Comparator.comparingInt((DownloadMission mission) -> -mission.priority)
+                    .thenComparingLong(Mission::getTimestamp);
+
+    private static final long SPEED_SAMPLE_INTERVAL = 1000;
+
+    private final ConnectionLimiter mConnections = new ConnectionLimiter();
+    private final TokenBucket mBandwidth = new TokenBucket();
+    private volatile long mMissionBandwidthLimit = 0;
+
+    private final AtomicLong mTransferred = new AtomicLong();
+    private long mLastSampleTime = -1;
+    private long mLastSampleTransferred;
+    private double mSpeed;
+
+    /**
+     * @param limit maximum amount of connections of all missions, {@code 0} for no limit
+     */
+    void setMaxConnections(int limit) {
+        mConnections.setLimit(limit);
+    }
+
+    /**
+     * @param bytesPerSecond maximum bandwidth used by all missions, {@code 0} for no limit
+     */
+    void setBandwidthLimit(long bytesPerSecond) {
+        mBandwidth.setRate(bytesPerSecond);
+    }
+
+    /**
+     * @param bytesPerSecond maximum bandwidth used by each mission, {@code 0} for no limit
+     */
+    void setMissionBandwidthLimit(long bytesPerSecond) {
+        mMissionBandwidthLimit = Math.max(bytesPerSecond, 0);
+    }
+
+    public long getMissionBandwidthLimit() {
+        return mMissionBandwidthLimit;
+    }
+
+    /**
+     * Waits until the cap of connections allows a new one
+     *
+     * @param timeoutMillis maximum time to wait
+     * @return {@code true} if a connection can be opened, it must be released with
+     * {@link #releaseConnection()}, otherwise, {@code false} if the time elapsed
+     * @throws InterruptedIOException if the thread was interrupted while waiting
+     */
+    public boolean acquireConnection(long timeoutMillis) throws InterruptedIOException {
+        return mConnections.tryAcquire(timeoutMillis);
+    }
+
+    public void releaseConnection() {
+        mConnections.release();
+    }
+
+    /**
+     * Accounts bytes downloaded by any mission, waiting if the global bandwidth limit is exceeded
+     *
+     * @param bytes amount of bytes downloaded
+     * @throws InterruptedIOException if the thread was interrupted while waiting
+     */
+    public void onTransferred(int bytes) throws InterruptedIOException {
+        mTransferred.addAndGet(bytes);
+        mBandwidth.consume(bytes);
+    }
+
+    /**
+     * Gets the aggregate throughput of all missions, measured over about one second
+     *
+     * @return the speed in bytes per second
+     */
+    public synchronized double getSpeed() {
+        long now = System.currentTimeMillis();
+        long transferred = mTransferred.get();
+
+        if (mLastSampleTime < 0) {
+            mLastSampleTime = now;
+            mLastSampleTransferred = transferred;
+        } else if (now - mLastSampleTime >= SPEED_SAMPLE_INTERVAL) {
+            mSpeed = (transferred - mLastSampleTransferred) * 1000d / (now - mLastSampleTime);
+            mLastSampleTime = now;
+            mLastSampleTransferred = transferred;
+        }
+
+        return mSpeed;
+    }
+
+    /**
+     * @return total amount of bytes downloaded by all missions since the service started
+     */
+    public long getTransferred() {
+        return mTransferred.get();
+    }
+}
@@ -0,0 +1,132 @@
+package us.shandian.giga.service;
+
+import androidx.annotation.NonNull;
+
+import java.util.ArrayList;
+
+import us.shandian.giga.get.DownloadMission;
+
+/**
+ * Runs the post-processing of the missions apart from the downloads. At most
+ * {@link #setParallelism(int) a few} missions are post-processed at the same time, the others
+ * wait in the order they finished downloading, so the muxing does not starve the running
+ * downloads of storage bandwidth and CPU. The post-processing also gives way to the player while
+ * the playback is buffering, see {@link #setPlaybackBuffering(boolean)}.
+ */
+public class PostprocessingQueue {
+    /**
+     * Maximum time the post-processing waits for the playback to stop buffering, the playback may
+     * be buffering because of the network and not because of the storage
+     */
+    static final long MAX_PLAYBACK_WAIT = 30000;
+
+    private static final Object sPlaybackLock = new Object();
+    private static volatile boolean sBuffering = false;
+    /**
+     * When the playback started buffering, in milliseconds of {@link #now()}
+     */
+    private static volatile long sBufferingSince;
+
+    private final ArrayList<DownloadMission> mQueued = new ArrayList<>();
+    private final ArrayList<DownloadMission> mRunning = new ArrayList<>();
+    private int mParallelism = 1;
+
+    /**
+     * @param parallelism maximum amount of missions post-processed at the same time
+     */
+    synchronized void setParallelism(int parallelism) {
+        mParallelism = Math.max(1, parallelism);
+        notifyAll();
+    }
+
+    /**
+     * Waits until the missions queued before are post-processed and there is room for another
+     * one, the room must be released with {@link #release(DownloadMission)}
+     *
+     * @param mission the mission to post-process
+     * @throws InterruptedException if the thread was interrupted while waiting, the mission
+     *                              leaves the queue
+     */
+    public synchronized void acquire(@NonNull DownloadMission mission) throws InterruptedException {
+        mQueued.add(mission);
+        try {
+            while (mRunning.size() >= mParallelism || mQueued.get(0) != mission) wait();
+        } finally {
+            mQueued.remove(mission);
+            notifyAll();
+        }
+
+        mRunning.add(mission);
+    }
+
+    public synchronized void release(@NonNull DownloadMission mission) {
+        if (mRunning.remove(mission)) notifyAll();
+    }
+
+    /**
+     * @param mission the mission
+     * @return {@code true} if the mission waits to be post-processed
+     */
+    public synchronized boolean isQueued(@NonNull DownloadMission mission) {
+        return mQueued.contains(mission);
+    }
+
+    public synchronized int getQueuedCount() {
+        return mQueued.size();
+    }
+
+    public synchronized int getRunningCount() {
+        return mRunning.size();
+    }
+
+    /**
+     * Tells if the playback is waiting for data, the post-processing waits meanwhile
+     *
+     * @param buffering {@code true} if the player is buffering
+     */
+    public static void setPlaybackBuffering(boolean buffering) {
+        synchronized (sPlaybackLock) {
+            if (buffering == sBuffering) return;
+
+            sBufferingSince = now();
+            sBuffering = buffering;
+            sPlaybackLock.notifyAll();
+        }
+    }
+
+    /**
+     * @return {@code true} if the post-processing is waiting for the playback
+     */
+    public static boolean isWaitingForPlayback() {
+        return sBuffering && now() - sBufferingSince < MAX_PLAYBACK_WAIT;
+    }
+
+    /**
+     * Waits while the playback is buffering, at most {@link #MAX_PLAYBACK_WAIT} since the
+     * playback started buffering
+     *
+     * @throws InterruptedException if the thread was interrupted while waiting
+     */
+    public static void awaitPlayback() throws InterruptedException {
+        if (!sBuffering) return;
+
+        synchronized (sPlaybackLock) {
+            while (sBuffering) {
+                long left = sBufferingSince + MAX_PLAYBACK_WAIT - now();
+                if (left <= 0) return;
+
+                sPlaybackLock.wait(left);
+            }
+        }
+    }
+
+    /**
+     * A monotonic clock, unlike {@link android.os.SystemClock} it is also available in the unit
+     * tests
+     *
+     * @return the current time in milliseconds, only meaningful to measure elapsed time
+     */
+    private static long now() {
+        return System.nanoTime() / 1000000L;
+    }
+}
@@ -70,18 +70,23 @@ import java.io.File;
 import java.net.URI;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.Iterator;
+import java.util.List;
 
 import io.reactivex.rxjava3.android.schedulers.AndroidSchedulers;
 import io.reactivex.rxjava3.core.Observable;
+import io.reactivex.rxjava3.core.Single;
 import io.reactivex.rxjava3.disposables.CompositeDisposable;
 import io.reactivex.rxjava3.schedulers.Schedulers;
 import us.shandian.giga.get.DownloadMission;
+import us.shandian.giga.get.DownloadSources;
 import us.shandian.giga.get.FinishedMission;
 import us.shandian.giga.get.Mission;
 import us.shandian.giga.get.MissionRecoveryInfo;
 import us.shandian.giga.service.DownloadManager;
 import us.shandian.giga.service.DownloadManagerService;
+import us.shandian.giga.service.PostprocessingQueue;
 import us.shandian.giga.ui.common.Deleter;
 import us.shandian.giga.ui.common.ProgressDrawable;
 import us.shandian.giga.util.Utility;
@@ -92,9 +97,18 @@ public class MissionAdapter extends Adapter<ViewHolder> implements Handler.Callb
     private static final String DEFAULT_MIME_TYPE = "*/*";
     private static final String UNDEFINED_ETA = "--:--";
 
-    private static final String UPDATER = "updater";
     private static final String DELETE = "deleteFinishedDownloads";
 
+    /**
+     * Payload of the items whose progress changed, only the progress is bound again
+     */
+    private static final Object PAYLOAD_PROGRESS = new Object();
+
+    /**
+     * Minimum time between two measures of the speed of a mission
+     */
+    private static final long SPEED_SAMPLE_INTERVAL = 1000;
+
     private static final int HASH_NOTIFICATION_ID = 123790;
 
     private final Context mContext;
@@ -105,6 +119,7 @@ public class MissionAdapter extends Adapter<ViewHolder> implements Handler.Callb
     private final DownloadManager.MissionIterator mIterator;
     private final ArrayList<ViewHolderItem> mPendingDownloadsItems = new ArrayList<>();
     private final Handler mHandler;
+    private final Runnable mPendingHeaderUpdater = this::refreshPendingHeader;
     private MenuItem mClear;
     private MenuItem mStartButton;
     private MenuItem mPauseButton;
@@ -112,6 +127,7 @@ public class MissionAdapter extends Adapter<ViewHolder> implements Handler.Callb
     private RecoverHelper mRecover;
     private final View mView;
     private final ArrayList<Mission> mHidden;
+    private ViewHolderHeader mPendingHeader;
     private Snackbar mSnackbar;
 
     private final CompositeDisposable compositeDisposable = new CompositeDisposable();
@@ -155,7 +171,10 @@ public class MissionAdapter extends Adapter<ViewHolder> implements Handler.Callb
     public void onViewRecycled(@NonNull ViewHolder view) {
         super.onViewRecycled(view);
 
-        if (view instanceof ViewHolderHeader) return;
+        if (view instanceof ViewHolderHeader) {
+            if (view == mPendingHeader) mPendingHeader = null;
+            return;
+        }
         ViewHolderItem h = (ViewHolderItem) view;
 
         if (h.item.mission instanceof DownloadMission) {
@@ -179,7 +198,9 @@ public class MissionAdapter extends Adapter<ViewHolder> implements Handler.Callb
             if (item.special == DownloadManager.SPECIAL_NOTHING) return;
             int str;
             if (item.special == DownloadManager.SPECIAL_PENDING) {
-                str = R.string.missions_header_pending;
+                mPendingHeader = (ViewHolderHeader) view;
+                updatePendingHeader();
+                return;
             } else {
                 str = R.string.missions_header_finished;
                 if (mClear != null) mClear.setVisible(true);
@@ -216,6 +237,26 @@ public class MissionAdapter extends Adapter<ViewHolder> implements Handler.Callb
         }
     }
 
+    @Override
+    public void onBindViewHolder(@NonNull ViewHolder view, int pos, @NonNull List<Object> payloads) {
+        if (view instanceof ViewHolderItem && !payloads.isEmpty()) {
+            boolean progressOnly = true;
+            for (Object payload : payloads) {
+                if (payload != PAYLOAD_PROGRESS) {
+                    progressOnly = false;
+                    break;
+                }
+            }
+
+            if (progressOnly) {
+                updateProgress((ViewHolderItem) view);
+                return;
+            }
+        }
+
+        super.onBindViewHolder(view, pos, payloads);
+    }
+
     @Override
     public int getItemCount() {
         return mIterator.getOldListSize();
@@ -267,8 +308,10 @@ public class MissionAdapter extends Adapter<ViewHolder> implements Handler.Callb
             return;
         } else if (!mission.running) {
             state = mission.enqueued ? R.string.queued : R.string.paused;
+        } else if (mission.isPsQueued()) {
+            state = R.string.post_processing_queued;
         } else if (mission.isPsRunning()) {
-            state = R.string.post_processing;
+            state = PostprocessingQueue.isWaitingForPlayback() ? R.string.post_processing_waiting_playback : R.string.post_processing;
         } else if (mission.isRecovering()) {
             state = R.string.recovering;
         } else {
@@ -298,7 +341,7 @@ public class MissionAdapter extends Adapter<ViewHolder> implements Handler.Callb
             return;
         }
 
-        if (deltaDone > 0 && deltaTime > 0) {
+        if (deltaDone > 0 && deltaTime >= SPEED_SAMPLE_INTERVAL) {
             float speed = (float) ((deltaDone * 1000d) / deltaTime);
             float averageSpeed = speed;
 
@@ -428,11 +471,19 @@ public class MissionAdapter extends Adapter<ViewHolder> implements Handler.Callb
             case DownloadManagerService.MESSAGE_FINISHED:
             case DownloadManagerService.MESSAGE_DELETED:
             case DownloadManagerService.MESSAGE_PAUSED:
+            case DownloadManagerService.MESSAGE_RUNNING:
                 break;
+            case DownloadManagerService.MESSAGE_RESTORED:
+                // a new pending download, not listed yet
+                applyChanges();
+                return true;
             default:
                 return false;
         }
 
+        // the speed drops when a mission stops
+        updatePendingHeader();
+
         ViewHolderItem h = getViewHolder(msg.obj);
         if (h == null) return false;
 
@@ -449,6 +500,22 @@ public class MissionAdapter extends Adapter<ViewHolder> implements Handler.Callb
     }
 
     private void showError(@NonNull DownloadMission mission) {
+        if (mission.isLoaded()) {
+            showErrorDialog(mission);
+            return;
+        }
+
+        // the error of a mission listed from its summary is only known once loaded
+        compositeDisposable.add(
+                Single.fromCallable(mission::load)
+                        .subscribeOn(Schedulers.io())
+                        .observeOn(AndroidSchedulers.mainThread())
+                        .subscribe(loaded -> showErrorDialog(mission),
+                                throwable -> Log.e(TAG, "cannot load the mission", throwable))
+        );
+    }
+
+    private void showErrorDialog(@NonNull DownloadMission mission) {
         @StringRes int msg = R.string.general_error;
         String msgEx = null;
 
@@ -541,7 +608,38 @@ public class MissionAdapter extends Adapter<ViewHolder> implements Handler.Callb
                 .show();
     }
 
+    private void showSources(@NonNull DownloadMission mission) {
+        DownloadSources sources = mission.getSources();
+        if (sources == null) return;
+
+        StringBuilder msg = new StringBuilder();
+        for (DownloadSources.Source source : sources.getSources()) {
+            if (msg.length() > 0) msg.append("\n\n");
+
+            if (source.isDisabled()) {
+                msg.append(mContext.getString(R.string.download_source_disabled, source.getHost()));
+                continue;
+            }
+
+            msg.append(source.getHost())
+                    .append('\n')
+                    .append(mContext.getString(R.string.download_source_stats,
+                            Utility.formatSpeed(source.getThroughput()),
+                            Utility.formatBytes(source.getBytes()),
+                            source.getFailures()));
+        }
+
+        new AlertDialog.Builder(mContext)
+                .setTitle(mission.storage.getName())
+                .setMessage(msg)
+                .setNegativeButton(R.string.ok, (dialog, which) -> dialog.cancel())
+                .show();
+    }
+
     private void showError(DownloadMission mission, UserAction action, @StringRes int reason) {
+        // the recovery information and the error are not part of the summary, it was loaded
+        // before showing the error dialog
+
         StringBuilder request = new StringBuilder(256);
         request.append(mission.source);
 
@@ -630,6 +728,13 @@ public class MissionAdapter extends Adapter<ViewHolder> implements Handler.Callb
                 case R.id.error_message_view:
                     showError(mission);
                     return true;
+                case R.id.sources:
+                    showSources(mission);
+                    return true;
+                case R.id.download_first:
+                    mDownloadManager.prioritizeMission(mission);
+                    updateProgress(h);
+                    return true;
                 case R.id.queue:
                     boolean flag = !h.queue.isChecked();
                     h.queue.setChecked(flag);
@@ -771,18 +876,27 @@ public class MissionAdapter extends Adapter<ViewHolder> implements Handler.Callb
     }
 
     public void onDestroy() {
+        mDownloadManager.getProgressBus().setListener(null);
+        mHandler.removeCallbacks(mPendingHeaderUpdater);
         compositeDisposable.dispose();
         mDeleter.dispose();
     }
 
     public void onResume() {
         mDeleter.resume();
-        HandlerCompat.postDelayed(mHandler, this::updater, UPDATER, 0);
+        mDownloadManager.getProgressBus().setListener(this::onProgress);
+
+        // catch up with the progress made while paused
+        for (ViewHolderItem h : mPendingDownloadsItems) {
+            if (((DownloadMission) h.item.mission).running) updateProgress(h);
+        }
+        updatePendingHeader();
     }
 
     public void onPaused() {
         mDeleter.pause();
-        mHandler.removeCallbacksAndMessages(UPDATER);
+        mDownloadManager.getProgressBus().setListener(null);
+        mHandler.removeCallbacks(mPendingHeaderUpdater);
     }
 
     public void recoverMission(DownloadMission mission) {
@@ -799,15 +913,56 @@ public class MissionAdapter extends Adapter<ViewHolder> implements Handler.Callb
         mDownloadManager.resumeMission(mission);
     }
 
-    private void updater() {
-        for (ViewHolderItem h : mPendingDownloadsItems) {
-            // check if the mission is running first
-            if (!((DownloadMission) h.item.mission).running) continue;
+    /**
+     * Binds again the progress of the visible missions which made progress, the missions out of
+     * the screen are updated when bound
+     */
+    private void onProgress(@NonNull Collection<DownloadMission> missions) {
+        for (DownloadMission mission : missions) {
+            ViewHolderItem h = getViewHolder(mission);
+            if (h == null) continue;
 
-            updateProgress(h);
+            int position = h.getBindingAdapterPosition();
+            if (position != RecyclerView.NO_POSITION) notifyItemChanged(position, PAYLOAD_PROGRESS);
+        }
+
+        updatePendingHeader();
+
+        // nothing is delivered once all the missions stall, refresh the speed after the last delivery
+        mHandler.removeCallbacks(mPendingHeaderUpdater);
+        mHandler.postDelayed(mPendingHeaderUpdater, SPEED_SAMPLE_INTERVAL);
+    }
+
+    /**
+     * Updates the pending missions header until the measured speed drops to zero
+     */
+    private void refreshPendingHeader() {
+        updatePendingHeader();
+        if (mDownloadManager.getScheduler().getSpeed() > 0) {
+            mHandler.postDelayed(mPendingHeaderUpdater, SPEED_SAMPLE_INTERVAL);
+        }
+    }
+
+    /**
+     * Shows the aggregate speed of all running missions next to the pending missions header
+     */
+    private void updatePendingHeader() {
+        double speed = mDownloadManager.getScheduler().getSpeed();
+        if (mPendingHeader == null) return;
+
+        String header = mContext.getString(R.string.missions_header_pending);
+        if (mIterator.hasValidPendingMissions()[0] && speed > 0) {
+            header = header.concat(" · ").concat(Utility.formatSpeed(speed));
+        }
+
+        PostprocessingQueue queue = mDownloadManager.getPostprocessingQueue();
+        int running = queue.getRunningCount();
+        int queued = queue.getQueuedCount();
+        if (running > 0 || queued > 0) {
+            header = header.concat(" · ").concat(mContext.getString(R.string.missions_header_post_processing, running, queued));
         }
 
-        HandlerCompat.postDelayed(mHandler, this::updater, UPDATER, 1000);
+        mPendingHeader.header.setText(header);
     }
 
     private boolean isNotFinite(double value) {
@@ -835,9 +990,11 @@ public class MissionAdapter extends Adapter<ViewHolder> implements Handler.Callb
         MenuItem pause;
         MenuItem open;
         MenuItem queue;
+        MenuItem downloadFirst;
         MenuItem showError;
         MenuItem delete;
         MenuItem source;
+        MenuItem sources;
         MenuItem checksum;
 
         long lastTimestamp = -1;
@@ -870,9 +1027,11 @@ public class MissionAdapter extends Adapter<ViewHolder> implements Handler.Callb
             pause = menu.findItem(R.id.pause);
             open = menu.findItem(R.id.menu_item_share);
             queue = menu.findItem(R.id.queue);
+            downloadFirst = menu.findItem(R.id.download_first);
             showError = menu.findItem(R.id.error_message_view);
             delete = menu.findItem(R.id.delete);
             source = menu.findItem(R.id.source);
+            sources = menu.findItem(R.id.sources);
             checksum = menu.findItem(R.id.checksum);
 
             itemView.setHapticFeedbackEnabled(true);
@@ -896,9 +1055,11 @@ public class MissionAdapter extends Adapter<ViewHolder> implements Handler.Callb
             pause.setVisible(false);
             open.setVisible(false);
             queue.setVisible(false);
+            downloadFirst.setVisible(false);
             showError.setVisible(false);
             delete.setVisible(false);
             source.setVisible(false);
+            sources.setVisible(false);
             checksum.setVisible(false);
 
             DownloadMission mission = item.mission instanceof DownloadMission ? (DownloadMission) item.mission : null;
@@ -920,6 +1081,7 @@ public class MissionAdapter extends Adapter<ViewHolder> implements Handler.Callb
                 } else {
                     if (mission.running) {
                         pause.setVisible(true);
+                        sources.setVisible(mission.getSources() != null);
                     } else {
                         if (mission.errCode != ERROR_NOTHING) {
                             showError.setVisible(true);
@@ -932,6 +1094,7 @@ public class MissionAdapter extends Adapter<ViewHolder> implements Handler.Callb
                         boolean flag = !mission.isPsFailed() && mission.urls.length > 0;
                         start.setVisible(flag);
                         queue.setVisible(flag);
+                        downloadFirst.setVisible(flag);
                     }
                 }
             } else {
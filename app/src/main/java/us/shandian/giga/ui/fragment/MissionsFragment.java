@@ -10,6 +10,7 @@ import android.net.Uri;
 import android.os.Bundle;
 import android.os.Environment;
 import android.os.IBinder;
+import android.util.Log;
 import android.view.LayoutInflater;
 import android.view.Menu;
 import android.view.MenuItem;
@@ -38,11 +39,23 @@ import org.schabi.newpipe.util.FilePickerActivityHelper;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+
+import io.reactivex.rxjava3.android.schedulers.AndroidSchedulers;
+import io.reactivex.rxjava3.core.Completable;
+import io.reactivex.rxjava3.disposables.Disposable;
+import io.reactivex.rxjava3.schedulers.Schedulers;
 
 import us.shandian.giga.get.DownloadMission;
+import us.shandian.giga.get.MissionMetrics;
 import us.shandian.giga.service.DownloadManager;
 import us.shandian.giga.service.DownloadManagerService;
 import us.shandian.giga.service.DownloadManagerService.DownloadManagerBinder;
+import us.shandian.giga.service.DownloadMetrics;
 import us.shandian.giga.ui.adapter.MissionAdapter;
 
 public class MissionsFragment extends Fragment {
@@ -70,6 +83,11 @@ public class MissionsFragment extends Fragment {
     private DownloadMission unsafeMissionTarget = null;
     private final ActivityResultLauncher<Intent> requestDownloadSaveAsLauncher =
             registerForActivityResult(new StartActivityForResult(), this::requestDownloadSaveAsResult);
+
+    private String exportMetricsMime = null;
+    private Disposable exportMetricsDisposable = null;
+    private final ActivityResultLauncher<Intent> requestExportMetricsLauncher =
+            registerForActivityResult(new StartActivityForResult(), this::requestExportMetricsResult);
     private final ServiceConnection mConnection = new ServiceConnection() {
 
         @Override
@@ -161,6 +179,7 @@ public class MissionsFragment extends Fragment {
     @Override
     public void onDestroy() {
         super.onDestroy();
+        if (exportMetricsDisposable != null) exportMetricsDisposable.dispose();
         if (mBinder == null || mAdapter == null) return;
 
         mBinder.removeMissionEventListener(mAdapter);
@@ -197,6 +216,9 @@ public class MissionsFragment extends Fragment {
             case R.id.start_downloads:
                 mBinder.getDownloadManager().startAllMissions();
                 return true;
+            case R.id.export_metrics:
+                showExportMetricsPrompt();
+                return true;
             case R.id.pause_downloads:
                 mBinder.getDownloadManager().pauseAllMissions(false);
                 mAdapter.refreshMissionItems();// update items view
@@ -229,6 +251,65 @@ public class MissionsFragment extends Fragment {
                 .show();
     }
 
+    private void showExportMetricsPrompt() {
+        if (mBinder == null) return;
+
+        new AlertDialog.Builder(mContext)
+                .setTitle(R.string.export_download_metrics)
+                .setItems(new CharSequence[]{"CSV", "JSON"}, (dialog, which) -> {
+                    exportMetricsMime = which == 0 ? DownloadMetrics.MIME_CSV : DownloadMetrics.MIME_JSON;
+
+                    String date = new SimpleDateFormat("yyyyMMddHHmm", Locale.ENGLISH).format(new Date());
+                    String name = "newpipe_downloads_" + date + (which == 0 ? ".csv" : ".json");
+
+                    NoFileManagerSafeGuard.launchSafe(
+                            requestExportMetricsLauncher,
+                            StoredFileHelper.getNewPicker(mContext, name, exportMetricsMime, null),
+                            TAG,
+                            mContext
+                    );
+                })
+                .setNegativeButton(R.string.cancel, null)
+                .show();
+    }
+
+    private void requestExportMetricsResult(final ActivityResult result) {
+        if (result.getResultCode() != Activity.RESULT_OK || result.getData() == null) return;
+        if (mBinder == null || exportMetricsMime == null) return;
+
+        Uri uri = result.getData().getData();
+        if (uri.getAuthority() != null && FilePickerActivityHelper.isOwnFileUri(mContext, uri)) {
+            uri = Uri.fromFile(Utils.getFileForUri(uri));
+        }
+
+        Uri target = uri;
+        boolean json = DownloadMetrics.MIME_JSON.equals(exportMetricsMime);
+        DownloadManager manager = mBinder.getDownloadManager();
+        Context context = mContext.getApplicationContext();
+
+        exportMetricsDisposable = Completable.fromAction(() -> {
+            List<MissionMetrics> metrics = manager.collectMetrics();
+
+            try (OutputStream out = context.getContentResolver().openOutputStream(target)) {
+                if (out == null) throw new IOException("cannot open " + target);
+
+                if (json)
+                    DownloadMetrics.writeJson(metrics, out);
+                else
+                    DownloadMetrics.writeCsv(metrics, out);
+            }
+        })
+                .subscribeOn(Schedulers.io())
+                .observeOn(AndroidSchedulers.mainThread())
+                .subscribe(
+                        () -> Toast.makeText(context, R.string.export_complete_toast, Toast.LENGTH_SHORT).show(),
+                        e -> {
+                            Log.e(TAG, "cannot export the download metrics", e);
+                            Toast.makeText(context, R.string.general_error, Toast.LENGTH_LONG).show();
+                        }
+                );
+    }
+
     private void updateList() {
         if (mLinear) {
             mList.setLayoutManager(mLinearManager);
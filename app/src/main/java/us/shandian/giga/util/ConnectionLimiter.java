@@ -0,0 +1,60 @@
+package us.shandian.giga.util;
+
+import java.io.InterruptedIOException;
+
+/**
+ * Caps the number of connections open at the same time. Unlike a {@link
+ * java.util.concurrent.Semaphore}, the limit can be lowered while connections are open: no new
+ * connection is allowed until enough of them are released.
+ */
+public class ConnectionLimiter {
+    private int mLimit = 0;
+    private int mActive = 0;
+
+    /**
+     * @param limit the maximum amount of connections, or {@code 0} (or less) for no limit
+     */
+    public synchronized void setLimit(int limit) {
+        mLimit = Math.max(limit, 0);
+        notifyAll();
+    }
+
+    public synchronized int getLimit() {
+        return mLimit;
+    }
+
+    public synchronized int getActiveConnections() {
+        return mActive;
+    }
+
+    /**
+     * Waits until a connection can be opened
+     *
+     * @param timeoutMillis maximum time to wait
+     * @return {@code true} if the connection was acquired, and must be released later,
+     * otherwise, {@code false} if the time elapsed
+     * @throws InterruptedIOException if the thread was interrupted while waiting
+     */
+    public synchronized boolean tryAcquire(long timeoutMillis) throws InterruptedIOException {
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+
+        try {
+            while (mLimit > 0 && mActive >= mLimit) {
+                long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0) return false;
+                wait(remaining);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("interrupted while waiting for a connection");
+        }
+
+        mActive++;
+        return true;
+    }
+
+    public synchronized void release() {
+        if (mActive > 0) mActive--;
+        notifyAll();
+    }
+}
@@ -0,0 +1,72 @@
+package us.shandian.giga.util;
+
+import java.io.InterruptedIOException;
+
+/**
+ * Limits the rate at which bytes are transferred, allowing bursts of at most one second of
+ * traffic. Threads transferring more than allowed are put to sleep until the bucket refills.
+ */
+public class TokenBucket {
+    private static final long NANOS_PER_SECOND = 1000000000L;
+
+    private long mRate = 0;
+    private double mTokens = 0;
+    private long mLastRefill = System.nanoTime();
+
+    /**
+     * Changes the rate limit
+     *
+     * @param bytesPerSecond the maximum rate, or {@code 0} (or less) to disable the limit
+     */
+    public synchronized void setRate(long bytesPerSecond) {
+        if (bytesPerSecond == mRate) return;
+
+        refill();
+        mRate = Math.max(bytesPerSecond, 0);
+        mTokens = Math.min(mTokens, mRate);
+    }
+
+    public synchronized long getRate() {
+        return mRate;
+    }
+
+    /**
+     * Takes the tokens of bytes that were just transferred, waiting if the limit is exceeded
+     *
+     * @param bytes amount of bytes transferred
+     * @throws InterruptedIOException if the thread was interrupted while waiting
+     */
+    public void consume(int bytes) throws InterruptedIOException {
+        long waitNanos = take(bytes);
+        if (waitNanos < 1) return;
+
+        try {
+            Thread.sleep(waitNanos / 1000000L, (int) (waitNanos % 1000000L));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("interrupted while throttling");
+        }
+    }
+
+    /**
+     * Takes the tokens of bytes that were just transferred
+     *
+     * @param bytes amount of bytes transferred
+     * @return the time to wait until the bucket has refilled, in nanoseconds
+     */
+    synchronized long take(int bytes) {
+        if (mRate < 1) return 0;
+
+        refill();
+        mTokens -= bytes;
+        if (mTokens >= 0) return 0;
+
+        return (long) (-mTokens * NANOS_PER_SECOND / mRate);
+    }
+
+    private void refill() {
+        long now = System.nanoTime();
+        mTokens = Math.min(mRate, mTokens + (double) (now - mLastRefill) * mRate / NANOS_PER_SECOND);
+        mLastRefill = now;
+    }
+}
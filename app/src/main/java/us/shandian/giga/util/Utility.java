@@ -4,6 +4,9 @@ import android.content.Context;
 import android.os.Build;
 import android.os.Environment;
 import android.os.StatFs;
+import android.system.ErrnoException;
+import android.system.Os;
+import android.system.OsConstants;
 import android.util.Log;
 
 import androidx.annotation.ColorInt;
@@ -18,8 +21,10 @@ import org.schabi.newpipe.R;
 import org.schabi.newpipe.streams.io.SharpInputStream;
 import org.schabi.newpipe.streams.io.StoredFileHelper;
 
+import java.io.BufferedInputStream;
 import java.io.BufferedOutputStream;
 import java.io.File;
+import java.io.FileDescriptor;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
@@ -82,7 +87,7 @@ public class Utility {
         T object;
 
         try (ObjectInputStream objectInputStream =
-                     new ObjectInputStream(new FileInputStream(file))) {
+                     new ObjectInputStream(new BufferedInputStream(new FileInputStream(file)))) {
             object = (T) objectInputStream.readObject();
         } catch (Exception e) {
             Log.e("Utility", "Failed to deserialize the object", e);
@@ -253,6 +258,26 @@ public class Utility {
         return -1;
     }
 
+    /**
+     * Allocates the disk space of a file up to the given length, without changing the data
+     * already written. Files longer than that are not truncated.
+     *
+     * @param fd     the file descriptor of the file
+     * @param length the length of the file, in bytes
+     * @return {@code true} if the space was allocated, otherwise, {@code false} if the file
+     * system does not support it
+     * @throws IOException if the space cannot be allocated, for instance if the storage is full
+     */
+    public static boolean preallocate(final FileDescriptor fd, final long length) throws IOException {
+        try {
+            Os.posix_fallocate(fd, 0, length);
+            return true;
+        } catch (ErrnoException e) {
+            if (e.errno == OsConstants.EOPNOTSUPP || e.errno == OsConstants.ENOSYS) return false;
+            throw e.rethrowAsIOException();
+        }
+    }
+
     private static String pad(int number) {
         return number < 10 ? ("0" + number) : String.valueOf(number);
     }
@@ -0,0 +1,75 @@
+package org.schabi.newpipe.local.feed.service
+
+import org.junit.Assert.assertEquals
+import org.junit.Test
+import org.schabi.newpipe.database.feed.model.FeedUploadCadenceEntry
+import org.schabi.newpipe.database.subscription.SubscriptionEntity
+import java.time.OffsetDateTime
+import java.time.ZoneOffset
+
+class FeedUpdateSchedulerTest {
+    private val now = OffsetDateTime.of(2024, 1, 1, 12, 0, 0, 0, ZoneOffset.UTC)
+
+    private fun subscription(uid: Long) = SubscriptionEntity().apply { this.uid = uid }
+
+    private fun cadence(
+        uid: Long,
+        lastUpdatedHoursAgo: Long?,
+        uploadEveryDays: Long,
+        uploadCount: Int = 10
+    ) = FeedUploadCadenceEntry(
+        subscriptionId = uid,
+        lastUpdated = lastUpdatedHoursAgo?.let { now.minusHours(it) },
+        oldestUploadDate = now.minusDays(uploadEveryDays * uploadCount),
+        newestUploadDate = now.minusDays(uploadEveryDays),
+        uploadCount = uploadCount
+    )
+
+    @Test
+    fun `Active channels come first`() {
+        val subscriptions = listOf(subscription(1), subscription(2), subscription(3))
+        val cadences = listOf(
+            cadence(1, lastUpdatedHoursAgo = 6, uploadEveryDays = 30),
+            cadence(2, lastUpdatedHoursAgo = 6, uploadEveryDays = 1),
+            cadence(3, lastUpdatedHoursAgo = null, uploadEveryDays = 7),
+        )
+
+        val scheduled = FeedUpdateScheduler.schedule(subscriptions, cadences, false, now)
+        assertEquals(listOf(3L, 2L, 1L), scheduled.map { it.uid })
+    }
+
+    @Test
+    fun `Rarely uploading channels are skipped when recently updated`() {
+        val subscriptions = listOf(subscription(1), subscription(2))
+        val cadences = listOf(
+            cadence(1, lastUpdatedHoursAgo = 2, uploadEveryDays = 365, uploadCount = 1),
+            cadence(2, lastUpdatedHoursAgo = 2, uploadEveryDays = 1),
+        )
+
+        val scheduled = FeedUpdateScheduler.schedule(subscriptions, cadences, true, now)
+        assertEquals(listOf(2L), scheduled.map { it.uid })
+    }
+
+    @Test
+    fun `Rarely uploading channels are still checked once a day`() {
+        val subscriptions = listOf(subscription(1))
+        val cadences = listOf(
+            cadence(1, lastUpdatedHoursAgo = 25, uploadEveryDays = 365, uploadCount = 1),
+        )
+
+        val scheduled = FeedUpdateScheduler.schedule(subscriptions, cadences, true, now)
+        assertEquals(listOf(1L), scheduled.map { it.uid })
+    }
+
+    @Test
+    fun `Subscriptions without any known upload are not skipped forever`() {
+        val subscriptions = listOf(subscription(1), subscription(2))
+        val cadences = listOf(
+            FeedUploadCadenceEntry(1, now.minusMinutes(10), null, null, 0),
+            FeedUploadCadenceEntry(2, now.minusHours(3), null, null, 0),
+        )
+
+        val scheduled = FeedUpdateScheduler.schedule(subscriptions, cadences, true, now)
+        assertEquals(listOf(2L), scheduled.map { it.uid })
+    }
+}
@@ -0,0 +1,154 @@
+package org.schabi.newpipe.local.playlist;
+
+import org.junit.Test;
+import org.schabi.newpipe.database.playlist.model.PlaylistStreamEntity;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class PlaylistJoinDeltaTest {
+    private static final long PLAYLIST_ID = 1;
+    private static final int LARGE_PLAYLIST_SIZE = 5000;
+
+    /**
+     * Simulates the {@code playlist_stream_join} rows of a playlist, mapping join indexes to
+     * stream ids.
+     */
+    private final Map<Integer, Long> table = new TreeMap<>();
+
+    private List<PlaylistStreamEntity> storedEntities() {
+        final List<PlaylistStreamEntity> entities = new ArrayList<>();
+        for (final Map.Entry<Integer, Long> row : table.entrySet()) {
+            entities.add(new PlaylistStreamEntity(PLAYLIST_ID, row.getValue(), row.getKey()));
+        }
+        return entities;
+    }
+
+    private PlaylistJoinDelta save(final List<Long> streamIds) {
+        final PlaylistJoinDelta delta =
+                PlaylistJoinDelta.compute(PLAYLIST_ID, storedEntities(), streamIds);
+
+        if (delta.isFullRewrite()) {
+            table.clear();
+        } else {
+            for (final int index : delta.getDeletedIndexes()) {
+                assertTrue("Deleted a missing row " + index, table.containsKey(index));
+                table.remove(index);
+            }
+        }
+        for (final PlaylistStreamEntity entity : delta.getInsertedEntities()) {
+            assertNull("Inserted a duplicate row " + entity.getIndex(),
+                    table.put(entity.getIndex(), entity.getStreamUid()));
+        }
+
+        assertEquals(streamIds, new ArrayList<>(table.values()));
+        return delta;
+    }
+
+    private static List<Long> streamIds(final int count) {
+        final List<Long> streamIds = new ArrayList<>(count);
+        for (long i = 0; i < count; i++) {
+            streamIds.add(i);
+        }
+        return streamIds;
+    }
+
+    private void fillContiguous(final List<Long> streamIds) {
+        for (int i = 0; i < streamIds.size(); i++) {
+            table.put(i, streamIds.get(i));
+        }
+    }
+
+    @Test
+    public void unchangedPlaylistIsNotWritten() {
+        final List<Long> streamIds = streamIds(LARGE_PLAYLIST_SIZE);
+        save(streamIds);
+
+        assertTrue(save(streamIds).isEmpty());
+    }
+
+    @Test
+    public void contiguousPlaylistIsRenumberedOnce() {
+        final List<Long> streamIds = streamIds(LARGE_PLAYLIST_SIZE);
+        fillContiguous(streamIds);
+
+        Collections.swap(streamIds, 10, 11);
+        assertTrue(save(streamIds).isFullRewrite());
+
+        Collections.swap(streamIds, 20, 21);
+        final PlaylistJoinDelta delta = save(streamIds);
+        assertFalse(delta.isFullRewrite());
+        assertEquals(1, delta.getInsertedEntities().size());
+    }
+
+    @Test
+    public void movingOneItemOnlyWritesThatItem() {
+        final List<Long> streamIds = streamIds(LARGE_PLAYLIST_SIZE);
+        save(streamIds);
+
+        streamIds.add(4000, streamIds.remove(10));
+        final PlaylistJoinDelta delta = save(streamIds);
+        assertFalse(delta.isFullRewrite());
+        assertEquals(1, delta.getDeletedIndexes().size());
+        assertEquals(1, delta.getInsertedEntities().size());
+    }
+
+    @Test
+    public void removingItemsOnlyDeletesThem() {
+        final List<Long> streamIds = streamIds(LARGE_PLAYLIST_SIZE);
+        save(streamIds);
+
+        streamIds.remove(0);
+        streamIds.remove(2500);
+        final PlaylistJoinDelta delta = save(streamIds);
+        assertFalse(delta.isFullRewrite());
+        assertEquals(2, delta.getDeletedIndexes().size());
+        assertTrue(delta.getInsertedEntities().isEmpty());
+    }
+
+    @Test
+    public void duplicateStreamsAreKept() {
+        final List<Long> streamIds = new ArrayList<>(Arrays.asList(1L, 2L, 1L, 3L, 1L));
+        save(streamIds);
+
+        streamIds.remove(2);
+        save(streamIds);
+
+        streamIds.add(0, 3L);
+        save(streamIds);
+    }
+
+    @Test
+    public void randomEditsKeepOrder() {
+        final Random random = new Random(42);
+        final List<Long> streamIds = streamIds(200);
+        fillContiguous(streamIds);
+
+        for (int i = 0; i < 2000; i++) {
+            final int from = random.nextInt(streamIds.size());
+            final int to = random.nextInt(streamIds.size());
+            switch (random.nextInt(4)) {
+                case 0:
+                    streamIds.remove(from);
+                    break;
+                case 1:
+                    streamIds.add(to, (long) random.nextInt(300));
+                    break;
+                default:
+                    streamIds.add(to, streamIds.remove(from));
+                    break;
+            }
+            save(streamIds);
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package org.schabi.newpipe.player.datasource;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class ResolvedUrlCacheTest {
+    private static final long EXPIRE_SECONDS = 1_700_000_000L;
+    private static final String URL = "https://rr1---sn-original.googlevideo.com/videoplayback"
+            + "?expire=" + EXPIRE_SECONDS + "&id=abc&itag=251";
+    private static final String REDIRECTED_URL = "https://rr4---sn-other.googlevideo.com/"
+            + "videoplayback?expire=" + EXPIRE_SECONDS + "&id=abc&itag=251&rn=3&range=0-99";
+
+    private final AtomicLong now = new AtomicLong(TimeUnit.SECONDS.toMillis(EXPIRE_SECONDS - 60));
+    private final ResolvedUrlCache cache = new ResolvedUrlCache(now::get);
+
+    @Test
+    public void resolutionOnlyReplacesTheServer() {
+        cache.put(URL, REDIRECTED_URL);
+        assertEquals("https://rr4---sn-other.googlevideo.com/videoplayback"
+                + "?expire=" + EXPIRE_SECONDS + "&id=abc&itag=251", cache.get(URL));
+        assertEquals(1, cache.getRedirectsFollowed());
+    }
+
+    @Test
+    public void requestsWithoutRedirectAreNotStored() {
+        cache.put(URL, URL + "&rn=1&range=0-99");
+        assertNull(cache.get(URL));
+        assertEquals(0, cache.getRedirectsFollowed());
+    }
+
+    @Test
+    public void resolutionExpiresWithTheStreamUrl() {
+        cache.put(URL, REDIRECTED_URL);
+        now.set(TimeUnit.SECONDS.toMillis(EXPIRE_SECONDS));
+        assertNull(cache.get(URL));
+    }
+
+    @Test
+    public void urlsWithoutExpirationUseTheDefaultOne() {
+        final String url = "https://example.com/video.mp4";
+        cache.put(url, "https://cdn.example.com/video.mp4");
+        now.addAndGet(ResolvedUrlCache.DEFAULT_TTL_MILLIS - 1);
+        assertEquals("https://cdn.example.com/video.mp4", cache.get(url));
+        now.incrementAndGet();
+        assertNull(cache.get(url));
+    }
+
+    @Test
+    public void hlsStyleExpirationIsParsed() {
+        assertEquals(TimeUnit.SECONDS.toMillis(EXPIRE_SECONDS),
+                ResolvedUrlCache.expirationMillisOf("https://manifest.googlevideo.com/api/"
+                        + "manifest/hls_playlist/expire/" + EXPIRE_SECONDS + "/id/abc", 0));
+    }
+
+    @Test
+    public void removedAndOldestResolutionsAreForgotten() {
+        cache.put(URL, REDIRECTED_URL);
+        cache.remove(URL);
+        assertNull(cache.get(URL));
+
+        for (int i = 0; i <= ResolvedUrlCache.MAX_ENTRIES; i++) {
+            cache.put(URL + "&sq=" + i, REDIRECTED_URL);
+        }
+        assertNull(cache.get(URL + "&sq=0"));
+        assertEquals("https://rr4---sn-other.googlevideo.com/videoplayback?expire="
+                        + EXPIRE_SECONDS + "&id=abc&itag=251&sq=" + ResolvedUrlCache.MAX_ENTRIES,
+                cache.get(URL + "&sq=" + ResolvedUrlCache.MAX_ENTRIES));
+    }
+}
@@ -0,0 +1,238 @@
+package org.schabi.newpipe.player.datasource;
+
+import android.net.Uri;
+
+import com.google.android.exoplayer2.upstream.DataSpec;
+import com.google.android.exoplayer2.upstream.HttpDataSource;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import okhttp3.OkHttpClient;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class YoutubeOkHttpDataSourceTest {
+    private static final int SEGMENT_COUNT = 50;
+    private static final int SEGMENT_SIZE = 16 * 1024;
+    private static final String PATH = "/videoplayback?id=test&itag=251";
+
+    private SegmentServer server;
+
+    @Before
+    public void setUp() throws IOException {
+        server = new SegmentServer();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        server.close();
+    }
+
+    @Test
+    public void sequentialSegmentRequestsReuseOneConnection() throws IOException {
+        final HttpDataSource dataSource = new YoutubeOkHttpDataSource.Factory(new OkHttpClient())
+                .setRangeParameterEnabled(true)
+                .setRnParameterEnabled(true)
+                .createDataSource();
+
+        readSegments(dataSource);
+
+        assertEquals(1, server.getConnectionCount());
+        final List<String> paths = server.getRequestedPaths();
+        assertEquals(SEGMENT_COUNT, paths.size());
+        for (int i = 0; i < SEGMENT_COUNT; i++) {
+            // the request number and range parameters are kept
+            assertEquals(PATH + "&rn=" + i + "&range=" + (i * SEGMENT_SIZE) + "-"
+                    + ((i + 1) * SEGMENT_SIZE - 1), paths.get(i));
+        }
+    }
+
+    @Test
+    public void rangeHeaderIsUsedWhenRangeParameterIsDisabled() throws IOException {
+        final HttpDataSource dataSource = new YoutubeOkHttpDataSource.Factory(new OkHttpClient())
+                .createDataSource();
+
+        readSegments(dataSource);
+
+        for (final String path : server.getRequestedPaths()) {
+            assertEquals(PATH, path);
+        }
+    }
+
+    @Test
+    public void dataSourcesOfTheSameClientShareTheirConnection() throws IOException {
+        final YoutubeOkHttpDataSource.Factory factory =
+                new YoutubeOkHttpDataSource.Factory(new OkHttpClient())
+                        .setRangeParameterEnabled(true)
+                        .setRnParameterEnabled(true);
+
+        readSegments(factory.createDataSource());
+        readSegments(factory.createDataSource());
+
+        assertEquals(1, server.getConnectionCount());
+        assertEquals(2 * SEGMENT_COUNT, server.getRequestedPaths().size());
+    }
+
+    /**
+     * Reads {@link #SEGMENT_COUNT} consecutive segments with the data source, checking their
+     * content.
+     *
+     * @param dataSource the data source to use
+     */
+    private void readSegments(final HttpDataSource dataSource) throws IOException {
+        final Uri uri = mock(Uri.class);
+        when(uri.toString()).thenReturn(server.getUrl());
+
+        final byte[] buffer = new byte[SEGMENT_SIZE];
+        for (int i = 0; i < SEGMENT_COUNT; i++) {
+            final long position = (long) i * SEGMENT_SIZE;
+            dataSource.open(new DataSpec.Builder()
+                    .setUri(uri)
+                    .setPosition(position)
+                    .setLength(SEGMENT_SIZE)
+                    .build());
+
+            int read = 0;
+            while (read < SEGMENT_SIZE) {
+                final int result = dataSource.read(buffer, read, SEGMENT_SIZE - read);
+                assertTrue(result > 0);
+                read += result;
+            }
+            dataSource.close();
+
+            for (int j = 0; j < SEGMENT_SIZE; j++) {
+                assertEquals(SegmentServer.byteAt(position + j), buffer[j]);
+            }
+        }
+    }
+
+    /**
+     * A minimal HTTP/1.1 server with keep-alive, serving any range of an infinite resource,
+     * requested with either the {@code range} parameter or the {@code Range} header.
+     */
+    private static final class SegmentServer implements Closeable {
+        private static final Pattern RANGE_PARAMETER = Pattern.compile("[?&]range=(\\d+)-(\\d+)");
+        private static final Pattern RANGE_HEADER =
+                Pattern.compile("(?i)^range: bytes=(\\d+)-(\\d+)$");
+
+        private final ServerSocket serverSocket;
+        private final ExecutorService executor = Executors.newCachedThreadPool();
+        private final AtomicInteger connectionCount = new AtomicInteger();
+        private final List<String> requestedPaths = Collections.synchronizedList(
+                new ArrayList<>());
+
+        SegmentServer() throws IOException {
+            serverSocket = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+            executor.execute(this::acceptConnections);
+        }
+
+        static byte byteAt(final long position) {
+            return (byte) (position * 31 + 7);
+        }
+
+        String getUrl() {
+            return "http://127.0.0.1:" + serverSocket.getLocalPort() + PATH;
+        }
+
+        int getConnectionCount() {
+            return connectionCount.get();
+        }
+
+        List<String> getRequestedPaths() {
+            return new ArrayList<>(requestedPaths);
+        }
+
+        private void acceptConnections() {
+            try {
+                while (!serverSocket.isClosed()) {
+                    final Socket socket = serverSocket.accept();
+                    connectionCount.incrementAndGet();
+                    executor.execute(() -> serve(socket));
+                }
+            } catch (final IOException ignored) {
+                // the server was closed
+            }
+        }
+
+        private void serve(final Socket socket) {
+            try (socket) {
+                final InputStream in = new BufferedInputStream(socket.getInputStream());
+                final OutputStream out = socket.getOutputStream();
+                String requestLine;
+                while ((requestLine = readLine(in)) != null && !requestLine.isEmpty()) {
+                    final String path = requestLine.split(" ")[1];
+                    Matcher range = RANGE_PARAMETER.matcher(path);
+                    boolean hasRange = range.find();
+                    String header;
+                    while ((header = readLine(in)) != null && !header.isEmpty()) {
+                        final Matcher headerRange = RANGE_HEADER.matcher(header);
+                        if (!hasRange && headerRange.find()) {
+                            range = headerRange;
+                            hasRange = true;
+                        }
+                    }
+                    requestedPaths.add(path);
+
+                    final long start = hasRange ? Long.parseLong(range.group(1)) : 0;
+                    final long end = hasRange ? Long.parseLong(range.group(2)) : SEGMENT_SIZE - 1;
+                    final byte[] body = new byte[(int) (end - start + 1)];
+                    for (int i = 0; i < body.length; i++) {
+                        body[i] = byteAt(start + i);
+                    }
+                    out.write(((hasRange ? "HTTP/1.1 206 Partial Content\r\n"
+                            + "Content-Range: bytes " + start + "-" + end + "/*\r\n"
+                            : "HTTP/1.1 200 OK\r\n")
+                            + "Content-Type: video/webm\r\n"
+                            + "Content-Length: " + body.length + "\r\n\r\n")
+                            .getBytes(StandardCharsets.US_ASCII));
+                    out.write(body);
+                    out.flush();
+                }
+            } catch (final IOException ignored) {
+                // the client closed the connection
+            }
+        }
+
+        private static String readLine(final InputStream in) throws IOException {
+            final ByteArrayOutputStream line = new ByteArrayOutputStream();
+            int c;
+            while ((c = in.read()) != -1 && c != '\n') {
+                if (c != '\r') {
+                    line.write(c);
+                }
+            }
+            return c == -1 && line.size() == 0
+                    ? null : line.toString(StandardCharsets.US_ASCII.name());
+        }
+
+        @Override
+        public void close() throws IOException {
+            serverSocket.close();
+            executor.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package org.schabi.newpipe.player.helper;
+
+import android.content.Context;
+
+import com.google.android.exoplayer2.Format;
+import com.google.android.exoplayer2.upstream.BandwidthMeter;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.schabi.newpipe.player.helper.LoadController.Profile.AGGRESSIVE;
+import static org.schabi.newpipe.player.helper.LoadController.Profile.BALANCED;
+import static org.schabi.newpipe.player.helper.LoadController.Profile.DATA_SAVER;
+
+public class LoadControllerTest {
+    private static final long FAST_NETWORK = 20_000_000;
+    private static final int BITRATE = 2_000_000;
+
+    @Test
+    public void profileTargetsOnFastNetwork() {
+        assertArrayEquals(new long[]{10_000_000, 20_000_000}, LoadController.getBufferTargetsUs(
+                DATA_SAVER, false, FAST_NETWORK, BITRATE, 0, 1));
+        assertArrayEquals(new long[]{25_000_000, 50_000_000}, LoadController.getBufferTargetsUs(
+                BALANCED, false, FAST_NETWORK, BITRATE, 0, 1));
+        assertArrayEquals(new long[]{60_000_000, 120_000_000}, LoadController.getBufferTargetsUs(
+                AGGRESSIVE, false, FAST_NETWORK, BITRATE, 0, 1));
+    }
+
+    @Test
+    public void meteredNetworkCapsMaxBuffer() {
+        assertArrayEquals(new long[]{25_000_000, 30_000_000}, LoadController.getBufferTargetsUs(
+                BALANCED, true, FAST_NETWORK, BITRATE, 0, 1));
+        assertArrayEquals(new long[]{10_000_000, 15_000_000}, LoadController.getBufferTargetsUs(
+                DATA_SAVER, true, FAST_NETWORK, BITRATE, 0, 1));
+    }
+
+    @Test
+    public void slowNetworkKeepsBufferFull() {
+        assertArrayEquals(new long[]{50_000_000, 50_000_000}, LoadController.getBufferTargetsUs(
+                BALANCED, false, BITRATE, BITRATE, 0, 1));
+        // an unknown bitrate is not considered slow
+        assertArrayEquals(new long[]{25_000_000, 50_000_000}, LoadController.getBufferTargetsUs(
+                BALANCED, false, BITRATE, Format.NO_VALUE, 0, 1));
+    }
+
+    @Test
+    public void rebufferingsRaiseMinBuffer() {
+        long previousMinBufferUs = 0;
+        for (int rebufferings = 0; rebufferings < 10; rebufferings++) {
+            final long[] targets = LoadController.getBufferTargetsUs(
+                    BALANCED, false, FAST_NETWORK, BITRATE, rebufferings, 1);
+            assertTrue(targets[0] > previousMinBufferUs);
+            assertTrue(targets[0] <= targets[1]);
+            previousMinBufferUs = targets[0];
+        }
+    }
+
+    @Test
+    public void targetsScaleWithPlaybackSpeed() {
+        assertArrayEquals(new long[]{50_000_000, 100_000_000}, LoadController.getBufferTargetsUs(
+                BALANCED, false, FAST_NETWORK, BITRATE, 0, 2));
+    }
+
+    @Test
+    public void loadingFollowsTheScaledTargets() {
+        final BandwidthMeter bandwidthMeter = mock(BandwidthMeter.class);
+        when(bandwidthMeter.getBitrateEstimate()).thenReturn(FAST_NETWORK);
+        final LoadController loadController =
+                new LoadController(mock(Context.class), bandwidthMeter, BALANCED);
+
+        // at 2x, the buffer is filled up to 100 s of media and refilled below 50 s
+        assertTrue(loadController.shouldContinueLoading(0, 0, 2));
+        assertTrue(loadController.shouldContinueLoading(0, 80_000_000, 2));
+        assertFalse(loadController.shouldContinueLoading(0, 100_000_000, 2));
+        assertFalse(loadController.shouldContinueLoading(0, 60_000_000, 2));
+        assertTrue(loadController.shouldContinueLoading(0, 49_000_000, 2));
+    }
+}
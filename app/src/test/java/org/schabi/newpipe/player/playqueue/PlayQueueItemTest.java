@@ -1,14 +1,48 @@
 package org.schabi.newpipe.player.playqueue;
 
 import org.junit.Test;
+import org.schabi.newpipe.extractor.Image;
+import org.schabi.newpipe.extractor.stream.StreamInfoItem;
+import org.schabi.newpipe.extractor.stream.StreamType;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.List;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 
 public class PlayQueueItemTest {
 
     public static final String URL = "MY_URL";
 
+    private static PlayQueueItem makeItemWithDetails() {
+        final StreamInfoItem infoItem = new StreamInfoItem(0, URL, "Title",
+                StreamType.VIDEO_STREAM);
+        infoItem.setUploaderName("Uploader");
+        infoItem.setThumbnails(List.of(
+                new Image("THUMBNAIL_URL", 90, 120, Image.ResolutionLevel.LOW)));
+        return new PlayQueueItem(infoItem);
+    }
+
+    private static void assertDetails(final PlayQueueItem item) {
+        assertEquals(URL, item.getUrl());
+        assertEquals("Title", item.getTitle());
+        assertEquals("Uploader", item.getUploader());
+        assertNull(item.getUploaderUrl());
+        assertEquals(1, item.getThumbnails().size());
+        final Image thumbnail = item.getThumbnails().get(0);
+        assertEquals("THUMBNAIL_URL", thumbnail.getUrl());
+        assertEquals(90, thumbnail.getHeight());
+        assertEquals(120, thumbnail.getWidth());
+        assertEquals(Image.ResolutionLevel.LOW, thumbnail.getEstimatedResolutionLevel());
+    }
+
     @Test
     public void equalsMustNotBeOverloaded() {
         final PlayQueueItem a = PlayQueueTest.makeItemWithUrl(URL);
@@ -16,4 +50,27 @@ public class PlayQueueItemTest {
         assertEquals(a, a);
         assertNotEquals(a, b); // they should compare different even if they have the same data
     }
+
+    @Test
+    public void packedDetailsAreMaterializedOnAccess() {
+        final PlayQueueItem item = makeItemWithDetails();
+        item.packDetails();
+        assertTrue(item.isPacked());
+        assertDetails(item);
+        assertFalse(item.isPacked());
+    }
+
+    @Test
+    public void serializedItemKeepsDetails() throws Exception {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(makeItemWithDetails());
+        }
+        try (ObjectInputStream in = new ObjectInputStream(
+                new ByteArrayInputStream(bytes.toByteArray()))) {
+            final PlayQueueItem item = (PlayQueueItem) in.readObject();
+            assertTrue(item.isPacked());
+            assertDetails(item);
+        }
+    }
 }
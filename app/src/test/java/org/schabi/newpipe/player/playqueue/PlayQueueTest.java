@@ -199,4 +199,74 @@ public class PlayQueueTest {
             assertFalse(queue1.equalStreams(queue2));
         }
     }
+
+    public static class IndexOfTests {
+        private static PlayQueue makeQueueOfSize(final int size) {
+            final List<PlayQueueItem> streams = new ArrayList<>(size);
+            for (int i = 0; i < size; ++i) {
+                streams.add(makeItemWithUrl("URL_" + i));
+            }
+            return makePlayQueue(0, streams);
+        }
+
+        private static void assertIndexesMatchPositions(final PlayQueue queue) {
+            for (int i = 0; i < queue.size(); i++) {
+                assertEquals(i, queue.indexOf(Objects.requireNonNull(queue.getItem(i))));
+            }
+        }
+
+        @Test
+        public void duplicatesReturnFirstOccurrence() {
+            final PlayQueueItem item = makeItemWithUrl("URL_1");
+            final PlayQueue queue = makePlayQueue(0, Collections.nCopies(5, item));
+            assertEquals(0, queue.indexOf(item));
+            queue.remove(0);
+            assertEquals(0, queue.indexOf(item));
+        }
+
+        @Test
+        public void itemsNotInQueue() {
+            final PlayQueue queue = makeQueueOfSize(5);
+            final PlayQueueItem removed = queue.getItem(2);
+            assertEquals(-1, queue.indexOf(makeItemWithUrl("URL_2")));
+            queue.remove(2);
+            assertEquals(-1, queue.indexOf(Objects.requireNonNull(removed)));
+        }
+
+        @Test
+        public void onlyItemsAroundCurrentIndexStayMaterialized() {
+            final int size = PlayQueue.MATERIALIZED_WINDOW * 4;
+            final PlayQueue queue = makeQueueOfSize(size);
+            assertFalse(Objects.requireNonNull(queue.getItem(0)).isPacked());
+            assertTrue(Objects.requireNonNull(queue.getItem(size - 1)).isPacked());
+
+            queue.setIndex(size - 1);
+            assertTrue(Objects.requireNonNull(queue.getItem(0)).isPacked());
+            assertEquals("URL_0", Objects.requireNonNull(queue.getItem(0)).getUrl());
+        }
+
+        @Test
+        public void indexesFollowQueueOperations() {
+            for (final int size : new int[]{100, 1_000, 10_000, 50_000}) {
+                final PlayQueue queue = makeQueueOfSize(size);
+                assertIndexesMatchPositions(queue);
+
+                queue.append(List.of(makeItemWithUrl("APPENDED_1"),
+                        makeItemWithUrl("APPENDED_2")));
+                queue.remove(size / 2);
+                queue.move(size - 1, 1);
+                assertIndexesMatchPositions(queue);
+
+                queue.setIndex(size / 3);
+                final PlayQueueItem current = queue.getItem();
+                queue.shuffle();
+                assertSame(current, queue.getItem(0));
+                assertIndexesMatchPositions(queue);
+
+                queue.unshuffle();
+                assertSame(current, queue.getItem());
+                assertIndexesMatchPositions(queue);
+            }
+        }
+    }
 }
@@ -0,0 +1,62 @@
+package org.schabi.newpipe.player.seekbarpreview;
+
+import static org.junit.Assert.assertEquals;
+import static org.schabi.newpipe.player.seekbarpreview.SeekbarPreviewThumbnailHolder.indexOfClosestKey;
+
+import androidx.collection.SparseArrayCompat;
+
+import org.junit.Test;
+
+public class SeekbarPreviewThumbnailHolderTest {
+
+    private static SparseArrayCompat<Object> framesEvery(final int durationPerFrame,
+                                                         final int count) {
+        final SparseArrayCompat<Object> frames = new SparseArrayCompat<>(count);
+        for (int i = 0; i < count; i++) {
+            frames.put(i * durationPerFrame, new Object());
+        }
+        return frames;
+    }
+
+    private static int linearIndexOfClosestKey(final SparseArrayCompat<?> array, final int key) {
+        int closest = -1;
+        long min = Long.MAX_VALUE;
+        for (int i = 0; i < array.size(); i++) {
+            final long distance = Math.abs((long) array.keyAt(i) - key);
+            if (distance < min) {
+                closest = i;
+                min = distance;
+            }
+        }
+        return closest;
+    }
+
+    @Test
+    public void emptyArrayHasNoClosestKey() {
+        assertEquals(-1, indexOfClosestKey(new SparseArrayCompat<>(), 1000));
+    }
+
+    @Test
+    public void positionsOutsideTheFramesUseTheOuterFrames() {
+        final SparseArrayCompat<Object> frames = framesEvery(2000, 10);
+        assertEquals(0, indexOfClosestKey(frames, -500));
+        assertEquals(9, indexOfClosestKey(frames, 100_000));
+    }
+
+    @Test
+    public void tiesUseTheEarlierFrame() {
+        final SparseArrayCompat<Object> frames = framesEvery(2000, 10);
+        assertEquals(1, indexOfClosestKey(frames, 3000));
+        assertEquals(2, indexOfClosestKey(frames, 3001));
+    }
+
+    @Test
+    public void dragOverLongVideoMatchesLinearScan() {
+        // a 3 hour video with one frame every 2 seconds, dragged over in 250ms steps
+        final SparseArrayCompat<Object> frames = framesEvery(2000, 3 * 60 * 30);
+        for (int position = -1000; position < 3 * 60 * 60 * 1000 + 1000; position += 250) {
+            assertEquals(linearIndexOfClosestKey(frames, position),
+                    indexOfClosestKey(frames, position));
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package us.shandian.giga.get;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import us.shandian.giga.get.DownloadSources.Source;
+
+public class DownloadSourcesTest {
+    private static final String URL = "https://rr3---sn-abc123.googlevideo.com/videoplayback"
+            + "?expire=1700000000&itag=140&mn=sn-abc123%2Csn-def456%2Csn-ghi789&sig=xyz";
+
+    @Test
+    public void mirrorsAreListedFromTheUrl() {
+        final List<String> mirrors = DownloadSources.getMirrors(URL);
+
+        assertEquals(2, mirrors.size());
+        assertEquals(URL.replace("rr3---sn-abc123", "rr3---sn-def456"), mirrors.get(0));
+        assertEquals(URL.replace("rr3---sn-abc123", "rr3---sn-ghi789"), mirrors.get(1));
+    }
+
+    @Test
+    public void otherUrlsHaveNoMirrors() {
+        assertTrue(DownloadSources.getMirrors("https://example.com/file?mn=sn-def456").isEmpty());
+        assertTrue(DownloadSources.getMirrors(
+                "https://rr3---sn-abc123.googlevideo.com/videoplayback?itag=140").isEmpty());
+        assertTrue(DownloadSources.getMirrors("not a url").isEmpty());
+    }
+
+    @Test
+    public void everySourceIsTriedThenTheFastestIsUsed() {
+        final DownloadSources sources = new DownloadSources(URL);
+        final List<Source> all = sources.getSources();
+        assertEquals(3, all.size());
+        assertTrue(all.get(0).primary);
+
+        assertSame(all.get(0), sources.pick());
+        assertSame(all.get(1), sources.pick());
+        assertSame(all.get(2), sources.pick());
+
+        all.get(0).onTransferred(1000, TimeUnit.SECONDS.toNanos(1));
+        all.get(1).onTransferred(5000, TimeUnit.SECONDS.toNanos(1));
+        all.get(2).onTransferred(2000, TimeUnit.SECONDS.toNanos(1));
+
+        assertSame(all.get(1), sources.pick());
+        assertEquals(5000, all.get(1).getThroughput());
+    }
+
+    @Test
+    public void failedSourcesAreAvoided() {
+        final DownloadSources sources = new DownloadSources(URL);
+        final List<Source> all = sources.getSources();
+        for (int i = 0; i < all.size(); i++) {
+            sources.pick();
+        }
+        all.get(1).onTransferred(5000, TimeUnit.SECONDS.toNanos(1));
+
+        assertTrue(sources.fail(all.get(1)));
+        assertNotSame(all.get(1), sources.pick());
+        assertEquals(1, all.get(1).getFailures());
+
+        assertTrue(sources.disable(all.get(2)));
+        assertTrue(all.get(2).isDisabled());
+
+        // the primary is the last usable source
+        assertFalse(sources.fail(all.get(0)));
+        assertNotSame(all.get(2), sources.pick());
+    }
+
+    @Test
+    public void slowConnectionsAreDetected() {
+        final DownloadSources sources = new DownloadSources(URL);
+        final List<Source> all = sources.getSources();
+        final long sample = DownloadSources.MIN_SAMPLE_NANOS;
+
+        all.get(1).onTransferred(10000, sample);
+
+        // not sampled long enough yet
+        assertFalse(sources.isSlow(all.get(0), 100, sample - 1));
+
+        assertTrue(sources.isSlow(all.get(0), 100, sample));
+        assertFalse(sources.isSlow(all.get(0), 5000, sample));
+        assertFalse(sources.isSlow(all.get(1), 100, sample));
+
+        sources.disable(all.get(1));
+        assertFalse(sources.isSlow(all.get(0), 100, sample));
+    }
+}
@@ -0,0 +1,108 @@
+package us.shandian.giga.get;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import us.shandian.giga.service.DownloadMetrics;
+import us.shandian.giga.util.Utility;
+
+public class MissionMetricsTest {
+    @Rule
+    public final TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void progressIsSampledOncePerInterval() {
+        final MissionMetrics metrics = new MissionMetrics();
+
+        // the first progress is always sampled
+        metrics.onProgress(0);
+        metrics.onProgress(100);
+        assertEquals(1, metrics.getSamples().size());
+
+        metrics.onFinished(200);
+        final List<long[]> samples = metrics.getSamples();
+        assertEquals(2, samples.size());
+        assertEquals(200, samples.get(1)[1]);
+        assertTrue(metrics.finished);
+        assertTrue(metrics.getEnded() >= metrics.getStarted());
+    }
+
+    @Test
+    public void blocksAreCountedInTheHistogram() {
+        final MissionMetrics metrics = new MissionMetrics();
+        final long second = TimeUnit.SECONDS.toNanos(1);
+
+        metrics.onBlockFinished(MissionMetrics.HISTOGRAM_FIRST_BOUND - 1, second);
+        metrics.onBlockFinished(MissionMetrics.HISTOGRAM_FIRST_BOUND, second);
+        metrics.onBlockFinished(MissionMetrics.HISTOGRAM_FIRST_BOUND * 3, second);
+        metrics.onBlockFinished(Long.MAX_VALUE / second, second);
+
+        final int[] expected = new int[MissionMetrics.HISTOGRAM_BUCKETS];
+        expected[0] = 1;
+        expected[1] = 1;
+        expected[2] = 1;
+        expected[MissionMetrics.HISTOGRAM_BUCKETS - 1] = 1;
+        assertArrayEquals(expected, metrics.getHistogram());
+
+        assertEquals(4, metrics.getBlocks());
+        assertEquals(1000, metrics.getAverageBlockMillis());
+    }
+
+    @Test
+    public void metricsAreStoredWithTheMission() throws IOException {
+        final DownloadMission mission = new DownloadMission(
+                new String[]{"https://example.com/file"}, null, 'v', null);
+        mission.metrics().onConnected(TimeUnit.MILLISECONDS.toNanos(250));
+        mission.metrics().onRetry();
+        mission.metrics().onError(DownloadMission.ERROR_TIMEOUT);
+        mission.metrics().onPostprocessed("mp4D-mp4", 1500);
+
+        final File file = temporaryFolder.newFile();
+        Utility.writeToFile(file, mission);
+        final MissionMetrics metrics = ((DownloadMission) Utility.readFromFile(file)).getMetrics();
+
+        assertEquals(1, metrics.getConnections());
+        assertEquals(250, metrics.getAverageFirstByteMillis());
+        assertEquals(1, metrics.getRetries());
+        assertEquals(DownloadMission.ERROR_TIMEOUT, metrics.getErrors().get(0)[1]);
+        assertEquals("mp4D-mp4", metrics.getPostprocessing());
+        assertEquals(1500, metrics.getPostprocessingMillis());
+    }
+
+    @Test
+    public void csvHasOneRowPerMission() throws IOException {
+        final MissionMetrics first = new MissionMetrics();
+        first.name = "first, with a comma.mp4";
+        first.kind = 'v';
+        first.onRetry();
+
+        final MissionMetrics second = new MissionMetrics();
+        second.name = "second.m4a";
+        second.kind = 'a';
+        second.onError(DownloadMission.ERROR_CONNECT_HOST);
+
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        DownloadMetrics.writeCsv(Arrays.asList(first, second), out);
+        final String[] lines = out.toString(StandardCharsets.UTF_8.name()).split("\n");
+
+        assertEquals(3, lines.length);
+        final int columns = lines[0].split(",").length;
+        assertTrue(lines[1].startsWith("\"first, with a comma.mp4\",v,"));
+        assertTrue(lines[2].startsWith("second.m4a,a,"));
+        assertEquals(columns, lines[2].split(",", -1).length);
+        assertTrue(lines[2].contains("," + DownloadMission.ERROR_CONNECT_HOST + ","));
+    }
+}
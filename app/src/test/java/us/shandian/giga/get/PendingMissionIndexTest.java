@@ -0,0 +1,144 @@
+package us.shandian.giga.get;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import us.shandian.giga.util.Utility;
+
+public class PendingMissionIndexTest {
+    private static final int MISSIONS = 200;
+    /**
+     * The amount of blocks of a 4 GiB download.
+     */
+    private static final int BLOCKS = 8192;
+
+    @Rule
+    public final TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private File directory;
+    private List<DownloadMission> missions;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = temporaryFolder.newFolder();
+        missions = new ArrayList<>(MISSIONS);
+
+        for (int i = 0; i < MISSIONS; i++) {
+            final DownloadMission mission = new DownloadMission(new String[]{
+                    "https://example.com/videoplayback?id=" + i + "&expire=1700000000",
+                    "https://example.com/videoplayback?id=" + i + "&itag=140"
+            }, null, 'v', null);
+            mission.timestamp = 1000L + i;
+            mission.length = 4L * 1024 * 1024 * 1024;
+            mission.done = i * 1024L;
+            mission.priority = i % 3;
+            mission.errCode = DownloadMission.ERROR_CONNECT_HOST;
+            mission.errObject = new IOException("connection lost");
+            mission.blocks = new int[BLOCKS];
+            mission.metadata = new File(directory, String.valueOf(mission.timestamp));
+            Utility.writeToFile(mission.metadata, mission);
+
+            missions.add(mission);
+        }
+    }
+
+    @Test
+    public void summaryIsUsedUntilTheMetaFileChanges() {
+        PendingMissionIndex.read(directory).save(missions);
+
+        final File metadata = missions.get(0).metadata;
+        assertNotNull(PendingMissionIndex.read(directory).get(metadata));
+
+        assertTrue(metadata.setLastModified(metadata.lastModified() + 10000));
+        assertNull(PendingMissionIndex.read(directory).get(metadata));
+    }
+
+    @Test
+    public void summaryLoadsTheWholeState() {
+        PendingMissionIndex.read(directory).save(missions);
+        final PendingMissionIndex index = PendingMissionIndex.read(directory);
+
+        for (final DownloadMission original : missions) {
+            final DownloadMission summary = index.get(original.metadata);
+            assertNotNull(summary);
+            assertFalse(summary.isLoaded());
+            assertTrue(summary.isInitialized());
+            assertEquals(original.timestamp, summary.timestamp);
+            assertEquals(original.done, summary.done);
+            assertEquals(original.getLength(), summary.getLength());
+            assertEquals(original.priority, summary.priority);
+            assertEquals(original.errCode, summary.errCode);
+            assertEquals(original.urls.length, summary.urls.length);
+            assertNull(summary.errObject);
+
+            summary.metadata = original.metadata;
+            assertTrue(summary.load());
+            assertTrue(summary.isLoaded());
+            assertArrayEquals(original.urls, summary.urls);
+            assertEquals(BLOCKS, summary.blocks.length);
+            assertNotNull(summary.errObject);
+        }
+    }
+
+    @Test
+    public void indexIsNotAMission() {
+        PendingMissionIndex.read(directory).save(missions);
+
+        final File[] files = directory.listFiles();
+        assertNotNull(files);
+
+        int indexFiles = 0;
+        for (final File file : files) {
+            if (PendingMissionIndex.isIndexFile(file)) {
+                indexFiles++;
+            }
+        }
+        assertEquals(1, indexFiles);
+        assertEquals(MISSIONS + 1, files.length);
+    }
+
+    /**
+     * Lists the {@link #MISSIONS} pending missions like the download manager does at startup, with
+     * meta files which cannot be read anymore: the index must be enough to list them.
+     *
+     * @throws IOException if a meta file cannot be replaced
+     */
+    @Test
+    public void startupReadsNoMetaFile() throws IOException {
+        PendingMissionIndex.read(directory).save(missions);
+
+        final Random random = new Random(42);
+        for (final DownloadMission mission : missions) {
+            final long lastModified = mission.metadata.lastModified();
+            final byte[] garbage = new byte[(int) mission.metadata.length()];
+            random.nextBytes(garbage);
+            Files.write(mission.metadata.toPath(), garbage);
+            assertTrue(mission.metadata.setLastModified(lastModified));
+        }
+
+        final PendingMissionIndex index = PendingMissionIndex.read(directory);
+        for (final DownloadMission mission : missions) {
+            final DownloadMission summary = index.get(mission.metadata);
+            assertNotNull(summary);
+            assertFalse(summary.isLoaded());
+            assertEquals(mission.timestamp, summary.timestamp);
+            assertEquals(mission.done, summary.done);
+        }
+    }
+}
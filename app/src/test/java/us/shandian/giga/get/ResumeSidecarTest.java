@@ -0,0 +1,122 @@
+package us.shandian.giga.get;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.schabi.newpipe.extractor.MediaFormat;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+import java.util.Random;
+
+import us.shandian.giga.io.FileStream;
+import us.shandian.giga.postprocessing.Postprocessing;
+
+public class ResumeSidecarTest {
+    private static final int BLOCK_SIZE = DownloadMission.BLOCK_SIZE;
+
+    @Rule
+    public final TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void resumeFileIsNamedAfterTheDownloadedFile() {
+        final String name = ResumeSidecar.getName("video.mp4");
+
+        assertTrue(ResumeSidecar.isResumeFile(name));
+        assertEquals("video.mp4", ResumeSidecar.getOutputName(name));
+        assertFalse(ResumeSidecar.isResumeFile("video.mp4"));
+        assertFalse(ResumeSidecar.isResumeFile(".resume"));
+    }
+
+    @Test
+    public void missionIsDecodedFromTheResumeFile() throws IOException {
+        final DownloadMission mission = new DownloadMission(
+                new String[]{"https://example.com/video", "https://example.com/audio"}, null, 'v',
+                Postprocessing.getAlgorithm(Postprocessing.ALGORITHM_WEBM_MUXER, null));
+        mission.source = "https://example.com/watch";
+        mission.current = 1;
+        mission.offsets[1] = 1000;
+        mission.length = BLOCK_SIZE * 2L + 10;
+        mission.nearLength = 5000000;
+        mission.recoveryInfo = new MissionRecoveryInfo[]{
+                new MissionRecoveryInfo(MediaFormat.WEBM, "720p", true, 0, 'v', null),
+                new MissionRecoveryInfo(MediaFormat.WEBMA, null, false, 160, 'a', null)
+        };
+        mission.blocks = new int[]{-1, 4096, -1};
+        mission.checksums = new long[]{0xFFFFFFFFL, ResumeSidecar.UNKNOWN_CHECKSUM,
+                ResumeSidecar.UNKNOWN_CHECKSUM};
+
+        final DownloadMission decoded = ResumeSidecar.decode(
+                new ByteArrayInputStream(ResumeSidecar.encode(mission)), null);
+
+        assertArrayEquals(mission.urls, decoded.urls);
+        assertArrayEquals(mission.offsets, decoded.offsets);
+        assertEquals(mission.source, decoded.source);
+        assertEquals(mission.kind, decoded.kind);
+        assertEquals(1, decoded.current);
+        assertEquals(mission.length, decoded.length);
+        assertEquals(mission.nearLength, decoded.nearLength);
+        assertEquals(Postprocessing.ALGORITHM_WEBM_MUXER, decoded.psAlgorithm.getName());
+        assertFalse(decoded.enqueued);
+
+        assertEquals(2, decoded.recoveryInfo.length);
+        assertEquals(MediaFormat.WEBM, decoded.recoveryInfo[0].getFormat());
+        assertEquals("720p", decoded.recoveryInfo[0].getDesired());
+        assertTrue(decoded.recoveryInfo[0].isDesired2());
+        assertEquals(160, decoded.recoveryInfo[1].getDesiredBitrate());
+        assertEquals('a', decoded.recoveryInfo[1].getKind());
+
+        // the blocks without checksum and the partial ones are downloaded again
+        assertArrayEquals(new int[]{-1, 0, 0}, decoded.blocks);
+        assertArrayEquals(new long[]{0xFFFFFFFFL, ResumeSidecar.UNKNOWN_CHECKSUM,
+                ResumeSidecar.UNKNOWN_CHECKSUM}, decoded.checksums);
+    }
+
+    @Test
+    public void corruptedBlocksAreDownloadedAgain() throws Exception {
+        final int offset = 100;
+        final long length = BLOCK_SIZE * 3L + 1000;
+        final byte[] data = new byte[(int) length];
+        new Random(7).nextBytes(data);
+
+        final File file = temporaryFolder.newFile();
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.seek(offset);
+            raf.write(data);
+        }
+
+        final int[] blocks = new int[4];
+        Arrays.fill(blocks, -1);
+        final long[] checksums = new long[blocks.length];
+        try (FileStream stream = new FileStream(file)) {
+            final byte[] buffer = new byte[DownloadMission.BUFFER_SIZE];
+            for (int i = 0; i < blocks.length; i++) {
+                final int size = (int) Math.min(BLOCK_SIZE, length - (long) i * BLOCK_SIZE);
+                checksums[i] = ResumeSidecar.checksum(stream, offset + (long) i * BLOCK_SIZE,
+                        size, buffer);
+            }
+        }
+
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.seek(offset + BLOCK_SIZE + 10);
+            raf.write(data[BLOCK_SIZE + 10] + 1);
+            // the last block is not there anymore
+            raf.setLength(offset + BLOCK_SIZE * 3L + 10);
+        }
+
+        final int invalid = ResumeSidecar.verify(() -> new FileStream(file), offset, length,
+                blocks, checksums, 2);
+
+        assertEquals(2, invalid);
+        assertArrayEquals(new int[]{-1, 0, -1, 0}, blocks);
+        assertEquals(ResumeSidecar.UNKNOWN_CHECKSUM, checksums[1]);
+    }
+}
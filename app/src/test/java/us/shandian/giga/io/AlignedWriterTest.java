@@ -0,0 +1,228 @@
+package us.shandian.giga.io;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import androidx.annotation.NonNull;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.schabi.newpipe.streams.io.SharpStream;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+public class AlignedWriterTest {
+    private static final int BUFFER_SIZE = 64 * 1024;
+    /**
+     * About the size of the data returned by a single read from a network connection.
+     */
+    private static final int READ_SIZE = 1400;
+
+    @Rule
+    public final TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void writesEndAtAlignedPositions() throws IOException {
+        final byte[] data = randomBytes(1024 * 1024);
+        final long offset = 1000;
+        final File file = temporaryFolder.newFile();
+        final List<Long> writeEnds = new ArrayList<>();
+
+        try (RecordingFileStream stream = new RecordingFileStream(file, writeEnds)) {
+            final AlignedWriter writer = new AlignedWriter(stream, BUFFER_SIZE);
+            writer.seek(offset);
+
+            final InputStream source = new ChunkedInputStream(data, READ_SIZE);
+            while (writer.read(source) != -1) {
+                if (writer.isFull()) {
+                    writer.flush();
+                }
+            }
+            writer.flush();
+        }
+
+        // all the writes but the last one end at an aligned position
+        for (int i = 0; i < writeEnds.size() - 1; i++) {
+            assertEquals(0, writeEnds.get(i) % AlignedWriter.ALIGNMENT);
+        }
+        assertEquals(offset + data.length, (long) writeEnds.get(writeEnds.size() - 1));
+        assertTrue(writeEnds.size() <= data.length / BUFFER_SIZE + 2);
+
+        final byte[] written = Files.readAllBytes(file.toPath());
+        assertArrayEquals(data, Arrays.copyOfRange(written, (int) offset, written.length));
+    }
+
+    @Test
+    public void seekDiscardsBufferedData() throws IOException {
+        final File file = temporaryFolder.newFile();
+
+        try (FileStream stream = new FileStream(file)) {
+            final AlignedWriter writer = new AlignedWriter(stream, BUFFER_SIZE);
+            writer.seek(0);
+            writer.read(new ByteArrayInputStream(new byte[]{1, 2, 3}));
+            assertEquals(3, writer.getBuffered());
+
+            writer.seek(10);
+            assertEquals(0, writer.getBuffered());
+            assertEquals(0, writer.flush());
+        }
+
+        assertEquals(0, file.length());
+    }
+
+    @Test
+    public void flushedDataIsInTheFile() throws IOException {
+        final byte[] data = randomBytes(1000);
+        final File file = temporaryFolder.newFile();
+
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw");
+             FileStreamSAF stream = new FileStreamSAF(raf.getFD())) {
+            final AlignedWriter writer = new AlignedWriter(stream, BUFFER_SIZE);
+            writer.seek(0);
+            writer.read(new ByteArrayInputStream(data));
+            assertEquals(data.length, writer.flush());
+
+            // the stream buffers small writes, the download threads count them as written
+            assertEquals(data.length, file.length());
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void bufferSizeMustBeAligned() throws IOException {
+        try (FileStream stream = new FileStream(temporaryFolder.newFile())) {
+            new AlignedWriter(stream, AlignedWriter.ALIGNMENT + 1);
+        }
+    }
+
+    @Test
+    public void alignedWritesMatchTheDirectOnes() throws IOException {
+        final byte[] data = randomBytes(8 * 1024 * 1024);
+        final File direct = temporaryFolder.newFile();
+        final File aligned = temporaryFolder.newFile();
+
+        try (FileStream stream = new FileStream(direct)) {
+            writeDirectly(stream, data);
+        }
+        try (FileStream stream = new FileStream(aligned)) {
+            writeAligned(stream, data);
+        }
+
+        assertEquals(data.length, aligned.length());
+        assertArrayEquals(Files.readAllBytes(direct.toPath()),
+                Files.readAllBytes(aligned.toPath()));
+    }
+
+    @Test
+    public void alignedWritesAreFasterThanDirectOnes() throws IOException {
+        final byte[] data = randomBytes(16 * 1024 * 1024);
+        long directNanos = Long.MAX_VALUE;
+        long alignedNanos = Long.MAX_VALUE;
+
+        // the best of a few runs on the same stream, so that a hiccup does not fail the test
+        try (FileStream stream = new FileStream(temporaryFolder.newFile())) {
+            stream.setLength(data.length);
+            for (int i = 0; i < 3; i++) {
+                directNanos = Math.min(directNanos, writeDirectly(stream, data));
+                alignedNanos = Math.min(alignedNanos, writeAligned(stream, data));
+            }
+        }
+
+        assertTrue("aligned writes took " + alignedNanos + " ns, direct writes " + directNanos
+                + " ns", alignedNanos < directNanos);
+    }
+
+    /**
+     * Writes the data from the start of the stream, with one write per network read, like
+     * downloads used to.
+     *
+     * @param stream the stream to write to
+     * @param data   the data to write
+     * @return the time it took, in nanoseconds
+     * @throws IOException if the stream cannot be written
+     */
+    private static long writeDirectly(final SharpStream stream, final byte[] data)
+            throws IOException {
+        final long start = System.nanoTime();
+        stream.seek(0);
+        final InputStream source = new ChunkedInputStream(data, READ_SIZE);
+        final byte[] buffer = new byte[BUFFER_SIZE];
+        int len;
+        while ((len = source.read(buffer, 0, buffer.length)) != -1) {
+            stream.write(buffer, 0, len);
+        }
+        return System.nanoTime() - start;
+    }
+
+    /**
+     * Writes the data from the start of the stream with an {@link AlignedWriter}.
+     *
+     * @param stream the stream to write to
+     * @param data   the data to write
+     * @return the time it took, in nanoseconds
+     * @throws IOException if the stream cannot be written
+     */
+    private static long writeAligned(final SharpStream stream, final byte[] data)
+            throws IOException {
+        final long start = System.nanoTime();
+        final AlignedWriter writer = new AlignedWriter(stream, BUFFER_SIZE);
+        writer.seek(0);
+        final InputStream source = new ChunkedInputStream(data, READ_SIZE);
+        while (writer.read(source) != -1) {
+            if (writer.isFull()) {
+                writer.flush();
+            }
+        }
+        writer.flush();
+        return System.nanoTime() - start;
+    }
+
+    private static byte[] randomBytes(final int length) {
+        final byte[] data = new byte[length];
+        new Random(length).nextBytes(data);
+        return data;
+    }
+
+    /**
+     * Returns at most {@code chunkSize} bytes per read, like a network connection.
+     */
+    private static final class ChunkedInputStream extends ByteArrayInputStream {
+        private final int chunkSize;
+
+        ChunkedInputStream(final byte[] data, final int chunkSize) {
+            super(data);
+            this.chunkSize = chunkSize;
+        }
+
+        @Override
+        public synchronized int read(@NonNull final byte[] b, final int off, final int len) {
+            return super.read(b, off, Math.min(len, chunkSize));
+        }
+    }
+
+    private static final class RecordingFileStream extends FileStream {
+        private final List<Long> writeEnds;
+
+        RecordingFileStream(final File target, final List<Long> writeEnds) throws IOException {
+            super(target);
+            this.writeEnds = writeEnds;
+        }
+
+        @Override
+        public void write(final byte[] buffer, final int offset, final int count)
+                throws IOException {
+            super.write(buffer, offset, count);
+            writeEnds.add(source.getFilePointer());
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package us.shandian.giga.io;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.schabi.newpipe.streams.io.SharpStream;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.Random;
+
+public class FileStreamSAFTest {
+    @Rule
+    public final TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    /**
+     * Writes and reads like the muxers and the download threads do: single bytes, small and
+     * large arrays, seeks back to patch headers and reads of the data just written.
+     *
+     * @param stream the stream to exercise
+     * @return the data read back from the stream
+     * @throws IOException if the stream fails
+     */
+    private static byte[] exercise(final SharpStream stream) throws IOException {
+        final Random random = new Random(42);
+        final byte[] small = new byte[300];
+        final byte[] large = new byte[FileStreamSAF.BUFFER_SIZE * 2 + 123];
+        random.nextBytes(small);
+        random.nextBytes(large);
+
+        for (int i = 0; i < 1000; i++) {
+            stream.write((byte) i);
+        }
+        for (int i = 0; i < 500; i++) {
+            stream.write(small, i % 100, 200);
+        }
+        stream.write(large);
+
+        // patch a header, then continue at the end
+        final long end = 1000 + 500 * 200 + large.length;
+        stream.seek(10);
+        stream.write(small, 0, 8);
+        stream.seek(end);
+        stream.write(small);
+
+        // read what was just written, then write after it
+        stream.seek(500);
+        final byte[] read = new byte[2000];
+        int count = 0;
+        while (count < read.length) {
+            count += stream.read(read, count, read.length - count);
+        }
+        stream.write(large, 0, 5000);
+
+        stream.setLength(end + 100);
+        stream.seek(stream.length());
+        stream.write(small, 0, 10);
+        assertEquals(end + 110, stream.length());
+
+        return read;
+    }
+
+    @Test
+    public void bufferedWritesMatchTheUnbufferedOnes() throws IOException {
+        final File expected = temporaryFolder.newFile();
+        final byte[] expectedRead;
+        try (FileStream stream = new FileStream(expected)) {
+            expectedRead = exercise(stream);
+        }
+
+        final File actual = temporaryFolder.newFile();
+        final byte[] actualRead;
+        try (RandomAccessFile raf = new RandomAccessFile(actual, "rw");
+             FileStreamSAF stream = new FileStreamSAF(raf.getFD())) {
+            actualRead = exercise(stream);
+        }
+
+        assertArrayEquals(expectedRead, actualRead);
+        assertArrayEquals(Files.readAllBytes(expected.toPath()),
+                Files.readAllBytes(actual.toPath()));
+    }
+
+    @Test
+    public void onlySmallWritesAreBuffered() throws IOException {
+        final File file = temporaryFolder.newFile();
+        final byte[] data = new byte[FileStreamSAF.BUFFER_SIZE];
+        new Random(42).nextBytes(data);
+
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw");
+             FileStreamSAF stream = new FileStreamSAF(raf.getFD())) {
+            stream.write(data, 0, 100);
+            assertEquals(0, file.length());
+
+            // the buffered data is written together with the large write
+            stream.write(data);
+            assertEquals(100 + data.length, file.length());
+
+            stream.write(data, 0, 100);
+            assertEquals(100 + data.length, file.length());
+            stream.flush();
+            assertEquals(200 + data.length, file.length());
+        }
+    }
+}
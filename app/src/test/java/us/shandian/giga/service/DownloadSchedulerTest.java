@@ -0,0 +1,74 @@
+package us.shandian.giga.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import us.shandian.giga.get.DownloadMission;
+
+public class DownloadSchedulerTest {
+    private static DownloadMission newMission(final int priority, final long timestamp) {
+        final DownloadMission mission =
+                new DownloadMission(new String[]{"https://example.com/file"}, null, 'v', null);
+        mission.priority = priority;
+        mission.timestamp = timestamp;
+        return mission;
+    }
+
+    @Test
+    public void missionsAreOrderedByPriorityThenByAge() {
+        final DownloadMission oldLow = newMission(0, 100);
+        final DownloadMission newLow = newMission(0, 200);
+        final DownloadMission oldHigh = newMission(5, 300);
+        final DownloadMission newHigh = newMission(5, 400);
+        final DownloadMission negative = newMission(-1, 50);
+
+        final List<DownloadMission> missions =
+                new ArrayList<>(Arrays.asList(newLow, negative, newHigh, oldLow, oldHigh));
+        Collections.shuffle(missions);
+        Collections.sort(missions, DownloadScheduler.PRIORITY_ORDER);
+
+        assertEquals(Arrays.asList(oldHigh, newHigh, oldLow, newLow, negative), missions);
+    }
+
+    @Test
+    public void connectionsAreSharedByAllMissions() throws InterruptedIOException {
+        final DownloadScheduler scheduler = new DownloadScheduler();
+        scheduler.setMaxConnections(2);
+
+        assertTrue(scheduler.acquireConnection(0));
+        assertTrue(scheduler.acquireConnection(0));
+        assertFalse(scheduler.acquireConnection(50));
+
+        scheduler.releaseConnection();
+        assertTrue(scheduler.acquireConnection(0));
+
+        scheduler.setMaxConnections(0);
+        assertTrue(scheduler.acquireConnection(0));
+    }
+
+    @Test
+    public void transferredBytesAreCounted() throws InterruptedIOException {
+        final DownloadScheduler scheduler = new DownloadScheduler();
+        scheduler.onTransferred(1000);
+        scheduler.onTransferred(234);
+        assertEquals(1234, scheduler.getTransferred());
+    }
+
+    @Test
+    public void negativeMissionBandwidthLimitDisablesIt() {
+        final DownloadScheduler scheduler = new DownloadScheduler();
+        scheduler.setMissionBandwidthLimit(-1);
+        assertEquals(0, scheduler.getMissionBandwidthLimit());
+        scheduler.setMissionBandwidthLimit(4096);
+        assertEquals(4096, scheduler.getMissionBandwidthLimit());
+    }
+}
@@ -0,0 +1,120 @@
+package us.shandian.giga.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import us.shandian.giga.get.DownloadMission;
+
+public class PostprocessingQueueTest {
+    private static final long TIMEOUT = 5000;
+
+    @After
+    public void tearDown() {
+        PostprocessingQueue.setPlaybackBuffering(false);
+    }
+
+    private static DownloadMission newMission() {
+        return new DownloadMission(new String[]{"https://example.com/file"}, null, 'v', null);
+    }
+
+    private static Thread acquireAsync(final PostprocessingQueue queue,
+                                       final DownloadMission mission,
+                                       final CountDownLatch acquired) {
+        final Thread thread = new Thread(() -> {
+            try {
+                queue.acquire(mission);
+                acquired.countDown();
+            } catch (final InterruptedException e) {
+                // left the queue
+            }
+        });
+        thread.start();
+        return thread;
+    }
+
+    private static void awaitQueued(final PostprocessingQueue queue, final int count)
+            throws InterruptedException {
+        final long deadline = System.currentTimeMillis() + TIMEOUT;
+        while (queue.getQueuedCount() != count && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(count, queue.getQueuedCount());
+    }
+
+    @Test
+    public void missionsArePostProcessedInOrderUpToTheParallelism() throws Exception {
+        final PostprocessingQueue queue = new PostprocessingQueue();
+        final DownloadMission first = newMission();
+        final DownloadMission second = newMission();
+        final DownloadMission third = newMission();
+
+        queue.acquire(first);
+
+        final CountDownLatch secondAcquired = new CountDownLatch(1);
+        acquireAsync(queue, second, secondAcquired);
+        awaitQueued(queue, 1);
+
+        final CountDownLatch thirdAcquired = new CountDownLatch(1);
+        acquireAsync(queue, third, thirdAcquired);
+        awaitQueued(queue, 2);
+        assertTrue(queue.isQueued(second));
+
+        queue.release(first);
+        assertTrue(secondAcquired.await(TIMEOUT, TimeUnit.MILLISECONDS));
+        assertFalse(thirdAcquired.await(100, TimeUnit.MILLISECONDS));
+
+        queue.setParallelism(2);
+        assertTrue(thirdAcquired.await(TIMEOUT, TimeUnit.MILLISECONDS));
+        assertEquals(2, queue.getRunningCount());
+        assertEquals(0, queue.getQueuedCount());
+    }
+
+    @Test
+    public void pausedMissionLeavesTheQueue() throws Exception {
+        final PostprocessingQueue queue = new PostprocessingQueue();
+        final DownloadMission first = newMission();
+        final DownloadMission second = newMission();
+
+        queue.acquire(first);
+
+        final CountDownLatch acquired = new CountDownLatch(1);
+        final Thread thread = acquireAsync(queue, second, acquired);
+        awaitQueued(queue, 1);
+
+        thread.interrupt();
+        thread.join(TIMEOUT);
+
+        assertFalse(queue.isQueued(second));
+        assertEquals(1, queue.getRunningCount());
+        assertEquals(1, acquired.getCount());
+    }
+
+    @Test
+    public void postProcessingWaitsWhilePlaybackBuffers() throws Exception {
+        PostprocessingQueue.setPlaybackBuffering(true);
+        assertTrue(PostprocessingQueue.isWaitingForPlayback());
+
+        final CountDownLatch resumed = new CountDownLatch(1);
+        new Thread(() -> {
+            try {
+                PostprocessingQueue.awaitPlayback();
+                resumed.countDown();
+            } catch (final InterruptedException e) {
+                // nothing to do
+            }
+        }).start();
+
+        assertFalse(resumed.await(100, TimeUnit.MILLISECONDS));
+
+        PostprocessingQueue.setPlaybackBuffering(false);
+        assertTrue(resumed.await(TIMEOUT, TimeUnit.MILLISECONDS));
+        assertFalse(PostprocessingQueue.isWaitingForPlayback());
+    }
+}
@@ -0,0 +1,134 @@
+package us.shandian.giga.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.io.InterruptedIOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+public class ConnectionLimiterTest {
+    private static final long TIMEOUT = 5000;
+
+    @Test
+    public void noLimitAlwaysAcquires() throws InterruptedIOException {
+        final ConnectionLimiter limiter = new ConnectionLimiter();
+        for (int i = 0; i < 100; i++) {
+            assertTrue(limiter.tryAcquire(0));
+        }
+        assertEquals(100, limiter.getActiveConnections());
+    }
+
+    @Test
+    public void acquiringPastTheLimitTimesOut() throws InterruptedIOException {
+        final ConnectionLimiter limiter = new ConnectionLimiter();
+        limiter.setLimit(2);
+        assertTrue(limiter.tryAcquire(0));
+        assertTrue(limiter.tryAcquire(0));
+
+        final long start = System.currentTimeMillis();
+        assertFalse(limiter.tryAcquire(200));
+        assertTrue(System.currentTimeMillis() - start >= 200);
+        assertEquals(2, limiter.getActiveConnections());
+
+        limiter.release();
+        assertTrue(limiter.tryAcquire(0));
+    }
+
+    @Test
+    public void releaseWakesUpAWaitingThread() throws Exception {
+        final ConnectionLimiter limiter = new ConnectionLimiter();
+        limiter.setLimit(1);
+        assertTrue(limiter.tryAcquire(0));
+
+        final CountDownLatch acquired = new CountDownLatch(1);
+        final Thread thread = new Thread(() -> {
+            try {
+                if (limiter.tryAcquire(TIMEOUT)) {
+                    acquired.countDown();
+                }
+            } catch (final InterruptedIOException e) {
+                // interrupted by the test
+            }
+        });
+        thread.start();
+
+        assertFalse(acquired.await(200, TimeUnit.MILLISECONDS));
+        limiter.release();
+        assertTrue(acquired.await(TIMEOUT, TimeUnit.MILLISECONDS));
+        thread.join(TIMEOUT);
+    }
+
+    @Test
+    public void loweringTheLimitWaitsForEnoughReleases() throws InterruptedIOException {
+        final ConnectionLimiter limiter = new ConnectionLimiter();
+        limiter.setLimit(3);
+        for (int i = 0; i < 3; i++) {
+            assertTrue(limiter.tryAcquire(0));
+        }
+
+        // the open connections are kept, but no new one is allowed until only one is left
+        limiter.setLimit(1);
+        assertEquals(3, limiter.getActiveConnections());
+        limiter.release();
+        assertFalse(limiter.tryAcquire(50));
+        limiter.release();
+        assertFalse(limiter.tryAcquire(50));
+        limiter.release();
+        assertTrue(limiter.tryAcquire(0));
+        assertFalse(limiter.tryAcquire(50));
+    }
+
+    @Test
+    public void raisingTheLimitWakesUpWaitingThreads() throws Exception {
+        final ConnectionLimiter limiter = new ConnectionLimiter();
+        limiter.setLimit(1);
+        assertTrue(limiter.tryAcquire(0));
+
+        final CountDownLatch acquired = new CountDownLatch(2);
+        final Thread[] threads = new Thread[2];
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = new Thread(() -> {
+                try {
+                    if (limiter.tryAcquire(TIMEOUT)) {
+                        acquired.countDown();
+                    }
+                } catch (final InterruptedIOException e) {
+                    // interrupted by the test
+                }
+            });
+            threads[i].start();
+        }
+
+        limiter.setLimit(3);
+        assertTrue(acquired.await(TIMEOUT, TimeUnit.MILLISECONDS));
+        assertEquals(3, limiter.getActiveConnections());
+        for (final Thread thread : threads) {
+            thread.join(TIMEOUT);
+        }
+    }
+
+    @Test
+    public void interruptedWaitThrows() throws Exception {
+        final ConnectionLimiter limiter = new ConnectionLimiter();
+        limiter.setLimit(1);
+        assertTrue(limiter.tryAcquire(0));
+
+        final CountDownLatch interrupted = new CountDownLatch(1);
+        final Thread thread = new Thread(() -> {
+            try {
+                limiter.tryAcquire(TIMEOUT);
+            } catch (final InterruptedIOException e) {
+                interrupted.countDown();
+            }
+        });
+        thread.start();
+        thread.interrupt();
+
+        assertTrue(interrupted.await(TIMEOUT, TimeUnit.MILLISECONDS));
+        assertEquals(1, limiter.getActiveConnections());
+    }
+}
@@ -0,0 +1,81 @@
+package us.shandian.giga.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.io.InterruptedIOException;
+import java.util.concurrent.TimeUnit;
+
+public class TokenBucketTest {
+    private static final long RATE = 1000;
+
+    /**
+     * Checks a wait computed by the bucket, allowing the bucket to have refilled a little
+     * between the calls.
+     *
+     * @param expectedMillis the wait if no time elapsed between the calls
+     * @param actualNanos    the wait computed by the bucket
+     */
+    private static void assertWait(final long expectedMillis, final long actualNanos) {
+        final long actualMillis = TimeUnit.NANOSECONDS.toMillis(actualNanos);
+        assertTrue("waits " + actualMillis + " ms", actualMillis <= expectedMillis);
+        assertTrue("waits " + actualMillis + " ms", actualMillis > expectedMillis - 100);
+    }
+
+    @Test
+    public void noLimitNeverWaits() {
+        final TokenBucket bucket = new TokenBucket();
+        assertEquals(0, bucket.take(Integer.MAX_VALUE));
+
+        bucket.setRate(RATE);
+        bucket.setRate(0);
+        assertEquals(0, bucket.getRate());
+        assertEquals(0, bucket.take(Integer.MAX_VALUE));
+    }
+
+    @Test
+    public void exceedingTheRateWaitsUntilTheBucketRefilled() {
+        final TokenBucket bucket = new TokenBucket();
+        bucket.setRate(RATE);
+
+        // the bucket starts empty, each byte takes a millisecond to refill at this rate
+        assertWait(500, bucket.take(500));
+        assertWait(1000, bucket.take(500));
+        assertWait(3000, bucket.take(2000));
+    }
+
+    @Test
+    public void burstsAreLimitedToOneSecondOfTraffic() throws InterruptedException {
+        final TokenBucket bucket = new TokenBucket();
+        bucket.setRate(RATE * 10);
+
+        // the bucket refills while idle, but holds at most one second of tokens
+        Thread.sleep(1500);
+        assertEquals(0, bucket.take(10_000));
+        assertWait(500, bucket.take(5000));
+    }
+
+    @Test
+    public void loweringTheRateDropsTheExtraTokens() throws InterruptedException {
+        final TokenBucket bucket = new TokenBucket();
+        bucket.setRate(RATE * 10);
+        Thread.sleep(1500);
+
+        bucket.setRate(RATE);
+        assertEquals(0, bucket.take(1000));
+        assertWait(500, bucket.take(500));
+    }
+
+    @Test
+    public void consumeSleepsForTheComputedWait() throws InterruptedIOException {
+        final TokenBucket bucket = new TokenBucket();
+        bucket.setRate(RATE * 10);
+
+        final long start = System.nanoTime();
+        bucket.consume(2000);
+        final long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        assertTrue("slept " + elapsedMillis + " ms", elapsedMillis >= 150);
+    }
+}